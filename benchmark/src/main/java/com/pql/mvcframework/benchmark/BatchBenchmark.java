@@ -0,0 +1,101 @@
+package com.pql.mvcframework.benchmark;
+
+import com.pql.mvcframework.v3.async.AsyncExecutors;
+import com.pql.mvcframework.v3.server.PQLHttpServer;
+import org.openjdk.jmh.annotations.*;
+
+import javax.servlet.http.HttpServlet;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 同一组DemoController调用 逐个请求和合并为一个/_batch请求的耗时 经过内嵌服务器和本机网络
+ * separate: 同一个keep-alive连接上逐个发送 每个调用一次往返
+ * batch: 一个POST /_batch 子请求在批量线程池中并行执行
+ * 一半为/demo/query 一半为/demo/add
+ * */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(3)
+public class BatchBenchmark {
+
+    @Param({"4", "16"})
+    public int items;
+
+    private HttpServlet servlet;
+    private ExecutorService workers;
+    private PQLHttpServer server;
+
+    private Socket socket;
+    private OutputStream out;
+    private InputStream in;
+    private byte[][] requests;
+    private byte[] batchRequest;
+
+    @Setup
+    public void setup() throws Exception {
+        // 批量接口默认关闭 在配置副本中开启
+        servlet = DispatchBenchmark.createServlet("v3",
+                InMemoryServletConfig.derive("application.yml", "batch.yml", "batchPath: /_batch"));
+        workers = AsyncExecutors.create(0);
+        server = new PQLHttpServer(servlet, new InetSocketAddress("127.0.0.1", 0), workers);
+        int port = server.start();
+        requests = new byte[items][];
+        StringBuilder body = new StringBuilder("[");
+        for (int i = 0; i < items; i++) {
+            String path = i % 2 == 0 ? "/demo/query?name=tom" + i : "/demo/add?a=" + i + "&b=2";
+            requests[i] = ("GET " + path + " HTTP/1.1\r\nHost: 127.0.0.1\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1);
+            if(i > 0){
+                body.append(',');
+            }
+            body.append("{\"path\":\"").append(path).append("\"}");
+        }
+        body.append(']');
+        byte[] json = body.toString().getBytes(StandardCharsets.UTF_8);
+        byte[] head = ("POST /_batch HTTP/1.1\r\nHost: 127.0.0.1\r\nContent-Type: application/json\r\nContent-Length: "
+                + json.length + "\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1);
+        batchRequest = new byte[head.length + json.length];
+        System.arraycopy(head, 0, batchRequest, 0, head.length);
+        System.arraycopy(json, 0, batchRequest, head.length, json.length);
+        socket = new Socket("127.0.0.1", port);
+        socket.setTcpNoDelay(true);
+        out = socket.getOutputStream();
+        in = new BufferedInputStream(socket.getInputStream(), 8192);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        socket.close();
+        server.stop();
+        workers.shutdown();
+        servlet.destroy();
+    }
+
+    @Benchmark
+    public int separate() throws IOException {
+        int total = 0;
+        for (byte[] request : requests) {
+            out.write(request);
+            out.flush();
+            total += EmbeddedServerBenchmark.readResponse(in);
+        }
+        return total;
+    }
+
+    @Benchmark
+    public int batch() throws IOException {
+        out.write(batchRequest);
+        out.flush();
+        return EmbeddedServerBenchmark.readResponse(in);
+    }
+}
@@ -0,0 +1,43 @@
+package com.pql.mvcframework.benchmark;
+
+import com.pql.mvcframework.annotation.PQLPathVariable;
+import com.pql.mvcframework.annotation.PQLRequestBody;
+import com.pql.mvcframework.annotation.PQLRequestParam;
+import com.pql.mvcframework.annotation.PQLResponseBody;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.List;
+
+/**
+ * 基准测试用的controller 不在scanPackage内 不会被servlet扫描到
+ * */
+public class BenchController {
+
+    public String bind(HttpServletRequest request, HttpServletResponse response,
+                       @PQLRequestParam("name") String name,
+                       @PQLRequestParam("a") Integer a,
+                       @PQLRequestParam("b") Integer b){
+        return name;
+    }
+
+    public String lines(@PQLPathVariable("order") String order, @PQLPathVariable("line") long line){
+        return order;
+    }
+
+    public int items(@PQLRequestBody List<Item> items){
+        return items.size();
+    }
+
+    @PQLResponseBody
+    public List<Item> listItems(){
+        return null;
+    }
+
+    public static class Item {
+        public long id;
+        public String name;
+        public double price;
+        public List<String> tags;
+    }
+}
@@ -0,0 +1,129 @@
+package com.pql.mvcframework.benchmark;
+
+import com.pql.mvcframework.annotation.PQLRequestParam;
+import com.pql.mvcframework.v3.bind.ArgumentResolver;
+import com.pql.mvcframework.v3.bind.ArgumentResolvers;
+import com.pql.mvcframework.v3.bind.QueryParameters;
+import com.pql.mvcframework.v3.convert.ConversionService;
+import org.openjdk.jmh.annotations.*;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 参数绑定
+ * 原v3逐个遍历parameterMap并用正则拼接 / 现v3启动时生成的解析器数组
+ * 请求参数总数和参数值长度可调 handler只绑定其中3个
+ * */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BindingBenchmark {
+
+    @Param({"4", "16", "64"})
+    public int paramCount;
+
+    @Param({"8", "256"})
+    public int payloadSize;
+
+    private InMemoryHttpServletRequest request;
+    private InMemoryHttpServletResponse response;
+    private Method method;
+    private Class<?>[] parameterTypes;
+    private Map<String, Integer> paramIndexMapping;
+    private ArgumentResolver[] resolvers;
+
+    @Setup
+    public void setup() throws Exception {
+        StringBuilder query = new StringBuilder("name=").append(payload('n')).append("&a=1&b=2");
+        for (int i = 3; i < paramCount; i++) {
+            query.append("&track").append(i).append('=').append(payload('t'));
+        }
+        request = new InMemoryHttpServletRequest("GET", "/bench/bind", query.toString());
+        // 容器已经解析过参数
+        request.getParameterMap();
+        response = new InMemoryHttpServletResponse();
+
+        method = BenchController.class.getMethod("bind", HttpServletRequest.class, HttpServletResponse.class,
+                String.class, Integer.class, Integer.class);
+        parameterTypes = method.getParameterTypes();
+        paramIndexMapping = legacyParamIndexMapping(method);
+        resolvers = ArgumentResolvers.forMethod(method, new ConversionService());
+    }
+
+    private String payload(char c){
+        char[] chars = new char[payloadSize];
+        Arrays.fill(chars, c);
+        return new String(chars);
+    }
+
+    /**
+     * 原v3 doDispatch中的绑定逻辑
+     * */
+    @Benchmark
+    public Object[] legacyBinding(){
+        Object[] parameterValues = new Object[parameterTypes.length];
+        Map<String, String[]> parameterMap = request.getParameterMap();
+        for (Map.Entry<String, String[]> param : parameterMap.entrySet()) {
+            String value = Arrays.toString(param.getValue())
+                    .replaceAll("\\[|\\]", "")
+                    .replaceAll("\\s", ",");
+            if(!paramIndexMapping.containsKey(param.getKey())){
+                continue;
+            }
+            Integer index = paramIndexMapping.get(param.getKey());
+            parameterValues[index] = Integer.class == parameterTypes[index] ? Integer.valueOf(value) : value;
+        }
+        if(paramIndexMapping.containsKey(HttpServletRequest.class.getName())){
+            parameterValues[paramIndexMapping.get(HttpServletRequest.class.getName())] = request;
+        }
+        if(paramIndexMapping.containsKey(HttpServletResponse.class.getName())){
+            parameterValues[paramIndexMapping.get(HttpServletResponse.class.getName())] = response;
+        }
+        return parameterValues;
+    }
+
+    /**
+     * 每次都重新扫描queryString 不复用上一次的结果
+     * */
+    @Benchmark
+    public Object[] resolverBinding() throws Exception {
+        request.removeAttribute(QueryParameters.ATTRIBUTE);
+        Object[] parameterValues = new Object[resolvers.length];
+        for (int i = 0; i < resolvers.length; i++) {
+            parameterValues[i] = resolvers[i].resolve(request, response);
+        }
+        return parameterValues;
+    }
+
+    /**
+     * 原v3 Handler.putParamIndexMapping
+     * */
+    private static Map<String, Integer> legacyParamIndexMapping(Method method){
+        Map<String, Integer> mapping = new HashMap<String, Integer>();
+        Annotation[][] parameterAnnotations = method.getParameterAnnotations();
+        for (int i = 0; i < parameterAnnotations.length; i++) {
+            for (Annotation annotation : parameterAnnotations[i]) {
+                if(annotation instanceof PQLRequestParam){
+                    mapping.put(((PQLRequestParam) annotation).value(), i);
+                }
+            }
+        }
+        Class<?>[] parameterTypes = method.getParameterTypes();
+        for (int i = 0; i < parameterTypes.length; i++) {
+            if(parameterTypes[i] == HttpServletRequest.class || parameterTypes[i] == HttpServletResponse.class){
+                mapping.put(parameterTypes[i].getName(), i);
+            }
+        }
+        return mapping;
+    }
+}
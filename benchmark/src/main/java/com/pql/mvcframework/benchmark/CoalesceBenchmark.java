@@ -0,0 +1,78 @@
+package com.pql.mvcframework.benchmark;
+
+import com.pql.mvcframework.v3.cache.CoalescedResponse;
+import com.pql.mvcframework.v3.cache.RequestCoalescer;
+import com.pql.mvcframework.v3.cache.ResponseCache;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 调用合并的开销和收益
+ * uncontended: 没有并发相同请求时 每次调用多出的加入和完成
+ * direct / coalesced: 4个线程请求同一个等待下游100微秒的调用 每个请求的耗时相同 合并后下游调用次数(downstream)减少
+ * */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CoalesceBenchmark {
+
+    private static final long DOWNSTREAM_NANOS = 100000;
+    private static final int[] KEY_INDEXES = {0};
+    private static final CoalescedResponse OUTPUT = new CoalescedResponse(200, null, new byte[16]);
+
+    private final Object[] parameterValues = {"key"};
+    private RequestCoalescer coalescer;
+
+    @Setup
+    public void setup(){
+        coalescer = new RequestCoalescer(3000);
+    }
+
+    @Benchmark
+    public boolean uncontended(){
+        RequestCoalescer.Flight flight = coalescer.join(ResponseCache.key(parameterValues, KEY_INDEXES));
+        coalescer.complete(flight, OUTPUT);
+        return flight.isLeader();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public CoalescedResponse direct(Downstream downstream){
+        downstream.downstream++;
+        LockSupport.parkNanos(DOWNSTREAM_NANOS);
+        return OUTPUT;
+    }
+
+    @Benchmark
+    @Threads(4)
+    public CoalescedResponse coalesced(Downstream downstream) throws Exception {
+        RequestCoalescer.Flight flight = coalescer.join(ResponseCache.key(parameterValues, KEY_INDEXES));
+        if(!flight.isLeader()){
+            return coalescer.await(flight);
+        }
+        downstream.downstream++;
+        LockSupport.parkNanos(DOWNSTREAM_NANOS);
+        coalescer.complete(flight, OUTPUT);
+        return OUTPUT;
+    }
+
+    /**
+     * 每个线程实际调用下游的次数
+     * */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Downstream {
+
+        public long downstream;
+
+        @Setup(Level.Iteration)
+        public void reset(){
+            downstream = 0;
+        }
+    }
+}
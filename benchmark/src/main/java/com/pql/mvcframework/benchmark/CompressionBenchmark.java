@@ -0,0 +1,118 @@
+package com.pql.mvcframework.benchmark;
+
+import com.pql.mvcframework.v3.compress.CompressingResponseWrapper;
+import com.pql.mvcframework.v3.compress.ResponseCompression;
+import org.openjdk.jmh.annotations.*;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 响应压缩的CPU开销和节省的字节数
+ * identity: 不压缩 只有写入的开销
+ * pooled: 经过压缩包装按4KB分块写出 Deflater从池中复用
+ * unpooled: 每次新建GZIPOutputStream 对比复用Deflater节省的部分 小响应时差别明显
+ * 每个level和payload结束时打印压缩前后的字节数
+ * */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompressionBenchmark {
+
+    private static final int CHUNK = 4096;
+
+    @Param({"1", "6", "9"})
+    public int level;
+
+    /**
+     * json: 约64KB的列表 small: 约2KB
+     * */
+    @Param({"json", "small"})
+    public String payload;
+
+    private byte[] body;
+    private ResponseCompression compression;
+    private InMemoryHttpServletRequest request;
+    private InMemoryHttpServletResponse response;
+    private long bytesOut;
+
+    @Setup
+    public void setup(){
+        int items = "small".equals(payload) ? 20 : 640;
+        StringBuilder sb = new StringBuilder();
+        sb.append('[');
+        for (int i = 0; i < items; i++) {
+            if(i > 0){
+                sb.append(',');
+            }
+            sb.append("{\"id\":").append(i * 7919L).append(",\"name\":\"user-").append(i)
+                    .append("\",\"email\":\"user").append(i).append("@example.com\",\"active\":").append(i % 3 != 0)
+                    .append(",\"score\":").append((i * 31) % 1000).append('.').append(i % 10).append('}');
+        }
+        sb.append(']');
+        body = sb.toString().getBytes(StandardCharsets.UTF_8);
+        compression = new ResponseCompression(level, 1024, Collections.<String>emptyList());
+        request = new InMemoryHttpServletRequest("GET", "/bench", "");
+        request.addHeader("Accept-Encoding", "gzip, deflate");
+        response = new InMemoryHttpServletResponse();
+    }
+
+    @TearDown
+    public void report(){
+        if(bytesOut == 0){
+            compression.close();
+            return;
+        }
+        System.out.println(String.format(Locale.ROOT, "%n%s level %d: %d -> %d bytes (%.1f%%), deflaters created %d",
+                payload, level, body.length, bytesOut, 100.0 * bytesOut / body.length, compression.getDeflaterCount()));
+        compression.close();
+    }
+
+    @Benchmark
+    public int identity() throws IOException {
+        response.reset();
+        response.setContentType("application/json;charset=UTF-8");
+        write(response.getOutputStream());
+        return response.getContentSize();
+    }
+
+    @Benchmark
+    public int pooled() throws IOException {
+        response.reset();
+        HttpServletResponse wrapped = compression.wrap(request, response);
+        wrapped.setContentType("application/json;charset=UTF-8");
+        write(wrapped.getOutputStream());
+        ((CompressingResponseWrapper) wrapped).finish();
+        bytesOut = response.getContentSize();
+        return (int) bytesOut;
+    }
+
+    @Benchmark
+    public int unpooled() throws IOException {
+        response.reset();
+        response.setContentType("application/json;charset=UTF-8");
+        GZIPOutputStream gzip = new GZIPOutputStream(response.getOutputStream(), CHUNK) {
+            {
+                def.setLevel(level);
+            }
+        };
+        write(gzip);
+        gzip.close();
+        return response.getContentSize();
+    }
+
+    private void write(OutputStream os) throws IOException {
+        for (int off = 0; off < body.length; off += CHUNK) {
+            os.write(body, off, Math.min(CHUNK, body.length - off));
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.pql.mvcframework.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+
+import javax.servlet.http.HttpServlet;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 完整的service()调用 对比三个版本的PQLDispatcherServlet
+ * 每次调用新建request 和容器一样每个请求重新解析参数
+ * */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DispatchBenchmark {
+
+    /**
+     * 三个版本共用的/demo/query
+     * */
+    @State(Scope.Thread)
+    public static class ServletState {
+
+        @Param({"v1", "v2", "v3"})
+        public String version;
+
+        @Param({"8", "1024"})
+        public int payloadSize;
+
+        HttpServlet servlet;
+        InMemoryHttpServletResponse response;
+        String queryString;
+
+        @Setup
+        public void setup() throws Exception {
+            servlet = createServlet(version);
+            response = new InMemoryHttpServletResponse();
+            char[] name = new char[payloadSize];
+            Arrays.fill(name, 'x');
+            queryString = "name=" + new String(name);
+        }
+    }
+
+    /**
+     * 初始化servlet 屏蔽启动时的日志输出
+     * */
+    static HttpServlet createServlet(String version) throws Exception {
+        return createServlet(version, new InMemoryServletConfig("application.yml"));
+    }
+
+    static HttpServlet createServlet(String version, InMemoryServletConfig config) throws Exception {
+        String className = "com.pql.mvcframework." + version + ".servlet.PQLDispatcherServlet";
+        HttpServlet servlet = (HttpServlet) Class.forName(className).newInstance();
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(new ByteArrayOutputStream()));
+        try{
+            servlet.init(config);
+        }finally {
+            System.setOut(out);
+        }
+        return servlet;
+    }
+
+    @Benchmark
+    public int query(ServletState state) throws Exception {
+        state.response.reset();
+        state.servlet.service(new InMemoryHttpServletRequest("GET", "/demo/query", state.queryString), state.response);
+        return state.response.getContentSize();
+    }
+
+    /**
+     * v1只支持name参数 v2只支持String参数 add只有v3能正确处理
+     * */
+    @State(Scope.Thread)
+    public static class V3State {
+
+        HttpServlet servlet;
+        InMemoryHttpServletResponse response;
+
+        @Setup
+        public void setup() throws Exception {
+            servlet = createServlet("v3");
+            response = new InMemoryHttpServletResponse();
+        }
+    }
+
+    @Benchmark
+    public int v3Add(V3State state) throws Exception {
+        state.response.reset();
+        state.servlet.service(new InMemoryHttpServletRequest("GET", "/demo/add", "a=1&b=2"), state.response);
+        return state.response.getContentSize();
+    }
+}
@@ -0,0 +1,152 @@
+package com.pql.mvcframework.benchmark;
+
+import com.pql.mvcframework.v3.async.AsyncExecutors;
+import com.pql.mvcframework.v3.server.PQLHttpServer;
+import org.openjdk.jmh.annotations.*;
+
+import javax.servlet.http.HttpServlet;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 内嵌服务器在本机上的完整请求耗时 包括解析 分发和写出 请求的是DemoController的路由
+ * keepAlive: 一个连接上逐个发送 等到响应后再发下一个
+ * pipelined: 一次写出16个请求再依次读响应 每次调用按16个请求计
+ * newConnection: 每个请求新建连接 Connection: close
+ * executor: virtual为虚拟线程 低版本jdk退化为线程池 pool为cpu核数两倍的固定线程池
+ * */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EmbeddedServerBenchmark {
+
+    private static final int PIPELINE = 16;
+
+    @Param({"/demo/query?name=tom", "/demo/add?a=1&b=2"})
+    public String route;
+
+    @Param({"virtual", "pool"})
+    public String executor;
+
+    private HttpServlet servlet;
+    private ExecutorService workers;
+    private PQLHttpServer server;
+    private int port;
+
+    private Socket socket;
+    private OutputStream out;
+    private InputStream in;
+    private byte[] request;
+    private byte[] closeRequest;
+    private byte[] pipeline;
+
+    @Setup
+    public void setup() throws Exception {
+        servlet = DispatchBenchmark.createServlet("v3");
+        workers = AsyncExecutors.create("virtual".equals(executor) ? 0 : Runtime.getRuntime().availableProcessors() * 2);
+        server = new PQLHttpServer(servlet, new InetSocketAddress("127.0.0.1", 0), workers);
+        port = server.start();
+        request = ("GET " + route + " HTTP/1.1\r\nHost: 127.0.0.1\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1);
+        closeRequest = ("GET " + route + " HTTP/1.1\r\nHost: 127.0.0.1\r\nConnection: close\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1);
+        pipeline = new byte[request.length * PIPELINE];
+        for (int i = 0; i < PIPELINE; i++) {
+            System.arraycopy(request, 0, pipeline, i * request.length, request.length);
+        }
+        socket = connect();
+        out = socket.getOutputStream();
+        in = new BufferedInputStream(socket.getInputStream(), 8192);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        socket.close();
+        server.stop();
+        workers.shutdown();
+        servlet.destroy();
+    }
+
+    private Socket connect() throws IOException {
+        Socket s = new Socket("127.0.0.1", port);
+        s.setTcpNoDelay(true);
+        return s;
+    }
+
+    @Benchmark
+    public int keepAlive() throws IOException {
+        out.write(request);
+        out.flush();
+        return readResponse(in);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PIPELINE)
+    public int pipelined() throws IOException {
+        out.write(pipeline);
+        out.flush();
+        int total = 0;
+        for (int i = 0; i < PIPELINE; i++) {
+            total += readResponse(in);
+        }
+        return total;
+    }
+
+    @Benchmark
+    public int newConnection() throws IOException {
+        Socket s = connect();
+        try{
+            s.getOutputStream().write(closeRequest);
+            s.getOutputStream().flush();
+            return readResponse(new BufferedInputStream(s.getInputStream(), 1024));
+        }finally {
+            s.close();
+        }
+    }
+
+    /**
+     * 读完一个响应 按Content-Length跳过响应体 返回响应体长度
+     * */
+    static int readResponse(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder(64);
+        int contentLength = 0;
+        boolean status = true;
+        while (true){
+            line.setLength(0);
+            int b;
+            while ((b = in.read()) != '\n'){
+                if(b < 0){
+                    throw new IOException("the connection is closed");
+                }
+                if(b != '\r'){
+                    line.append((char) b);
+                }
+            }
+            if(line.length() == 0){
+                break;
+            }
+            if(status){
+                if(line.charAt(9) != '2'){
+                    throw new IOException("unexpected response: " + line);
+                }
+                status = false;
+            }else if(line.length() > 15 && line.substring(0, 15).equalsIgnoreCase("Content-Length:")){
+                contentLength = Integer.parseInt(line.substring(15).trim());
+            }
+        }
+        for (int i = 0; i < contentLength; i++) {
+            if(in.read() < 0){
+                throw new IOException("the connection is closed");
+            }
+        }
+        return contentLength;
+    }
+}
@@ -0,0 +1,147 @@
+package com.pql.mvcframework.benchmark;
+
+import com.pql.mvcframework.util.FrozenMap;
+import com.pql.mvcframework.v3.router.RouteTrie;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * init后冻结的只读注册表
+ * hashMap / frozenMap: 按整个key查找 key每次都是新的字符串 与请求中的路径一样没有缓存哈希值
+ * substringHashMap / frozenMapRegion: 按路径中的一段查找 前者先截取
+ * publish / read: 一个线程不断构建新的映射并发布 其余线程读取并逐个校验 看到不完整的内容时抛出异常
+ * FrozenMap通过普通字段发布 只依赖final字段的语义 RouteTrie与servlet一样通过volatile字段发布
+ * */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FrozenRegistryBenchmark {
+
+    private static final int PUBLISHED_KEYS = 64;
+
+    @State(Scope.Thread)
+    public static class LookupState {
+
+        @Param({"100", "10000"})
+        public int size;
+
+        Map<String, Object> hashMap;
+        FrozenMap<Object> frozenMap;
+        char[][] keys;
+        String[] paths;
+        int index;
+
+        @Setup
+        public void setup(){
+            hashMap = new HashMap<String, Object>();
+            for (int i = 0; i < size; i++) {
+                hashMap.put("resource" + i, new Object());
+            }
+            frozenMap = FrozenMap.copyOf(hashMap);
+            Random random = new Random(42);
+            keys = new char[64][];
+            paths = new String[64];
+            for (int i = 0; i < keys.length; i++) {
+                String key = "resource" + random.nextInt(size);
+                keys[i] = key.toCharArray();
+                paths[i] = "/module/" + key + "/detail";
+            }
+        }
+
+        String nextKey(){
+            return new String(keys[(index++) & 63]);
+        }
+
+        String nextPath(){
+            return paths[(index++) & 63];
+        }
+    }
+
+    @Benchmark
+    public Object hashMap(LookupState state){
+        return state.hashMap.get(state.nextKey());
+    }
+
+    @Benchmark
+    public Object frozenMap(LookupState state){
+        return state.frozenMap.get(state.nextKey());
+    }
+
+    @Benchmark
+    public Object substringHashMap(LookupState state){
+        String path = state.nextPath();
+        return state.hashMap.get(path.substring(8, path.length() - 7));
+    }
+
+    @Benchmark
+    public Object frozenMapRegion(LookupState state){
+        String path = state.nextPath();
+        return state.frozenMap.get(path, 8, path.length() - 7);
+    }
+
+    @State(Scope.Group)
+    public static class PublishState {
+
+        Map<String, Object> source;
+        String[] urls;
+
+        /**
+         * 普通字段 不加volatile
+         * */
+        FrozenMap<Object> plainMap;
+
+        volatile RouteTrie<Object> trie;
+
+        @Setup
+        public void setup(){
+            source = new HashMap<String, Object>();
+            urls = new String[PUBLISHED_KEYS];
+            for (int i = 0; i < PUBLISHED_KEYS; i++) {
+                urls[i] = "/module" + (i & 7) + "/resource" + i;
+                source.put(urls[i], urls[i]);
+            }
+            plainMap = FrozenMap.copyOf(source);
+            trie = build(urls);
+        }
+    }
+
+    @Benchmark
+    @Group("publication")
+    @GroupThreads(1)
+    public Object publish(PublishState state){
+        state.plainMap = FrozenMap.copyOf(state.source);
+        state.trie = build(state.urls);
+        return state.trie;
+    }
+
+    @Benchmark
+    @Group("publication")
+    @GroupThreads(3)
+    public int read(PublishState state){
+        FrozenMap<Object> map = state.plainMap;
+        RouteTrie<Object> trie = state.trie;
+        if(map.size() != PUBLISHED_KEYS || trie.size() != PUBLISHED_KEYS){
+            throw new IllegalStateException("incomplete registry published");
+        }
+        for (String url : state.urls) {
+            if(map.get(url) != url || trie.lookup(url) != url){
+                throw new IllegalStateException("incomplete registry published: " + url);
+            }
+        }
+        return PUBLISHED_KEYS;
+    }
+
+    private static RouteTrie<Object> build(String[] urls){
+        RouteTrie<Object> trie = new RouteTrie<Object>();
+        for (String url : urls) {
+            trie.add(url, url);
+        }
+        return trie.freeze();
+    }
+}
@@ -0,0 +1,418 @@
+package com.pql.mvcframework.benchmark;
+
+import javax.servlet.*;
+import javax.servlet.http.*;
+import java.io.*;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.Principal;
+import java.util.*;
+
+/**
+ * 内存中的request 基准测试用 不依赖servlet容器
+ * 和容器一样在第一次取参数时解析queryString并缓存
+ * */
+public class InMemoryHttpServletRequest implements HttpServletRequest {
+
+    private String method = "GET";
+    private String contextPath = "";
+    private String requestURI = "/";
+    private String queryString;
+    private String contentType;
+    private String characterEncoding = "UTF-8";
+    private byte[] body = new byte[0];
+    private Map<String, String[]> parameters;
+    private final Map<String, List<String>> headers = new LinkedHashMap<String, List<String>>();
+    private final Map<String, Object> attributes = new LinkedHashMap<String, Object>();
+
+    public InMemoryHttpServletRequest(){
+    }
+
+    public InMemoryHttpServletRequest(String method, String requestURI, String queryString){
+        this.method = method;
+        this.requestURI = requestURI;
+        this.queryString = queryString;
+    }
+
+    public void setMethod(String method) {
+        this.method = method;
+    }
+
+    public void setContextPath(String contextPath) {
+        this.contextPath = contextPath;
+    }
+
+    public void setRequestURI(String requestURI) {
+        this.requestURI = requestURI;
+    }
+
+    /**
+     * 修改queryString后 下一次取参数时重新解析
+     * */
+    public void setQueryString(String queryString) {
+        this.queryString = queryString;
+        this.parameters = null;
+    }
+
+    public void setContentType(String contentType) {
+        this.contentType = contentType;
+    }
+
+    public void setBody(byte[] body) {
+        this.body = body;
+    }
+
+    public void addHeader(String name, String value){
+        String key = name.toLowerCase(Locale.ENGLISH);
+        List<String> values = headers.get(key);
+        if(values == null){
+            values = new ArrayList<String>();
+            headers.put(key, values);
+        }
+        values.add(value);
+    }
+
+    /**
+     * 模拟容器解析参数 先解析queryString 再解析表单body
+     * */
+    private Map<String, String[]> parameters(){
+        if(parameters != null){
+            return parameters;
+        }
+        Map<String, List<String>> parsed = new LinkedHashMap<String, List<String>>();
+        parse(queryString, parsed);
+        if(contentType != null && contentType.startsWith("application/x-www-form-urlencoded")){
+            parse(new String(body, StandardCharsets.ISO_8859_1), parsed);
+        }
+        Map<String, String[]> result = new LinkedHashMap<String, String[]>();
+        for (Map.Entry<String, List<String>> entry : parsed.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().toArray(new String[0]));
+        }
+        parameters = Collections.unmodifiableMap(result);
+        return parameters;
+    }
+
+    private void parse(String text, Map<String, List<String>> parsed){
+        if(text == null || text.isEmpty()){
+            return;
+        }
+        try{
+            for (String pair : text.split("&")) {
+                if(pair.isEmpty()){
+                    continue;
+                }
+                int eq = pair.indexOf('=');
+                String name = URLDecoder.decode(eq < 0 ? pair : pair.substring(0, eq), characterEncoding);
+                String value = eq < 0 ? "" : URLDecoder.decode(pair.substring(eq + 1), characterEncoding);
+                List<String> values = parsed.get(name);
+                if(values == null){
+                    values = new ArrayList<String>(1);
+                    parsed.put(name, values);
+                }
+                values.add(value);
+            }
+        }catch (UnsupportedEncodingException e){
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public boolean authenticate(HttpServletResponse response) {
+        return false;
+    }
+
+    public String changeSessionId() {
+        throw new UnsupportedOperationException();
+    }
+
+    public AsyncContext getAsyncContext() {
+        throw new IllegalStateException("async not started");
+    }
+
+    public Enumeration<String> getAttributeNames() {
+        return Collections.enumeration(attributes.keySet());
+    }
+
+    public Object getAttribute(String name) {
+        return attributes.get(name);
+    }
+
+    public String getAuthType() {
+        return null;
+    }
+
+    public String getCharacterEncoding() {
+        return characterEncoding;
+    }
+
+    public long getContentLengthLong() {
+        return body.length;
+    }
+
+    public int getContentLength() {
+        return body.length;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public String getContextPath() {
+        return contextPath;
+    }
+
+    public Cookie[] getCookies() {
+        return null;
+    }
+
+    public long getDateHeader(String name) {
+        return -1;
+    }
+
+    public DispatcherType getDispatcherType() {
+        return DispatcherType.REQUEST;
+    }
+
+    public Enumeration<String> getHeaderNames() {
+        return Collections.enumeration(headers.keySet());
+    }
+
+    public String getHeader(String name) {
+        List<String> values = headers.get(name.toLowerCase(Locale.ENGLISH));
+        return values == null ? null : values.get(0);
+    }
+
+    public Enumeration<String> getHeaders(String name) {
+        List<String> values = headers.get(name.toLowerCase(Locale.ENGLISH));
+        return Collections.enumeration(values == null ? Collections.<String>emptyList() : values);
+    }
+
+    public ServletInputStream getInputStream() {
+        final ByteArrayInputStream in = new ByteArrayInputStream(body);
+        return new ServletInputStream() {
+            public boolean isFinished() {
+                return in.available() == 0;
+            }
+
+            public boolean isReady() {
+                return true;
+            }
+
+            public void setReadListener(ReadListener readListener) {
+                throw new UnsupportedOperationException();
+            }
+
+            public int read() {
+                return in.read();
+            }
+
+            public int read(byte[] b, int off, int len) {
+                return in.read(b, off, len);
+            }
+        };
+    }
+
+    public int getIntHeader(String name) {
+        String value = getHeader(name);
+        return value == null ? -1 : Integer.parseInt(value);
+    }
+
+    public String getLocalAddr() {
+        return "127.0.0.1";
+    }
+
+    public String getLocalName() {
+        return "localhost";
+    }
+
+    public int getLocalPort() {
+        return 8080;
+    }
+
+    public Locale getLocale() {
+        return Locale.getDefault();
+    }
+
+    public Enumeration<Locale> getLocales() {
+        return Collections.enumeration(Collections.singletonList(Locale.getDefault()));
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public Map<String, String[]> getParameterMap() {
+        return parameters();
+    }
+
+    public Enumeration<String> getParameterNames() {
+        return Collections.enumeration(parameters().keySet());
+    }
+
+    public String[] getParameterValues(String name) {
+        return parameters().get(name);
+    }
+
+    public String getParameter(String name) {
+        String[] values = parameters().get(name);
+        return values == null ? null : values[0];
+    }
+
+    public Part getPart(String name) {
+        return null;
+    }
+
+    public Collection<Part> getParts() {
+        return Collections.emptyList();
+    }
+
+    public String getPathInfo() {
+        return null;
+    }
+
+    public String getPathTranslated() {
+        return null;
+    }
+
+    public String getProtocol() {
+        return "HTTP/1.1";
+    }
+
+    public String getQueryString() {
+        return queryString;
+    }
+
+    public BufferedReader getReader() throws IOException {
+        return new BufferedReader(new InputStreamReader(getInputStream(), characterEncoding));
+    }
+
+    public String getRealPath(String path) {
+        return null;
+    }
+
+    public String getRemoteAddr() {
+        return "127.0.0.1";
+    }
+
+    public String getRemoteHost() {
+        return "localhost";
+    }
+
+    public int getRemotePort() {
+        return 0;
+    }
+
+    public String getRemoteUser() {
+        return null;
+    }
+
+    public RequestDispatcher getRequestDispatcher(String path) {
+        return null;
+    }
+
+    public String getRequestURI() {
+        return requestURI;
+    }
+
+    public StringBuffer getRequestURL() {
+        return new StringBuffer("http://localhost:8080").append(requestURI);
+    }
+
+    public String getRequestedSessionId() {
+        return null;
+    }
+
+    public String getScheme() {
+        return "http";
+    }
+
+    public String getServerName() {
+        return "localhost";
+    }
+
+    public int getServerPort() {
+        return 8080;
+    }
+
+    public ServletContext getServletContext() {
+        return null;
+    }
+
+    public String getServletPath() {
+        return "";
+    }
+
+    public HttpSession getSession() {
+        return null;
+    }
+
+    public HttpSession getSession(boolean create) {
+        return null;
+    }
+
+    public Principal getUserPrincipal() {
+        return null;
+    }
+
+    public boolean isAsyncStarted() {
+        return false;
+    }
+
+    public boolean isAsyncSupported() {
+        return false;
+    }
+
+    public boolean isRequestedSessionIdFromCookie() {
+        return false;
+    }
+
+    public boolean isRequestedSessionIdFromURL() {
+        return false;
+    }
+
+    public boolean isRequestedSessionIdFromUrl() {
+        return false;
+    }
+
+    public boolean isRequestedSessionIdValid() {
+        return false;
+    }
+
+    public boolean isSecure() {
+        return false;
+    }
+
+    public boolean isUserInRole(String role) {
+        return false;
+    }
+
+    public void login(String username, String password) {
+        throw new UnsupportedOperationException();
+    }
+
+    public void logout() {
+    }
+
+    public void removeAttribute(String name) {
+        attributes.remove(name);
+    }
+
+    public void setAttribute(String name, Object value) {
+        attributes.put(name, value);
+    }
+
+    public void setCharacterEncoding(String env) {
+        this.characterEncoding = env;
+    }
+
+    public AsyncContext startAsync() {
+        throw new IllegalStateException("async not supported");
+    }
+
+    public AsyncContext startAsync(ServletRequest servletRequest, ServletResponse servletResponse) {
+        throw new IllegalStateException("async not supported");
+    }
+
+    public <T extends HttpUpgradeHandler> T upgrade(Class<T> handlerClass) {
+        throw new UnsupportedOperationException();
+    }
+}
@@ -0,0 +1,242 @@
+package com.pql.mvcframework.benchmark;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletResponse;
+import java.io.*;
+import java.nio.charset.Charset;
+import java.util.*;
+
+/**
+ * 内存中的response 基准测试用 输出写入可复用的字节缓冲
+ * */
+public class InMemoryHttpServletResponse implements HttpServletResponse {
+
+    private final ByteArrayOutputStream content = new ByteArrayOutputStream(1024);
+    private final Map<String, List<String>> headers = new LinkedHashMap<String, List<String>>();
+    private final ServletOutputStream outputStream = new ServletOutputStream() {
+        public boolean isReady() {
+            return true;
+        }
+
+        public void setWriteListener(WriteListener writeListener) {
+            throw new UnsupportedOperationException();
+        }
+
+        public void write(int b) {
+            content.write(b);
+        }
+
+        public void write(byte[] b, int off, int len) {
+            content.write(b, off, len);
+        }
+    };
+    private PrintWriter writer;
+    private int status = SC_OK;
+    private String contentType;
+    private String characterEncoding = "ISO-8859-1";
+    private long contentLength = -1;
+    private boolean committed;
+
+    /**
+     * 复用同一个response时 每次调用前清空 writer保留复用
+     * */
+    public void reset() {
+        flush();
+        content.reset();
+        headers.clear();
+        status = SC_OK;
+        contentType = null;
+        contentLength = -1;
+        committed = false;
+    }
+
+    public byte[] getContentAsByteArray(){
+        flush();
+        return content.toByteArray();
+    }
+
+    public String getContentAsString() throws UnsupportedEncodingException {
+        flush();
+        return content.toString(characterEncoding);
+    }
+
+    public int getContentSize(){
+        flush();
+        return content.size();
+    }
+
+    public long getContentLength(){
+        return contentLength;
+    }
+
+    private void flush(){
+        if(writer != null){
+            writer.flush();
+        }
+    }
+
+    public void addCookie(Cookie cookie) {
+    }
+
+    public void addDateHeader(String name, long date) {
+        addHeader(name, String.valueOf(date));
+    }
+
+    public void addHeader(String name, String value) {
+        String key = name.toLowerCase(Locale.ENGLISH);
+        List<String> values = headers.get(key);
+        if(values == null){
+            values = new ArrayList<String>(1);
+            headers.put(key, values);
+        }
+        values.add(value);
+    }
+
+    public void addIntHeader(String name, int value) {
+        addHeader(name, String.valueOf(value));
+    }
+
+    public boolean containsHeader(String name) {
+        return headers.containsKey(name.toLowerCase(Locale.ENGLISH));
+    }
+
+    public String encodeRedirectURL(String url) {
+        return url;
+    }
+
+    public String encodeRedirectUrl(String url) {
+        return url;
+    }
+
+    public String encodeURL(String url) {
+        return url;
+    }
+
+    public String encodeUrl(String url) {
+        return url;
+    }
+
+    public void flushBuffer() {
+        flush();
+        committed = true;
+    }
+
+    public int getBufferSize() {
+        return 8192;
+    }
+
+    public String getCharacterEncoding() {
+        return characterEncoding;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public Collection<String> getHeaderNames() {
+        return headers.keySet();
+    }
+
+    public String getHeader(String name) {
+        List<String> values = headers.get(name.toLowerCase(Locale.ENGLISH));
+        return values == null ? null : values.get(0);
+    }
+
+    public Collection<String> getHeaders(String name) {
+        List<String> values = headers.get(name.toLowerCase(Locale.ENGLISH));
+        return values == null ? Collections.<String>emptyList() : values;
+    }
+
+    public Locale getLocale() {
+        return Locale.getDefault();
+    }
+
+    public ServletOutputStream getOutputStream() {
+        return outputStream;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public PrintWriter getWriter() {
+        if(writer == null){
+            writer = new PrintWriter(new OutputStreamWriter(outputStream, Charset.forName(characterEncoding)));
+        }
+        return writer;
+    }
+
+    public boolean isCommitted() {
+        return committed;
+    }
+
+    public void resetBuffer() {
+        content.reset();
+    }
+
+    public void sendError(int sc, String msg) {
+        this.status = sc;
+        this.committed = true;
+    }
+
+    public void sendError(int sc) {
+        sendError(sc, null);
+    }
+
+    public void sendRedirect(String location) {
+        this.status = SC_FOUND;
+        setHeader("Location", location);
+        this.committed = true;
+    }
+
+    public void setBufferSize(int size) {
+    }
+
+    public void setCharacterEncoding(String charset) {
+        this.characterEncoding = charset;
+    }
+
+    public void setContentLengthLong(long len) {
+        this.contentLength = len;
+    }
+
+    public void setContentLength(int len) {
+        this.contentLength = len;
+    }
+
+    public void setContentType(String type) {
+        this.contentType = type;
+        if(type != null){
+            int index = type.toLowerCase(Locale.ENGLISH).indexOf("charset=");
+            if(index >= 0){
+                this.characterEncoding = type.substring(index + 8).trim();
+            }
+        }
+    }
+
+    public void setDateHeader(String name, long date) {
+        setHeader(name, String.valueOf(date));
+    }
+
+    public void setHeader(String name, String value) {
+        headers.remove(name.toLowerCase(Locale.ENGLISH));
+        addHeader(name, value);
+    }
+
+    public void setIntHeader(String name, int value) {
+        setHeader(name, String.valueOf(value));
+    }
+
+    public void setLocale(Locale loc) {
+    }
+
+    public void setStatus(int sc, String sm) {
+        this.status = sc;
+    }
+
+    public void setStatus(int sc) {
+        this.status = sc;
+    }
+}
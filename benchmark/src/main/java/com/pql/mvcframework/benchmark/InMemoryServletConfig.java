@@ -0,0 +1,71 @@
+package com.pql.mvcframework.benchmark;
+
+import javax.servlet.ServletConfig;
+import javax.servlet.ServletContext;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 内存中的servlet配置 对应web.xml中的init-param
+ * */
+public class InMemoryServletConfig implements ServletConfig {
+
+    private final Map<String, String> initParameters = new HashMap<String, String>();
+
+    public InMemoryServletConfig(String contextConfigLocation){
+        initParameters.put("contextConfigLocation", contextConfigLocation);
+    }
+
+    /**
+     * 在classpath上的配置文件旁生成一份副本 末尾追加extra中的配置 返回可以直接使用的配置
+     * 框架只从配置文件读取 基准测试需要不同配置时用它生成
+     * */
+    public static InMemoryServletConfig derive(String source, String target, String extra) throws IOException, URISyntaxException {
+        URL location = InMemoryServletConfig.class.getClassLoader().getResource(source);
+        File file = new File(new File(location.toURI()).getParentFile(), target);
+        InputStream is = location.openStream();
+        OutputStream os = new FileOutputStream(file);
+        try{
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = is.read(buffer)) > 0){
+                os.write(buffer, 0, read);
+            }
+            os.write(("\n" + extra + "\n").getBytes("UTF-8"));
+        }finally {
+            is.close();
+            os.close();
+        }
+        return new InMemoryServletConfig(target);
+    }
+
+    public InMemoryServletConfig addInitParameter(String name, String value){
+        initParameters.put(name, value);
+        return this;
+    }
+
+    public String getServletName() {
+        return "pqlmvc";
+    }
+
+    public ServletContext getServletContext() {
+        return null;
+    }
+
+    public String getInitParameter(String name) {
+        return initParameters.get(name);
+    }
+
+    public Enumeration<String> getInitParameterNames() {
+        return Collections.enumeration(initParameters.keySet());
+    }
+}
@@ -0,0 +1,140 @@
+package com.pql.mvcframework.benchmark;
+
+import com.pql.mvcframework.annotation.PQLAutowired;
+import com.pql.mvcframework.annotation.PQLScope;
+import com.pql.mvcframework.v3.context.BeanContainer;
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 每次创建一个带三个注入字段(其中一个在父类)的bean
+ * 直接new / 原doAutoWired的反射方式 / 容器的prototype和request作用域
+ * */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class InjectionBenchmark {
+
+    public static class Repository {
+    }
+
+    public static class Clock {
+    }
+
+    public static class AuditLog {
+    }
+
+    public static class BaseBean {
+
+        @PQLAutowired
+        AuditLog auditLog;
+    }
+
+    @PQLScope(PQLScope.PROTOTYPE)
+    public static class PrototypeBean extends BaseBean {
+
+        @PQLAutowired
+        Repository repository;
+
+        @PQLAutowired
+        Clock clock;
+    }
+
+    @PQLScope(PQLScope.REQUEST)
+    public static class RequestBean extends BaseBean {
+
+        @PQLAutowired
+        Repository repository;
+
+        @PQLAutowired
+        Clock clock;
+    }
+
+    BeanContainer container;
+    Map<String, Object> ioc;
+    Repository repository;
+    Clock clock;
+    AuditLog auditLog;
+
+    @Setup
+    public void setup(){
+        container = new BeanContainer();
+        container.register("repository", Repository.class);
+        container.register("clock", Clock.class);
+        container.register("auditLog", AuditLog.class);
+        container.register("prototypeBean", PrototypeBean.class);
+        container.register("requestBean", RequestBean.class);
+        container.refresh();
+
+        repository = container.getBean(Repository.class);
+        clock = container.getBean(Clock.class);
+        auditLog = container.getBean(AuditLog.class);
+        ioc = new HashMap<String, Object>();
+        ioc.put(Repository.class.getName(), repository);
+        ioc.put(Clock.class.getName(), clock);
+        ioc.put(AuditLog.class.getName(), auditLog);
+    }
+
+    @Benchmark
+    public Object plainNew(){
+        PrototypeBean bean = new PrototypeBean();
+        bean.auditLog = auditLog;
+        bean.repository = repository;
+        bean.clock = clock;
+        return bean;
+    }
+
+    /**
+     * 原doAutoWired的方式 每次都查找字段和注解 这里同样处理父类字段
+     * */
+    @Benchmark
+    public Object reflective() throws Exception {
+        Object bean = PrototypeBean.class.newInstance();
+        List<Class<?>> hierarchy = new ArrayList<Class<?>>();
+        for (Class<?> clazz = bean.getClass(); clazz != Object.class; clazz = clazz.getSuperclass()) {
+            hierarchy.add(clazz);
+        }
+        for (Class<?> clazz : hierarchy) {
+            for (Field field : clazz.getDeclaredFields()) {
+                if(!field.isAnnotationPresent(PQLAutowired.class)){
+                    continue;
+                }
+                PQLAutowired autowired = field.getAnnotation(PQLAutowired.class);
+                String beanName = autowired.value().trim();
+                if("".equals(beanName)){
+                    beanName = field.getType().getName();
+                }
+                field.setAccessible(true);
+                field.set(bean, ioc.get(beanName));
+            }
+        }
+        return bean;
+    }
+
+    @Benchmark
+    public Object prototype(){
+        return container.getBean("prototypeBean");
+    }
+
+    /**
+     * 开启作用域 创建 结束作用域 对应一次请求
+     * */
+    @Benchmark
+    public Object request(){
+        container.beginRequest();
+        try{
+            return container.getBean("requestBean");
+        }finally {
+            container.endRequest();
+        }
+    }
+}
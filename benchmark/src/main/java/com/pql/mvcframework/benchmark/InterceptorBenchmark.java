@@ -0,0 +1,101 @@
+package com.pql.mvcframework.benchmark;
+
+import com.pql.mvcframework.v3.interceptor.InterceptorRegistration;
+import com.pql.mvcframework.v3.interceptor.InterceptorRegistry;
+import com.pql.mvcframework.v3.interceptor.PQLHandlerInterceptor;
+import org.openjdk.jmh.annotations.*;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 拦截器链 registrations个拦截器 每4个中有1个匹配/orders/{order}
+ * 每次请求按路径匹配全部拦截器 / 启动时为handler生成数组 请求时直接遍历
+ * */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InterceptorBenchmark {
+
+    private static final String URL = "/orders/{order}";
+
+    @Param({"4", "16"})
+    public int registrations;
+
+    private List<InterceptorRegistration> registered;
+    private PQLHandlerInterceptor[] chain;
+    private Method method;
+    private InMemoryHttpServletRequest request;
+    private InMemoryHttpServletResponse response;
+
+    @Setup
+    public void setup() throws Exception {
+        InterceptorRegistry registry = new InterceptorRegistry();
+        registered = new ArrayList<InterceptorRegistration>();
+        for (int i = 0; i < registrations; i++) {
+            InterceptorRegistration registration = registry.addInterceptor(new CountingInterceptor());
+            if(i % 4 == 0){
+                registration.addPathPatterns("/orders/**").excludePathPatterns("/orders/" + i + "/*");
+            }else{
+                registration.addPathPatterns("/admin" + i + "/**", "/users/*/profile" + i);
+            }
+            registered.add(registration);
+        }
+        chain = registry.forUrl(URL);
+        method = BenchController.class.getMethod("lines", String.class, long.class);
+        request = new InMemoryHttpServletRequest("GET", "/orders/SO1", "");
+        response = new InMemoryHttpServletResponse();
+    }
+
+    /**
+     * 每次请求都按路径模式筛选拦截器
+     * */
+    @Benchmark
+    public int matchPerRequest() throws Exception {
+        int passed = 0;
+        for (InterceptorRegistration registration : registered) {
+            if(registration.matches(URL) && registration.getInterceptor().preHandle(request, response, method)){
+                passed++;
+            }
+        }
+        return passed;
+    }
+
+    /**
+     * 与servlet中一致 只遍历handler上的数组
+     * */
+    @Benchmark
+    public int precompiled() throws Exception {
+        PQLHandlerInterceptor[] interceptors = chain;
+        int passed = 0;
+        for (; passed < interceptors.length; passed++) {
+            if(!interceptors[passed].preHandle(request, response, method)){
+                break;
+            }
+        }
+        return passed;
+    }
+
+    static class CountingInterceptor implements PQLHandlerInterceptor {
+
+        private long count;
+
+        public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Method handler) {
+            count++;
+            return true;
+        }
+
+        public void postHandle(HttpServletRequest request, HttpServletResponse response, Method handler, Object result) {
+        }
+
+        public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Method handler, Exception ex) {
+        }
+    }
+}
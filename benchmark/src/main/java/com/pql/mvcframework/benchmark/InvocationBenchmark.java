@@ -0,0 +1,132 @@
+package com.pql.mvcframework.benchmark;
+
+import com.pql.demo.controller.DemoController;
+import com.pql.demo.service.IDemoService;
+import com.pql.demo.service.impl.DemoService;
+import com.pql.mvcframework.v3.invoke.HandlerInvoker;
+import com.pql.mvcframework.v3.invoke.HandlerInvokers;
+import org.openjdk.jmh.annotations.*;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * controller方法调用
+ * Method.invoke / MethodHandle调用器 / 直接调用 覆盖DemoController的几种方法签名
+ * */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InvocationBenchmark {
+
+    /**
+     * DemoController的方法签名
+     * */
+    @State(Scope.Thread)
+    public static class ControllerState {
+
+        @Param({"query", "add", "remove"})
+        public String signature;
+
+        DemoController controller;
+        InMemoryHttpServletRequest request;
+        InMemoryHttpServletResponse response;
+        Method method;
+        Object[] args;
+        HandlerInvoker methodHandleInvoker;
+        HandlerInvoker reflectiveInvoker;
+
+        @Setup
+        public void setup() throws Exception {
+            controller = new DemoController();
+            Field field = DemoController.class.getDeclaredField("demoService");
+            field.setAccessible(true);
+            field.set(controller, new DemoService());
+
+            request = new InMemoryHttpServletRequest();
+            response = new InMemoryHttpServletResponse();
+            if("query".equals(signature)){
+                method = DemoController.class.getMethod("query",
+                        HttpServletRequest.class, HttpServletResponse.class, String.class);
+                args = new Object[]{request, response, "pql"};
+            }else if("add".equals(signature)){
+                method = DemoController.class.getMethod("add",
+                        HttpServletRequest.class, HttpServletResponse.class, Integer.class, Integer.class);
+                args = new Object[]{request, response, 1, 2};
+            }else{
+                method = DemoController.class.getMethod("add",
+                        HttpServletRequest.class, HttpServletResponse.class, Integer.class);
+                args = new Object[]{request, response, 1};
+            }
+            methodHandleInvoker = HandlerInvokers.create(controller, method);
+            reflectiveInvoker = HandlerInvokers.reflective(controller, method);
+        }
+    }
+
+    @Benchmark
+    public Object methodInvoke(ControllerState state) throws Exception {
+        state.response.reset();
+        return state.method.invoke(state.controller, state.args);
+    }
+
+    @Benchmark
+    public Object reflectiveInvoker(ControllerState state) throws Exception {
+        state.response.reset();
+        return state.reflectiveInvoker.invoke(state.args);
+    }
+
+    @Benchmark
+    public Object methodHandleInvoker(ControllerState state) throws Exception {
+        state.response.reset();
+        return state.methodHandleInvoker.invoke(state.args);
+    }
+
+    /**
+     * 直接调用 作为上限参考
+     * */
+    @Benchmark
+    public void directCall(ControllerState state){
+        state.response.reset();
+        if("query".equals(state.signature)){
+            state.controller.query(state.request, state.response, "pql");
+        }else if("add".equals(state.signature)){
+            state.controller.add(state.request, state.response, 1, 2);
+        }else{
+            state.controller.add(state.request, state.response, 1);
+        }
+    }
+
+    /**
+     * service层的单参数方法 不涉及response输出
+     * */
+    @State(Scope.Thread)
+    public static class ServiceState {
+
+        IDemoService service;
+        Method method;
+        HandlerInvoker invoker;
+        Object[] args = {"pql"};
+
+        @Setup
+        public void setup() throws Exception {
+            service = new DemoService();
+            method = DemoService.class.getMethod("get", String.class);
+            invoker = HandlerInvokers.create(service, method);
+        }
+    }
+
+    @Benchmark
+    public Object serviceMethodInvoke(ServiceState state) throws Exception {
+        return state.method.invoke(state.service, state.args);
+    }
+
+    @Benchmark
+    public Object serviceMethodHandleInvoker(ServiceState state) throws Exception {
+        return state.invoker.invoke(state.args);
+    }
+}
@@ -0,0 +1,123 @@
+package com.pql.mvcframework.benchmark;
+
+import com.pql.mvcframework.v3.bind.ArgumentResolver;
+import com.pql.mvcframework.v3.bind.ArgumentResolvers;
+import com.pql.mvcframework.v3.convert.ConversionService;
+import com.pql.mvcframework.v3.json.JsonCodec;
+import com.pql.mvcframework.v3.json.JsonCodecs;
+import com.pql.mvcframework.v3.json.JsonReader;
+import com.pql.mvcframework.v3.json.JsonWriter;
+import com.pql.mvcframework.v3.result.ReturnValueHandler;
+import com.pql.mvcframework.v3.result.ReturnValueHandlers;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * json请求体和返回值 itemCount个对象的数组
+ * 原先controller中先把请求体读成字符串再解析 / @PQLRequestBody直接从输入流解析
+ * 先序列化成字符串再输出 / @PQLResponseBody直接写入输出流
+ * */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonBodyBenchmark {
+
+    @Param({"10", "1000"})
+    public int itemCount;
+
+    private InMemoryHttpServletRequest request;
+    private InMemoryHttpServletResponse response;
+    private ArgumentResolver bodyResolver;
+    private JsonCodec<Object> listCodec;
+    private ReturnValueHandler jsonHandler;
+    private ReturnValueHandler stringHandler;
+    private List<BenchController.Item> items;
+
+    @Setup
+    public void setup() throws Exception {
+        items = new ArrayList<BenchController.Item>();
+        for (int i = 0; i < itemCount; i++) {
+            BenchController.Item item = new BenchController.Item();
+            item.id = i;
+            item.name = "item " + i;
+            item.price = i * 1.25;
+            item.tags = Arrays.asList("red", "large");
+            items.add(item);
+        }
+
+        ConversionService conversionService = new ConversionService();
+        JsonCodecs jsonCodecs = new JsonCodecs(conversionService);
+        Method itemsMethod = BenchController.class.getMethod("items", List.class);
+        bodyResolver = ArgumentResolvers.forMethod(itemsMethod, conversionService,
+                Collections.<String>emptyList(), jsonCodecs)[0];
+        listCodec = jsonCodecs.forType(itemsMethod.getGenericParameterTypes()[0]);
+        jsonHandler = ReturnValueHandlers.forMethod(BenchController.class.getMethod("listItems"), jsonCodecs);
+        stringHandler = ReturnValueHandlers.forType(String.class);
+
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        JsonWriter writer = new JsonWriter(body, new byte[8192]);
+        JsonCodecs.write(listCodec, writer, items);
+        writer.flush();
+        request = new InMemoryHttpServletRequest("POST", "/bench/items", "");
+        request.setBody(body.toByteArray());
+        request.setCharacterEncoding("UTF-8");
+        response = new InMemoryHttpServletResponse();
+        response.setCharacterEncoding("UTF-8");
+    }
+
+    /**
+     * 先读成完整的字符串 再解析
+     * */
+    @Benchmark
+    public Object bufferedBind() throws Exception {
+        BufferedReader reader = request.getReader();
+        StringBuilder sb = new StringBuilder();
+        char[] chars = new char[4096];
+        int n;
+        while ((n = reader.read(chars)) > 0){
+            sb.append(chars, 0, n);
+        }
+        byte[] bytes = sb.toString().getBytes(StandardCharsets.UTF_8);
+        JsonReader jsonReader = new JsonReader(new ByteArrayInputStream(bytes), new byte[8192]);
+        return JsonCodecs.read(listCodec, jsonReader);
+    }
+
+    @Benchmark
+    public Object streamingBind() throws Exception {
+        return bodyResolver.resolve(request, response);
+    }
+
+    /**
+     * 先序列化成字符串 再按字符串输出
+     * */
+    @Benchmark
+    public Object bufferedWrite() throws Exception {
+        response.reset();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        JsonWriter writer = new JsonWriter(out, new byte[8192]);
+        JsonCodecs.write(listCodec, writer, items);
+        writer.flush();
+        stringHandler.handle(new String(out.toByteArray(), StandardCharsets.UTF_8), request, response);
+        return response;
+    }
+
+    @Benchmark
+    public Object streamingWrite() throws Exception {
+        response.reset();
+        jsonHandler.handle(items, request, response);
+        return response;
+    }
+}
@@ -0,0 +1,51 @@
+package com.pql.mvcframework.benchmark;
+
+import com.pql.mvcframework.v3.limit.ConcurrencyLimiter;
+import com.pql.mvcframework.v3.limit.RateLimiter;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 每个请求在限流上的开销 令牌桶取令牌 / 并发计数占用和释放 / 自适应时额外读取时钟和调整上限
+ * 令牌足够多 不会拒绝
+ * */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LimiterBenchmark {
+
+    private RateLimiter rateLimiter;
+    private ConcurrencyLimiter fixed;
+    private ConcurrencyLimiter adaptive;
+
+    @Setup
+    public void setup(){
+        rateLimiter = new RateLimiter(1e9, 1000000);
+        fixed = new ConcurrencyLimiter(64, false, 1, 1000, 2.0);
+        adaptive = new ConcurrencyLimiter(64, true, 1, 1000, 2.0);
+    }
+
+    @Benchmark
+    public long rateLimit(){
+        return rateLimiter.tryAcquire();
+    }
+
+    @Benchmark
+    public boolean concurrencyLimit(){
+        boolean acquired = fixed.tryAcquire();
+        fixed.release(0);
+        return acquired;
+    }
+
+    @Benchmark
+    public boolean adaptiveConcurrencyLimit(){
+        boolean acquired = adaptive.tryAcquire();
+        long start = System.nanoTime();
+        adaptive.release(System.nanoTime() - start);
+        return acquired;
+    }
+}
@@ -0,0 +1,53 @@
+package com.pql.mvcframework.benchmark;
+
+import com.pql.mvcframework.v3.metrics.HandlerMetrics;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 每次请求的统计开销
+ * 与DispatchBenchmark.v3Add的耗时对比 得到统计占整个分发的比例
+ * */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MetricsBenchmark {
+
+    /**
+     * 平均每多少个请求记录一次耗时 对应metricsSampleRate
+     * */
+    @Param({"1", "16"})
+    public int sampleRate;
+
+    HandlerMetrics metrics;
+
+    @Setup
+    public void setup(){
+        metrics = new HandlerMetrics();
+    }
+
+    /**
+     * 与doDispatch相同的记录方式 抽样的请求读取五次时钟
+     * */
+    @Benchmark
+    public long record(){
+        boolean sampled = sampleRate <= 1 || ThreadLocalRandom.current().nextInt(sampleRate) == 0;
+        long start = sampled ? System.nanoTime() : 0;
+        metrics.begin();
+        if(sampled){
+            long routed = System.nanoTime();
+            long bound = System.nanoTime();
+            long invoked = System.nanoTime();
+            long end = System.nanoTime();
+            metrics.recordPhases(routed - start, bound - routed, invoked - bound, end - invoked);
+            metrics.recordLatency(end - start);
+        }
+        metrics.end(false);
+        return start;
+    }
+}
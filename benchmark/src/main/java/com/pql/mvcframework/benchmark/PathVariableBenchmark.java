@@ -0,0 +1,109 @@
+package com.pql.mvcframework.benchmark;
+
+import com.pql.mvcframework.v3.bind.ArgumentResolver;
+import com.pql.mvcframework.v3.bind.ArgumentResolvers;
+import com.pql.mvcframework.v3.convert.ConversionService;
+import com.pql.mvcframework.v3.json.JsonCodecs;
+import com.pql.mvcframework.v3.router.PathVariables;
+import com.pql.mvcframework.v3.router.RouteTrie;
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.reflect.Method;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 路径变量的路由和提取 /orders/{order}/lines/{line}
+ * 正则分组捕获再转换 / 路由树记录位置后由解析器截取转换
+ * */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PathVariableBenchmark {
+
+    private static final String URL = "/orders/{order}/lines/{line}";
+
+    private Pattern pattern;
+    private RouteTrie<Object> trieRoutes;
+    private ArgumentResolver[] resolvers;
+    private InMemoryHttpServletRequest request;
+    private InMemoryHttpServletResponse response;
+    private String[] paths;
+    private int index;
+
+    @Setup
+    public void setup() throws Exception {
+        pattern = Pattern.compile("/orders/([^/]+)/lines/([^/]+)");
+        trieRoutes = new RouteTrie<Object>();
+        trieRoutes.add(URL, new Object());
+        trieRoutes.freeze();
+
+        Method method = BenchController.class.getMethod("lines", String.class, long.class);
+        ConversionService conversionService = new ConversionService();
+        resolvers = ArgumentResolvers.forMethod(method, conversionService, RouteTrie.variableNames(URL),
+                new JsonCodecs(conversionService));
+        request = new InMemoryHttpServletRequest("GET", URL, "");
+        response = new InMemoryHttpServletResponse();
+
+        checkVariableBeforeRegex();
+
+        Random random = new Random(42);
+        paths = new String[64];
+        for (int i = 0; i < paths.length; i++) {
+            paths[i] = "/orders/SO" + random.nextInt(1000000) + "/lines/" + random.nextInt(100);
+        }
+    }
+
+    /**
+     * 模板变量之后是正则的路由 变量个数同样要计入 否则查找时没有位置数组
+     * */
+    private static void checkVariableBeforeRegex(){
+        RouteTrie<Object> routes = new RouteTrie<Object>();
+        Object handler = new Object();
+        routes.add("/mix/{id}/x.*", handler);
+        routes.freeze();
+        if(routes.getMaxVariables() != 1){
+            throw new IllegalStateException("variables before a regex are not counted: " + routes.getMaxVariables());
+        }
+        int[] offsets = new int[routes.getMaxVariables() * 2];
+        if(routes.lookup("/mix/42/xyz", offsets) != handler
+                || !"42".equals(new PathVariables("/mix/42/xyz", offsets).get(0))){
+            throw new IllegalStateException("the path variable before a regex is not extracted");
+        }
+    }
+
+    /**
+     * 正则匹配后按分组取值
+     * */
+    @Benchmark
+    public Object[] regexCapture(){
+        Matcher matcher = pattern.matcher(paths[(index++) & 63]);
+        if(!matcher.matches()){
+            return null;
+        }
+        return new Object[]{matcher.group(1), Long.valueOf(matcher.group(2))};
+    }
+
+    /**
+     * 与servlet中一致 查找时记录位置 解析参数时才截取
+     * */
+    @Benchmark
+    public Object[] templateExtract() throws Exception {
+        String path = paths[(index++) & 63];
+        int[] offsets = new int[trieRoutes.getMaxVariables() * 2];
+        if(trieRoutes.lookup(path, offsets) == null){
+            return null;
+        }
+        request.setAttribute(PathVariables.ATTRIBUTE, new PathVariables(path, offsets));
+        Object[] parameterValues = new Object[resolvers.length];
+        for (int i = 0; i < resolvers.length; i++) {
+            parameterValues[i] = resolvers[i].resolve(request, response);
+        }
+        return parameterValues;
+    }
+}
@@ -0,0 +1,88 @@
+package com.pql.mvcframework.benchmark;
+
+import com.pql.mvcframework.v3.bind.ArgumentResolver;
+import com.pql.mvcframework.v3.bind.ArgumentResolvers;
+import com.pql.mvcframework.v3.bind.QueryParameters;
+import com.pql.mvcframework.v3.convert.ConversionService;
+import org.openjdk.jmh.annotations.*;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 约2KB的queryString 带大量统计参数 handler只绑定其中3个
+ * 容器解析全部参数 / 扫描queryString只解码绑定的参数
+ * 配合-prof gc比较每次请求的分配量
+ * */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QueryStringBenchmark {
+
+    private static final String[] TRACKING = {
+            "utm_source", "utm_medium", "utm_campaign", "utm_term", "utm_content", "gclid", "fbclid", "msclkid",
+            "_ga", "_gl", "ref", "referrer", "session_id", "visitor_id", "ab_bucket", "experiment", "variant",
+            "lang", "tz", "screen", "device", "os", "browser", "campaign_id", "ad_group", "creative", "placement",
+            "keyword", "match_type", "network"
+    };
+
+    @Param({"container", "lazy"})
+    public String parser;
+
+    private InMemoryHttpServletRequest request;
+    private InMemoryHttpServletResponse response;
+    private ArgumentResolver[] resolvers;
+    private String queryString;
+
+    @Setup
+    public void setup() throws Exception {
+        Random random = new Random(42);
+        StringBuilder query = new StringBuilder();
+        for (int i = 0; i < TRACKING.length; i++) {
+            if(i == 5){
+                query.append("name=%E5%BC%A0%E4%B8%89&");
+            }else if(i == 15){
+                query.append("a=12&");
+            }else if(i == 25){
+                query.append("b=34&");
+            }
+            query.append(TRACKING[i]).append('=');
+            // 统计参数的值通常是较长的随机串或编码后的url
+            if(i % 4 == 0){
+                query.append("https%3A%2F%2Fwww.example.com%2Flanding%3Fid%3D").append(random.nextInt(1000000));
+            }else{
+                for (int j = 0; j < 48; j++) {
+                    query.append((char) ('a' + random.nextInt(26)));
+                }
+            }
+            query.append('&');
+        }
+        queryString = query.substring(0, query.length() - 1);
+
+        request = new InMemoryHttpServletRequest("GET", "/bench/bind", queryString);
+        response = new InMemoryHttpServletResponse();
+        resolvers = ArgumentResolvers.forMethod(BenchController.class.getMethod("bind", HttpServletRequest.class,
+                HttpServletResponse.class, String.class, Integer.class, Integer.class), new ConversionService());
+    }
+
+    /**
+     * 模拟新请求 清除容器的解析结果和上一次的扫描结果
+     * container时按表单请求处理 参数由容器解析
+     * */
+    @Benchmark
+    public Object[] bind() throws Exception {
+        request.setQueryString(queryString);
+        request.removeAttribute(QueryParameters.ATTRIBUTE);
+        request.setContentType("container".equals(parser) ? "application/x-www-form-urlencoded" : null);
+        Object[] parameterValues = new Object[resolvers.length];
+        for (int i = 0; i < resolvers.length; i++) {
+            parameterValues[i] = resolvers[i].resolve(request, response);
+        }
+        return parameterValues;
+    }
+}
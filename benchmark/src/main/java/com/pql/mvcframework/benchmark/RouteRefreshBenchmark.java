@@ -0,0 +1,78 @@
+package com.pql.mvcframework.benchmark;
+
+import com.pql.mvcframework.v3.servlet.PQLDispatcherServlet;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 刷新路由对请求的影响
+ * steady只处理请求 swapping在处理请求的同时由另一个线程不断重新扫描并替换路由版本
+ * */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RouteRefreshBenchmark {
+
+    @State(Scope.Group)
+    public static class ServletState {
+
+        PQLDispatcherServlet servlet;
+        PrintStream out;
+
+        @Setup
+        public void setup() throws Exception {
+            servlet = (PQLDispatcherServlet) DispatchBenchmark.createServlet("v3");
+            // 刷新时的日志不输出
+            out = System.out;
+            System.setOut(new PrintStream(new ByteArrayOutputStream() {
+                @Override
+                public synchronized void write(byte[] b, int off, int len) {
+                }
+            }));
+        }
+
+        @TearDown
+        public void tearDown(){
+            System.setOut(out);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ResponseState {
+
+        InMemoryHttpServletResponse response = new InMemoryHttpServletResponse();
+    }
+
+    @Benchmark
+    @Group("steady")
+    @GroupThreads(2)
+    public int steadyDispatch(ServletState state, ResponseState responseState) throws Exception {
+        return dispatch(state, responseState);
+    }
+
+    @Benchmark
+    @Group("swapping")
+    @GroupThreads(2)
+    public int swappingDispatch(ServletState state, ResponseState responseState) throws Exception {
+        return dispatch(state, responseState);
+    }
+
+    @Benchmark
+    @Group("swapping")
+    @GroupThreads(1)
+    public String swappingRefresh(ServletState state) throws Exception {
+        return state.servlet.refreshHandlerMapping();
+    }
+
+    private static int dispatch(ServletState state, ResponseState responseState) throws Exception {
+        InMemoryHttpServletResponse response = responseState.response;
+        response.reset();
+        state.servlet.service(new InMemoryHttpServletRequest("GET", "/demo/add", "a=1&b=2"), response);
+        return response.getContentSize();
+    }
+}
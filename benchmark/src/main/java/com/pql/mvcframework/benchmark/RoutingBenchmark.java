@@ -0,0 +1,140 @@
+package com.pql.mvcframework.benchmark;
+
+import com.pql.mvcframework.v3.router.RouteTrie;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * url查找
+ * v1 v2 的HashMap精确查找 / 原v3的正则列表逐个匹配 / 现v3的路由树
+ * 路由树另外测试{name}和{name:regex}模板段 并记录变量位置
+ * 路由数从10到10000 路由树的耗时应保持平稳
+ * */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RoutingBenchmark {
+
+    private static final int MODULES = 16;
+
+    /**
+     * 部署在根路径下 与原实现一样先替换contextPath
+     * */
+    private static final String CONTEXT_PATH = "";
+
+    @Param({"10", "100", "1000", "10000"})
+    public int routeCount;
+
+    private Map<String, Object> mapRoutes;
+    private List<Pattern> regexRoutes;
+    private RouteTrie<Object> trieRoutes;
+
+    /**
+     * 轮流查找的请求路径 避免只命中同一条
+     * */
+    private String[] staticPaths;
+    private String[] regexPaths;
+    private String[] templatePaths;
+    private String[] constrainedPaths;
+    private int[] offsets;
+    private int index;
+
+    @Setup
+    public void setup(){
+        mapRoutes = new HashMap<String, Object>();
+        regexRoutes = new ArrayList<Pattern>();
+        trieRoutes = new RouteTrie<Object>();
+        for (int i = 0; i < routeCount; i++) {
+            String url = "/module" + (i % MODULES) + "/resource" + i + "/detail";
+            Object handler = new Object();
+            mapRoutes.put(url, handler);
+            regexRoutes.add(Pattern.compile(url));
+            trieRoutes.add(url, handler);
+        }
+        // 每个模块一条正则路由 放在列表最后
+        for (int i = 0; i < MODULES; i++) {
+            String url = "/module" + i + "/item[0-9]+/edit";
+            regexRoutes.add(Pattern.compile(url));
+            trieRoutes.add(url, new Object());
+        }
+        // 每个模块两条模板路由
+        for (int i = 0; i < MODULES; i++) {
+            trieRoutes.add("/module" + i + "/order/{id}/lines", new Object());
+            trieRoutes.add("/module" + i + "/invoice/{id:[0-9]+}", new Object());
+        }
+        trieRoutes.freeze();
+        offsets = new int[trieRoutes.getMaxVariables() * 2];
+
+        Random random = new Random(42);
+        staticPaths = new String[64];
+        regexPaths = new String[64];
+        templatePaths = new String[64];
+        constrainedPaths = new String[64];
+        for (int i = 0; i < staticPaths.length; i++) {
+            int route = random.nextInt(routeCount);
+            staticPaths[i] = "/module" + (route % MODULES) + "/resource" + route + "/detail";
+            regexPaths[i] = "/module" + random.nextInt(MODULES) + "/item" + random.nextInt(100000) + "/edit";
+            templatePaths[i] = "/module" + random.nextInt(MODULES) + "/order/" + random.nextInt(100000) + "/lines";
+            constrainedPaths[i] = "/module" + random.nextInt(MODULES) + "/invoice/" + random.nextInt(100000);
+        }
+    }
+
+    private String nextStatic(){
+        return staticPaths[(index++) & 63];
+    }
+
+    /**
+     * v1 v2 的方式 只能精确匹配
+     * */
+    @Benchmark
+    public Object mapLookup(){
+        String url = nextStatic().replace(CONTEXT_PATH, "").replaceAll("/+", "/");
+        return mapRoutes.get(url);
+    }
+
+    /**
+     * 原v3的方式 逐个正则匹配
+     * */
+    @Benchmark
+    public Object regexScan(){
+        String url = nextStatic().replace(CONTEXT_PATH, "").replaceAll("/+", "/");
+        for (Pattern pattern : regexRoutes) {
+            if(pattern.matcher(url).matches()){
+                return pattern;
+            }
+        }
+        return null;
+    }
+
+    @Benchmark
+    public Object trieLookup(){
+        return trieRoutes.lookup(RouteTrie.normalize(nextStatic(), CONTEXT_PATH));
+    }
+
+    /**
+     * 静态段命中后 在节点上兜底匹配正则
+     * */
+    @Benchmark
+    public Object trieRegexFallback(){
+        return trieRoutes.lookup(RouteTrie.normalize(regexPaths[(index++) & 63], CONTEXT_PATH));
+    }
+
+    @Benchmark
+    public Object trieTemplate(){
+        return trieRoutes.lookup(RouteTrie.normalize(templatePaths[(index++) & 63], CONTEXT_PATH), offsets);
+    }
+
+    /**
+     * 带约束的模板段 只对该段做正则校验
+     * */
+    @Benchmark
+    public Object trieTemplateConstrained(){
+        return trieRoutes.lookup(RouteTrie.normalize(constrainedPaths[(index++) & 63], CONTEXT_PATH), offsets);
+    }
+}
@@ -0,0 +1,53 @@
+package com.pql.mvcframework.benchmark;
+
+import com.pql.mvcframework.v3.context.ContainerSnapshot;
+import com.pql.mvcframework.v3.servlet.PQLDispatcherServlet;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * v3冷启动的init耗时 每个fork只初始化一次
+ * scan: 默认配置 不读取快照 完整扫描
+ * snapshot: 同样的配置加上startupSnapshot 使用构建时生成的META-INF/pql.snapshot 需要以-Pstartup-snapshot构建
+ * setup只复制配置文件 不触发框架的类加载
+ * */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(10)
+public class StartupBenchmark {
+
+    private static final String SNAPSHOT_CONFIG = "startup-snapshot.yml";
+
+    @Param({"scan", "snapshot"})
+    public String mode;
+
+    private InMemoryServletConfig config;
+
+    @Setup
+    public void setup() throws Exception {
+        if("scan".equals(mode)){
+            config = new InMemoryServletConfig("application.yml");
+            return;
+        }
+        config = InMemoryServletConfig.derive("application.yml", SNAPSHOT_CONFIG, "startupSnapshot: " + ContainerSnapshot.LOCATION);
+    }
+
+    @Benchmark
+    public PQLDispatcherServlet init() throws Exception {
+        PQLDispatcherServlet servlet = new PQLDispatcherServlet();
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(new ByteArrayOutputStream()));
+        try{
+            servlet.init(config);
+        }finally {
+            System.setOut(out);
+        }
+        return servlet;
+    }
+}
@@ -0,0 +1,12 @@
+package com.pql.mvcframework.annotation;
+
+import java.lang.annotation.*;
+
+/**
+ * handler方法在异步线程池中执行 容器线程立即释放
+ * */
+@Target({ElementType.METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface PQLAsync {
+}
@@ -2,7 +2,11 @@ package com.pql.mvcframework.annotation;
 
 import java.lang.annotation.*;
 
-@Target({ElementType.FIELD})
+/**
+ * 依赖注入 标注在字段上按value或字段类型注入
+ * 标注在构造器上时 构造器参数按类型注入
+ * */
+@Target({ElementType.FIELD, ElementType.CONSTRUCTOR})
 @Retention(RetentionPolicy.RUNTIME)
 @Documented
 public @interface PQLAutowired {
@@ -0,0 +1,23 @@
+package com.pql.mvcframework.annotation;
+
+import java.lang.annotation.*;
+
+/**
+ * 缓存handler输出的响应内容 key为路由加绑定的参数值
+ * 只适用于结果完全由请求参数决定的方法
+ * */
+@Target({ElementType.METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface PQLCacheable {
+
+    /**
+     * 过期时间 秒 小于等于0不过期
+     * */
+    long ttl() default 60;
+
+    /**
+     * 最大缓存条数
+     * */
+    int maxEntries() default 1000;
+}
@@ -0,0 +1,18 @@
+package com.pql.mvcframework.annotation;
+
+import java.lang.annotation.*;
+
+/**
+ * 合并相同的并发调用 路由和绑定的参数值相同的请求同一时间只调用一次 输出共享给所有等待的请求
+ * 只适用于结果完全由请求参数决定的方法 等待的请求只复制状态码 Content-Type和响应内容
+ * */
+@Target({ElementType.METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface PQLCoalesce {
+
+    /**
+     * 同步请求等待的最长时间 毫秒 超时返回503 异步请求由异步超时时间控制
+     * */
+    long timeout() default 3000;
+}
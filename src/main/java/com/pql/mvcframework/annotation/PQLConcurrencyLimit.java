@@ -0,0 +1,38 @@
+package com.pql.mvcframework.annotation;
+
+import java.lang.annotation.*;
+
+/**
+ * 限制handler同时处理的请求数 超出时返回503 不绑定参数也不调用方法
+ * 异步handler在结果输出后才释放
+ * */
+@Target({ElementType.METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface PQLConcurrencyLimit {
+
+    /**
+     * 最大并发数 自适应时为初始值
+     * */
+    int value() default 64;
+
+    /**
+     * 按耗时自适应调整 耗时接近最小耗时时逐步放大 超过tolerance倍时按比例缩小
+     * */
+    boolean adaptive() default false;
+
+    /**
+     * 自适应时的下限
+     * */
+    int minLimit() default 1;
+
+    /**
+     * 自适应时的上限
+     * */
+    int maxLimit() default 1000;
+
+    /**
+     * 自适应时 耗时超过最小耗时的多少倍认为已经排队
+     * */
+    double tolerance() default 2.0;
+}
@@ -0,0 +1,13 @@
+package com.pql.mvcframework.annotation;
+
+import java.lang.annotation.*;
+
+/**
+ * 全局的异常处理bean 其中的@PQLExceptionHandler方法对所有controller生效
+ * */
+@Target({ElementType.TYPE})
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface PQLControllerAdvice {
+    String value() default "";
+}
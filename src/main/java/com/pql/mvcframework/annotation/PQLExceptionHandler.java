@@ -0,0 +1,23 @@
+package com.pql.mvcframework.annotation;
+
+import java.lang.annotation.*;
+
+/**
+ * 异常处理方法 写在controller中只处理该controller的异常 写在@PQLControllerAdvice中全局生效
+ * 方法参数可以是异常 request response 返回值按handler相同的方式输出
+ * */
+@Target({ElementType.METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface PQLExceptionHandler {
+
+    /**
+     * 处理的异常类型 为空时取方法参数中的异常类型
+     * */
+    Class<? extends Throwable>[] value() default {};
+
+    /**
+     * 响应状态码
+     * */
+    int status() default 500;
+}
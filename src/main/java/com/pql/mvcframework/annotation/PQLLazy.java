@@ -0,0 +1,13 @@
+package com.pql.mvcframework.annotation;
+
+import java.lang.annotation.*;
+
+/**
+ * 延迟创建的单例 第一次获取时才实例化
+ * 被非延迟的bean依赖时随启动一起创建
+ * */
+@Target({ElementType.TYPE})
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface PQLLazy {
+}
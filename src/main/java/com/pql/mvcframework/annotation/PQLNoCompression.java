@@ -0,0 +1,13 @@
+package com.pql.mvcframework.annotation;
+
+import java.lang.annotation.*;
+
+/**
+ * 不压缩该方法的响应 加在controller上时对其全部方法生效
+ * 用于输出本身已经压缩 或需要客户端按Content-Length读取的接口
+ * */
+@Target({ElementType.METHOD, ElementType.TYPE})
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface PQLNoCompression {
+}
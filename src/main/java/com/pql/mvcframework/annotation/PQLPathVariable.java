@@ -0,0 +1,13 @@
+package com.pql.mvcframework.annotation;
+
+import java.lang.annotation.*;
+
+/**
+ * 绑定url模板中的变量 如 /order/{id} 中的id
+ * */
+@Target({ElementType.PARAMETER})
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface PQLPathVariable {
+    String value() default "";
+}
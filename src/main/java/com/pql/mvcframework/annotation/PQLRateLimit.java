@@ -0,0 +1,22 @@
+package com.pql.mvcframework.annotation;
+
+import java.lang.annotation.*;
+
+/**
+ * 限制handler每秒处理的请求数 超出时返回429 不绑定参数也不调用方法
+ * */
+@Target({ElementType.METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface PQLRateLimit {
+
+    /**
+     * 每秒允许的请求数
+     * */
+    double permitsPerSecond();
+
+    /**
+     * 允许的突发请求数 小于等于0时为permitsPerSecond向上取整
+     * */
+    int burst() default 0;
+}
@@ -0,0 +1,18 @@
+package com.pql.mvcframework.annotation;
+
+import java.lang.annotation.*;
+
+/**
+ * 把json请求体绑定到形参 边读边解析 不会先读入整个请求体
+ * 形参为Iterator时 按需逐个读取json数组中的元素
+ * */
+@Target({ElementType.PARAMETER})
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface PQLRequestBody {
+
+    /**
+     * 请求体为空时是否返回400
+     * */
+    boolean required() default true;
+}
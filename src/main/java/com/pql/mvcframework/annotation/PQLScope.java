@@ -0,0 +1,19 @@
+package com.pql.mvcframework.annotation;
+
+import java.lang.annotation.*;
+
+/**
+ * bean的作用域 默认单例
+ * prototype每次获取都创建新实例 request在一次请求内共用一个实例
+ * */
+@Target({ElementType.TYPE})
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface PQLScope {
+
+    String SINGLETON = "singleton";
+    String PROTOTYPE = "prototype";
+    String REQUEST = "request";
+
+    String value() default SINGLETON;
+}
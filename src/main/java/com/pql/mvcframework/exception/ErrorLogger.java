@@ -0,0 +1,54 @@
+package com.pql.mvcframework.exception;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 限流的错误日志
+ * 每秒最多打印permitsPerSecond条堆栈 超出的只计数 下一次打印时输出被省略的条数
+ * 避免异常集中爆发时大量同步的stderr输出拖慢请求
+ * */
+public class ErrorLogger {
+
+    private static final long WINDOW_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final int permitsPerSecond;
+    private final AtomicLong windowStart = new AtomicLong(System.nanoTime());
+    private final AtomicInteger used = new AtomicInteger();
+    private final LongAdder suppressed = new LongAdder();
+
+    public ErrorLogger(int permitsPerSecond){
+        this.permitsPerSecond = Math.max(1, permitsPerSecond);
+    }
+
+    public void log(String message, Throwable e){
+        if(!tryAcquire()){
+            suppressed.increment();
+            return;
+        }
+        long count = suppressed.sumThenReset();
+        if(count > 0){
+            System.err.println(count + " errors suppressed by rate limit");
+        }
+        System.err.println(message);
+        e.printStackTrace();
+    }
+
+    /**
+     * 固定窗口计数 窗口切换时只有一个线程能重置计数
+     * */
+    private boolean tryAcquire(){
+        long now = System.nanoTime();
+        long start = windowStart.get();
+        if(now - start >= WINDOW_NANOS && windowStart.compareAndSet(start, now)){
+            used.set(0);
+        }
+        return used.incrementAndGet() <= permitsPerSecond;
+    }
+
+    public long getSuppressedCount(){
+        return suppressed.sum();
+    }
+}
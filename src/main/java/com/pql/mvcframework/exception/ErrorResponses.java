@@ -0,0 +1,61 @@
+package com.pql.mvcframework.exception;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 没有异常处理方法时的默认错误输出
+ * 业务异常返回其状态码和message 其他异常返回500 响应中不包含堆栈
+ * */
+public final class ErrorResponses {
+
+    /**
+     * 各版本DispatcherServlet共用 每秒最多打印10条堆栈
+     * */
+    private static final ErrorLogger LOGGER = new ErrorLogger(10);
+
+    private ErrorResponses(){
+    }
+
+    /**
+     * 取出反射调用包装的实际异常
+     * */
+    public static Throwable unwrap(Throwable e){
+        while (e instanceof InvocationTargetException && ((InvocationTargetException) e).getTargetException() != null){
+            e = ((InvocationTargetException) e).getTargetException();
+        }
+        return e;
+    }
+
+    public static void write(HttpServletResponse response, Throwable e) throws IOException {
+        e = unwrap(e);
+        int status;
+        String body;
+        if(e instanceof PQLBusinessException){
+            status = ((PQLBusinessException) e).getStatus();
+            body = e.getMessage() == null ? String.valueOf(status) : status + " " + e.getMessage();
+        }else{
+            status = HttpServletResponse.SC_INTERNAL_SERVER_ERROR;
+            body = "500 Internal Server Error";
+            log(e);
+        }
+        if(response.isCommitted()){
+            return;
+        }
+        response.resetBuffer();
+        response.setStatus(status);
+        response.setContentType("text/plain;charset=UTF-8");
+        try{
+            response.getWriter().write(body);
+        }catch (IllegalStateException ex){
+            // handler已经使用了outputStream 不能再取writer
+            response.getOutputStream().write(body.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    public static void log(Throwable e){
+        LOGGER.log("request failed: " + e, e);
+    }
+}
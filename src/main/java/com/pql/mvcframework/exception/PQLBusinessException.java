@@ -0,0 +1,24 @@
+package com.pql.mvcframework.exception;
+
+/**
+ * 预期内的业务异常 不记录堆栈 不打印日志
+ * 直接按状态码和message返回给调用方
+ * */
+public class PQLBusinessException extends RuntimeException {
+
+    private final int status;
+
+    public PQLBusinessException(String message){
+        this(400, message);
+    }
+
+    public PQLBusinessException(int status, String message){
+        // 不填充堆栈 创建开销和普通对象相同
+        super(message, null, false, false);
+        this.status = status;
+    }
+
+    public int getStatus(){
+        return status;
+    }
+}
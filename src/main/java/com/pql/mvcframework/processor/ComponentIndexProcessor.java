@@ -0,0 +1,156 @@
+package com.pql.mvcframework.processor;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.TypeElement;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.NoSuchFileException;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * 编译期生成bean索引
+ * 把所有@PQLController @PQLService和@PQLControllerAdvice的类名写入META-INF/pql.components 启动时直接读取 不再扫描classpath
+ * 增量编译时javac只处理本次编译的类 写出前合并输出目录中已有的索引 已删除或不再带注解的类从索引中去掉
+ * 本次编译没有组件类时同样需要校验已有的索引 所以处理全部注解 只是不声明占用
+ * */
+@SupportedAnnotationTypes("*")
+public class ComponentIndexProcessor extends AbstractProcessor {
+
+    /**
+     * 索引文件位置
+     * */
+    public static final String INDEX_LOCATION = "META-INF/pql.components";
+
+    static final String CONTROLLER = "com.pql.mvcframework.annotation.PQLController";
+    static final String SERVICE = "com.pql.mvcframework.annotation.PQLService";
+    static final String CONTROLLER_ADVICE = "com.pql.mvcframework.annotation.PQLControllerAdvice";
+
+    /**
+     * 类名和注解类型的关系 多轮处理中累积 最后一轮统一写出
+     * */
+    private final Map<String, String> components = new TreeMap<String, String>();
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        for (TypeElement annotation : annotations) {
+            String stereotype = annotation.getQualifiedName().toString();
+            if(!isStereotype(stereotype)){
+                continue;
+            }
+            for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+                if(element.getKind() != ElementKind.CLASS){
+                    continue;
+                }
+                String className = processingEnv.getElementUtils().getBinaryName((TypeElement) element).toString();
+                components.put(className, stereotype);
+            }
+        }
+        if(roundEnv.processingOver()){
+            // 已有索引中的类 本次没有编译的沿用 仍然存在且带注解才保留
+            Properties existing = readIndex();
+            for (String className : existing.stringPropertyNames()) {
+                if(!components.containsKey(className)){
+                    String stereotype = stereotype(className);
+                    if(stereotype != null){
+                        components.put(className, stereotype);
+                    }
+                }
+            }
+            if(!components.isEmpty() || !existing.isEmpty()){
+                writeIndex();
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 读取输出目录中上一次生成的索引 没有时返回空
+     * */
+    private Properties readIndex(){
+        Properties properties = new Properties();
+        InputStream is = null;
+        try{
+            FileObject file = processingEnv.getFiler().getResource(StandardLocation.CLASS_OUTPUT, "", INDEX_LOCATION);
+            is = file.openInputStream();
+            properties.load(is);
+        }catch (FileNotFoundException e){
+            // 第一次编译
+        }catch (NoSuchFileException e){
+            // 第一次编译
+        }catch (IOException e){
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING, "read " + INDEX_LOCATION + " failed: " + e);
+        }finally {
+            if(is != null){
+                try{
+                    is.close();
+                }catch (IOException e){
+                    e.printStackTrace();
+                }
+            }
+        }
+        return properties;
+    }
+
+    /**
+     * 类当前带有的组件注解 类已不存在或没有组件注解时返回null
+     * */
+    private String stereotype(String className){
+        TypeElement type = processingEnv.getElementUtils().getTypeElement(className.replace('$', '.'));
+        if(type == null || type.getKind() != ElementKind.CLASS){
+            return null;
+        }
+        for (AnnotationMirror mirror : type.getAnnotationMirrors()) {
+            String name = ((TypeElement) mirror.getAnnotationType().asElement()).getQualifiedName().toString();
+            if(isStereotype(name)){
+                return name;
+            }
+        }
+        return null;
+    }
+
+    private static boolean isStereotype(String name){
+        return CONTROLLER.equals(name) || SERVICE.equals(name) || CONTROLLER_ADVICE.equals(name);
+    }
+
+    private void writeIndex(){
+        Properties properties = new Properties();
+        for (Map.Entry<String, String> entry : components.entrySet()) {
+            properties.setProperty(entry.getKey(), entry.getValue());
+        }
+        OutputStream os = null;
+        try{
+            FileObject file = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", INDEX_LOCATION);
+            os = file.openOutputStream();
+            properties.store(os, null);
+        }catch (IOException e){
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "write " + INDEX_LOCATION + " failed: " + e);
+        }finally {
+            if(os != null){
+                try{
+                    os.close();
+                }catch (IOException e){
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.pql.mvcframework.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 初始化结束后冻结的只读映射 key为字符串
+ * 开放寻址 线性探测 容量为2的幂且负载不超过一半 key在冻结时intern 哈希值预先算好放在数组中
+ * 查找只访问三个平铺的数组 不创建对象 可以直接按字符串的一段查找 不需要先截取
+ * 全部字段为final 构造完成后任意线程都能看到完整内容
+ * */
+public final class FrozenMap<V> {
+
+    private static final FrozenMap<Object> EMPTY = new FrozenMap<Object>(Collections.<String, Object>emptyMap());
+
+    private final String[] keys;
+    private final int[] hashes;
+    private final Object[] values;
+    private final int mask;
+    private final int size;
+
+    private FrozenMap(Map<String, ? extends V> source){
+        int capacity = 2;
+        while (capacity < source.size() * 2){
+            capacity <<= 1;
+        }
+        this.keys = new String[capacity];
+        this.hashes = new int[capacity];
+        this.values = new Object[capacity];
+        this.mask = capacity - 1;
+        for (Map.Entry<String, ? extends V> entry : source.entrySet()) {
+            String key = entry.getKey().intern();
+            int hash = key.hashCode();
+            int slot = spread(hash) & mask;
+            while (keys[slot] != null){
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = key;
+            hashes[slot] = hash;
+            values[slot] = entry.getValue();
+        }
+        this.size = source.size();
+    }
+
+    /**
+     * 复制source的当前内容 之后source的修改不影响冻结的映射
+     * */
+    public static <V> FrozenMap<V> copyOf(Map<String, ? extends V> source){
+        return source.isEmpty() ? FrozenMap.<V>empty() : new FrozenMap<V>(source);
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <V> FrozenMap<V> empty(){
+        return (FrozenMap<V>) EMPTY;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(String key){
+        int slot = indexOf(key);
+        return slot < 0 ? null : (V) values[slot];
+    }
+
+    /**
+     * 按text的[start, end)查找 与get(text.substring(start, end))结果相同
+     * */
+    @SuppressWarnings("unchecked")
+    public V get(String text, int start, int end){
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + text.charAt(i);
+        }
+        int length = end - start;
+        int slot = spread(hash) & mask;
+        String candidate;
+        while ((candidate = keys[slot]) != null){
+            if(hashes[slot] == hash && candidate.length() == length && text.regionMatches(start, candidate, 0, length)){
+                return (V) values[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return null;
+    }
+
+    public boolean containsKey(String key){
+        return indexOf(key) >= 0;
+    }
+
+    public int size(){
+        return size;
+    }
+
+    public boolean isEmpty(){
+        return size == 0;
+    }
+
+    /**
+     * 全部key 顺序不固定
+     * */
+    public List<String> keys(){
+        List<String> result = new ArrayList<String>(size);
+        for (String key : keys) {
+            if(key != null){
+                result.add(key);
+            }
+        }
+        return result;
+    }
+
+    private int indexOf(String key){
+        int hash = key.hashCode();
+        int slot = spread(hash) & mask;
+        String candidate;
+        while ((candidate = keys[slot]) != null){
+            if(candidate == key || (hashes[slot] == hash && candidate.equals(key))){
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * 打散高位 避免只有高位不同的哈希值落在同一位置
+     * */
+    private static int spread(int hash){
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -4,6 +4,8 @@ import com.pql.mvcframework.annotation.PQLAutowired;
 import com.pql.mvcframework.annotation.PQLController;
 import com.pql.mvcframework.annotation.PQLRequestMapping;
 import com.pql.mvcframework.annotation.PQLService;
+import com.pql.mvcframework.exception.ErrorResponses;
+import com.pql.mvcframework.util.FrozenMap;
 
 import javax.servlet.ServletConfig;
 import javax.servlet.ServletException;
@@ -23,7 +25,10 @@ import java.util.*;
  * */
 public class PQLDispatcherServlet extends HttpServlet {
 
-    private Map<String, Object> mapping = new HashMap<String, Object>();
+    /**
+     * url和method beanName和实例 init结束时冻结后发布 请求只读取冻结的映射
+     * */
+    private volatile FrozenMap<Object> mapping = FrozenMap.empty();
     private List<String> classNames = new ArrayList<String>();
     @Override
     protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
@@ -36,9 +41,8 @@ public class PQLDispatcherServlet extends HttpServlet {
             // 调用
             doDispatch(req, resp);
         }catch (Exception e){
-            // 报错返回 500
-            e.printStackTrace();
-            resp.getWriter().write("500 Exception " + Arrays.toString(e.getStackTrace()));
+            // 报错返回 业务异常按其状态码 其他500 不输出堆栈
+            ErrorResponses.write(resp, e);
         }
     }
 
@@ -50,21 +54,25 @@ public class PQLDispatcherServlet extends HttpServlet {
         String contextPath = request.getContextPath();
         requestURL = requestURL.replace(contextPath, "").replaceAll("/+", "/");
         // 如果url不存在在映射中  说明404
-        if(!this.mapping.containsKey(requestURL)){
+        FrozenMap<Object> mapping = this.mapping;
+        Object handler = mapping.get(requestURL);
+        if(handler == null){
             response.getWriter().write("404 not Found!");
             return;
         }
 
         // 通过反射对controller方法进行调用
-        Method method = (Method) this.mapping.get(requestURL);
+        Method method = (Method) handler;
         Map<String, String[]> parameterMap = request.getParameterMap();
-        Object obj = this.mapping.get(method.getDeclaringClass().getName());
+        Object obj = mapping.get(method.getDeclaringClass().getName());
         Object[] params = {request, response, parameterMap.get("name")[0]};// 第一版简单写 暂时写死
         method.invoke(obj, params);
     }
 
     @Override
     public void init(ServletConfig config) throws ServletException {
+        // 初始化时使用的可变映射 结束时冻结
+        Map<String, Object> mapping = new HashMap<String, Object>();
         InputStream is = null;
         try{
             // 加载web.xml中的配置文件
@@ -175,6 +183,7 @@ public class PQLDispatcherServlet extends HttpServlet {
                 }
             }
         }
+        this.mapping = FrozenMap.copyOf(mapping);
         System.out.println("pql mvc framework is init");
     }
 
@@ -184,7 +193,7 @@ public class PQLDispatcherServlet extends HttpServlet {
     private void doScanner(String packageName){
 
         // 获得包地址
-        URL url = this.getClass().getClassLoader().getResource("/" + packageName.replaceAll("\\.", "/"));
+        URL url = this.getClass().getClassLoader().getResource(packageName.replaceAll("\\.", "/"));
         File classDir = new File(url.getFile());
 
         // 扫描class
@@ -1,6 +1,8 @@
 package com.pql.mvcframework.v2.servlet;
 
 import com.pql.mvcframework.annotation.*;
+import com.pql.mvcframework.exception.ErrorResponses;
+import com.pql.mvcframework.util.FrozenMap;
 
 import javax.servlet.ServletConfig;
 import javax.servlet.ServletException;
@@ -41,6 +43,11 @@ public class PQLDispatcherServlet extends HttpServlet {
      * */
     private Map<String, Method> handlerMapping = new HashMap<String, Method>();
 
+    /**
+     * init结束时由ioc和handlerMapping冻结出的只读映射 请求只读取这里
+     * */
+    private volatile FrozenMap<HandlerEntry> handlers = FrozenMap.empty();
+
     @Override
     protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
         this.doPost(req, resp);
@@ -52,9 +59,8 @@ public class PQLDispatcherServlet extends HttpServlet {
             // 调用
             doDispatch(req, resp);
         }catch (Exception e){
-            // 报错返回 500
-            e.printStackTrace();
-            resp.getWriter().write("500 Exception " + Arrays.toString(e.getStackTrace()));
+            // 报错返回 业务异常按其状态码 其他500 不输出堆栈
+            ErrorResponses.write(resp, e);
         }
     }
 
@@ -66,15 +72,16 @@ public class PQLDispatcherServlet extends HttpServlet {
         String contextPath = request.getContextPath();
         requestURL = requestURL.replace(contextPath, "").replaceAll("/+", "/");
         // 如果url不存在在映射中  说明404
-        if(!this.handlerMapping.containsKey(requestURL)){
+        HandlerEntry handler = this.handlers.get(requestURL);
+        if(handler == null){
             response.getWriter().write("404 not Found!");
             return;
         }
 
         // 通过反射对controller方法进行调用
-        Method method = (Method) this.handlerMapping.get(requestURL);
+        Method method = handler.method;
         // 获取方法的形参列表
-        Class<?>[] parameterTypes = method.getParameterTypes();
+        Class<?>[] parameterTypes = handler.parameterTypes;
         // 获取请求的参数列表
         Map<String, String[]> parameterMap = request.getParameterMap();
         // 实际存放的参数value列表
@@ -94,28 +101,18 @@ public class PQLDispatcherServlet extends HttpServlet {
                 parameterValues[i] = response;
                 continue;
 
-                // 简单写 只考虑string
+                // 简单写 只考虑string 参数名在init时已经从注解中取出
             }else if(parameterType == String.class){
-
-                // 获取方法所形的注解 二维数组
-                Annotation[][] parameterAnnotations = method.getParameterAnnotations();
-                for (int j = 0; j < parameterAnnotations.length; j++) {
-                    for (Annotation annotation : parameterAnnotations[j]) {
-                        if(annotation instanceof PQLRequestParam){
-                            String paramName = ((PQLRequestParam) annotation).value();
-                            if(!"".equals(paramName.trim())){
-                                String value = Arrays.toString(parameterMap.get(paramName))
-                                        .replaceAll("\\[|\\]", "")
-                                        .replaceAll("\\s",",");
-                                parameterValues[i] = value;
-                            }
-                        }
-                    }
+                String paramName = handler.paramName;
+                if(paramName != null){
+                    String value = Arrays.toString(parameterMap.get(paramName))
+                            .replaceAll("\\[|\\]", "")
+                            .replaceAll("\\s",",");
+                    parameterValues[i] = value;
                 }
             }
         }
-        Object bean = this.ioc.get(toLowerFirstCase(method.getDeclaringClass().getSimpleName()));
-        method.invoke(bean, parameterValues);
+        method.invoke(handler.bean, parameterValues);
     }
 
     @Override
@@ -135,6 +132,9 @@ public class PQLDispatcherServlet extends HttpServlet {
         // 5. 初始化handlerMapping
         initHandlerMapping();
 
+        // 6. 冻结 之后请求只读取不可变的映射
+        freeze();
+
         System.out.println("pql spring framework is init");
     }
 
@@ -164,7 +164,7 @@ public class PQLDispatcherServlet extends HttpServlet {
     private void doScanner(String packageName){
 
         // 获得包地址
-        URL url = this.getClass().getClassLoader().getResource("/" + packageName.replaceAll("\\.", "/"));
+        URL url = this.getClass().getClassLoader().getResource(packageName.replaceAll("\\.", "/"));
         File classDir = new File(url.getFile());
 
         // 扫描class
@@ -294,6 +294,20 @@ public class PQLDispatcherServlet extends HttpServlet {
         }
     }
 
+    /**
+     * 把handlerMapping和ioc中的controller实例合并为只读映射 参数注解在这里一次性读取
+     * 通过volatile字段发布 请求线程都能看到完整的映射
+     * */
+    private void freeze(){
+        Map<String, HandlerEntry> entries = new HashMap<String, HandlerEntry>();
+        for (Map.Entry<String, Method> entry : handlerMapping.entrySet()) {
+            Method method = entry.getValue();
+            Object bean = ioc.get(toLowerFirstCase(method.getDeclaringClass().getSimpleName()));
+            entries.put(entry.getKey(), new HandlerEntry(method, bean));
+        }
+        handlers = FrozenMap.copyOf(entries);
+    }
+
     /**
      * 转换为首字母小写
      * */
@@ -302,4 +316,34 @@ public class PQLDispatcherServlet extends HttpServlet {
         chars[0] += 32;
         return String.valueOf(chars);
     }
+
+    /**
+     * 冻结后的handler 方法 controller实例和参数表都在init时确定
+     * */
+    private static final class HandlerEntry {
+
+        private final Method method;
+        private final Object bean;
+        private final Class<?>[] parameterTypes;
+
+        /**
+         * String参数的取值名称 与原先每次请求遍历全部参数注解的结果相同 取最后一个非空的@PQLRequestParam
+         * */
+        private final String paramName;
+
+        private HandlerEntry(Method method, Object bean){
+            this.method = method;
+            this.bean = bean;
+            this.parameterTypes = method.getParameterTypes();
+            String paramName = null;
+            for (Annotation[] annotations : method.getParameterAnnotations()) {
+                for (Annotation annotation : annotations) {
+                    if(annotation instanceof PQLRequestParam && !"".equals(((PQLRequestParam) annotation).value().trim())){
+                        paramName = ((PQLRequestParam) annotation).value();
+                    }
+                }
+            }
+            this.paramName = paramName;
+        }
+    }
 }
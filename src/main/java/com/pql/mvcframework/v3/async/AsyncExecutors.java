@@ -0,0 +1,80 @@
+package com.pql.mvcframework.v3.async;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 创建异步handler的执行器
+ * 运行时支持虚拟线程时优先使用虚拟线程 否则使用固定大小的线程池
+ * */
+public final class AsyncExecutors {
+
+    /**
+     * Thread.isVirtual 低版本jdk为null
+     * */
+    private static final MethodHandle IS_VIRTUAL = isVirtualHandle();
+
+    private AsyncExecutors(){
+    }
+
+    /**
+     * 当前线程是否为虚拟线程 虚拟线程每个任务新建 不能在ThreadLocal中缓存可复用的对象
+     * */
+    public static boolean isVirtualThread(){
+        if(IS_VIRTUAL == null){
+            return false;
+        }
+        try{
+            return (boolean) IS_VIRTUAL.invokeExact(Thread.currentThread());
+        }catch (Throwable e){
+            return false;
+        }
+    }
+
+    private static MethodHandle isVirtualHandle(){
+        try{
+            return MethodHandles.publicLookup().findVirtual(Thread.class, "isVirtual", MethodType.methodType(boolean.class));
+        }catch (Exception e){
+            return null;
+        }
+    }
+
+    /**
+     * threads大于0时固定使用线程池 否则优先虚拟线程
+     * */
+    public static ExecutorService create(int threads){
+        if(threads <= 0){
+            ExecutorService virtual = virtualThreadExecutor();
+            if(virtual != null){
+                return virtual;
+            }
+            threads = Runtime.getRuntime().availableProcessors() * 2;
+        }
+        final AtomicInteger counter = new AtomicInteger();
+        return Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "pql-async-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * 通过反射调用 Executors.newVirtualThreadPerTaskExecutor 低版本jdk返回null
+     * */
+    private static ExecutorService virtualThreadExecutor(){
+        try{
+            Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) method.invoke(null);
+        }catch (Exception e){
+            return null;
+        }
+    }
+}
@@ -0,0 +1,335 @@
+package com.pql.mvcframework.v3.batch;
+
+import com.pql.mvcframework.exception.ErrorResponses;
+import com.pql.mvcframework.exception.PQLBusinessException;
+import com.pql.mvcframework.v3.json.JsonBuffers;
+import com.pql.mvcframework.v3.json.JsonReader;
+import com.pql.mvcframework.v3.json.JsonWriter;
+import com.pql.mvcframework.v3.server.EmbeddedHttpResponse;
+
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 批量接口 一个请求中执行多个handler调用 每一项按普通请求经过路由 拦截器 参数绑定和输出
+ * 各项之间没有依赖 在线程池中执行 同一批最多concurrency项同时执行 当前线程只等待结果 超时才能生效
+ * 每一项的输出写入内存 全部完成或超时后按请求顺序合并为一个json数组
+ * 超时的项返回504 已经开始的调用不会被中断 超时后不再开始新的项 未开始的项同样返回504并标记executed为false
+ * */
+public class BatchExecutor {
+
+    private static final String JSON_TYPE = "application/json";
+
+    /**
+     * 每一项的执行状态 领取后由PENDING改为STARTED 超时时仍为PENDING的改为SKIPPED 不再执行
+     * */
+    private static final int PENDING = 0;
+    private static final int STARTED = 1;
+    private static final int SKIPPED = 2;
+
+    /**
+     * 子请求的输出中不返回的头 由批量响应自己决定
+     * */
+    private static final String[] HIDDEN_HEADERS = {"vary", "content-length", "content-type", "transfer-encoding", "connection"};
+
+    private final ExecutorService executor;
+    private final int maxItems;
+    private final int concurrency;
+    private final long timeout;
+
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder items = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder skipped = new LongAdder();
+
+    /**
+     * @param maxItems 一批最多的项数 超过时整批返回413
+     * @param concurrency 同一批同时执行的最大项数
+     * @param timeout 等待全部完成的毫秒数
+     * */
+    public BatchExecutor(ExecutorService executor, int maxItems, int concurrency, long timeout){
+        if(maxItems <= 0 || concurrency <= 0){
+            throw new IllegalArgumentException("maxItems and concurrency must be positive: " + maxItems + "," + concurrency);
+        }
+        this.executor = executor;
+        this.maxItems = maxItems;
+        this.concurrency = concurrency;
+        this.timeout = timeout;
+    }
+
+    /**
+     * 读取请求体中的json数组 格式错误返回400 超过maxItems返回413
+     * */
+    public List<BatchItem> read(HttpServletRequest request) throws IOException {
+        byte[] buffer = JsonBuffers.acquire();
+        byte[] bodyBuffer = new byte[JsonBuffers.BUFFER_SIZE];
+        try{
+            JsonReader reader = new JsonReader(request.getInputStream(), buffer);
+            if(reader.peek() != JsonReader.BEGIN_ARRAY){
+                throw new PQLBusinessException("the batch request body must be a json array");
+            }
+            List<BatchItem> list = new ArrayList<BatchItem>();
+            reader.beginArray();
+            while (reader.hasNext()){
+                if(list.size() == maxItems){
+                    throw new PQLBusinessException(413, "the batch exceeds " + maxItems + " items");
+                }
+                list.add(BatchItem.read(reader, bodyBuffer));
+            }
+            reader.endArray();
+            reader.endDocument();
+            return list;
+        }finally {
+            JsonBuffers.release(buffer);
+        }
+    }
+
+    /**
+     * 执行全部项 返回的输出与items下标一致 超时的项为504 其中没有执行的为NotExecutedResponse
+     * */
+    public EmbeddedHttpResponse[] execute(final List<BatchItem> items, final HttpServletRequest request,
+                                          final Dispatcher dispatcher){
+        batches.increment();
+        final int size = items.size();
+        this.items.add(size);
+        final EmbeddedHttpResponse[] results = new EmbeddedHttpResponse[size];
+        if(size == 0){
+            return results;
+        }
+        // 子请求可能在其他线程上读取头 原请求不保证线程安全 先复制一份
+        final Map<String, String> headerNames = new HashMap<String, String>();
+        final Map<String, List<String>> headers = BatchRequest.copyHeaders(request, headerNames);
+        final Cookie[] cookies = request.getCookies();
+
+        final AtomicReferenceArray<EmbeddedHttpResponse> completed = new AtomicReferenceArray<EmbeddedHttpResponse>(size);
+        final AtomicIntegerArray states = new AtomicIntegerArray(size);
+        final AtomicInteger next = new AtomicInteger();
+        final CountDownLatch latch = new CountDownLatch(size);
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        Runnable worker = new Runnable() {
+            public void run() {
+                int index;
+                // 已经超时的批次不再领取新的项 领取后状态已被标记为SKIPPED的同样跳过
+                while (System.nanoTime() - deadline < 0 && (index = next.getAndIncrement()) < size){
+                    if(!states.compareAndSet(index, PENDING, STARTED)){
+                        return;
+                    }
+                    EmbeddedHttpResponse response = new EmbeddedHttpResponse();
+                    try{
+                        dispatcher.dispatch(new BatchRequest(request, items.get(index), headers, headerNames, cookies), response);
+                    }catch (Throwable e){
+                        ErrorResponses.log(e);
+                        response = new EmbeddedHttpResponse();
+                        response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+                    }
+                    completed.set(index, response);
+                    latch.countDown();
+                }
+            }
+        };
+
+        // 每个worker依次领取下一项 线程池一个都不接受时在当前线程执行
+        int workers = Math.min(concurrency, size);
+        int started = 0;
+        for (int i = 0; i < workers; i++) {
+            try{
+                executor.execute(worker);
+                started++;
+            }catch (RejectedExecutionException e){
+                break;
+            }
+        }
+        if(started == 0){
+            worker.run();
+        }
+
+        try{
+            latch.await(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+        }
+        for (int i = 0; i < size; i++) {
+            results[i] = completed.get(i);
+            if(results[i] != null){
+                continue;
+            }
+            timeouts.increment();
+            if(states.compareAndSet(i, PENDING, SKIPPED)){
+                skipped.increment();
+                results[i] = new NotExecutedResponse();
+            }else{
+                results[i] = new EmbeddedHttpResponse();
+            }
+            results[i].setStatus(HttpServletResponse.SC_GATEWAY_TIMEOUT);
+        }
+        return results;
+    }
+
+    /**
+     * 按请求顺序输出每一项的状态码 头和响应体
+     * json的响应体原样嵌入 文本按Content-Type的编码转换为字符串 其他内容用base64编码并标记bodyEncoding
+     * */
+    public void write(EmbeddedHttpResponse[] results, HttpServletResponse response) throws IOException {
+        response.setCharacterEncoding("UTF-8");
+        response.setContentType("application/json;charset=UTF-8");
+        response.setHeader("Cache-Control", "no-cache");
+        byte[] buffer = JsonBuffers.acquire();
+        try{
+            JsonWriter writer = new JsonWriter(response.getOutputStream(), buffer);
+            writer.beginArray();
+            for (EmbeddedHttpResponse result : results) {
+                writer.beginObject();
+                writer.name("status").value(result.getStatus());
+                if(result instanceof NotExecutedResponse){
+                    writer.name("executed").value(false);
+                }
+                writeHeaders(writer, result);
+                String contentType = result.getContentType();
+                byte[] content = result.getContent();
+                if(contentType != null){
+                    writer.name("contentType").value(contentType);
+                }
+                if(content.length > 0){
+                    writer.name("body");
+                    if(contentType != null && contentType.regionMatches(true, 0, JSON_TYPE, 0, JSON_TYPE.length())){
+                        writer.jsonValue(content, 0, content.length);
+                    }else if(isText(contentType)){
+                        writer.value(new String(content, Charset.forName(result.getCharacterEncoding())));
+                    }else{
+                        writer.value(Base64.getEncoder().encodeToString(content));
+                        writer.name("bodyEncoding").value("base64");
+                    }
+                }
+                writer.endObject();
+            }
+            writer.endArray();
+            if(!writer.isFlushed()){
+                response.setContentLength(writer.buffered());
+            }
+            writer.flush();
+        }finally {
+            JsonBuffers.release(buffer);
+        }
+    }
+
+    private static void writeHeaders(JsonWriter writer, EmbeddedHttpResponse result) throws IOException {
+        boolean started = false;
+        for (String name : result.getHeaderNames()) {
+            if(hidden(name)){
+                continue;
+            }
+            if(!started){
+                writer.name("headers").beginObject();
+                started = true;
+            }
+            Collection<String> values = result.getHeaders(name);
+            writer.name(name);
+            if(values.size() == 1){
+                writer.value(values.iterator().next());
+            }else{
+                writer.beginArray();
+                for (String value : values) {
+                    writer.value(value);
+                }
+                writer.endArray();
+            }
+        }
+        if(started){
+            writer.endObject();
+        }
+    }
+
+    /**
+     * 没有Content-Type时handler一般直接写字符串 按文本处理
+     * */
+    private static boolean isText(String contentType){
+        if(contentType == null){
+            return true;
+        }
+        String type = contentType.toLowerCase(Locale.ENGLISH);
+        return type.startsWith("text/") || type.contains("json") || type.contains("xml")
+                || type.contains("javascript") || type.startsWith("application/x-www-form-urlencoded");
+    }
+
+    private static boolean hidden(String name){
+        String key = name.toLowerCase(Locale.ENGLISH);
+        for (String header : HIDDEN_HEADERS) {
+            if(header.equals(key)){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public int getMaxItems() {
+        return maxItems;
+    }
+
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    public long getBatches() {
+        return batches.sum();
+    }
+
+    public long getItems() {
+        return items.sum();
+    }
+
+    public long getTimeouts() {
+        return timeouts.sum();
+    }
+
+    /**
+     * 超时时还没有开始 没有执行的项数 包含在timeouts中
+     * */
+    public long getSkipped() {
+        return skipped.sum();
+    }
+
+    /**
+     * 关闭执行子请求的线程池
+     * */
+    public void close(){
+        executor.shutdown();
+    }
+
+    @Override
+    public String toString() {
+        return "maxItems=" + maxItems + ",concurrency=" + concurrency + ",batches=" + batches.sum()
+                + ",items=" + items.sum() + ",timeouts=" + timeouts.sum() + ",skipped=" + skipped.sum();
+    }
+
+    /**
+     * 超时前没有开始执行的项 handler没有被调用 调用方可以安全重试
+     * */
+    private static class NotExecutedResponse extends EmbeddedHttpResponse {
+    }
+
+    /**
+     * 按普通请求分发一个子请求 由DispatcherServlet实现
+     * */
+    public interface Dispatcher {
+
+        void dispatch(HttpServletRequest request, HttpServletResponse response) throws Exception;
+    }
+}
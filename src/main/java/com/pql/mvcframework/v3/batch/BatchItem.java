@@ -0,0 +1,213 @@
+package com.pql.mvcframework.v3.batch;
+
+import com.pql.mvcframework.exception.PQLBusinessException;
+import com.pql.mvcframework.v3.json.JsonReader;
+import com.pql.mvcframework.v3.json.JsonWriter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 批量请求中的一项
+ * {"method":"GET","path":"/demo/query?name=tom","params":{"b":[1,2]},"headers":{"X-Id":"1"},"body":{...}}
+ * 只有path必填 params编码后追加到path的查询字符串之后 值为数组时是同名的多个参数
+ * body为字符串时原样作为请求体 其他json值按json输出 Content-Type默认为application/json
+ * */
+public class BatchItem {
+
+    private static final String JSON_CONTENT_TYPE = "application/json;charset=UTF-8";
+
+    private String method = "GET";
+    private String path;
+    private String queryString;
+
+    /**
+     * key为小写的头名称
+     * */
+    private final Map<String, String> headers = new LinkedHashMap<String, String>();
+    private byte[] body = new byte[0];
+
+    /**
+     * 读取一项 格式错误时抛出400的业务异常
+     * */
+    static BatchItem read(JsonReader reader, byte[] buffer) throws IOException {
+        BatchItem item = new BatchItem();
+        StringBuilder params = new StringBuilder();
+        boolean jsonBody = false;
+        reader.beginObject();
+        while (reader.hasNext()){
+            String name = reader.nextName();
+            if("method".equals(name)){
+                item.method = reader.nextString().toUpperCase(Locale.ENGLISH);
+            }else if("path".equals(name)){
+                item.path = reader.nextString();
+            }else if("params".equals(name)){
+                readParams(reader, params);
+            }else if("headers".equals(name)){
+                reader.beginObject();
+                while (reader.hasNext()){
+                    String header = reader.nextName().toLowerCase(Locale.ENGLISH);
+                    item.headers.put(header, reader.nextString());
+                }
+                reader.endObject();
+            }else if("body".equals(name)){
+                if(reader.peek() == JsonReader.STRING){
+                    item.body = reader.nextString().getBytes(StandardCharsets.UTF_8);
+                }else{
+                    ByteArrayOutputStream out = new ByteArrayOutputStream();
+                    JsonWriter writer = new JsonWriter(out, buffer);
+                    copy(reader, writer);
+                    writer.flush();
+                    item.body = out.toByteArray();
+                    jsonBody = true;
+                }
+            }else{
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if(item.path == null || !item.path.startsWith("/")){
+            throw new PQLBusinessException("the batch item path must start with /: " + item.path);
+        }
+        int query = item.path.indexOf('?');
+        if(query >= 0){
+            item.queryString = item.path.substring(query + 1);
+            item.path = item.path.substring(0, query);
+        }
+        if(params.length() > 0){
+            item.queryString = item.queryString == null || item.queryString.isEmpty()
+                    ? params.toString() : item.queryString + "&" + params;
+        }
+        if(jsonBody && !item.headers.containsKey("content-type")){
+            item.headers.put("content-type", JSON_CONTENT_TYPE);
+        }
+        return item;
+    }
+
+    /**
+     * 参数值可以是字符串 数字 布尔值或它们的数组 null表示没有该参数
+     * */
+    private static void readParams(JsonReader reader, StringBuilder params) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()){
+            String name = encode(reader.nextName());
+            if(reader.peek() == JsonReader.BEGIN_ARRAY){
+                reader.beginArray();
+                while (reader.hasNext()){
+                    appendParam(params, name, readScalar(reader));
+                }
+                reader.endArray();
+            }else{
+                appendParam(params, name, readScalar(reader));
+            }
+        }
+        reader.endObject();
+    }
+
+    private static void appendParam(StringBuilder params, String name, String value){
+        if(value == null){
+            return;
+        }
+        if(params.length() > 0){
+            params.append('&');
+        }
+        params.append(name).append('=').append(encode(value));
+    }
+
+    private static String readScalar(JsonReader reader) throws IOException {
+        switch (reader.peek()){
+            case JsonReader.STRING:
+            case JsonReader.NUMBER:
+                return reader.nextString();
+            case JsonReader.TRUE:
+            case JsonReader.FALSE:
+                return String.valueOf(reader.nextBoolean());
+            case JsonReader.NULL:
+                reader.nextNull();
+                return null;
+            default:
+                throw new PQLBusinessException("the batch param value must be a string, number or boolean");
+        }
+    }
+
+    /**
+     * 把下一个json值原样复制到writer 数字保持原文
+     * */
+    private static void copy(JsonReader reader, JsonWriter writer) throws IOException {
+        switch (reader.peek()){
+            case JsonReader.BEGIN_OBJECT:
+                reader.beginObject();
+                writer.beginObject();
+                while (reader.hasNext()){
+                    writer.name(reader.nextName());
+                    copy(reader, writer);
+                }
+                reader.endObject();
+                writer.endObject();
+                break;
+            case JsonReader.BEGIN_ARRAY:
+                reader.beginArray();
+                writer.beginArray();
+                while (reader.hasNext()){
+                    copy(reader, writer);
+                }
+                reader.endArray();
+                writer.endArray();
+                break;
+            case JsonReader.STRING:
+                writer.value(reader.nextString());
+                break;
+            case JsonReader.NUMBER:
+                writer.numberValue(reader.nextString());
+                break;
+            case JsonReader.TRUE:
+            case JsonReader.FALSE:
+                writer.value(reader.nextBoolean());
+                break;
+            default:
+                reader.nextNull();
+                writer.nullValue();
+        }
+    }
+
+    private static String encode(String value){
+        try{
+            return URLEncoder.encode(value, "UTF-8");
+        }catch (UnsupportedEncodingException e){
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    /**
+     * 不含查询字符串的路径 相对于context path
+     * */
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * path中的查询字符串和params合并后的结果 都没有时为null
+     * */
+    public String getQueryString() {
+        return queryString;
+    }
+
+    public Map<String, String> getHeaders() {
+        return headers;
+    }
+
+    public byte[] getBody() {
+        return body;
+    }
+}
@@ -0,0 +1,348 @@
+package com.pql.mvcframework.v3.batch;
+
+import com.pql.mvcframework.v3.bind.QueryParameters;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.ReadListener;
+import javax.servlet.ServletInputStream;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UnsupportedEncodingException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.*;
+
+/**
+ * 批量请求中的一个子请求 按普通请求交给分发流程
+ * 方法 路径 参数和请求体来自BatchItem 其余的头和cookie来自批量请求 在开始前复制一份 子请求并行时不访问原请求的头
+ * 与请求体和缓存协商有关的头不继承 属性和编码每个子请求独立 不支持异步
+ * */
+public class BatchRequest extends HttpServletRequestWrapper {
+
+    private static final String FORM_CONTENT_TYPE = "application/x-www-form-urlencoded";
+
+    /**
+     * 不从批量请求继承的头
+     * */
+    private static final Set<String> NOT_INHERITED = new HashSet<String>(Arrays.asList(
+            "content-type", "content-length", "transfer-encoding", "expect", "accept-encoding",
+            "if-none-match", "if-modified-since", "if-match", "if-unmodified-since", "range"));
+
+    private final BatchItem item;
+    private final String requestURI;
+    private final Map<String, List<String>> inheritedHeaders;
+    private final Map<String, String> headerNames;
+    private final Cookie[] cookies;
+
+    private final Map<String, Object> attributes = new HashMap<String, Object>();
+    private Map<String, String[]> parameters;
+    private String characterEncoding;
+    private ServletInputStream inputStream;
+    private BufferedReader reader;
+
+    /**
+     * @param inheritedHeaders 批量请求的头 key为小写名称 由copyHeaders生成
+     * @param headerNames 小写名称对应的原始名称
+     * */
+    public BatchRequest(HttpServletRequest request, BatchItem item, Map<String, List<String>> inheritedHeaders,
+                        Map<String, String> headerNames, Cookie[] cookies){
+        super(request);
+        this.item = item;
+        this.requestURI = request.getContextPath() + item.getPath();
+        this.inheritedHeaders = inheritedHeaders;
+        this.headerNames = headerNames;
+        this.cookies = cookies;
+    }
+
+    /**
+     * 复制批量请求中可以继承的头 所有子请求共用 只读
+     * */
+    static Map<String, List<String>> copyHeaders(HttpServletRequest request, Map<String, String> headerNames){
+        Map<String, List<String>> headers = new HashMap<String, List<String>>();
+        Enumeration<String> names = request.getHeaderNames();
+        while (names != null && names.hasMoreElements()){
+            String name = names.nextElement();
+            String key = name.toLowerCase(Locale.ENGLISH);
+            if(NOT_INHERITED.contains(key) || headers.containsKey(key)){
+                continue;
+            }
+            headers.put(key, Collections.list(request.getHeaders(name)));
+            headerNames.put(key, name);
+        }
+        return headers;
+    }
+
+    public BatchItem getItem() {
+        return item;
+    }
+
+    @Override
+    public String getMethod() {
+        return item.getMethod();
+    }
+
+    @Override
+    public String getRequestURI() {
+        return requestURI;
+    }
+
+    @Override
+    public StringBuffer getRequestURL() {
+        StringBuffer url = new StringBuffer();
+        url.append(getScheme()).append("://").append(getServerName()).append(':').append(getServerPort()).append(requestURI);
+        return url;
+    }
+
+    @Override
+    public String getServletPath() {
+        return "";
+    }
+
+    @Override
+    public String getPathInfo() {
+        return item.getPath();
+    }
+
+    @Override
+    public String getQueryString() {
+        return item.getQueryString();
+    }
+
+    @Override
+    public String getHeader(String name) {
+        String key = name.toLowerCase(Locale.ENGLISH);
+        String value = item.getHeaders().get(key);
+        if(value != null){
+            return value;
+        }
+        List<String> values = inheritedHeaders.get(key);
+        return values == null || values.isEmpty() ? null : values.get(0);
+    }
+
+    @Override
+    public Enumeration<String> getHeaders(String name) {
+        String key = name.toLowerCase(Locale.ENGLISH);
+        String value = item.getHeaders().get(key);
+        if(value != null){
+            return Collections.enumeration(Collections.singletonList(value));
+        }
+        List<String> values = inheritedHeaders.get(key);
+        return Collections.enumeration(values == null ? Collections.<String>emptyList() : values);
+    }
+
+    @Override
+    public Enumeration<String> getHeaderNames() {
+        Set<String> names = new LinkedHashSet<String>();
+        for (String key : inheritedHeaders.keySet()) {
+            names.add(headerNames.get(key));
+        }
+        for (String key : item.getHeaders().keySet()) {
+            if(!inheritedHeaders.containsKey(key)){
+                names.add(key);
+            }
+        }
+        return Collections.enumeration(names);
+    }
+
+    @Override
+    public int getIntHeader(String name) {
+        String value = getHeader(name);
+        return value == null ? -1 : Integer.parseInt(value.trim());
+    }
+
+    @Override
+    public long getDateHeader(String name) {
+        String value = getHeader(name);
+        if(value == null){
+            return -1;
+        }
+        SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+        try{
+            return format.parse(value).getTime();
+        }catch (ParseException e){
+            throw new IllegalArgumentException("the header " + name + " is not a date: " + value);
+        }
+    }
+
+    @Override
+    public Cookie[] getCookies() {
+        return cookies;
+    }
+
+    @Override
+    public String getContentType() {
+        return item.getHeaders().get("content-type");
+    }
+
+    @Override
+    public int getContentLength() {
+        return item.getBody().length;
+    }
+
+    @Override
+    public long getContentLengthLong() {
+        return item.getBody().length;
+    }
+
+    @Override
+    public String getCharacterEncoding() {
+        if(characterEncoding != null){
+            return characterEncoding;
+        }
+        String contentType = getContentType();
+        int index = contentType == null ? -1 : contentType.toLowerCase(Locale.ENGLISH).indexOf("charset=");
+        return index < 0 ? null : contentType.substring(index + 8).trim();
+    }
+
+    @Override
+    public void setCharacterEncoding(String env) {
+        this.characterEncoding = env;
+    }
+
+    @Override
+    public String getParameter(String name) {
+        String[] values = getParameterMap().get(name);
+        return values == null ? null : values[0];
+    }
+
+    @Override
+    public String[] getParameterValues(String name) {
+        return getParameterMap().get(name);
+    }
+
+    @Override
+    public Enumeration<String> getParameterNames() {
+        return Collections.enumeration(getParameterMap().keySet());
+    }
+
+    /**
+     * 查询字符串和表单请求体中的参数 按出现顺序
+     * */
+    @Override
+    public Map<String, String[]> getParameterMap() {
+        if(parameters == null){
+            Map<String, List<String>> values = new LinkedHashMap<String, List<String>>();
+            if(item.getQueryString() != null){
+                QueryParameters.parseAll(item.getQueryString(), values);
+            }
+            String contentType = getContentType();
+            if(item.getBody().length > 0 && contentType != null && contentType.regionMatches(true, 0, FORM_CONTENT_TYPE, 0, FORM_CONTENT_TYPE.length())){
+                try{
+                    QueryParameters.parseAll(new String(item.getBody(), "ISO-8859-1"), values);
+                }catch (UnsupportedEncodingException e){
+                    throw new IllegalStateException(e);
+                }
+            }
+            Map<String, String[]> result = new LinkedHashMap<String, String[]>();
+            for (Map.Entry<String, List<String>> entry : values.entrySet()) {
+                result.put(entry.getKey(), entry.getValue().toArray(new String[0]));
+            }
+            parameters = Collections.unmodifiableMap(result);
+        }
+        return parameters;
+    }
+
+    @Override
+    public ServletInputStream getInputStream() {
+        if(reader != null){
+            throw new IllegalStateException("getReader() has already been called");
+        }
+        if(inputStream == null){
+            final ByteArrayInputStream in = new ByteArrayInputStream(item.getBody());
+            inputStream = new ServletInputStream() {
+                public boolean isFinished() {
+                    return in.available() == 0;
+                }
+
+                public boolean isReady() {
+                    return true;
+                }
+
+                public void setReadListener(ReadListener readListener) {
+                    throw new IllegalStateException("non-blocking read is not supported in a batch request");
+                }
+
+                public int read() {
+                    return in.read();
+                }
+
+                public int read(byte[] b, int off, int len) {
+                    return in.read(b, off, len);
+                }
+            };
+        }
+        return inputStream;
+    }
+
+    @Override
+    public BufferedReader getReader() throws IOException {
+        if(inputStream != null){
+            throw new IllegalStateException("getInputStream() has already been called");
+        }
+        if(reader == null){
+            String encoding = getCharacterEncoding();
+            reader = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(item.getBody()),
+                    encoding == null ? "UTF-8" : encoding));
+        }
+        return reader;
+    }
+
+    @Override
+    public Object getAttribute(String name) {
+        return attributes.get(name);
+    }
+
+    @Override
+    public Enumeration<String> getAttributeNames() {
+        return Collections.enumeration(attributes.keySet());
+    }
+
+    @Override
+    public void setAttribute(String name, Object o) {
+        if(o == null){
+            attributes.remove(name);
+            return;
+        }
+        attributes.put(name, o);
+    }
+
+    @Override
+    public void removeAttribute(String name) {
+        attributes.remove(name);
+    }
+
+    /**
+     * 子请求在批量请求的线程中同步完成
+     * */
+    @Override
+    public boolean isAsyncSupported() {
+        return false;
+    }
+
+    @Override
+    public boolean isAsyncStarted() {
+        return false;
+    }
+
+    @Override
+    public AsyncContext startAsync() {
+        throw new IllegalStateException("async is not supported in a batch request");
+    }
+
+    @Override
+    public AsyncContext startAsync(ServletRequest servletRequest, ServletResponse servletResponse) {
+        throw new IllegalStateException("async is not supported in a batch request");
+    }
+
+    @Override
+    public AsyncContext getAsyncContext() {
+        throw new IllegalStateException("async is not supported in a batch request");
+    }
+}
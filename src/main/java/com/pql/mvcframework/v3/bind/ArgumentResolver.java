@@ -0,0 +1,13 @@
+package com.pql.mvcframework.v3.bind;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * 方法形参解析器
+ * 每个形参在启动时确定一个解析器 请求时直接按下标取值
+ * */
+public interface ArgumentResolver {
+
+    Object resolve(HttpServletRequest request, HttpServletResponse response) throws Exception;
+}
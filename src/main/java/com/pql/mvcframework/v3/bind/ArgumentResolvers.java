@@ -0,0 +1,361 @@
+package com.pql.mvcframework.v3.bind;
+
+import com.pql.mvcframework.annotation.PQLPathVariable;
+import com.pql.mvcframework.annotation.PQLRequestBody;
+import com.pql.mvcframework.annotation.PQLRequestParam;
+import com.pql.mvcframework.exception.PQLBusinessException;
+import com.pql.mvcframework.v3.convert.ConversionService;
+import com.pql.mvcframework.v3.convert.Converter;
+import com.pql.mvcframework.v3.convert.ValuesConverter;
+import com.pql.mvcframework.v3.json.JsonBuffers;
+import com.pql.mvcframework.v3.json.JsonCodec;
+import com.pql.mvcframework.v3.json.JsonCodecs;
+import com.pql.mvcframework.v3.json.JsonReader;
+import com.pql.mvcframework.v3.router.PathVariables;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * 启动时为方法的每个形参生成解析器
+ * */
+public final class ArgumentResolvers {
+
+    /**
+     * 无法解析的形参 固定传null
+     * */
+    private static final ArgumentResolver NULL = new ArgumentResolver() {
+        public Object resolve(HttpServletRequest request, HttpServletResponse response) {
+            return null;
+        }
+    };
+
+    private static final ArgumentResolver REQUEST = new ArgumentResolver() {
+        public Object resolve(HttpServletRequest request, HttpServletResponse response) {
+            return request;
+        }
+    };
+
+    private static final ArgumentResolver RESPONSE = new ArgumentResolver() {
+        public Object resolve(HttpServletRequest request, HttpServletResponse response) {
+            return response;
+        }
+    };
+
+    /**
+     * 参数在请求体中 需要容器解析
+     * */
+    private static final String FORM_CONTENT_TYPE = "application/x-www-form-urlencoded";
+    private static final String MULTIPART_CONTENT_TYPE = "multipart/form-data";
+
+    private ArgumentResolvers(){
+    }
+
+    /**
+     * 是否为request response这类直接传入的servlet对象 不属于请求的参数值
+     * */
+    public static boolean isServletArgument(ArgumentResolver resolver){
+        return resolver == REQUEST || resolver == RESPONSE;
+    }
+
+    /**
+     * 是否为读取请求体的解析器 请求体不参与响应缓存的key
+     * */
+    public static boolean isRequestBody(ArgumentResolver resolver){
+        return resolver instanceof RequestBodyResolver || resolver instanceof StreamingBodyResolver;
+    }
+
+    /**
+     * 按形参顺序生成解析器数组
+     * */
+    public static ArgumentResolver[] forMethod(Method method, ConversionService conversionService){
+        return forMethod(method, conversionService, Collections.<String>emptyList(), new JsonCodecs(conversionService));
+    }
+
+    /**
+     * 按形参顺序生成解析器数组 pathVariableNames为映射url中按顺序出现的模板变量名
+     * 请求体的codec在这里一次性生成
+     * */
+    public static ArgumentResolver[] forMethod(Method method, ConversionService conversionService,
+                                               List<String> pathVariableNames, JsonCodecs jsonCodecs){
+        Class<?>[] parameterTypes = method.getParameterTypes();
+        Type[] genericParameterTypes = method.getGenericParameterTypes();
+        Annotation[][] parameterAnnotations = method.getParameterAnnotations();
+        ArgumentResolver[] resolvers = new ArgumentResolver[parameterTypes.length];
+        ParameterNames parameterNames = new ParameterNames();
+        for (int i = 0; i < parameterTypes.length; i++) {
+            resolvers[i] = forParameter(parameterTypes[i], genericParameterTypes[i], parameterAnnotations[i],
+                    conversionService, pathVariableNames, parameterNames, jsonCodecs, method);
+        }
+        parameterNames.names = parameterNames.list.toArray(new String[0]);
+        return resolvers;
+    }
+
+    private static ArgumentResolver forParameter(Class<?> parameterType, Type genericType,
+                                                 Annotation[] annotations, ConversionService conversionService,
+                                                 List<String> pathVariableNames, ParameterNames parameterNames,
+                                                 JsonCodecs jsonCodecs, Method method){
+        if(parameterType == HttpServletRequest.class){
+            return REQUEST;
+        }
+        if(parameterType == HttpServletResponse.class){
+            return RESPONSE;
+        }
+        for (Annotation annotation : annotations) {
+            if(annotation instanceof PQLRequestParam){
+                String paramName = ((PQLRequestParam) annotation).value().trim();
+                if(!"".equals(paramName)){
+                    return new RequestParamResolver(paramName, parameterNames, parameterNames.slot(paramName),
+                            conversionService.getValuesConverter(parameterType, genericType));
+                }
+            }
+            if(annotation instanceof PQLPathVariable){
+                String variableName = ((PQLPathVariable) annotation).value().trim();
+                int index = pathVariableNames.indexOf(variableName);
+                if(index < 0){
+                    throw new IllegalStateException("the path variable " + variableName + " is not exists on " + method);
+                }
+                return new PathVariableResolver(variableName, index, conversionService.getConverter(parameterType),
+                        parameterType.isPrimitive() ? ConversionService.defaultValue(parameterType) : null);
+            }
+            if(annotation instanceof PQLRequestBody){
+                if(parameterType == Iterator.class){
+                    Type elementType = genericType instanceof ParameterizedType
+                            ? ((ParameterizedType) genericType).getActualTypeArguments()[0] : Object.class;
+                    return new StreamingBodyResolver(jsonCodecs.forType(elementType));
+                }
+                return new RequestBodyResolver(jsonCodecs.forType(genericType), ((PQLRequestBody) annotation).required(),
+                        parameterType.isPrimitive() ? ConversionService.defaultValue(parameterType) : null);
+            }
+        }
+        if(parameterType.isPrimitive()){
+            return constant(ConversionService.defaultValue(parameterType));
+        }
+        return NULL;
+    }
+
+    private static boolean startsWithIgnoreCase(String text, String prefix){
+        return text.regionMatches(true, 0, prefix, 0, prefix.length());
+    }
+
+    /**
+     * 转换失败是请求中的值不合法 按400返回 不作为服务端错误记录
+     * */
+    private static PQLBusinessException invalidValue(String name){
+        return new PQLBusinessException(400, "invalid value for parameter '" + name + "'");
+    }
+
+    private static ArgumentResolver constant(final Object value){
+        return new ArgumentResolver() {
+            public Object resolve(HttpServletRequest request, HttpServletResponse response) {
+                return value;
+            }
+        };
+    }
+
+    /**
+     * 一个方法绑定的全部请求参数名 同名参数共用一个下标
+     * */
+    private static class ParameterNames {
+
+        private final List<String> list = new ArrayList<String>();
+        private String[] names;
+
+        private int slot(String name){
+            int slot = list.indexOf(name);
+            if(slot < 0){
+                list.add(name);
+                slot = list.size() - 1;
+            }
+            return slot;
+        }
+    }
+
+    /**
+     * 按名称取请求参数
+     * 表单请求由容器解析 其他请求自行扫描queryString 只解码方法绑定的参数
+     * */
+    private static class RequestParamResolver implements ArgumentResolver {
+
+        private final String name;
+        private final ParameterNames parameterNames;
+        private final int slot;
+        private final ValuesConverter converter;
+
+        private RequestParamResolver(String name, ParameterNames parameterNames, int slot, ValuesConverter converter){
+            this.name = name;
+            this.parameterNames = parameterNames;
+            this.slot = slot;
+            this.converter = converter;
+        }
+
+        public Object resolve(HttpServletRequest request, HttpServletResponse response) throws Exception {
+            String contentType = request.getContentType();
+            if(contentType != null && (startsWithIgnoreCase(contentType, FORM_CONTENT_TYPE)
+                    || startsWithIgnoreCase(contentType, MULTIPART_CONTENT_TYPE))){
+                return convert(request.getParameterValues(name));
+            }
+            String queryString = request.getQueryString();
+            String[] names = parameterNames.names;
+            QueryParameters parameters = (QueryParameters) request.getAttribute(QueryParameters.ATTRIBUTE);
+            if(parameters == null || !parameters.isFor(queryString, names)){
+                parameters = QueryParameters.parse(queryString, names);
+                request.setAttribute(QueryParameters.ATTRIBUTE, parameters);
+            }
+            return convert(parameters.get(slot));
+        }
+
+        private Object convert(String[] values) throws Exception {
+            try{
+                return converter.convert(values);
+            }catch (PQLBusinessException e){
+                throw e;
+            }catch (Exception e){
+                throw invalidValue(name);
+            }
+        }
+    }
+
+    /**
+     * 按下标取模板变量 位置在路由时已经记录 这里才截取字符串
+     * */
+    private static class PathVariableResolver implements ArgumentResolver {
+
+        private final String name;
+        private final int index;
+        private final Converter<?> converter;
+        private final Object defaultValue;
+
+        private PathVariableResolver(String name, int index, Converter<?> converter, Object defaultValue){
+            this.name = name;
+            this.index = index;
+            this.converter = converter;
+            this.defaultValue = defaultValue;
+        }
+
+        public Object resolve(HttpServletRequest request, HttpServletResponse response) throws Exception {
+            PathVariables variables = (PathVariables) request.getAttribute(PathVariables.ATTRIBUTE);
+            if(variables == null){
+                return defaultValue;
+            }
+            try{
+                return converter.convert(variables.get(index));
+            }catch (PQLBusinessException e){
+                throw e;
+            }catch (Exception e){
+                throw invalidValue(name);
+            }
+        }
+    }
+
+    /**
+     * 从输入流直接解析json 使用线程内缓存的字节缓冲
+     * */
+    private static class RequestBodyResolver implements ArgumentResolver {
+
+        private final JsonCodec<Object> codec;
+        private final boolean required;
+        private final Object defaultValue;
+
+        private RequestBodyResolver(JsonCodec<Object> codec, boolean required, Object defaultValue){
+            this.codec = codec;
+            this.required = required;
+            this.defaultValue = defaultValue;
+        }
+
+        public Object resolve(HttpServletRequest request, HttpServletResponse response) throws Exception {
+            if(request.getContentLengthLong() == 0){
+                return missing();
+            }
+            byte[] buffer = JsonBuffers.acquire();
+            try{
+                JsonReader reader = new JsonReader(request.getInputStream(), buffer);
+                if(reader.peek() == JsonReader.END_DOCUMENT){
+                    return missing();
+                }
+                Object value = JsonCodecs.read(codec, reader);
+                reader.endDocument();
+                return value == null ? defaultValue : value;
+            }finally {
+                JsonBuffers.release(buffer);
+            }
+        }
+
+        private Object missing(){
+            if(required){
+                throw new PQLBusinessException("request body is missing");
+            }
+            return defaultValue;
+        }
+    }
+
+    /**
+     * 请求体为json数组 handler遍历时才逐个读取元素
+     * 读取发生在handler调用期间 使用单独的缓冲
+     * */
+    private static class StreamingBodyResolver implements ArgumentResolver {
+
+        private final JsonCodec<Object> codec;
+
+        private StreamingBodyResolver(JsonCodec<Object> codec){
+            this.codec = codec;
+        }
+
+        public Object resolve(HttpServletRequest request, HttpServletResponse response) throws Exception {
+            final JsonReader reader = new JsonReader(request.getInputStream(), new byte[JsonBuffers.BUFFER_SIZE]);
+            return new Iterator<Object>() {
+
+                private boolean started;
+                private boolean finished;
+
+                public boolean hasNext() {
+                    try{
+                        if(!started){
+                            started = true;
+                            int token = reader.peek();
+                            if(token == JsonReader.END_DOCUMENT || token == JsonReader.NULL){
+                                finished = true;
+                                return false;
+                            }
+                            reader.beginArray();
+                        }
+                        if(finished){
+                            return false;
+                        }
+                        if(reader.hasNext()){
+                            return true;
+                        }
+                        reader.endArray();
+                        reader.endDocument();
+                        finished = true;
+                        return false;
+                    }catch (IOException e){
+                        throw new UncheckedIOException(e);
+                    }
+                }
+
+                public Object next() {
+                    if(!hasNext()){
+                        throw new NoSuchElementException();
+                    }
+                    try{
+                        return JsonCodecs.read(codec, reader);
+                    }catch (IOException e){
+                        throw new UncheckedIOException(e);
+                    }
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package com.pql.mvcframework.v3.bind;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 按需解析queryString
+ * 一次扫描整个queryString 只解码handler声明的参数 其余参数不产生任何对象
+ * 参数名不含%和+时直接在原字符串上比较 值不含%和+时直接截取
+ * queryString按UTF-8解码
+ * */
+public final class QueryParameters {
+
+    /**
+     * 存放在request attribute中的名称 同一请求的多个参数共用一次解析结果
+     * */
+    public static final String ATTRIBUTE = QueryParameters.class.getName();
+
+    private final String queryString;
+    private final String[] names;
+    private final String[][] values;
+
+    private QueryParameters(String queryString, String[] names){
+        this.queryString = queryString;
+        this.names = names;
+        this.values = new String[names.length][];
+    }
+
+    /**
+     * 取出names中各参数的值 下标与names一致
+     * */
+    public static QueryParameters parse(String queryString, String[] names){
+        QueryParameters parameters = new QueryParameters(queryString, names);
+        if(queryString == null || names.length == 0){
+            return parameters;
+        }
+        int length = queryString.length();
+        int start = 0;
+        while (start < length){
+            // 在当前参数范围内找=和&
+            int eq = -1;
+            int end = start;
+            for (; end < length; end++) {
+                char c = queryString.charAt(end);
+                if(c == '&'){
+                    break;
+                }
+                if(c == '=' && eq < 0){
+                    eq = end;
+                }
+            }
+            if(eq < 0){
+                eq = end;
+            }
+            if(eq > start){
+                int slot = parameters.slot(start, eq);
+                if(slot >= 0){
+                    String value = eq == end ? "" : decode(queryString, eq + 1, end, true);
+                    parameters.add(slot, value);
+                }
+            }
+            start = end + 1;
+        }
+        return parameters;
+    }
+
+    /**
+     * 是否为同一个queryString和参数表的解析结果
+     * */
+    public boolean isFor(String queryString, String[] names){
+        return this.queryString == queryString && this.names == names;
+    }
+
+    /**
+     * 参数的全部值 没有该参数时为null
+     * */
+    public String[] get(int slot){
+        return values[slot];
+    }
+
+    private int slot(int start, int end){
+        int length = end - start;
+        if(!needsDecode(queryString, start, end)){
+            for (int i = 0; i < names.length; i++) {
+                if(names[i].length() == length && queryString.regionMatches(start, names[i], 0, length)){
+                    return i;
+                }
+            }
+            return -1;
+        }
+        String name = decode(queryString, start, end, true);
+        for (int i = 0; i < names.length; i++) {
+            if(names[i].equals(name)){
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void add(int slot, String value){
+        String[] exists = values[slot];
+        if(exists == null){
+            values[slot] = new String[]{value};
+            return;
+        }
+        String[] grown = new String[exists.length + 1];
+        System.arraycopy(exists, 0, grown, 0, exists.length);
+        grown[exists.length] = value;
+        values[slot] = grown;
+    }
+
+    private static boolean needsDecode(String text, int start, int end){
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if(c == '%' || c == '+'){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 解码全部参数放入values 按出现顺序 用于getParameterMap和表单请求体
+     * */
+    public static void parseAll(String text, Map<String, List<String>> values){
+        int start = 0;
+        int length = text.length();
+        while (start <= length){
+            int end = text.indexOf('&', start);
+            if(end < 0){
+                end = length;
+            }
+            if(end > start){
+                int eq = text.indexOf('=', start);
+                if(eq < 0 || eq > end){
+                    eq = end;
+                }
+                String name = decode(text, start, eq, true);
+                String value = eq < end ? decode(text, eq + 1, end, true) : "";
+                List<String> list = values.get(name);
+                if(list == null){
+                    list = new ArrayList<String>(1);
+                    values.put(name, list);
+                }
+                list.add(value);
+            }
+            start = end + 1;
+        }
+    }
+
+    /**
+     * 解码text的[start, end) 不需要解码时直接截取
+     * plusAsSpace为true时+解码为空格 路径中的+保持原样
+     * 不完整的%转义保持原样
+     * */
+    public static String decode(String text, int start, int end, boolean plusAsSpace){
+        int i = start;
+        while (i < end){
+            char c = text.charAt(i);
+            if(c == '%' || (c == '+' && plusAsSpace)){
+                break;
+            }
+            i++;
+        }
+        if(i == end){
+            return start == 0 && end == text.length() ? text : text.substring(start, end);
+        }
+        byte[] bytes = new byte[(end - start) * 4];
+        int count = 0;
+        for (i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if(c == '%' && i + 2 < end){
+                int high = Character.digit(text.charAt(i + 1), 16);
+                int low = Character.digit(text.charAt(i + 2), 16);
+                if(high >= 0 && low >= 0){
+                    bytes[count++] = (byte) ((high << 4) | low);
+                    i += 2;
+                    continue;
+                }
+                bytes[count++] = '%';
+            }else if(c == '+' && plusAsSpace){
+                bytes[count++] = ' ';
+            }else if(c < 0x80){
+                bytes[count++] = (byte) c;
+            }else{
+                // 原样出现的非ASCII字符按UTF-8编码
+                int codePoint = text.codePointAt(i);
+                if(Character.isSupplementaryCodePoint(codePoint)){
+                    i++;
+                }
+                byte[] encoded = new String(Character.toChars(codePoint)).getBytes(StandardCharsets.UTF_8);
+                System.arraycopy(encoded, 0, bytes, count, encoded.length);
+                count += encoded.length;
+            }
+        }
+        return new String(bytes, 0, count, StandardCharsets.UTF_8);
+    }
+}
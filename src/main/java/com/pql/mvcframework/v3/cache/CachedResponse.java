@@ -0,0 +1,43 @@
+package com.pql.mvcframework.v3.cache;
+
+import java.util.zip.CRC32;
+
+/**
+ * 缓存的响应内容 创建时计算ETag
+ * */
+public class CachedResponse {
+
+    private final byte[] body;
+    private final String contentType;
+    private final String etag;
+
+    public CachedResponse(byte[] body, String contentType){
+        this.body = body;
+        this.contentType = contentType;
+        CRC32 crc = new CRC32();
+        crc.update(body, 0, body.length);
+        this.etag = "\"" + Long.toHexString(crc.getValue()) + "-" + Integer.toHexString(body.length) + "\"";
+    }
+
+    public byte[] getBody() {
+        return body;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public String getEtag() {
+        return etag;
+    }
+
+    /**
+     * 客户端的If-None-Match是否命中
+     * */
+    public boolean matches(String ifNoneMatch){
+        if(ifNoneMatch == null){
+            return false;
+        }
+        return "*".equals(ifNoneMatch.trim()) || ifNoneMatch.contains(etag);
+    }
+}
@@ -0,0 +1,44 @@
+package com.pql.mvcframework.v3.cache;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * 合并调用的输出 状态码 Content-Type和响应内容
+ * */
+public class CoalescedResponse {
+
+    private final int status;
+    private final String contentType;
+    private final byte[] body;
+
+    public CoalescedResponse(int status, String contentType, byte[] body){
+        this.status = status;
+        this.contentType = contentType;
+        this.body = body;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public byte[] getBody() {
+        return body;
+    }
+
+    /**
+     * 写入一个等待的请求
+     * */
+    public void writeTo(HttpServletResponse response) throws IOException {
+        response.setStatus(status);
+        if(contentType != null){
+            response.setContentType(contentType);
+        }
+        response.setContentLength(body.length);
+        response.getOutputStream().write(body);
+    }
+}
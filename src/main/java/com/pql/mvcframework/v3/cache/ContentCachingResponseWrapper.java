@@ -0,0 +1,132 @@
+package com.pql.mvcframework.v3.cache;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+
+/**
+ * 把handler的输出先写入内存 用于缓存
+ * 状态码和Content-Type照常设置到原response上
+ * */
+public class ContentCachingResponseWrapper extends HttpServletResponseWrapper {
+
+    private final ByteArrayOutputStream content = new ByteArrayOutputStream(1024);
+    private ServletOutputStream outputStream;
+    private PrintWriter writer;
+    private int status = SC_OK;
+
+    public ContentCachingResponseWrapper(HttpServletResponse response){
+        super(response);
+    }
+
+    @Override
+    public ServletOutputStream getOutputStream() {
+        if(outputStream == null){
+            outputStream = new ServletOutputStream() {
+                public boolean isReady() {
+                    return true;
+                }
+
+                public void setWriteListener(WriteListener writeListener) {
+                    throw new IllegalStateException("non-blocking output is not supported while caching the response");
+                }
+
+                public void write(int b) {
+                    content.write(b);
+                }
+
+                public void write(byte[] b, int off, int len) {
+                    content.write(b, off, len);
+                }
+            };
+        }
+        return outputStream;
+    }
+
+    @Override
+    public PrintWriter getWriter() throws IOException {
+        if(writer == null){
+            writer = new PrintWriter(new OutputStreamWriter(getOutputStream(), getCharacterEncoding()));
+        }
+        return writer;
+    }
+
+    /**
+     * 长度由缓存输出时统一设置
+     * */
+    @Override
+    public void setContentLength(int len) {
+    }
+
+    @Override
+    public void setContentLengthLong(long len) {
+    }
+
+    @Override
+    public void flushBuffer() {
+        if(writer != null){
+            writer.flush();
+        }
+    }
+
+    @Override
+    public void setStatus(int sc) {
+        this.status = sc;
+        super.setStatus(sc);
+    }
+
+    @Override
+    @SuppressWarnings("deprecation")
+    public void setStatus(int sc, String sm) {
+        this.status = sc;
+        super.setStatus(sc, sm);
+    }
+
+    @Override
+    public void sendError(int sc) throws IOException {
+        this.status = sc;
+        super.sendError(sc);
+    }
+
+    @Override
+    public void sendError(int sc, String msg) throws IOException {
+        this.status = sc;
+        super.sendError(sc, msg);
+    }
+
+    @Override
+    public void sendRedirect(String location) throws IOException {
+        this.status = SC_FOUND;
+        super.sendRedirect(location);
+    }
+
+    @Override
+    public int getStatus() {
+        return status;
+    }
+
+    @Override
+    public void resetBuffer() {
+        content.reset();
+    }
+
+    @Override
+    public void reset() {
+        super.reset();
+        content.reset();
+        status = SC_OK;
+    }
+
+    /**
+     * handler执行完后取出全部输出
+     * */
+    public byte[] getContentAsByteArray(){
+        flushBuffer();
+        return content.toByteArray();
+    }
+}
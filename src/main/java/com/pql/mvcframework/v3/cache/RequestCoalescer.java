@@ -0,0 +1,132 @@
+package com.pql.mvcframework.v3.cache;
+
+import com.pql.mvcframework.exception.PQLBusinessException;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 单个handler的调用合并
+ * 同一key第一个到达的请求负责调用 之后到达的请求等待它的输出 调用结束即移除 不保留结果
+ * key与响应缓存相同 由启动时确定的参数下标生成
+ * */
+public class RequestCoalescer {
+
+    private final long timeoutMillis;
+
+    private final ConcurrentHashMap<ResponseCache.Key, CompletableFuture<CoalescedResponse>> flights
+            = new ConcurrentHashMap<ResponseCache.Key, CompletableFuture<CoalescedResponse>>();
+
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder shared = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+
+    public RequestCoalescer(long timeoutMillis){
+        this.timeoutMillis = Math.max(1, timeoutMillis);
+    }
+
+    /**
+     * 加入key对应的调用 没有进行中的调用时由当前请求负责调用
+     * */
+    public Flight join(ResponseCache.Key key){
+        CompletableFuture<CoalescedResponse> created = new CompletableFuture<CoalescedResponse>();
+        CompletableFuture<CoalescedResponse> existing = flights.putIfAbsent(key, created);
+        if(existing == null){
+            calls.increment();
+            return new Flight(key, created, true);
+        }
+        shared.increment();
+        return new Flight(key, existing, false);
+    }
+
+    /**
+     * 调用者输出完成 先移除再通知 之后到达的请求重新调用
+     * */
+    public void complete(Flight flight, CoalescedResponse response){
+        flights.remove(flight.key, flight.result);
+        flight.result.complete(response);
+    }
+
+    /**
+     * 调用失败 等待的请求各自按异常处理 已经完成时不影响
+     * */
+    public void fail(Flight flight, Throwable e){
+        flights.remove(flight.key, flight.result);
+        flight.result.completeExceptionally(e);
+    }
+
+    /**
+     * 同步等待调用者的输出 超时返回503
+     * */
+    public CoalescedResponse await(Flight flight) throws Exception {
+        try{
+            return flight.result.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        }catch (TimeoutException e){
+            timeouts.increment();
+            throw new PQLBusinessException(503, "coalesced call timed out");
+        }catch (ExecutionException e){
+            Throwable cause = e.getCause();
+            throw cause instanceof Exception ? (Exception) cause : e;
+        }
+    }
+
+    /**
+     * 进行中的调用数
+     * */
+    public int getInFlight(){
+        return flights.size();
+    }
+
+    /**
+     * 实际调用的次数
+     * */
+    public long getCallCount(){
+        return calls.sum();
+    }
+
+    /**
+     * 共享输出 节省下来的调用次数
+     * */
+    public long getSharedCount(){
+        return shared.sum();
+    }
+
+    public long getTimeoutCount(){
+        return timeouts.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "inFlight=" + getInFlight() + ", calls=" + getCallCount() + ", shared=" + getSharedCount()
+                + ", timeouts=" + getTimeoutCount();
+    }
+
+    /**
+     * 一次加入 leader为true时由当前请求调用
+     * */
+    public static final class Flight {
+
+        private final ResponseCache.Key key;
+        private final CompletableFuture<CoalescedResponse> result;
+        private final boolean leader;
+
+        private Flight(ResponseCache.Key key, CompletableFuture<CoalescedResponse> result, boolean leader){
+            this.key = key;
+            this.result = result;
+            this.leader = leader;
+        }
+
+        public boolean isLeader(){
+            return leader;
+        }
+
+        public CompletionStage<CoalescedResponse> getResult(){
+            return result;
+        }
+    }
+}
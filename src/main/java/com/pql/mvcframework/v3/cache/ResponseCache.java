@@ -0,0 +1,174 @@
+package com.pql.mvcframework.v3.cache;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 单个handler的响应缓存
+ * ConcurrentHashMap存放 超过容量时按CLOCK算法淘汰(近似LRU) 读写都不加锁
+ * */
+public class ResponseCache {
+
+    private final int maxEntries;
+    private final long ttlNanos;
+
+    private final ConcurrentHashMap<Key, Entry> entries;
+
+    /**
+     * 淘汰顺序 每个key只出现一次 访问过的entry有一次重新入队的机会
+     * */
+    private final ConcurrentLinkedQueue<Key> clock = new ConcurrentLinkedQueue<Key>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+
+    public ResponseCache(long ttlSeconds, int maxEntries){
+        this.maxEntries = Math.max(1, maxEntries);
+        this.ttlNanos = ttlSeconds > 0 ? TimeUnit.SECONDS.toNanos(ttlSeconds) : 0;
+        this.entries = new ConcurrentHashMap<Key, Entry>(Math.min(this.maxEntries, 1024));
+    }
+
+    /**
+     * 用参与缓存的参数值生成key 调用合并使用同样的key
+     * */
+    public static Key key(Object[] parameterValues, int[] keyIndexes){
+        Object[] values = new Object[keyIndexes.length];
+        for (int i = 0; i < keyIndexes.length; i++) {
+            values[i] = parameterValues[keyIndexes[i]];
+        }
+        return new Key(values);
+    }
+
+    public CachedResponse get(Key key){
+        Entry entry = entries.get(key);
+        if(entry == null){
+            misses.increment();
+            return null;
+        }
+        if(isExpired(entry, System.nanoTime())){
+            // 过期的entry留在原位 等下一次put覆盖或被淘汰
+            expirations.increment();
+            misses.increment();
+            return null;
+        }
+        entry.referenced = true;
+        hits.increment();
+        return entry.response;
+    }
+
+    public void put(Key key, CachedResponse response){
+        Entry old = entries.put(key, new Entry(response, System.nanoTime()));
+        if(old == null){
+            clock.offer(key);
+            evictIfNeeded();
+        }
+    }
+
+    private void evictIfNeeded(){
+        long now = System.nanoTime();
+        while (entries.size() > maxEntries){
+            Key key = clock.poll();
+            if(key == null){
+                return;
+            }
+            Entry entry = entries.get(key);
+            if(entry == null){
+                continue;
+            }
+            if(entry.referenced && !isExpired(entry, now)){
+                entry.referenced = false;
+                clock.offer(key);
+                continue;
+            }
+            if(entries.remove(key, entry)){
+                evictions.increment();
+            }else{
+                // 刚被覆盖 重新排队
+                clock.offer(key);
+            }
+        }
+    }
+
+    private boolean isExpired(Entry entry, long now){
+        return ttlNanos > 0 && now - entry.createdNanos > ttlNanos;
+    }
+
+    public int size(){
+        return entries.size();
+    }
+
+    public int getMaxEntries(){
+        return maxEntries;
+    }
+
+    public long getHitCount(){
+        return hits.sum();
+    }
+
+    public long getMissCount(){
+        return misses.sum();
+    }
+
+    public long getEvictionCount(){
+        return evictions.sum();
+    }
+
+    public long getExpirationCount(){
+        return expirations.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "size=" + size() + ", maxEntries=" + maxEntries + ", hits=" + getHitCount()
+                + ", misses=" + getMissCount() + ", evictions=" + getEvictionCount()
+                + ", expirations=" + getExpirationCount();
+    }
+
+    /**
+     * 缓存key 参数值按内容比较
+     * */
+    public static final class Key {
+
+        private final Object[] values;
+        private final int hash;
+
+        private Key(Object[] values){
+            this.values = values;
+            this.hash = Arrays.deepHashCode(values);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if(this == obj){
+                return true;
+            }
+            if(!(obj instanceof Key)){
+                return false;
+            }
+            Key other = (Key) obj;
+            return hash == other.hash && Arrays.deepEquals(values, other.values);
+        }
+    }
+
+    private static final class Entry {
+
+        private final CachedResponse response;
+        private final long createdNanos;
+        private volatile boolean referenced;
+
+        private Entry(CachedResponse response, long createdNanos){
+            this.response = response;
+            this.createdNanos = createdNanos;
+        }
+    }
+}
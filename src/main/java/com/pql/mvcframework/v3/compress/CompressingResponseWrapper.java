@@ -0,0 +1,467 @@
+package com.pql.mvcframework.v3.compress;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * 边写边压缩的response
+ * 先把输出写入不超过minSize的缓冲 超过时才决定是否压缩 之后不再缓冲 压缩后的数据直接写入原response
+ * handler声明了长度时不需要缓冲 直接按长度决定
+ * 压缩时不设置Content-Length 由容器分块输出 ETag改为弱校验
+ * handler自己设置了Content-Encoding 或状态码没有响应体时原样输出
+ * 请求结束时必须调用finish 写出剩余的输出并归还Deflater
+ * */
+public class CompressingResponseWrapper extends HttpServletResponseWrapper {
+
+    private static final int BUFFERING = 0;
+    private static final int IDENTITY = 1;
+    private static final int COMPRESSING = 2;
+    private static final int FINISHED = 3;
+
+    private static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+
+    private final ResponseCompression compression;
+    private final String encoding;
+    private final CompressingOutputStream outputStream = new CompressingOutputStream();
+    private PrintWriter writer;
+
+    /**
+     * handler声明的长度 决定不压缩时才设置到原response
+     * */
+    private long contentLength = -1;
+    private String etag;
+
+    /**
+     * handler自己设置了Content-Encoding
+     * */
+    private boolean encoded;
+
+    /**
+     * 已经在原response上设置了Content-Encoding resetBuffer后无法撤销 之后的输出同样压缩
+     * */
+    private boolean encodingSent;
+
+    public CompressingResponseWrapper(HttpServletResponse response, ResponseCompression compression, String encoding){
+        super(response);
+        this.compression = compression;
+        this.encoding = encoding;
+    }
+
+    public String getEncoding() {
+        return encoding;
+    }
+
+    @Override
+    public ServletOutputStream getOutputStream() {
+        return outputStream;
+    }
+
+    @Override
+    public PrintWriter getWriter() throws IOException {
+        if(writer == null){
+            writer = new PrintWriter(new OutputStreamWriter(outputStream, getCharacterEncoding()));
+        }
+        return writer;
+    }
+
+    @Override
+    public void setContentLength(int len) {
+        setContentLengthLong(len);
+    }
+
+    @Override
+    public void setContentLengthLong(long len) {
+        if(outputStream.state == IDENTITY){
+            super.setContentLengthLong(len);
+        }else if(outputStream.state == BUFFERING){
+            contentLength = len;
+        }
+    }
+
+    @Override
+    public void setHeader(String name, String value) {
+        if(intercept(name, value)){
+            super.setHeader(name, outputStream.state == COMPRESSING && isEtag(name) ? weak(value) : value);
+        }
+    }
+
+    @Override
+    public void addHeader(String name, String value) {
+        if(intercept(name, value)){
+            super.addHeader(name, outputStream.state == COMPRESSING && isEtag(name) ? weak(value) : value);
+        }
+    }
+
+    @Override
+    public void setIntHeader(String name, int value) {
+        if(intercept(name, String.valueOf(value))){
+            super.setIntHeader(name, value);
+        }
+    }
+
+    @Override
+    public void addIntHeader(String name, int value) {
+        if(intercept(name, String.valueOf(value))){
+            super.addIntHeader(name, value);
+        }
+    }
+
+    /**
+     * 记录会影响压缩的头 返回false时不设置到原response
+     * */
+    private boolean intercept(String name, String value){
+        if("Content-Length".equalsIgnoreCase(name)){
+            setContentLengthLong(value == null ? -1 : Long.parseLong(value.trim()));
+            return false;
+        }
+        if("Content-Encoding".equalsIgnoreCase(name)){
+            encoded = value != null && !"identity".equalsIgnoreCase(value.trim());
+        }else if(isEtag(name)){
+            etag = value;
+        }
+        return true;
+    }
+
+    private static boolean isEtag(String name){
+        return "ETag".equalsIgnoreCase(name);
+    }
+
+    private static String weak(String etag){
+        return etag == null || etag.startsWith("W/") ? etag : "W/" + etag;
+    }
+
+    @Override
+    public void flushBuffer() throws IOException {
+        if(writer != null){
+            writer.flush();
+        }
+        outputStream.sync();
+        super.flushBuffer();
+    }
+
+    /**
+     * 丢弃未提交的输出 已经开始压缩时之后的输出继续压缩
+     * */
+    @Override
+    public void resetBuffer() {
+        super.resetBuffer();
+        outputStream.discard(BUFFERING);
+        writer = null;
+    }
+
+    @Override
+    public void reset() {
+        super.reset();
+        outputStream.discard(BUFFERING);
+        writer = null;
+        contentLength = -1;
+        etag = null;
+        encoded = false;
+        encodingSent = false;
+        super.addHeader("Vary", "Accept-Encoding");
+    }
+
+    /**
+     * 错误页和重定向由容器输出 不再压缩
+     * */
+    @Override
+    public void sendError(int sc) throws IOException {
+        outputStream.discard(IDENTITY);
+        super.sendError(sc);
+    }
+
+    @Override
+    public void sendError(int sc, String msg) throws IOException {
+        outputStream.discard(IDENTITY);
+        super.sendError(sc, msg);
+    }
+
+    @Override
+    public void sendRedirect(String location) throws IOException {
+        outputStream.discard(IDENTITY);
+        super.sendRedirect(location);
+    }
+
+    /**
+     * 写出缓冲中剩余的输出和压缩流的结尾 归还Deflater 只有第一次调用生效
+     * */
+    public void finish() throws IOException {
+        outputStream.closing = true;
+        try{
+            if(writer != null){
+                writer.flush();
+            }
+        }finally {
+            outputStream.finish();
+        }
+    }
+
+    /**
+     * 连接已经出错 不再输出 只归还Deflater
+     * */
+    public void abort(){
+        outputStream.discard(FINISHED);
+    }
+
+    /**
+     * 是否压缩 size为-1时长度未知
+     * */
+    private boolean shouldCompress(long size){
+        if(encodingSent){
+            return true;
+        }
+        if(encoded || (size >= 0 && size < compression.getMinSize()) || isCommitted()){
+            return false;
+        }
+        int status = getStatus();
+        if(status < 200 || status == SC_NO_CONTENT || status == SC_NOT_MODIFIED){
+            return false;
+        }
+        return compression.isCompressible(getContentType());
+    }
+
+    private class CompressingOutputStream extends ServletOutputStream {
+
+        private int state = BUFFERING;
+
+        /**
+         * 决定是否压缩之前的输出 最多minSize字节
+         * */
+        private byte[] buffer;
+        private int count;
+
+        private ServletOutputStream target;
+        private DeflaterPool.Entry pooled;
+        private Deflater deflater;
+        private byte[] output;
+        private CRC32 crc;
+        private long bytesIn;
+        private long bytesOut;
+
+        /**
+         * finish中flush writer时不触发决定
+         * */
+        private boolean closing;
+
+        private final byte[] single = new byte[1];
+
+        private ServletOutputStream target() throws IOException {
+            if(target == null){
+                target = getResponse().getOutputStream();
+            }
+            return target;
+        }
+
+        public boolean isReady() {
+            try{
+                return state == BUFFERING || target().isReady();
+            }catch (IOException e){
+                return false;
+            }
+        }
+
+        /**
+         * 非阻塞输出不压缩 还没有输出时改为原样输出并交给底层输出流 已经开始缓冲或压缩时不支持
+         * */
+        public void setWriteListener(WriteListener writeListener) {
+            if(state == BUFFERING && count == 0){
+                state = IDENTITY;
+                compression.recordSkipped();
+                if(contentLength >= 0){
+                    CompressingResponseWrapper.super.setContentLengthLong(contentLength);
+                }
+            }
+            if(state != IDENTITY){
+                throw new IllegalStateException("non-blocking output must be set before writing to a compressing response");
+            }
+            try{
+                target().setWriteListener(writeListener);
+            }catch (IOException e){
+                throw new IllegalStateException("get the underlying output stream failed", e);
+            }
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if(state == BUFFERING && contentLength < 0 && count < compression.getMinSize()){
+                buffer()[count++] = (byte) b;
+                return;
+            }
+            single[0] = (byte) b;
+            write(single, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if(state == BUFFERING){
+                if(contentLength < 0 && count + len <= compression.getMinSize()){
+                    System.arraycopy(b, off, buffer(), count, len);
+                    count += len;
+                    return;
+                }
+                start(false);
+            }
+            if(state == IDENTITY){
+                target().write(b, off, len);
+            }else if(state == COMPRESSING){
+                deflate(b, off, len);
+            }else{
+                throw new IOException("the response is finished");
+            }
+        }
+
+        private byte[] buffer(){
+            if(buffer == null){
+                buffer = new byte[compression.getMinSize()];
+            }
+            return buffer;
+        }
+
+        /**
+         * 决定是否压缩 写出已缓冲的部分
+         * ending为true时已经是全部输出 长度确定
+         * */
+        private void start(boolean ending) throws IOException {
+            long size = contentLength >= 0 ? contentLength : ending ? count : -1;
+            if(shouldCompress(size)){
+                state = COMPRESSING;
+                if(!encodingSent){
+                    CompressingResponseWrapper.super.setHeader("Content-Encoding", encoding);
+                    encodingSent = true;
+                }
+                if(etag != null){
+                    CompressingResponseWrapper.super.setHeader("ETag", weak(etag));
+                }
+                pooled = compression.getPool(encoding).borrow();
+                deflater = pooled.getDeflater();
+                output = pooled.getBuffer();
+                if(ResponseCompression.GZIP.equals(encoding)){
+                    crc = new CRC32();
+                    target().write(GZIP_HEADER);
+                    bytesOut += GZIP_HEADER.length;
+                }
+                if(count > 0){
+                    deflate(buffer, 0, count);
+                }
+            }else{
+                state = IDENTITY;
+                compression.recordSkipped();
+                if(size >= 0){
+                    CompressingResponseWrapper.super.setContentLengthLong(size);
+                }
+                if(count > 0){
+                    target().write(buffer, 0, count);
+                }
+            }
+            count = 0;
+        }
+
+        private void deflate(byte[] b, int off, int len) throws IOException {
+            if(crc != null){
+                crc.update(b, off, len);
+            }
+            bytesIn += len;
+            deflater.setInput(b, off, len);
+            while (!deflater.needsInput()){
+                drain(Deflater.NO_FLUSH);
+            }
+        }
+
+        private int drain(int flush) throws IOException {
+            int n = deflater.deflate(output, 0, output.length, flush);
+            if(n > 0){
+                target().write(output, 0, n);
+                bytesOut += n;
+            }
+            return n;
+        }
+
+        /**
+         * 决定是否压缩 并把Deflater中已有的输出同步写出 显式flush视为流式输出 长度未知
+         * */
+        private void sync() throws IOException {
+            if(state == BUFFERING){
+                start(false);
+            }
+            if(state == COMPRESSING){
+                while (drain(Deflater.SYNC_FLUSH) == output.length){
+                    // 输出缓冲写满说明可能还有剩余
+                }
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if(closing || state == FINISHED){
+                return;
+            }
+            sync();
+            target().flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            CompressingResponseWrapper.this.finish();
+        }
+
+        private void finish() throws IOException {
+            if(state == FINISHED){
+                return;
+            }
+            try{
+                if(state == BUFFERING){
+                    start(true);
+                }
+                if(state == COMPRESSING){
+                    deflater.finish();
+                    while (!deflater.finished()){
+                        drain(Deflater.NO_FLUSH);
+                    }
+                    if(crc != null){
+                        writeTrailer((int) crc.getValue(), (int) bytesIn);
+                    }
+                    compression.recordCompressed(bytesIn, bytesOut);
+                }
+            }finally {
+                discard(FINISHED);
+            }
+        }
+
+        /**
+         * gzip结尾 CRC32和原始长度 小端
+         * */
+        private void writeTrailer(int checksum, int size) throws IOException {
+            byte[] trailer = {
+                    (byte) checksum, (byte) (checksum >> 8), (byte) (checksum >> 16), (byte) (checksum >> 24),
+                    (byte) size, (byte) (size >> 8), (byte) (size >> 16), (byte) (size >> 24)
+            };
+            target().write(trailer);
+            bytesOut += trailer.length;
+        }
+
+        /**
+         * 丢弃缓冲和压缩状态 归还Deflater
+         * */
+        private void discard(int next){
+            if(pooled != null){
+                compression.getPool(encoding).release(pooled);
+                pooled = null;
+            }
+            deflater = null;
+            output = null;
+            crc = null;
+            count = 0;
+            bytesIn = 0;
+            bytesOut = 0;
+            closing = false;
+            state = next;
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.pql.mvcframework.v3.compress;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.Deflater;
+
+/**
+ * 复用Deflater和它的输出缓冲 每个Deflater持有几百KB的本地内存 每次响应都创建和释放代价很高
+ * 池为空时新建 归还时池已满则直接释放 池中最多保留maxIdle个
+ * gzip由调用方自己写头部和校验 使用nowrap的Deflater deflate使用带zlib头的
+ * */
+public class DeflaterPool {
+
+    public static final int BUFFER_SIZE = 8192;
+
+    private final int level;
+    private final boolean nowrap;
+    private final BlockingQueue<Entry> idle;
+    private final LongAdder created = new LongAdder();
+
+    public DeflaterPool(int level, boolean nowrap, int maxIdle){
+        if(level < Deflater.DEFAULT_COMPRESSION || level > Deflater.BEST_COMPRESSION){
+            throw new IllegalArgumentException("the compression level " + level + " is invalid!!");
+        }
+        this.level = level;
+        this.nowrap = nowrap;
+        this.idle = new ArrayBlockingQueue<Entry>(Math.max(1, maxIdle));
+    }
+
+    public Entry borrow(){
+        Entry entry = idle.poll();
+        if(entry == null){
+            created.increment();
+            entry = new Entry(new Deflater(level, nowrap));
+        }
+        return entry;
+    }
+
+    /**
+     * 归还前重置 之后调用方不能再使用
+     * */
+    public void release(Entry entry){
+        entry.deflater.reset();
+        if(!idle.offer(entry)){
+            entry.deflater.end();
+        }
+    }
+
+    /**
+     * 关闭时释放池中的全部Deflater
+     * */
+    public void clear(){
+        Entry entry;
+        while ((entry = idle.poll()) != null){
+            entry.deflater.end();
+        }
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    /**
+     * 累计新建的个数 持续增长说明池太小
+     * */
+    public long getCreated() {
+        return created.sum();
+    }
+
+    public int getIdle() {
+        return idle.size();
+    }
+
+    /**
+     * 池中的一项 Deflater和deflate的输出缓冲一起复用
+     * */
+    public static final class Entry {
+
+        private final Deflater deflater;
+        private final byte[] buffer = new byte[BUFFER_SIZE];
+
+        private Entry(Deflater deflater){
+            this.deflater = deflater;
+        }
+
+        public Deflater getDeflater() {
+            return deflater;
+        }
+
+        public byte[] getBuffer() {
+            return buffer;
+        }
+    }
+}
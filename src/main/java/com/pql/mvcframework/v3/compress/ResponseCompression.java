@@ -0,0 +1,231 @@
+package com.pql.mvcframework.v3.compress;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 响应压缩的配置 按Accept-Encoding协商gzip或deflate 两种编码各有一个Deflater池
+ * 输出不少于minSize字节且Content-Type不是已压缩的类型时才压缩
+ * */
+public class ResponseCompression {
+
+    public static final String GZIP = "gzip";
+    public static final String DEFLATE = "deflate";
+
+    /**
+     * 本身已经压缩过的类型 前缀匹配 再压缩只浪费CPU
+     * */
+    private static final String[] COMPRESSED_TYPES = {
+            "image/", "video/", "audio/", "font/woff", "application/font-woff",
+            "application/zip", "application/gzip", "application/x-gzip", "application/x-compress",
+            "application/x-bzip2", "application/x-xz", "application/x-7z-compressed", "application/x-rar-compressed",
+            "application/java-archive", "application/pdf", "application/octet-stream"
+    };
+
+    /**
+     * image/下可以压缩的文本格式
+     * */
+    private static final String SVG = "image/svg+xml";
+
+    private final int minSize;
+    private final String[] excludedTypes;
+    private final DeflaterPool gzipPool;
+    private final DeflaterPool deflatePool;
+
+    private final LongAdder compressed = new LongAdder();
+    private final LongAdder skipped = new LongAdder();
+    private final LongAdder bytesIn = new LongAdder();
+    private final LongAdder bytesOut = new LongAdder();
+
+    /**
+     * @param level 压缩级别 1-9 -1为默认级别6
+     * @param minSize 小于该字节数时不压缩 压缩后的头部和校验反而更大
+     * @param excludedTypes 在内置的已压缩类型之外 不压缩的Content-Type前缀
+     * */
+    public ResponseCompression(int level, int minSize, Collection<String> excludedTypes){
+        if(minSize < 0){
+            throw new IllegalArgumentException("minSize must not be negative: " + minSize);
+        }
+        this.minSize = minSize;
+        List<String> types = new ArrayList<String>(Arrays.asList(COMPRESSED_TYPES));
+        for (String type : excludedTypes) {
+            if(!type.trim().isEmpty()){
+                types.add(type.trim().toLowerCase(Locale.ENGLISH));
+            }
+        }
+        this.excludedTypes = types.toArray(new String[0]);
+        int maxIdle = Runtime.getRuntime().availableProcessors() * 2;
+        this.gzipPool = new DeflaterPool(level, true, maxIdle);
+        this.deflatePool = new DeflaterPool(level, false, maxIdle);
+    }
+
+    /**
+     * 客户端接受压缩时包装response 否则原样返回
+     * 开启压缩的路由无论是否压缩都加上Vary 缓存按Accept-Encoding区分
+     * HEAD请求没有响应体 不包装
+     * */
+    public HttpServletResponse wrap(HttpServletRequest request, HttpServletResponse response){
+        response.addHeader("Vary", "Accept-Encoding");
+        String encoding = negotiate(request.getHeader("Accept-Encoding"));
+        if(encoding == null || "HEAD".equals(request.getMethod())){
+            return response;
+        }
+        return new CompressingResponseWrapper(response, this, encoding);
+    }
+
+    /**
+     * 按Accept-Encoding选择编码 q值相同时优先gzip 都不接受时返回null
+     * *匹配没有单独列出的编码 q=0表示不接受
+     * */
+    public static String negotiate(String acceptEncoding){
+        if(acceptEncoding == null || acceptEncoding.isEmpty()){
+            return null;
+        }
+        float gzip = -1;
+        float deflate = -1;
+        float any = -1;
+        int length = acceptEncoding.length();
+        int start = 0;
+        while (start < length){
+            int end = acceptEncoding.indexOf(',', start);
+            if(end < 0){
+                end = length;
+            }
+            int nameEnd = acceptEncoding.indexOf(';', start);
+            if(nameEnd < 0 || nameEnd > end){
+                nameEnd = end;
+            }
+            int nameStart = start;
+            while (nameStart < nameEnd && acceptEncoding.charAt(nameStart) == ' '){
+                nameStart++;
+            }
+            while (nameEnd > nameStart && acceptEncoding.charAt(nameEnd - 1) == ' '){
+                nameEnd--;
+            }
+            float quality = quality(acceptEncoding, nameEnd, end);
+            int nameLength = nameEnd - nameStart;
+            if(nameLength == 4 && acceptEncoding.regionMatches(true, nameStart, GZIP, 0, 4)){
+                gzip = quality;
+            }else if(nameLength == 6 && acceptEncoding.regionMatches(true, nameStart, "x-gzip", 0, 6)){
+                gzip = Math.max(gzip, quality);
+            }else if(nameLength == 7 && acceptEncoding.regionMatches(true, nameStart, DEFLATE, 0, 7)){
+                deflate = quality;
+            }else if(nameLength == 1 && acceptEncoding.charAt(nameStart) == '*'){
+                any = quality;
+            }
+            start = end + 1;
+        }
+        if(gzip < 0){
+            gzip = any;
+        }
+        if(deflate < 0){
+            deflate = any;
+        }
+        if(gzip > 0 && gzip >= deflate){
+            return GZIP;
+        }
+        return deflate > 0 ? DEFLATE : null;
+    }
+
+    /**
+     * 参数中的q值 没有时为1 无法解析时为0
+     * */
+    private static float quality(String header, int start, int end){
+        int q = header.indexOf("q=", start);
+        if(q < 0 || q >= end){
+            return 1;
+        }
+        try{
+            return Float.parseFloat(header.substring(q + 2, end).trim());
+        }catch (NumberFormatException e){
+            return 0;
+        }
+    }
+
+    /**
+     * 没有Content-Type时不知道内容 不压缩
+     * */
+    public boolean isCompressible(String contentType){
+        if(contentType == null){
+            return false;
+        }
+        if(contentType.regionMatches(true, 0, SVG, 0, SVG.length())){
+            return true;
+        }
+        for (String type : excludedTypes) {
+            if(contentType.regionMatches(true, 0, type, 0, type.length())){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public int getLevel() {
+        return gzipPool.getLevel();
+    }
+
+    public int getMinSize() {
+        return minSize;
+    }
+
+    public DeflaterPool getPool(String encoding){
+        return GZIP.equals(encoding) ? gzipPool : deflatePool;
+    }
+
+    void recordCompressed(long in, long out){
+        compressed.increment();
+        bytesIn.add(in);
+        bytesOut.add(out);
+    }
+
+    void recordSkipped(){
+        skipped.increment();
+    }
+
+    public long getCompressed() {
+        return compressed.sum();
+    }
+
+    public long getSkipped() {
+        return skipped.sum();
+    }
+
+    public long getBytesIn() {
+        return bytesIn.sum();
+    }
+
+    public long getBytesOut() {
+        return bytesOut.sum();
+    }
+
+    /**
+     * 两个池累计新建的Deflater个数
+     * */
+    public long getDeflaterCount() {
+        return gzipPool.getCreated() + deflatePool.getCreated();
+    }
+
+    /**
+     * 释放池中的Deflater
+     * */
+    public void close(){
+        gzipPool.clear();
+        deflatePool.clear();
+    }
+
+    @Override
+    public String toString() {
+        long in = bytesIn.sum();
+        long out = bytesOut.sum();
+        return "level=" + getLevel() + ",minSize=" + minSize + ",compressed=" + compressed.sum()
+                + ",skipped=" + skipped.sum() + ",bytesIn=" + in + ",bytesOut=" + out
+                + ",ratio=" + (in == 0 ? "0.000" : String.format(Locale.ROOT, "%.3f", (double) out / in))
+                + ",deflaters=" + getDeflaterCount();
+    }
+}
@@ -0,0 +1,625 @@
+package com.pql.mvcframework.v3.context;
+
+import com.pql.mvcframework.util.FrozenMap;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * bean容器
+ * 注册阶段收集bean定义 refresh时按构造器依赖建图并检测循环依赖
+ * 同一层没有相互依赖的bean在fork-join线程池中并行创建 创建完成后再并行注入字段
+ * 线程池只在refresh期间存在 不占用commonPool 线程沿用调用线程的context class loader
+ * refresh后发布冻结的只读注册表 读取不加锁 只有@PQLLazy的bean第一次创建时加锁
+ * prototype每次获取都按注入计划创建 request作用域的bean存放在当前线程的数组中
+ * 增量扫描时通过derive生成新容器 保留的bean沿用原有实例 只创建新增的bean
+ * */
+public class BeanContainer {
+
+    private static final Object[] NO_ARGS = new Object[0];
+
+    /**
+     * bean名称和定义 保持注册顺序
+     * */
+    private final Map<String, BeanDefinition> definitions = new LinkedHashMap<String, BeanDefinition>();
+
+    /**
+     * 别名和bean名称 接口名 类名都作为别名
+     * */
+    private final Map<String, String> aliases = new HashMap<String, String>();
+
+    /**
+     * refresh后发布 名称和别名都指向同一个holder 发布后不再修改
+     * */
+    private volatile FrozenMap<BeanHolder> registry = FrozenMap.empty();
+
+    private volatile List<String> beanNames = Collections.emptyList();
+
+    private volatile boolean refreshed;
+
+    /**
+     * derive时从原容器沿用的bean 名称和holder refresh时不再解析和创建
+     * */
+    private final Map<String, BeanHolder> inherited = new HashMap<String, BeanHolder>();
+
+    /**
+     * 延迟bean的创建锁 同一线程内可重入 避免延迟bean之间字段循环依赖时死锁
+     * derive出的容器与原容器共用
+     * */
+    private final Object lazyLock;
+
+    /**
+     * 当前请求的request作用域bean 按下标存放 derive出的容器与原容器共用
+     * */
+    private final ThreadLocal<Object[]> requestScope;
+
+    private int requestBeanCount;
+
+    public BeanContainer(){
+        this(new Object(), new ThreadLocal<Object[]>());
+    }
+
+    private BeanContainer(Object lazyLock, ThreadLocal<Object[]> requestScope){
+        this.lazyLock = lazyLock;
+        this.requestScope = requestScope;
+    }
+
+    /**
+     * 注册bean 类的全限定名同时作为别名
+     * */
+    public void register(String name, Class<?> beanClass){
+        checkNotRefreshed();
+        if(definitions.containsKey(name) || aliases.containsKey(name)){
+            throw new IllegalStateException("the " + name + " is exists!!");
+        }
+        register(new BeanDefinition(name, beanClass));
+    }
+
+    /**
+     * 注册已经解析好的bean定义 类的全限定名同时作为别名
+     * */
+    public void register(BeanDefinition definition){
+        checkNotRefreshed();
+        String name = definition.getName();
+        if(definitions.containsKey(name) || aliases.containsKey(name)){
+            throw new IllegalStateException("the " + name + " is exists!!");
+        }
+        definitions.put(name, definition);
+        if(!name.equals(definition.getBeanClass().getName())){
+            registerAlias(definition.getBeanClass().getName(), name);
+        }
+    }
+
+    public void registerAlias(String alias, String name){
+        checkNotRefreshed();
+        if(definitions.containsKey(alias) || aliases.containsKey(alias)){
+            throw new IllegalStateException("the " + alias + " is exists!!");
+        }
+        aliases.put(alias, name);
+    }
+
+    /**
+     * 以当前容器为基础生成未refresh的新容器 之后可以继续注册新增的bean
+     * 类名在removedClassNames中的bean以及指向它们的别名被移除 其余bean沿用原有实例和已注入的依赖
+     * 新增的request作用域bean下标接在原有的之后 原容器上开启的作用域对沿用的bean仍然有效
+     * */
+    public BeanContainer derive(Set<String> removedClassNames){
+        if(!refreshed){
+            throw new IllegalStateException("the container is not refreshed");
+        }
+        BeanContainer derived = new BeanContainer(lazyLock, requestScope);
+        for (BeanDefinition definition : definitions.values()) {
+            if(removedClassNames.contains(definition.getBeanClass().getName())){
+                continue;
+            }
+            derived.definitions.put(definition.getName(), definition);
+            derived.inherited.put(definition.getName(), registry.get(definition.getName()));
+        }
+        for (Map.Entry<String, String> alias : aliases.entrySet()) {
+            if(derived.definitions.containsKey(alias.getValue())){
+                derived.aliases.put(alias.getKey(), alias.getValue());
+            }
+        }
+        derived.requestBeanCount = requestBeanCount;
+        return derived;
+    }
+
+    /**
+     * 已注册的bean定义 保持注册顺序
+     * */
+    public Collection<BeanDefinition> getDefinitions(){
+        return Collections.unmodifiableCollection(definitions.values());
+    }
+
+    /**
+     * 已注册的别名和bean名称
+     * */
+    public Map<String, String> getAliases(){
+        return Collections.unmodifiableMap(aliases);
+    }
+
+    private void checkNotRefreshed(){
+        if(refreshed){
+            throw new IllegalStateException("the container is refreshed");
+        }
+    }
+
+    /**
+     * 创建所有非延迟的bean 以及它们依赖的延迟bean
+     * */
+    public void refresh(){
+        checkNotRefreshed();
+        long start = System.nanoTime();
+
+        Map<String, BeanHolder> holders = new LinkedHashMap<String, BeanHolder>();
+        for (BeanDefinition definition : definitions.values()) {
+            BeanHolder holder = inherited.get(definition.getName());
+            holders.put(definition.getName(), holder != null ? holder : new BeanHolder(definition));
+        }
+        for (Map.Entry<String, String> alias : aliases.entrySet()) {
+            BeanHolder holder = holders.get(alias.getValue());
+            if(holder == null){
+                throw new IllegalStateException("no bean named " + alias.getValue() + " for alias " + alias.getKey());
+            }
+            holders.put(alias.getKey(), holder);
+        }
+
+        // 1. 解析依赖 构造器依赖必须存在 字段依赖不存在时注入null 沿用的bean已经解析过
+        Set<BeanHolder> reused = new HashSet<BeanHolder>(inherited.values());
+        for (BeanDefinition definition : definitions.values()) {
+            BeanHolder holder = holders.get(definition.getName());
+            if(reused.contains(holder)){
+                holder.checkRemovedDependencies(holders);
+            }else{
+                holder.resolve(holders);
+            }
+        }
+
+        // 2. 构造器依赖不能成环 prototype之间的字段依赖也不能成环 沿用的bean视为已经创建
+        Map<BeanHolder, Integer> levels = new HashMap<BeanHolder, Integer>();
+        for (BeanHolder holder : reused) {
+            levels.put(holder, -1);
+        }
+        for (BeanDefinition definition : definitions.values()) {
+            BeanHolder holder = holders.get(definition.getName());
+            if(reused.contains(holder)){
+                continue;
+            }
+            level(holder, levels, new ArrayList<BeanHolder>());
+            checkPrototypeCycle(holder, new ArrayList<BeanHolder>());
+            if(definition.getScope() == BeanDefinition.REQUEST){
+                holder.requestIndex = requestBeanCount++;
+            }
+        }
+
+        // 3. 非延迟bean以及它们依赖的bean需要在启动时创建 沿用的延迟bean仍然在第一次获取时创建
+        List<BeanHolder> eager = new ArrayList<BeanHolder>();
+        for (BeanDefinition definition : definitions.values()) {
+            if(!definition.isLazy()){
+                markEager(holders.get(definition.getName()), eager, reused);
+            }
+        }
+
+        // 4. 按层创建 同一层的bean只依赖更低层 可以并行
+        List<List<BeanHolder>> layers = new ArrayList<List<BeanHolder>>();
+        for (BeanHolder holder : eager) {
+            int level = levels.get(holder);
+            while (layers.size() <= level){
+                layers.add(new ArrayList<BeanHolder>());
+            }
+            layers.get(level).add(holder);
+        }
+        ForkJoinPool pool = createInitPool();
+        try{
+            for (List<BeanHolder> layer : layers) {
+                pool.invoke(new InitTask(layer, 0, layer.size(), false));
+            }
+
+            // 5. 全部创建完成后注入字段 字段依赖允许成环
+            pool.invoke(new InitTask(eager, 0, eager.size(), true));
+        }finally {
+            pool.shutdown();
+        }
+
+        List<String> names = new ArrayList<String>(definitions.keySet());
+        this.beanNames = Collections.unmodifiableList(names);
+        this.registry = FrozenMap.copyOf(holders);
+        this.refreshed = true;
+        System.out.println("pql container: " + definitions.size() + " beans, " + reused.size() + " reused, "
+                + eager.size() + " eager in " + layers.size() + " levels, " + (System.nanoTime() - start) / 1000000 + "ms");
+    }
+
+    /**
+     * refresh专用的线程池 bean的构造器可能阻塞 不能影响commonPool中其他库的任务
+     * 工作线程使用调用线程的context class loader 和在web应用的线程中创建一致
+     * */
+    private static ForkJoinPool createInitPool(){
+        final ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        final AtomicInteger counter = new AtomicInteger();
+        return new ForkJoinPool(Runtime.getRuntime().availableProcessors(), new ForkJoinPool.ForkJoinWorkerThreadFactory() {
+            public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+                ForkJoinWorkerThread thread = new ForkJoinWorkerThread(pool) {
+                };
+                thread.setName("pql-bean-init-" + counter.incrementAndGet());
+                thread.setContextClassLoader(classLoader);
+                thread.setDaemon(true);
+                return thread;
+            }
+        }, null, false);
+    }
+
+    /**
+     * 构造器依赖的深度 没有依赖为0 path为当前的依赖路径 用于报告循环
+     * */
+    private int level(BeanHolder holder, Map<BeanHolder, Integer> levels, List<BeanHolder> path){
+        Integer known = levels.get(holder);
+        if(known != null){
+            return known;
+        }
+        if(path.contains(holder)){
+            throw new IllegalStateException("circular dependency: " + cycle(path, holder));
+        }
+        path.add(holder);
+        int level = 0;
+        for (BeanHolder dependency : holder.constructorDependencies) {
+            level = Math.max(level, level(dependency, levels, path) + 1);
+        }
+        path.remove(path.size() - 1);
+        levels.put(holder, level);
+        return level;
+    }
+
+    private void checkPrototypeCycle(BeanHolder holder, List<BeanHolder> path){
+        if(holder == null || holder.definition.getScope() != BeanDefinition.PROTOTYPE){
+            return;
+        }
+        if(path.contains(holder)){
+            throw new IllegalStateException("circular dependency between prototype beans: " + cycle(path, holder));
+        }
+        path.add(holder);
+        for (int i = 0; i < holder.fieldDependencies.length; i++) {
+            if(!holder.definition.isFactoryField(i)){
+                checkPrototypeCycle(holder.fieldDependencies[i], path);
+            }
+        }
+        path.remove(path.size() - 1);
+    }
+
+    private static String cycle(List<BeanHolder> path, BeanHolder holder){
+        StringBuilder cycle = new StringBuilder();
+        for (BeanHolder node : path.subList(path.indexOf(holder), path.size())) {
+            cycle.append(node.definition.getName()).append(" -> ");
+        }
+        return cycle.append(holder.definition.getName()).toString();
+    }
+
+    /**
+     * 单例以及单例依赖的单例 启动时创建
+     * */
+    private void markEager(BeanHolder holder, List<BeanHolder> eager, Set<BeanHolder> reused){
+        if(holder == null || holder.eager || !holder.definition.isSingleton() || reused.contains(holder)){
+            return;
+        }
+        holder.eager = true;
+        eager.add(holder);
+        for (BeanHolder dependency : holder.constructorDependencies) {
+            markEager(dependency, eager, reused);
+        }
+        for (int i = 0; i < holder.fieldDependencies.length; i++) {
+            if(!holder.definition.isFactoryField(i)){
+                markEager(holder.fieldDependencies[i], eager, reused);
+            }
+        }
+    }
+
+    /**
+     * 按名称或别名获取bean 延迟bean在此时创建 不存在时返回null
+     * */
+    public Object getBean(String name){
+        BeanHolder holder = registry.get(name);
+        return holder == null ? null : holder.get();
+    }
+
+    public <T> T getBean(Class<T> type){
+        return type.cast(getBean(type.getName()));
+    }
+
+    public Class<?> getType(String name){
+        BeanHolder holder = registry.get(name);
+        return holder == null ? null : holder.definition.getBeanClass();
+    }
+
+    public boolean containsBean(String name){
+        return registry.containsKey(name);
+    }
+
+    /**
+     * 所有bean名称 不包含别名
+     * */
+    public List<String> getBeanNames(){
+        return beanNames;
+    }
+
+    public boolean isEmpty(){
+        return beanNames.isEmpty();
+    }
+
+    /**
+     * 是否存在request作用域的bean 不存在时请求不需要开启作用域
+     * */
+    public boolean hasRequestScope(){
+        return requestBeanCount > 0;
+    }
+
+    /**
+     * 开启当前线程的request作用域
+     * */
+    public void beginRequest(){
+        requestScope.set(new Object[requestBeanCount]);
+    }
+
+    /**
+     * 当前线程的request作用域 可以交给异步线程继续使用
+     * */
+    public Object[] currentRequest(){
+        return requestScope.get();
+    }
+
+    public void attachRequest(Object[] scope){
+        requestScope.set(scope);
+    }
+
+    public void endRequest(){
+        requestScope.remove();
+    }
+
+    /**
+     * 一个bean的实例和已解析的依赖
+     * */
+    private class BeanHolder {
+
+        private final BeanDefinition definition;
+        private BeanHolder[] constructorDependencies;
+        private BeanHolder[] fieldDependencies;
+        private Object[] fieldFactories;
+        private boolean eager;
+        private int requestIndex = -1;
+
+        private volatile Object instance;
+
+        /**
+         * 延迟bean创建中 已实例化未注入 只会被持有lazyLock的线程读取
+         * */
+        private Object early;
+
+        /**
+         * refresh创建阶段由InitTask实例化 注入阶段需要补上字段 只在refresh中读写
+         * */
+        private boolean pendingInject;
+
+        private BeanHolder(BeanDefinition definition){
+            this.definition = definition;
+        }
+
+        private void resolve(Map<String, BeanHolder> holders){
+            String[] names = definition.getConstructorDependencies();
+            constructorDependencies = new BeanHolder[names.length];
+            for (int i = 0; i < names.length; i++) {
+                constructorDependencies[i] = holders.get(names[i]);
+                if(constructorDependencies[i] == null){
+                    throw new IllegalStateException("no bean named " + names[i] + " for constructor of " + definition.getName());
+                }
+            }
+            names = definition.getFieldDependencies();
+            fieldDependencies = new BeanHolder[names.length];
+            fieldFactories = new Object[names.length];
+            for (int i = 0; i < names.length; i++) {
+                fieldDependencies[i] = holders.get(names[i]);
+                Field field = definition.getInjectionPlan().getFields()[i];
+                if(fieldDependencies[i] == null){
+                    System.out.println("no bean named " + names[i] + " for field " + field);
+                }else if(definition.isFactoryField(i)){
+                    fieldFactories[i] = new HolderFactory(fieldDependencies[i]);
+                }else{
+                    checkInjectable(fieldDependencies[i], field.toString());
+                }
+            }
+            for (BeanHolder dependency : constructorDependencies) {
+                checkInjectable(dependency, "constructor of " + definition.getName());
+            }
+        }
+
+        /**
+         * 沿用的bean已经注入的依赖被移除时 仍然持有原来的实例 只做提示
+         * */
+        private void checkRemovedDependencies(Map<String, BeanHolder> holders){
+            List<BeanHolder> dependencies = new ArrayList<BeanHolder>();
+            Collections.addAll(dependencies, constructorDependencies);
+            Collections.addAll(dependencies, fieldDependencies);
+            for (BeanHolder dependency : dependencies) {
+                if(dependency != null && holders.get(dependency.definition.getName()) != dependency){
+                    System.out.println("bean " + definition.getName() + " still references removed bean "
+                            + dependency.definition.getName());
+                }
+            }
+        }
+
+        /**
+         * request作用域的bean不能直接注入单例 单例创建时没有请求
+         * */
+        private void checkInjectable(BeanHolder dependency, String target){
+            if(dependency.definition.getScope() == BeanDefinition.REQUEST && definition.isSingleton()){
+                throw new IllegalStateException("request scoped bean " + dependency.definition.getName()
+                        + " can not be injected into " + target + ", use ObjectFactory instead");
+            }
+        }
+
+        private Object get(){
+            switch (definition.getScope()){
+                case BeanDefinition.PROTOTYPE:
+                    return create();
+                case BeanDefinition.REQUEST:
+                    return getRequestBean();
+                default:
+                    return getSingleton();
+            }
+        }
+
+        private Object getSingleton(){
+            Object bean = instance;
+            if(bean != null){
+                return bean;
+            }
+            synchronized (lazyLock){
+                if(instance != null){
+                    return instance;
+                }
+                if(early != null){
+                    return early;
+                }
+                Object created = instantiate();
+                early = created;
+                try{
+                    inject(created);
+                }finally {
+                    early = null;
+                }
+                instance = created;
+                return created;
+            }
+        }
+
+        /**
+         * refresh创建阶段使用 原型bean的依赖可能已经通过getSingleton提前创建并注入了这个bean 不能覆盖
+         * */
+        private void initInstance(){
+            if(instance != null){
+                return;
+            }
+            Object created = instantiate();
+            synchronized (lazyLock){
+                if(instance != null){
+                    return;
+                }
+                instance = created;
+                pendingInject = true;
+            }
+        }
+
+        /**
+         * 先放入作用域再注入 同一请求内的字段循环依赖可以拿到同一个实例
+         * */
+        private Object getRequestBean(){
+            Object[] scope = requestScope.get();
+            if(scope == null){
+                throw new IllegalStateException("no request scope active for bean " + definition.getName());
+            }
+            Object bean = scope[requestIndex];
+            if(bean == null){
+                bean = instantiate();
+                scope[requestIndex] = bean;
+                inject(bean);
+            }
+            return bean;
+        }
+
+        private Object create(){
+            Object bean = instantiate();
+            inject(bean);
+            return bean;
+        }
+
+        private Object instantiate(){
+            Object[] args = constructorDependencies.length == 0 ? NO_ARGS : new Object[constructorDependencies.length];
+            for (int i = 0; i < args.length; i++) {
+                args[i] = constructorDependencies[i].get();
+            }
+            try{
+                return definition.getInjectionPlan().newInstance(args);
+            }catch (Throwable e){
+                throw new IllegalStateException("create bean " + definition.getName() + " failed", e);
+            }
+        }
+
+        private void inject(Object bean){
+            InjectionPlan plan = definition.getInjectionPlan();
+            for (int i = 0; i < fieldDependencies.length; i++) {
+                Object value;
+                if(fieldFactories[i] != null){
+                    value = fieldFactories[i];
+                }else{
+                    value = fieldDependencies[i] == null ? null : fieldDependencies[i].get();
+                }
+                try{
+                    plan.inject(bean, i, value);
+                }catch (Throwable e){
+                    throw new IllegalStateException("inject " + plan.getFields()[i] + " failed", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * 注入到ObjectFactory字段 每次调用按作用域获取
+     * */
+    private static class HolderFactory implements ObjectFactory<Object> {
+
+        private final BeanHolder holder;
+
+        private HolderFactory(BeanHolder holder){
+            this.holder = holder;
+        }
+
+        public Object getObject() {
+            return holder.get();
+        }
+    }
+
+    /**
+     * 并行创建或注入一组bean 拆分到单个bean为止
+     * */
+    private static class InitTask extends RecursiveAction {
+
+        private final List<BeanHolder> holders;
+        private final int from;
+        private final int to;
+        private final boolean inject;
+
+        private InitTask(List<BeanHolder> holders, int from, int to, boolean inject){
+            this.holders = holders;
+            this.from = from;
+            this.to = to;
+            this.inject = inject;
+        }
+
+        @Override
+        protected void compute() {
+            if(to - from > 1){
+                int middle = (from + to) >>> 1;
+                invokeAll(new InitTask(holders, from, middle, inject), new InitTask(holders, middle, to, inject));
+                return;
+            }
+            for (int i = from; i < to; i++) {
+                BeanHolder holder = holders.get(i);
+                if(!inject){
+                    holder.initInstance();
+                }else if(holder.pendingInject){
+                    holder.pendingInject = false;
+                    holder.inject(holder.instance);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package com.pql.mvcframework.v3.context;
+
+import com.pql.mvcframework.annotation.PQLAutowired;
+import com.pql.mvcframework.annotation.PQLLazy;
+import com.pql.mvcframework.annotation.PQLScope;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+
+/**
+ * bean的定义 注册时一次性解析出作用域 注入方式和依赖
+ * 依赖都以bean名称表示 默认名称为类型的全限定名
+ * */
+public class BeanDefinition {
+
+    public static final int SINGLETON = 0;
+    public static final int PROTOTYPE = 1;
+    public static final int REQUEST = 2;
+
+    private final String name;
+    private final Class<?> beanClass;
+    private final boolean lazy;
+    private final int scope;
+    private final InjectionPlan injectionPlan;
+    private final String[] constructorDependencies;
+    private final String[] fieldDependencies;
+
+    /**
+     * 字段类型为ObjectFactory时 注入工厂而不是bean本身
+     * */
+    private final boolean[] factoryFields;
+
+    public BeanDefinition(String name, Class<?> beanClass){
+        this.name = name;
+        this.beanClass = beanClass;
+        this.lazy = beanClass.isAnnotationPresent(PQLLazy.class);
+        this.scope = scopeOf(beanClass);
+        this.injectionPlan = InjectionPlan.forClass(beanClass);
+        this.constructorDependencies = constructorDependencies(injectionPlan);
+
+        Field[] fields = injectionPlan.getFields();
+        this.fieldDependencies = new String[fields.length];
+        this.factoryFields = new boolean[fields.length];
+        for (int i = 0; i < fields.length; i++) {
+            Field field = fields[i];
+            factoryFields[i] = field.getType() == ObjectFactory.class;
+            String beanName = field.getAnnotation(PQLAutowired.class).value().trim();
+            if("".equals(beanName)){
+                // 没有指定beanName 使用字段类名注入 ObjectFactory使用泛型参数的类名
+                beanName = factoryFields[i] ? factoryType(field).getName() : field.getType().getName();
+            }
+            fieldDependencies[i] = beanName;
+        }
+    }
+
+    /**
+     * 按启动快照中已经解析好的定义创建 不再读取注解
+     * */
+    BeanDefinition(String name, Class<?> beanClass, boolean lazy, int scope, InjectionPlan injectionPlan,
+                   String[] fieldDependencies, boolean[] factoryFields){
+        this.name = name;
+        this.beanClass = beanClass;
+        this.lazy = lazy;
+        this.scope = scope;
+        this.injectionPlan = injectionPlan;
+        this.constructorDependencies = constructorDependencies(injectionPlan);
+        this.fieldDependencies = fieldDependencies;
+        this.factoryFields = factoryFields;
+    }
+
+    /**
+     * 构造器依赖使用参数类名
+     * */
+    private static String[] constructorDependencies(InjectionPlan injectionPlan){
+        Class<?>[] parameterTypes = injectionPlan.getConstructor().getParameterTypes();
+        String[] dependencies = new String[parameterTypes.length];
+        for (int i = 0; i < parameterTypes.length; i++) {
+            dependencies[i] = parameterTypes[i].getName();
+        }
+        return dependencies;
+    }
+
+    private static int scopeOf(Class<?> beanClass){
+        PQLScope scope = beanClass.getAnnotation(PQLScope.class);
+        if(scope == null || PQLScope.SINGLETON.equals(scope.value())){
+            return SINGLETON;
+        }
+        if(PQLScope.PROTOTYPE.equals(scope.value())){
+            return PROTOTYPE;
+        }
+        if(PQLScope.REQUEST.equals(scope.value())){
+            return REQUEST;
+        }
+        throw new IllegalStateException("unknown scope " + scope.value() + " on " + beanClass.getName());
+    }
+
+    private static Class<?> factoryType(Field field){
+        Type type = field.getGenericType();
+        if(type instanceof ParameterizedType){
+            Type argument = ((ParameterizedType) type).getActualTypeArguments()[0];
+            if(argument instanceof Class){
+                return (Class<?>) argument;
+            }
+            if(argument instanceof ParameterizedType){
+                return (Class<?>) ((ParameterizedType) argument).getRawType();
+            }
+        }
+        throw new IllegalStateException("can not resolve bean type of " + field);
+    }
+
+    public String getName(){
+        return name;
+    }
+
+    public Class<?> getBeanClass(){
+        return beanClass;
+    }
+
+    public boolean isLazy(){
+        return lazy;
+    }
+
+    public int getScope(){
+        return scope;
+    }
+
+    public boolean isSingleton(){
+        return scope == SINGLETON;
+    }
+
+    public InjectionPlan getInjectionPlan(){
+        return injectionPlan;
+    }
+
+    public String[] getConstructorDependencies(){
+        return constructorDependencies;
+    }
+
+    public String[] getFieldDependencies(){
+        return fieldDependencies;
+    }
+
+    public boolean isFactoryField(int index){
+        return factoryFields[index];
+    }
+}
@@ -0,0 +1,92 @@
+package com.pql.mvcframework.v3.context;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.JarURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * 没有索引时的兜底扫描
+ * 同时支持目录和jar包 目录按子目录拆分后并行遍历
+ * */
+public final class ClassPathScanner {
+
+    private ClassPathScanner(){
+    }
+
+    public static List<String> scan(ClassLoader classLoader, String packageName) throws IOException {
+        String packagePath = packageName.replace('.', '/');
+        List<String> classNames = new ArrayList<String>();
+        Enumeration<URL> urls = classLoader.getResources(packagePath);
+        while (urls.hasMoreElements()){
+            URL url = urls.nextElement();
+            if("file".equals(url.getProtocol())){
+                File dir = new File(URLDecoder.decode(url.getFile(), "UTF-8"));
+                classNames.addAll(ForkJoinPool.commonPool().invoke(new DirectoryTask(dir, packageName)));
+            }else{
+                URLConnection connection = url.openConnection();
+                if(connection instanceof JarURLConnection){
+                    scanJar(((JarURLConnection) connection).getJarFile(), packagePath + "/", classNames);
+                }
+            }
+        }
+        return classNames;
+    }
+
+    private static void scanJar(JarFile jarFile, String prefix, List<String> classNames){
+        Enumeration<JarEntry> entries = jarFile.entries();
+        while (entries.hasMoreElements()){
+            String name = entries.nextElement().getName();
+            if(name.startsWith(prefix) && name.endsWith(".class")){
+                classNames.add(name.substring(0, name.length() - 6).replace('/', '.'));
+            }
+        }
+    }
+
+    /**
+     * 遍历一个目录 子目录拆分为子任务并行执行
+     * */
+    private static class DirectoryTask extends RecursiveTask<List<String>> {
+
+        private final File dir;
+        private final String packageName;
+
+        private DirectoryTask(File dir, String packageName){
+            this.dir = dir;
+            this.packageName = packageName;
+        }
+
+        @Override
+        protected List<String> compute() {
+            List<String> classNames = new ArrayList<String>();
+            File[] files = dir.listFiles();
+            if(files == null){
+                return classNames;
+            }
+            List<DirectoryTask> tasks = new ArrayList<DirectoryTask>();
+            for (File file : files) {
+                String fileName = file.getName();
+                if(file.isDirectory()){
+                    DirectoryTask task = new DirectoryTask(file, packageName + "." + fileName);
+                    task.fork();
+                    tasks.add(task);
+                }else if(fileName.endsWith(".class")){
+                    classNames.add(packageName + "." + fileName.substring(0, fileName.length() - 6));
+                }
+            }
+            for (DirectoryTask task : tasks) {
+                classNames.addAll(task.join());
+            }
+            return classNames;
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.pql.mvcframework.v3.context;
+
+import com.pql.mvcframework.processor.ComponentIndexProcessor;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * 读取编译期生成的bean索引
+ * */
+public final class ComponentIndex {
+
+    private ComponentIndex(){
+    }
+
+    /**
+     * 读取classpath上所有索引文件中属于该包的类名
+     * 没有任何索引文件时返回null 由调用方退回扫描
+     * */
+    public static List<String> load(ClassLoader classLoader, String packageName) throws IOException {
+        Enumeration<URL> urls = classLoader.getResources(ComponentIndexProcessor.INDEX_LOCATION);
+        if(!urls.hasMoreElements()){
+            return null;
+        }
+        String prefix = packageName + ".";
+        List<String> classNames = new ArrayList<String>();
+        while (urls.hasMoreElements()){
+            Properties properties = new Properties();
+            InputStream is = urls.nextElement().openStream();
+            try{
+                properties.load(is);
+            }finally {
+                is.close();
+            }
+            for (String className : properties.stringPropertyNames()) {
+                if(className.startsWith(prefix)){
+                    classNames.add(className);
+                }
+            }
+        }
+        return classNames;
+    }
+}
@@ -0,0 +1,425 @@
+package com.pql.mvcframework.v3.context;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * 构建期生成的启动快照
+ * 记录扫描到的类 bean定义 注入计划和路由 启动时直接按快照注册 不再查找注解
+ * 同时记录bean类及其父类的class文件校验和 任何一个类发生变化或扫描结果不同时视为过期 由调用方退回完整扫描
+ * */
+public final class ContainerSnapshot {
+
+    /**
+     * 默认的快照位置
+     * */
+    public static final String LOCATION = "META-INF/pql.snapshot";
+
+    private static final int MAGIC = 0x50514C53;
+    private static final int FORMAT = 1;
+
+    private static final Map<String, Class<?>> PRIMITIVES = new HashMap<String, Class<?>>();
+
+    static {
+        Class<?>[] primitives = {boolean.class, byte.class, char.class, short.class, int.class, long.class,
+                float.class, double.class, void.class};
+        for (Class<?> primitive : primitives) {
+            PRIMITIVES.put(primitive.getName(), primitive);
+        }
+    }
+
+    private final String scanPackage;
+    private final List<String> classNames;
+    private final Map<String, Long> checksums;
+    private final List<Bean> beans;
+    private final Map<String, String> aliases;
+    private final List<Route> routes;
+
+    private ContainerSnapshot(String scanPackage, List<String> classNames, Map<String, Long> checksums,
+                              List<Bean> beans, Map<String, String> aliases, List<Route> routes){
+        this.scanPackage = scanPackage;
+        this.classNames = classNames;
+        this.checksums = checksums;
+        this.beans = beans;
+        this.aliases = aliases;
+        this.routes = routes;
+    }
+
+    /**
+     * 由已注册未refresh的容器生成快照 routes为路由和对应的bean名称及方法
+     * */
+    public static ContainerSnapshot capture(ClassLoader classLoader, String scanPackage, Collection<String> classNames,
+                                            BeanContainer ioc, List<Route> routes) throws IOException {
+        Map<String, Long> checksums = new LinkedHashMap<String, Long>();
+        List<Bean> beans = new ArrayList<Bean>();
+        for (BeanDefinition definition : ioc.getDefinitions()) {
+            for (Class<?> clazz = definition.getBeanClass(); clazz != null && clazz != Object.class; clazz = clazz.getSuperclass()) {
+                if(!checksums.containsKey(clazz.getName())){
+                    long checksum = checksum(classLoader, clazz.getName());
+                    if(checksum >= 0){
+                        checksums.put(clazz.getName(), checksum);
+                    }
+                }
+            }
+            beans.add(new Bean(definition));
+        }
+        return new ContainerSnapshot(scanPackage, new ArrayList<String>(classNames), checksums, beans,
+                new LinkedHashMap<String, String>(ioc.getAliases()), routes);
+    }
+
+    /**
+     * 读取classpath上的快照 不存在时返回null
+     * */
+    public static ContainerSnapshot load(ClassLoader classLoader, String location) throws IOException {
+        InputStream is = classLoader.getResourceAsStream(location);
+        if(is == null){
+            return null;
+        }
+        DataInputStream in = new DataInputStream(new BufferedInputStream(is));
+        try{
+            return read(in);
+        }finally {
+            in.close();
+        }
+    }
+
+    private static ContainerSnapshot read(DataInputStream in) throws IOException {
+        if(in.readInt() != MAGIC || in.readInt() != FORMAT){
+            throw new IOException("not a pql snapshot or unsupported format");
+        }
+        String scanPackage = in.readUTF();
+        int count = in.readInt();
+        List<String> classNames = new ArrayList<String>(count);
+        for (int i = 0; i < count; i++) {
+            classNames.add(in.readUTF());
+        }
+        count = in.readInt();
+        Map<String, Long> checksums = new LinkedHashMap<String, Long>();
+        for (int i = 0; i < count; i++) {
+            checksums.put(in.readUTF(), in.readLong());
+        }
+        count = in.readInt();
+        List<Bean> beans = new ArrayList<Bean>(count);
+        for (int i = 0; i < count; i++) {
+            beans.add(Bean.read(in));
+        }
+        count = in.readInt();
+        Map<String, String> aliases = new LinkedHashMap<String, String>();
+        for (int i = 0; i < count; i++) {
+            aliases.put(in.readUTF(), in.readUTF());
+        }
+        count = in.readInt();
+        List<Route> routes = new ArrayList<Route>(count);
+        for (int i = 0; i < count; i++) {
+            routes.add(new Route(in.readUTF(), in.readUTF(), in.readUTF(), readStrings(in)));
+        }
+        return new ContainerSnapshot(scanPackage, classNames, checksums, beans, aliases, routes);
+    }
+
+    /**
+     * 写入outputDirectory下的location
+     * */
+    public File write(File outputDirectory, String location) throws IOException {
+        File file = new File(outputDirectory, location);
+        File parent = file.getParentFile();
+        if(parent != null && !parent.isDirectory() && !parent.mkdirs()){
+            throw new IOException("can not create " + parent);
+        }
+        OutputStream os = new FileOutputStream(file);
+        try{
+            write(os);
+        }finally {
+            os.close();
+        }
+        return file;
+    }
+
+    public void write(OutputStream os) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(os));
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT);
+        out.writeUTF(scanPackage);
+        out.writeInt(classNames.size());
+        for (String className : classNames) {
+            out.writeUTF(className);
+        }
+        out.writeInt(checksums.size());
+        for (Map.Entry<String, Long> checksum : checksums.entrySet()) {
+            out.writeUTF(checksum.getKey());
+            out.writeLong(checksum.getValue());
+        }
+        out.writeInt(beans.size());
+        for (Bean bean : beans) {
+            bean.write(out);
+        }
+        out.writeInt(aliases.size());
+        for (Map.Entry<String, String> alias : aliases.entrySet()) {
+            out.writeUTF(alias.getKey());
+            out.writeUTF(alias.getValue());
+        }
+        out.writeInt(routes.size());
+        for (Route route : routes) {
+            out.writeUTF(route.url);
+            out.writeUTF(route.beanName);
+            out.writeUTF(route.methodName);
+            writeStrings(out, route.parameterTypes);
+        }
+        out.flush();
+    }
+
+    /**
+     * 校验快照是否仍然有效 有效时返回null 否则返回原因
+     * classNames为本次扫描的结果
+     * */
+    public String validate(ClassLoader classLoader, String scanPackage, Collection<String> classNames) throws IOException {
+        if(!this.scanPackage.equals(scanPackage)){
+            return "scanPackage changed";
+        }
+        if(this.classNames.size() != classNames.size() || !new HashSet<String>(this.classNames).containsAll(classNames)){
+            return "scanned classes changed";
+        }
+        for (Map.Entry<String, Long> checksum : checksums.entrySet()) {
+            if(checksum(classLoader, checksum.getKey()) != checksum.getValue()){
+                return checksum.getKey() + " changed";
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 按快照注册bean定义和别名 之后由调用方refresh
+     * */
+    public void registerTo(BeanContainer ioc, ClassLoader classLoader) throws Exception {
+        for (Bean bean : beans) {
+            ioc.register(bean.toDefinition(classLoader));
+        }
+        for (Map.Entry<String, String> alias : aliases.entrySet()) {
+            if(!ioc.getAliases().containsKey(alias.getKey())){
+                ioc.registerAlias(alias.getKey(), alias.getValue());
+            }
+        }
+    }
+
+    public List<String> getClassNames(){
+        return Collections.unmodifiableList(classNames);
+    }
+
+    public List<Route> getRoutes(){
+        return Collections.unmodifiableList(routes);
+    }
+
+    public int getBeanCount(){
+        return beans.size();
+    }
+
+    /**
+     * class文件的CRC32 找不到class文件时返回-1
+     * */
+    static long checksum(ClassLoader classLoader, String className) throws IOException {
+        InputStream is = classLoader.getResourceAsStream(className.replace('.', '/') + ".class");
+        if(is == null){
+            return -1;
+        }
+        try{
+            CRC32 crc = new CRC32();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = is.read(buffer)) > 0){
+                crc.update(buffer, 0, read);
+            }
+            return crc.getValue();
+        }finally {
+            is.close();
+        }
+    }
+
+    static Class<?> typeForName(String name, ClassLoader classLoader) throws ClassNotFoundException {
+        Class<?> primitive = PRIMITIVES.get(name);
+        return primitive != null ? primitive : Class.forName(name, false, classLoader);
+    }
+
+    private static Class<?>[] typesForNames(String[] names, ClassLoader classLoader) throws ClassNotFoundException {
+        Class<?>[] types = new Class<?>[names.length];
+        for (int i = 0; i < names.length; i++) {
+            types[i] = typeForName(names[i], classLoader);
+        }
+        return types;
+    }
+
+    private static String[] typeNames(Class<?>[] types){
+        String[] names = new String[types.length];
+        for (int i = 0; i < types.length; i++) {
+            names[i] = types[i].getName();
+        }
+        return names;
+    }
+
+    private static String[] readStrings(DataInputStream in) throws IOException {
+        String[] values = new String[in.readInt()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = in.readUTF();
+        }
+        return values;
+    }
+
+    private static void writeStrings(DataOutputStream out, String[] values) throws IOException {
+        out.writeInt(values.length);
+        for (String value : values) {
+            out.writeUTF(value);
+        }
+    }
+
+    /**
+     * 一个bean定义 字段以声明类和字段名记录
+     * */
+    private static final class Bean {
+
+        private final String name;
+        private final String className;
+        private final boolean lazy;
+        private final int scope;
+        private final String[] constructorTypes;
+        private final String[] fieldOwners;
+        private final String[] fieldNames;
+        private final String[] fieldDependencies;
+        private final boolean[] factoryFields;
+
+        private Bean(String name, String className, boolean lazy, int scope, String[] constructorTypes,
+                     String[] fieldOwners, String[] fieldNames, String[] fieldDependencies, boolean[] factoryFields){
+            this.name = name;
+            this.className = className;
+            this.lazy = lazy;
+            this.scope = scope;
+            this.constructorTypes = constructorTypes;
+            this.fieldOwners = fieldOwners;
+            this.fieldNames = fieldNames;
+            this.fieldDependencies = fieldDependencies;
+            this.factoryFields = factoryFields;
+        }
+
+        private Bean(BeanDefinition definition){
+            this.name = definition.getName();
+            this.className = definition.getBeanClass().getName();
+            this.lazy = definition.isLazy();
+            this.scope = definition.getScope();
+            InjectionPlan plan = definition.getInjectionPlan();
+            this.constructorTypes = typeNames(plan.getConstructor().getParameterTypes());
+            Field[] fields = plan.getFields();
+            this.fieldOwners = new String[fields.length];
+            this.fieldNames = new String[fields.length];
+            this.factoryFields = new boolean[fields.length];
+            for (int i = 0; i < fields.length; i++) {
+                fieldOwners[i] = fields[i].getDeclaringClass().getName();
+                fieldNames[i] = fields[i].getName();
+                factoryFields[i] = definition.isFactoryField(i);
+            }
+            this.fieldDependencies = definition.getFieldDependencies();
+        }
+
+        private static Bean read(DataInputStream in) throws IOException {
+            String name = in.readUTF();
+            String className = in.readUTF();
+            boolean lazy = in.readBoolean();
+            int scope = in.readByte();
+            String[] constructorTypes = readStrings(in);
+            int count = in.readInt();
+            String[] fieldOwners = new String[count];
+            String[] fieldNames = new String[count];
+            String[] fieldDependencies = new String[count];
+            boolean[] factoryFields = new boolean[count];
+            for (int i = 0; i < count; i++) {
+                fieldOwners[i] = in.readUTF();
+                fieldNames[i] = in.readUTF();
+                fieldDependencies[i] = in.readUTF();
+                factoryFields[i] = in.readBoolean();
+            }
+            return new Bean(name, className, lazy, scope, constructorTypes, fieldOwners, fieldNames,
+                    fieldDependencies, factoryFields);
+        }
+
+        private void write(DataOutputStream out) throws IOException {
+            out.writeUTF(name);
+            out.writeUTF(className);
+            out.writeBoolean(lazy);
+            out.writeByte(scope);
+            writeStrings(out, constructorTypes);
+            out.writeInt(fieldNames.length);
+            for (int i = 0; i < fieldNames.length; i++) {
+                out.writeUTF(fieldOwners[i]);
+                out.writeUTF(fieldNames[i]);
+                out.writeUTF(fieldDependencies[i]);
+                out.writeBoolean(factoryFields[i]);
+            }
+        }
+
+        /**
+         * 按名称直接取构造器和字段 不遍历成员 不读取注解
+         * */
+        private BeanDefinition toDefinition(ClassLoader classLoader) throws Exception {
+            Class<?> beanClass = Class.forName(className, false, classLoader);
+            Constructor<?> constructor = beanClass.getDeclaredConstructor(typesForNames(constructorTypes, classLoader));
+            Field[] fields = new Field[fieldNames.length];
+            for (int i = 0; i < fields.length; i++) {
+                fields[i] = Class.forName(fieldOwners[i], false, classLoader).getDeclaredField(fieldNames[i]);
+            }
+            return new BeanDefinition(name, beanClass, lazy, scope, InjectionPlan.forMembers(constructor, fields),
+                    fieldDependencies, factoryFields);
+        }
+    }
+
+    /**
+     * 一条路由 url对应的controller bean和方法
+     * */
+    public static final class Route {
+
+        private final String url;
+        private final String beanName;
+        private final String methodName;
+        private final String[] parameterTypes;
+
+        private Route(String url, String beanName, String methodName, String[] parameterTypes){
+            this.url = url;
+            this.beanName = beanName;
+            this.methodName = methodName;
+            this.parameterTypes = parameterTypes;
+        }
+
+        public Route(String url, String beanName, Method method){
+            this(url, beanName, method.getName(), typeNames(method.getParameterTypes()));
+        }
+
+        public String getUrl(){
+            return url;
+        }
+
+        public String getBeanName(){
+            return beanName;
+        }
+
+        /**
+         * 按方法名和参数类型取public方法 与扫描时的getMethods一致
+         * */
+        public Method resolve(Class<?> controllerClass) throws Exception {
+            return controllerClass.getMethod(methodName, typesForNames(parameterTypes, controllerClass.getClassLoader()));
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package com.pql.mvcframework.v3.context;
+
+import com.pql.mvcframework.annotation.PQLAutowired;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 一个类的创建和注入方式 每个类只解析一次
+ * 包含父类中的@PQLAutowired字段 父类字段先注入
+ * 构造器和字段setter都转换为MethodHandle 创建实例时不再有反射的访问检查
+ * */
+public final class InjectionPlan {
+
+    private static final MethodType CONSTRUCTOR_TYPE = MethodType.methodType(Object.class, Object[].class);
+    private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+
+    private static final ClassValue<InjectionPlan> PLANS = new ClassValue<InjectionPlan>() {
+        @Override
+        protected InjectionPlan computeValue(Class<?> type) {
+            return new InjectionPlan(type);
+        }
+    };
+
+    private final Constructor<?> constructor;
+    private final Field[] fields;
+    private final MethodHandle constructorHandle;
+    private final MethodHandle[] setters;
+
+    private InjectionPlan(Class<?> beanClass){
+        this(findConstructor(beanClass), findFields(beanClass));
+    }
+
+    private InjectionPlan(Constructor<?> constructor, Field[] fields){
+        this.constructor = constructor;
+        this.fields = fields;
+        this.constructorHandle = constructorHandle(constructor);
+        this.setters = new MethodHandle[fields.length];
+        for (int i = 0; i < fields.length; i++) {
+            setters[i] = setter(fields[i]);
+        }
+    }
+
+    public static InjectionPlan forClass(Class<?> beanClass){
+        return PLANS.get(beanClass);
+    }
+
+    /**
+     * 使用已经确定的构造器和字段 启动快照中记录的注入计划不再查找注解
+     * */
+    static InjectionPlan forMembers(Constructor<?> constructor, Field[] fields){
+        return new InjectionPlan(constructor, fields);
+    }
+
+    /**
+     * 优先使用@PQLAutowired构造器 其次无参构造器 只有一个构造器时直接使用
+     * */
+    private static Constructor<?> findConstructor(Class<?> beanClass){
+        Constructor<?>[] constructors = beanClass.getDeclaredConstructors();
+        Constructor<?> autowired = null;
+        for (Constructor<?> constructor : constructors) {
+            if(constructor.isAnnotationPresent(PQLAutowired.class)){
+                if(autowired != null){
+                    throw new IllegalStateException("more than one @PQLAutowired constructor on " + beanClass.getName());
+                }
+                autowired = constructor;
+            }
+        }
+        if(autowired != null){
+            return autowired;
+        }
+        for (Constructor<?> constructor : constructors) {
+            if(constructor.getParameterTypes().length == 0){
+                return constructor;
+            }
+        }
+        if(constructors.length == 1){
+            return constructors[0];
+        }
+        throw new IllegalStateException("no default constructor on " + beanClass.getName());
+    }
+
+    /**
+     * 从父类到子类收集非静态的@PQLAutowired字段
+     * */
+    private static Field[] findFields(Class<?> beanClass){
+        List<Class<?>> hierarchy = new ArrayList<Class<?>>();
+        for (Class<?> clazz = beanClass; clazz != null && clazz != Object.class; clazz = clazz.getSuperclass()) {
+            hierarchy.add(clazz);
+        }
+        Collections.reverse(hierarchy);
+        List<Field> fields = new ArrayList<Field>();
+        for (Class<?> clazz : hierarchy) {
+            for (Field field : clazz.getDeclaredFields()) {
+                if(field.isAnnotationPresent(PQLAutowired.class) && !Modifier.isStatic(field.getModifiers())){
+                    fields.add(field);
+                }
+            }
+        }
+        return fields.toArray(new Field[0]);
+    }
+
+    /**
+     * 生成 (Object[])Object 的构造器 失败时绑定到Constructor.newInstance
+     * */
+    private static MethodHandle constructorHandle(Constructor<?> constructor){
+        constructor.setAccessible(true);
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        try{
+            return lookup.unreflectConstructor(constructor)
+                    .asSpreader(Object[].class, constructor.getParameterTypes().length)
+                    .asType(CONSTRUCTOR_TYPE);
+        }catch (Exception e){
+            System.out.println("MethodHandle unavailable, fallback to reflection: " + constructor);
+            try{
+                return lookup.findVirtual(Constructor.class, "newInstance", CONSTRUCTOR_TYPE).bindTo(constructor);
+            }catch (Exception ex){
+                throw new IllegalStateException(ex);
+            }
+        }
+    }
+
+    /**
+     * 生成 (Object,Object)void 的setter 失败时绑定到Field.set
+     * */
+    private static MethodHandle setter(Field field){
+        field.setAccessible(true);
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        try{
+            return lookup.unreflectSetter(field).asType(SETTER_TYPE);
+        }catch (Exception e){
+            System.out.println("MethodHandle unavailable, fallback to reflection: " + field);
+            try{
+                return lookup.findVirtual(Field.class, "set", SETTER_TYPE).bindTo(field);
+            }catch (Exception ex){
+                throw new IllegalStateException(ex);
+            }
+        }
+    }
+
+    public Object newInstance(Object[] args) throws Throwable {
+        return (Object) constructorHandle.invokeExact(args);
+    }
+
+    public void inject(Object bean, int index, Object value) throws Throwable {
+        setters[index].invokeExact(bean, value);
+    }
+
+    public Constructor<?> getConstructor(){
+        return constructor;
+    }
+
+    public Field[] getFields(){
+        return fields;
+    }
+}
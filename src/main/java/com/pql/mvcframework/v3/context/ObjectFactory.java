@@ -0,0 +1,10 @@
+package com.pql.mvcframework.v3.context;
+
+/**
+ * 按需获取bean 用于在单例中使用prototype和request作用域的bean
+ * 字段类型声明为ObjectFactory<T>时 按T的类型或@PQLAutowired的名称注入
+ * */
+public interface ObjectFactory<T> {
+
+    T getObject();
+}
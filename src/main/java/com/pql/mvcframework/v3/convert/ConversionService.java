@@ -0,0 +1,420 @@
+package com.pql.mvcframework.v3.convert;
+
+import java.lang.reflect.*;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 类型转换服务
+ * 按目标类型注册转换器 启动时为每个形参查找一次 结果缓存在handler上
+ * */
+public class ConversionService {
+
+    private static final DateTimeFormatter DATE_TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    /**
+     * 目标类型和转换器的关系
+     * */
+    private final Map<Class<?>, Converter<?>> converters = new ConcurrentHashMap<Class<?>, Converter<?>>();
+
+    public ConversionService(){
+        addDefaultConverters();
+    }
+
+    /**
+     * 注册转换器 同一类型后注册的覆盖先注册的
+     * */
+    public <T> void addConverter(Class<T> type, Converter<? extends T> converter){
+        converters.put(type, converter);
+    }
+
+    /**
+     * 查找单值转换器 找不到时抛出异常 让问题在启动时暴露
+     * */
+    @SuppressWarnings("unchecked")
+    public <T> Converter<T> getConverter(Class<T> type){
+        Class<?> key = type.isPrimitive() ? wrap(type) : type;
+        Converter<?> converter = converters.get(key);
+        if(converter == null){
+            converter = createConverter(key);
+            converters.put(key, converter);
+        }
+        return (Converter<T>) converter;
+    }
+
+    /**
+     * 查找多值转换器 支持单值 数组 List Set
+     * */
+    public ValuesConverter getValuesConverter(Class<?> type, Type genericType){
+        if(type.isArray()){
+            return arrayConverter(type.getComponentType());
+        }
+        if(Collection.class.isAssignableFrom(type)){
+            return collectionConverter(type, elementType(genericType));
+        }
+        return new ScalarConverter(getConverter(type), defaultValue(type), type == String.class);
+    }
+
+    /**
+     * 基本类型不能传null 参数缺失时使用默认值
+     * */
+    public static Object defaultValue(Class<?> type){
+        if(!type.isPrimitive()){
+            return null;
+        }
+        if(type == boolean.class){
+            return Boolean.FALSE;
+        }
+        if(type == char.class){
+            return '\0';
+        }
+        return convertNumber(type, 0);
+    }
+
+    private static Object convertNumber(Class<?> type, int value){
+        if(type == int.class){
+            return value;
+        }else if(type == long.class){
+            return (long) value;
+        }else if(type == double.class){
+            return (double) value;
+        }else if(type == float.class){
+            return (float) value;
+        }else if(type == short.class){
+            return (short) value;
+        }
+        return (byte) value;
+    }
+
+    private void addDefaultConverters(){
+        addConverter(String.class, new Converter<String>() {
+            public String convert(String value) {
+                return value;
+            }
+        });
+        addConverter(Object.class, new Converter<Object>() {
+            public Object convert(String value) {
+                return value;
+            }
+        });
+        addConverter(Integer.class, new Converter<Integer>() {
+            public Integer convert(String value) {
+                return Integer.valueOf(value.trim());
+            }
+        });
+        addConverter(Long.class, new Converter<Long>() {
+            public Long convert(String value) {
+                return Long.valueOf(value.trim());
+            }
+        });
+        addConverter(Short.class, new Converter<Short>() {
+            public Short convert(String value) {
+                return Short.valueOf(value.trim());
+            }
+        });
+        addConverter(Byte.class, new Converter<Byte>() {
+            public Byte convert(String value) {
+                return Byte.valueOf(value.trim());
+            }
+        });
+        addConverter(Double.class, new Converter<Double>() {
+            public Double convert(String value) {
+                return Double.valueOf(value.trim());
+            }
+        });
+        addConverter(Float.class, new Converter<Float>() {
+            public Float convert(String value) {
+                return Float.valueOf(value.trim());
+            }
+        });
+        addConverter(Boolean.class, new Converter<Boolean>() {
+            public Boolean convert(String value) {
+                return parseBoolean(value.trim());
+            }
+        });
+        addConverter(Character.class, new Converter<Character>() {
+            public Character convert(String value) {
+                if(value.length() != 1){
+                    throw new IllegalArgumentException("can not convert " + value + " to char");
+                }
+                return value.charAt(0);
+            }
+        });
+        addConverter(BigDecimal.class, new Converter<BigDecimal>() {
+            public BigDecimal convert(String value) {
+                return new BigDecimal(value.trim());
+            }
+        });
+        addConverter(BigInteger.class, new Converter<BigInteger>() {
+            public BigInteger convert(String value) {
+                return new BigInteger(value.trim());
+            }
+        });
+        addConverter(LocalDate.class, new Converter<LocalDate>() {
+            public LocalDate convert(String value) {
+                return LocalDate.parse(value.trim());
+            }
+        });
+        addConverter(LocalTime.class, new Converter<LocalTime>() {
+            public LocalTime convert(String value) {
+                return LocalTime.parse(value.trim());
+            }
+        });
+        addConverter(LocalDateTime.class, new Converter<LocalDateTime>() {
+            public LocalDateTime convert(String value) {
+                return parseDateTime(value.trim());
+            }
+        });
+        addConverter(Date.class, new Converter<Date>() {
+            public Date convert(String value) {
+                String text = value.trim();
+                LocalDateTime dateTime = text.length() == 10
+                        ? LocalDate.parse(text).atStartOfDay()
+                        : parseDateTime(text);
+                return Date.from(dateTime.atZone(ZoneId.systemDefault()).toInstant());
+            }
+        });
+    }
+
+    /**
+     * 未注册的类型 枚举按名称转换 其他类型尝试静态valueOf/fromString(String)或String构造器
+     * */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private Converter<?> createConverter(final Class<?> type){
+        if(type.isEnum()){
+            final Class<? extends Enum> enumType = (Class<? extends Enum>) type;
+            return new Converter<Object>() {
+                public Object convert(String value) {
+                    return Enum.valueOf(enumType, value.trim());
+                }
+            };
+        }
+        for (String factoryName : new String[]{"valueOf", "fromString"}) {
+            try{
+                final Method factory = type.getMethod(factoryName, String.class);
+                if(Modifier.isStatic(factory.getModifiers()) && type.isAssignableFrom(factory.getReturnType())){
+                    return new Converter<Object>() {
+                        public Object convert(String value) throws Exception {
+                            return invoke(factory, null, value);
+                        }
+                    };
+                }
+            }catch (NoSuchMethodException ignored){
+            }
+        }
+        try{
+            final Constructor<?> constructor = type.getConstructor(String.class);
+            return new Converter<Object>() {
+                public Object convert(String value) throws Exception {
+                    try{
+                        return constructor.newInstance(value);
+                    }catch (InvocationTargetException e){
+                        throw unwrap(e);
+                    }
+                }
+            };
+        }catch (NoSuchMethodException ignored){
+        }
+        throw new IllegalStateException("no converter for type " + type.getName());
+    }
+
+    private ValuesConverter arrayConverter(final Class<?> componentType){
+        if(componentType == int.class){
+            return new ValuesConverter() {
+                public Object convert(String[] values) {
+                    if(values == null){
+                        return null;
+                    }
+                    int[] result = new int[values.length];
+                    for (int i = 0; i < values.length; i++) {
+                        result[i] = Integer.parseInt(values[i].trim());
+                    }
+                    return result;
+                }
+            };
+        }
+        if(componentType == long.class){
+            return new ValuesConverter() {
+                public Object convert(String[] values) {
+                    if(values == null){
+                        return null;
+                    }
+                    long[] result = new long[values.length];
+                    for (int i = 0; i < values.length; i++) {
+                        result[i] = Long.parseLong(values[i].trim());
+                    }
+                    return result;
+                }
+            };
+        }
+        if(componentType == double.class){
+            return new ValuesConverter() {
+                public Object convert(String[] values) {
+                    if(values == null){
+                        return null;
+                    }
+                    double[] result = new double[values.length];
+                    for (int i = 0; i < values.length; i++) {
+                        result[i] = Double.parseDouble(values[i].trim());
+                    }
+                    return result;
+                }
+            };
+        }
+        if(componentType == boolean.class){
+            return new ValuesConverter() {
+                public Object convert(String[] values) {
+                    if(values == null){
+                        return null;
+                    }
+                    boolean[] result = new boolean[values.length];
+                    for (int i = 0; i < values.length; i++) {
+                        result[i] = parseBoolean(values[i].trim());
+                    }
+                    return result;
+                }
+            };
+        }
+        if(componentType == String.class){
+            return new ValuesConverter() {
+                public Object convert(String[] values) {
+                    return values;
+                }
+            };
+        }
+        // 其余类型逐个转换 基本类型数组通过Array.set拆箱
+        final Converter<?> converter = getConverter(componentType);
+        return new ValuesConverter() {
+            public Object convert(String[] values) throws Exception {
+                if(values == null){
+                    return null;
+                }
+                Object result = Array.newInstance(componentType, values.length);
+                for (int i = 0; i < values.length; i++) {
+                    Array.set(result, i, converter.convert(values[i]));
+                }
+                return result;
+            }
+        };
+    }
+
+    private ValuesConverter collectionConverter(final Class<?> type, Class<?> elementType){
+        final Converter<?> converter = getConverter(elementType);
+        final boolean isSet = Set.class.isAssignableFrom(type);
+        return new ValuesConverter() {
+            public Object convert(String[] values) throws Exception {
+                if(values == null){
+                    return null;
+                }
+                Collection<Object> result = isSet
+                        ? new LinkedHashSet<Object>(values.length * 2)
+                        : new ArrayList<Object>(values.length);
+                for (String value : values) {
+                    result.add(converter.convert(value));
+                }
+                return result;
+            }
+        };
+    }
+
+    /**
+     * 集合的元素类型 没有泛型时按String处理
+     * */
+    private static Class<?> elementType(Type genericType){
+        if(genericType instanceof ParameterizedType){
+            Type[] arguments = ((ParameterizedType) genericType).getActualTypeArguments();
+            if(arguments.length == 1 && arguments[0] instanceof Class){
+                return (Class<?>) arguments[0];
+            }
+        }
+        return String.class;
+    }
+
+    private static Class<?> wrap(Class<?> type){
+        if(type == int.class){
+            return Integer.class;
+        }else if(type == long.class){
+            return Long.class;
+        }else if(type == boolean.class){
+            return Boolean.class;
+        }else if(type == double.class){
+            return Double.class;
+        }else if(type == float.class){
+            return Float.class;
+        }else if(type == short.class){
+            return Short.class;
+        }else if(type == byte.class){
+            return Byte.class;
+        }else if(type == char.class){
+            return Character.class;
+        }
+        return type;
+    }
+
+    private static boolean parseBoolean(String value){
+        if("true".equalsIgnoreCase(value) || "on".equalsIgnoreCase(value)
+                || "yes".equalsIgnoreCase(value) || "1".equals(value)){
+            return true;
+        }
+        if("false".equalsIgnoreCase(value) || "off".equalsIgnoreCase(value)
+                || "no".equalsIgnoreCase(value) || "0".equals(value)){
+            return false;
+        }
+        throw new IllegalArgumentException("can not convert " + value + " to boolean");
+    }
+
+    private static LocalDateTime parseDateTime(String value){
+        if(value.length() > 10 && value.charAt(10) == 'T'){
+            return LocalDateTime.parse(value);
+        }
+        return LocalDateTime.parse(value, DATE_TIME);
+    }
+
+    private static Object invoke(Method method, Object target, Object arg) throws Exception {
+        try{
+            return method.invoke(target, arg);
+        }catch (InvocationTargetException e){
+            throw unwrap(e);
+        }
+    }
+
+    private static Exception unwrap(InvocationTargetException e){
+        Throwable cause = e.getCause();
+        return cause instanceof Exception ? (Exception) cause : e;
+    }
+
+    /**
+     * 单值形参 取第一个值
+     * */
+    private static class ScalarConverter implements ValuesConverter {
+
+        private final Converter<?> converter;
+        private final Object defaultValue;
+        private final boolean keepEmpty;
+
+        private ScalarConverter(Converter<?> converter, Object defaultValue, boolean keepEmpty){
+            this.converter = converter;
+            this.defaultValue = defaultValue;
+            this.keepEmpty = keepEmpty;
+        }
+
+        public Object convert(String[] values) throws Exception {
+            if(values == null || values.length == 0){
+                return defaultValue;
+            }
+            String value = values[0];
+            // 非字符串类型的空值视为未传
+            if(value == null || (!keepEmpty && value.isEmpty())){
+                return defaultValue;
+            }
+            return converter.convert(value);
+        }
+    }
+}
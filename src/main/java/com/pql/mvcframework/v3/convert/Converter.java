@@ -0,0 +1,9 @@
+package com.pql.mvcframework.v3.convert;
+
+/**
+ * http基于字符串协议 把请求中的string转换为形参类型
+ * */
+public interface Converter<T> {
+
+    T convert(String value) throws Exception;
+}
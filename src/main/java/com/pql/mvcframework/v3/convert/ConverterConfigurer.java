@@ -0,0 +1,10 @@
+package com.pql.mvcframework.v3.convert;
+
+/**
+ * 注册自定义转换器
+ * 实现该接口的bean会在初始化handlerMapping之前被调用
+ * */
+public interface ConverterConfigurer {
+
+    void addConverters(ConversionService conversionService);
+}
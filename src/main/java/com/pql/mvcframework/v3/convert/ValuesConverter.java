@@ -0,0 +1,10 @@
+package com.pql.mvcframework.v3.convert;
+
+/**
+ * 同名参数可能有多个值 直接从String[]转换为形参 不再拼接再拆分
+ * 参数不存在时values为null
+ * */
+public interface ValuesConverter {
+
+    Object convert(String[] values) throws Exception;
+}
@@ -0,0 +1,79 @@
+package com.pql.mvcframework.v3.exception;
+
+import com.pql.mvcframework.v3.invoke.HandlerInvoker;
+import com.pql.mvcframework.v3.invoke.HandlerInvokers;
+import com.pql.mvcframework.v3.json.JsonCodecs;
+import com.pql.mvcframework.v3.result.ReturnValueHandler;
+import com.pql.mvcframework.v3.result.ReturnValueHandlers;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.lang.reflect.Method;
+
+/**
+ * 一个@PQLExceptionHandler方法
+ * 参数来源 调用器 返回值处理在启动时确定
+ * */
+public class ExceptionHandlerMethod {
+
+    private static final int EXCEPTION = 0;
+    private static final int REQUEST = 1;
+    private static final int RESPONSE = 2;
+
+    private final Method method;
+    private final int status;
+    private final int[] parameterKinds;
+    private final HandlerInvoker invoker;
+    private final ReturnValueHandler returnValueHandler;
+
+    public ExceptionHandlerMethod(Object bean, Method method, int status, JsonCodecs jsonCodecs){
+        this.method = method;
+        this.status = status;
+        Class<?>[] parameterTypes = method.getParameterTypes();
+        this.parameterKinds = new int[parameterTypes.length];
+        for (int i = 0; i < parameterTypes.length; i++) {
+            Class<?> type = parameterTypes[i];
+            if(Throwable.class.isAssignableFrom(type)){
+                parameterKinds[i] = EXCEPTION;
+            }else if(type == HttpServletRequest.class){
+                parameterKinds[i] = REQUEST;
+            }else if(type == HttpServletResponse.class){
+                parameterKinds[i] = RESPONSE;
+            }else{
+                throw new IllegalStateException("unsupported parameter " + type.getName() + " on exception handler " + method);
+            }
+        }
+        this.invoker = HandlerInvokers.create(bean, method);
+        this.returnValueHandler = ReturnValueHandlers.forMethod(method, jsonCodecs);
+    }
+
+    /**
+     * 先设置状态码 方法内仍可通过response修改
+     * */
+    public void handle(Throwable e, HttpServletRequest request, HttpServletResponse response) throws Exception {
+        Object[] args = new Object[parameterKinds.length];
+        for (int i = 0; i < parameterKinds.length; i++) {
+            switch (parameterKinds[i]){
+                case EXCEPTION:
+                    args[i] = e;
+                    break;
+                case REQUEST:
+                    args[i] = request;
+                    break;
+                default:
+                    args[i] = response;
+            }
+        }
+        response.setStatus(status);
+        Object result = invoker.invoke(args);
+        returnValueHandler.handle(result, request, response);
+    }
+
+    public Method getMethod(){
+        return method;
+    }
+
+    public int getStatus(){
+        return status;
+    }
+}
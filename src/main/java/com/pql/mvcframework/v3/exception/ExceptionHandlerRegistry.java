@@ -0,0 +1,111 @@
+package com.pql.mvcframework.v3.exception;
+
+import com.pql.mvcframework.annotation.PQLExceptionHandler;
+import com.pql.mvcframework.v3.json.JsonCodecs;
+
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 异常类型和处理方法的关系
+ * 按异常的继承链查找最近的处理方法 自身没有时交给parent(全局advice)
+ * 每种异常类型只查找一次 结果缓存 没有处理方法也会缓存
+ * */
+public class ExceptionHandlerRegistry {
+
+    private final Map<Class<?>, ExceptionHandlerMethod> mappings = new HashMap<Class<?>, ExceptionHandlerMethod>();
+    private final ExceptionHandlerRegistry parent;
+    private final JsonCodecs jsonCodecs;
+    private final ConcurrentHashMap<Class<?>, Resolved> resolved = new ConcurrentHashMap<Class<?>, Resolved>();
+
+    public ExceptionHandlerRegistry(ExceptionHandlerRegistry parent, JsonCodecs jsonCodecs){
+        this.parent = parent;
+        this.jsonCodecs = jsonCodecs;
+    }
+
+    /**
+     * 注册bean中所有@PQLExceptionHandler方法
+     * */
+    @SuppressWarnings("unchecked")
+    public void register(Object bean){
+        for (Method method : bean.getClass().getMethods()) {
+            PQLExceptionHandler annotation = method.getAnnotation(PQLExceptionHandler.class);
+            if(annotation == null){
+                continue;
+            }
+            Class<? extends Throwable>[] types = annotation.value();
+            if(types.length == 0){
+                // 没有指定异常类型 取参数中的异常类型
+                int count = 0;
+                Class<?>[] parameterTypes = method.getParameterTypes();
+                types = new Class[parameterTypes.length];
+                for (Class<?> type : parameterTypes) {
+                    if(Throwable.class.isAssignableFrom(type)){
+                        types[count++] = (Class<? extends Throwable>) type;
+                    }
+                }
+                if(count == 0){
+                    throw new IllegalStateException("no exception type declared on " + method);
+                }
+                Class<? extends Throwable>[] declared = new Class[count];
+                System.arraycopy(types, 0, declared, 0, count);
+                types = declared;
+            }
+            ExceptionHandlerMethod handlerMethod = new ExceptionHandlerMethod(bean, method, annotation.status(), jsonCodecs);
+            for (Class<? extends Throwable> type : types) {
+                if(mappings.containsKey(type)){
+                    throw new IllegalStateException("the exception handler for " + type.getName() + " is exists!!");
+                }
+                mappings.put(type, handlerMethod);
+                System.out.println("Exception handler: " + type.getName() + "," + method);
+            }
+        }
+    }
+
+    public boolean isEmpty(){
+        return mappings.isEmpty();
+    }
+
+    /**
+     * 查找异常类型对应的处理方法 没有时返回null
+     * */
+    public ExceptionHandlerMethod resolve(Class<? extends Throwable> type){
+        Resolved cached = resolved.get(type);
+        if(cached == null){
+            ExceptionHandlerMethod method = find(type);
+            if(method == null && parent != null){
+                method = parent.resolve(type);
+            }
+            cached = new Resolved(method);
+            resolved.putIfAbsent(type, cached);
+        }
+        return cached.method;
+    }
+
+    private ExceptionHandlerMethod find(Class<?> type){
+        if(mappings.isEmpty()){
+            return null;
+        }
+        for (Class<?> current = type; current != null; current = current.getSuperclass()) {
+            ExceptionHandlerMethod method = mappings.get(current);
+            if(method != null){
+                return method;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 查找结果 method为null表示没有处理方法
+     * */
+    private static final class Resolved {
+
+        private final ExceptionHandlerMethod method;
+
+        private Resolved(ExceptionHandlerMethod method){
+            this.method = method;
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package com.pql.mvcframework.v3.interceptor;
+
+/**
+ * 注册拦截器
+ * 实现该接口的bean会在初始化handlerMapping之前被调用
+ * */
+public interface InterceptorConfigurer {
+
+    void addInterceptors(InterceptorRegistry registry);
+}
@@ -0,0 +1,57 @@
+package com.pql.mvcframework.v3.interceptor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 一个拦截器和它的路径
+ * 没有配置包含路径时匹配全部handler 排除路径优先
+ * */
+public class InterceptorRegistration {
+
+    private final PQLHandlerInterceptor interceptor;
+    private final List<String> includePatterns = new ArrayList<String>();
+    private final List<String> excludePatterns = new ArrayList<String>();
+
+    InterceptorRegistration(PQLHandlerInterceptor interceptor){
+        this.interceptor = interceptor;
+    }
+
+    public InterceptorRegistration addPathPatterns(String... patterns){
+        for (String pattern : patterns) {
+            includePatterns.add(PathPatterns.normalize(pattern));
+        }
+        return this;
+    }
+
+    public InterceptorRegistration excludePathPatterns(String... patterns){
+        for (String pattern : patterns) {
+            excludePatterns.add(PathPatterns.normalize(pattern));
+        }
+        return this;
+    }
+
+    public PQLHandlerInterceptor getInterceptor(){
+        return interceptor;
+    }
+
+    /**
+     * url是否需要经过该拦截器 url为handler的映射url 模板变量可以被*匹配
+     * */
+    public boolean matches(String url){
+        for (String pattern : excludePatterns) {
+            if(PathPatterns.matches(pattern, url)){
+                return false;
+            }
+        }
+        if(includePatterns.isEmpty()){
+            return true;
+        }
+        for (String pattern : includePatterns) {
+            if(PathPatterns.matches(pattern, url)){
+                return true;
+            }
+        }
+        return false;
+    }
+}
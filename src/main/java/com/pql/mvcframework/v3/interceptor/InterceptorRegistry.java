@@ -0,0 +1,44 @@
+package com.pql.mvcframework.v3.interceptor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 拦截器注册表
+ * 只在启动时使用 为每个handler生成按注册顺序排列的拦截器数组
+ * */
+public class InterceptorRegistry {
+
+    /**
+     * 没有拦截器的handler共用
+     * */
+    private static final PQLHandlerInterceptor[] EMPTY = new PQLHandlerInterceptor[0];
+
+    private final List<InterceptorRegistration> registrations = new ArrayList<InterceptorRegistration>();
+
+    public InterceptorRegistration addInterceptor(PQLHandlerInterceptor interceptor){
+        if(interceptor == null){
+            throw new IllegalArgumentException("the interceptor is null!!");
+        }
+        InterceptorRegistration registration = new InterceptorRegistration(interceptor);
+        registrations.add(registration);
+        return registration;
+    }
+
+    /**
+     * 匹配url的拦截器 按注册顺序
+     * */
+    public PQLHandlerInterceptor[] forUrl(String url){
+        List<PQLHandlerInterceptor> matched = new ArrayList<PQLHandlerInterceptor>();
+        for (InterceptorRegistration registration : registrations) {
+            if(registration.matches(url)){
+                matched.add(registration.getInterceptor());
+            }
+        }
+        return matched.isEmpty() ? EMPTY : matched.toArray(new PQLHandlerInterceptor[matched.size()]);
+    }
+
+    public boolean isEmpty(){
+        return registrations.isEmpty();
+    }
+}
@@ -0,0 +1,29 @@
+package com.pql.mvcframework.v3.interceptor;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.lang.reflect.Method;
+
+/**
+ * handler拦截器
+ * 通过InterceptorConfigurer注册 启动时按路径匹配到各handler上 请求时不再匹配
+ * */
+public interface PQLHandlerInterceptor {
+
+    /**
+     * 参数绑定之前调用 返回false时不再绑定和调用handler 由拦截器自己输出响应
+     * */
+    boolean preHandle(HttpServletRequest request, HttpServletResponse response, Method handler) throws Exception;
+
+    /**
+     * handler调用之后 输出返回值之前调用 按注册的逆序执行
+     * 命中响应缓存时handler没有调用 不执行
+     * */
+    void postHandle(HttpServletRequest request, HttpServletResponse response, Method handler, Object result) throws Exception;
+
+    /**
+     * 请求结束时调用 只对preHandle返回true的拦截器按逆序执行 异步请求在结果输出后执行
+     * ex为处理过程中出现的异常 没有时为null
+     * */
+    void afterCompletion(HttpServletRequest request, HttpServletResponse response, Method handler, Exception ex) throws Exception;
+}
@@ -0,0 +1,88 @@
+package com.pql.mvcframework.v3.interceptor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * ant风格的路径匹配 按路径段比较
+ * ?匹配一个字符 *匹配段内任意个字符 **匹配任意个路径段
+ * */
+final class PathPatterns {
+
+    private PathPatterns(){
+    }
+
+    static String normalize(String pattern){
+        return ("/" + pattern).replaceAll("/+", "/");
+    }
+
+    static boolean matches(String pattern, String path){
+        return matchSegments(split(pattern), 0, split(path), 0);
+    }
+
+    /**
+     * 按/拆分 忽略空段
+     * */
+    private static String[] split(String path){
+        List<String> segments = new ArrayList<String>();
+        int start = 0;
+        int length = path.length();
+        while (start < length){
+            int end = path.indexOf('/', start);
+            if(end < 0){
+                end = length;
+            }
+            if(end > start){
+                segments.add(path.substring(start, end));
+            }
+            start = end + 1;
+        }
+        return segments.toArray(new String[segments.size()]);
+    }
+
+    private static boolean matchSegments(String[] patterns, int p, String[] segments, int s){
+        while (p < patterns.length){
+            if("**".equals(patterns[p])){
+                // 连续的**等同于一个
+                while (p < patterns.length && "**".equals(patterns[p])){
+                    p++;
+                }
+                if(p == patterns.length){
+                    return true;
+                }
+                for (int i = s; i < segments.length; i++) {
+                    if(matchSegments(patterns, p, segments, i)){
+                        return true;
+                    }
+                }
+                return false;
+            }
+            if(s == segments.length || !matchSegment(patterns[p], 0, segments[s], 0)){
+                return false;
+            }
+            p++;
+            s++;
+        }
+        return s == segments.length;
+    }
+
+    private static boolean matchSegment(String pattern, int p, String segment, int s){
+        while (p < pattern.length()){
+            char c = pattern.charAt(p);
+            if(c == '*'){
+                for (int i = s; i <= segment.length(); i++) {
+                    if(matchSegment(pattern, p + 1, segment, i)){
+                        return true;
+                    }
+                }
+                return false;
+            }
+            if(s == segment.length() || (c != '?' && c != segment.charAt(s))){
+                return false;
+            }
+            p++;
+            s++;
+        }
+        return s == segment.length();
+    }
+}
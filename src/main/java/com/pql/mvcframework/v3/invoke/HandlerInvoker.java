@@ -0,0 +1,12 @@
+package com.pql.mvcframework.v3.invoke;
+
+/**
+ * controller方法调用器 启动时绑定好bean实例和方法
+ * */
+public interface HandlerInvoker {
+
+    /**
+     * 调用方法 方法本身抛出的异常原样抛出 不再包装为InvocationTargetException
+     * */
+    Object invoke(Object[] args) throws Exception;
+}
@@ -0,0 +1,95 @@
+package com.pql.mvcframework.v3.invoke;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+
+/**
+ * 生成方法调用器
+ * 优先使用MethodHandle 直接绑定bean实例并展开参数数组 省掉反射的访问检查
+ * 生成失败时退回普通反射调用
+ * */
+public final class HandlerInvokers {
+
+    private static final MethodType INVOKER_TYPE = MethodType.methodType(Object.class, Object[].class);
+
+    private HandlerInvokers(){
+    }
+
+    public static HandlerInvoker create(Object target, Method method){
+        try{
+            return new MethodHandleInvoker(target, method);
+        }catch (Exception e){
+            System.out.println("MethodHandle unavailable, fallback to reflection: " + method);
+            return reflective(target, method);
+        }
+    }
+
+    public static HandlerInvoker reflective(Object target, Method method){
+        return new ReflectiveInvoker(target, method);
+    }
+
+    /**
+     * 基于MethodHandle的调用
+     * */
+    private static class MethodHandleInvoker implements HandlerInvoker {
+
+        private final MethodHandle handle;
+
+        private MethodHandleInvoker(Object target, Method method) throws IllegalAccessException {
+            method.setAccessible(true);
+            MethodHandle handle = MethodHandles.lookup().unreflect(method);
+            if(!Modifier.isStatic(method.getModifiers())){
+                handle = handle.bindTo(target);
+            }
+            this.handle = handle
+                    .asSpreader(Object[].class, method.getParameterTypes().length)
+                    .asType(INVOKER_TYPE);
+        }
+
+        public Object invoke(Object[] args) throws Exception {
+            try{
+                return handle.invokeExact(args);
+            }catch (Exception e){
+                throw e;
+            }catch (Error e){
+                throw e;
+            }catch (Throwable e){
+                throw new InvocationTargetException(e);
+            }
+        }
+    }
+
+    /**
+     * 反射调用 兜底
+     * */
+    private static class ReflectiveInvoker implements HandlerInvoker {
+
+        private final Object target;
+        private final Method method;
+
+        private ReflectiveInvoker(Object target, Method method){
+            method.setAccessible(true);
+            this.target = target;
+            this.method = method;
+        }
+
+        public Object invoke(Object[] args) throws Exception {
+            try{
+                return method.invoke(target, args);
+            }catch (InvocationTargetException e){
+                Throwable cause = e.getCause();
+                if(cause instanceof Exception){
+                    throw (Exception) cause;
+                }
+                if(cause instanceof Error){
+                    throw (Error) cause;
+                }
+                throw e;
+            }
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.pql.mvcframework.v3.json;
+
+import com.pql.mvcframework.v3.async.AsyncExecutors;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * 读写json的字节缓冲 每个线程缓存一个
+ * 同一线程同时需要多个时 其余的临时创建
+ * 虚拟线程每个任务新建 线程内缓存无法复用 改为从共享的小池中借用 池为空时新建 池满时丢弃
+ * */
+public final class JsonBuffers {
+
+    public static final int BUFFER_SIZE = 8192;
+
+    private static final BlockingQueue<byte[]> SHARED = new ArrayBlockingQueue<byte[]>(
+            Math.max(16, Runtime.getRuntime().availableProcessors() * 4));
+
+    private static final ThreadLocal<byte[][]> CACHE = new ThreadLocal<byte[][]>() {
+        @Override
+        protected byte[][] initialValue() {
+            return new byte[1][];
+        }
+    };
+
+    private JsonBuffers(){
+    }
+
+    public static byte[] acquire(){
+        if(AsyncExecutors.isVirtualThread()){
+            byte[] buffer = SHARED.poll();
+            return buffer == null ? new byte[BUFFER_SIZE] : buffer;
+        }
+        byte[][] cache = CACHE.get();
+        byte[] buffer = cache[0];
+        if(buffer == null){
+            return new byte[BUFFER_SIZE];
+        }
+        cache[0] = null;
+        return buffer;
+    }
+
+    public static void release(byte[] buffer){
+        if(AsyncExecutors.isVirtualThread()){
+            SHARED.offer(buffer);
+            return;
+        }
+        CACHE.get()[0] = buffer;
+    }
+}
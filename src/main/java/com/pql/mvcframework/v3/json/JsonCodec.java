@@ -0,0 +1,14 @@
+package com.pql.mvcframework.v3.json;
+
+import java.io.IOException;
+
+/**
+ * 一种类型的json读写方式 启动时按类型生成并缓存
+ * null由调用方处理 这里的value不为null
+ * */
+public interface JsonCodec<T> {
+
+    T read(JsonReader reader) throws IOException;
+
+    void write(JsonWriter writer, T value) throws IOException;
+}
@@ -0,0 +1,782 @@
+package com.pql.mvcframework.v3.json;
+
+import com.pql.mvcframework.exception.PQLBusinessException;
+import com.pql.mvcframework.v3.convert.ConversionService;
+import com.pql.mvcframework.v3.convert.Converter;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.*;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 按类型生成json读写方式
+ * 基本类型 字符串 枚举 数组 集合 Map 和按字段读写的普通对象
+ * 其他java自带的类型按字符串读写 读取时使用ConversionService转换
+ * handler启动时查找一次 之后直接使用缓存的codec
+ * */
+public class JsonCodecs {
+
+    private static final MethodType CONSTRUCTOR_TYPE = MethodType.methodType(Object.class);
+    private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+    private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+
+    private static final JsonCodec<Object> STRING = new JsonCodec<Object>() {
+        public Object read(JsonReader reader) throws IOException {
+            return reader.nextString();
+        }
+
+        public void write(JsonWriter writer, Object value) throws IOException {
+            writer.value(value.toString());
+        }
+    };
+
+    private static final JsonCodec<Object> BOOLEAN = new JsonCodec<Object>() {
+        public Object read(JsonReader reader) throws IOException {
+            return reader.nextBoolean();
+        }
+
+        public void write(JsonWriter writer, Object value) throws IOException {
+            writer.value(((Boolean) value).booleanValue());
+        }
+    };
+
+    private static final JsonCodec<Object> LONG = new JsonCodec<Object>() {
+        public Object read(JsonReader reader) throws IOException {
+            return reader.nextLong();
+        }
+
+        public void write(JsonWriter writer, Object value) throws IOException {
+            writer.value(((Number) value).longValue());
+        }
+    };
+
+    private static final JsonCodec<Object> INTEGER = new JsonCodec<Object>() {
+        public Object read(JsonReader reader) throws IOException {
+            return reader.nextInt();
+        }
+
+        public void write(JsonWriter writer, Object value) throws IOException {
+            writer.value(((Number) value).longValue());
+        }
+    };
+
+    private static final JsonCodec<Object> SHORT = new JsonCodec<Object>() {
+        public Object read(JsonReader reader) throws IOException {
+            return (short) reader.nextInt();
+        }
+
+        public void write(JsonWriter writer, Object value) throws IOException {
+            writer.value(((Number) value).longValue());
+        }
+    };
+
+    private static final JsonCodec<Object> BYTE = new JsonCodec<Object>() {
+        public Object read(JsonReader reader) throws IOException {
+            return (byte) reader.nextInt();
+        }
+
+        public void write(JsonWriter writer, Object value) throws IOException {
+            writer.value(((Number) value).longValue());
+        }
+    };
+
+    private static final JsonCodec<Object> DOUBLE = new JsonCodec<Object>() {
+        public Object read(JsonReader reader) throws IOException {
+            return reader.nextDouble();
+        }
+
+        public void write(JsonWriter writer, Object value) throws IOException {
+            writer.value(((Number) value).doubleValue());
+        }
+    };
+
+    private static final JsonCodec<Object> FLOAT = new JsonCodec<Object>() {
+        public Object read(JsonReader reader) throws IOException {
+            return (float) reader.nextDouble();
+        }
+
+        public void write(JsonWriter writer, Object value) throws IOException {
+            writer.value(((Number) value).doubleValue());
+        }
+    };
+
+    private static final JsonCodec<Object> CHARACTER = new JsonCodec<Object>() {
+        public Object read(JsonReader reader) throws IOException {
+            String value = reader.nextString();
+            if(value.length() != 1){
+                throw new PQLBusinessException("expected a single character but was " + value);
+            }
+            return value.charAt(0);
+        }
+
+        public void write(JsonWriter writer, Object value) throws IOException {
+            writer.value(value.toString());
+        }
+    };
+
+    private static final JsonCodec<Object> BIG_DECIMAL = new JsonCodec<Object>() {
+        public Object read(JsonReader reader) throws IOException {
+            String value = reader.nextString();
+            try{
+                return new BigDecimal(value);
+            }catch (NumberFormatException e){
+                throw new PQLBusinessException("malformed number " + value);
+            }
+        }
+
+        public void write(JsonWriter writer, Object value) throws IOException {
+            writer.value((BigDecimal) value);
+        }
+    };
+
+    private static final JsonCodec<Object> BIG_INTEGER = new JsonCodec<Object>() {
+        public Object read(JsonReader reader) throws IOException {
+            String value = reader.nextString();
+            try{
+                return new BigInteger(value);
+            }catch (NumberFormatException e){
+                throw new PQLBusinessException("malformed number " + value);
+            }
+        }
+
+        public void write(JsonWriter writer, Object value) throws IOException {
+            writer.numberValue(value.toString());
+        }
+    };
+
+    /**
+     * 声明为Number时 读取为Long或Double
+     * */
+    private static final JsonCodec<Object> NUMBER = new JsonCodec<Object>() {
+        public Object read(JsonReader reader) throws IOException {
+            return reader.nextNumber();
+        }
+
+        public void write(JsonWriter writer, Object value) throws IOException {
+            writer.numberValue(value.toString());
+        }
+    };
+
+    private final ConversionService conversionService;
+
+    /**
+     * 类型和codec的关系 包括泛型类型
+     * */
+    private final Map<Type, JsonCodec<?>> codecs = new ConcurrentHashMap<Type, JsonCodec<?>>();
+
+    /**
+     * 声明类型为Object时 读取为Map List String Number Boolean 输出时按实际类型
+     * */
+    private final JsonCodec<Object> dynamic = new JsonCodec<Object>() {
+        public Object read(JsonReader reader) throws IOException {
+            switch (reader.peek()){
+                case JsonReader.BEGIN_OBJECT:
+                    Map<String, Object> map = new LinkedHashMap<String, Object>();
+                    reader.beginObject();
+                    while (reader.hasNext()){
+                        map.put(reader.nextName(), JsonCodecs.read(this, reader));
+                    }
+                    reader.endObject();
+                    return map;
+                case JsonReader.BEGIN_ARRAY:
+                    List<Object> list = new ArrayList<Object>();
+                    reader.beginArray();
+                    while (reader.hasNext()){
+                        list.add(JsonCodecs.read(this, reader));
+                    }
+                    reader.endArray();
+                    return list;
+                case JsonReader.NUMBER:
+                    return reader.nextNumber();
+                case JsonReader.TRUE:
+                case JsonReader.FALSE:
+                    return reader.nextBoolean();
+                default:
+                    return reader.nextString();
+            }
+        }
+
+        public void write(JsonWriter writer, Object value) throws IOException {
+            if(value.getClass() == Object.class){
+                writer.beginObject().endObject();
+                return;
+            }
+            forType(value.getClass()).write(writer, value);
+        }
+    };
+
+    public JsonCodecs(ConversionService conversionService){
+        this.conversionService = conversionService;
+        codecs.put(Object.class, dynamic);
+        codecs.put(String.class, STRING);
+        codecs.put(boolean.class, BOOLEAN);
+        codecs.put(Boolean.class, BOOLEAN);
+        codecs.put(long.class, LONG);
+        codecs.put(Long.class, LONG);
+        codecs.put(int.class, INTEGER);
+        codecs.put(Integer.class, INTEGER);
+        codecs.put(short.class, SHORT);
+        codecs.put(Short.class, SHORT);
+        codecs.put(byte.class, BYTE);
+        codecs.put(Byte.class, BYTE);
+        codecs.put(double.class, DOUBLE);
+        codecs.put(Double.class, DOUBLE);
+        codecs.put(float.class, FLOAT);
+        codecs.put(Float.class, FLOAT);
+        codecs.put(char.class, CHARACTER);
+        codecs.put(Character.class, CHARACTER);
+        codecs.put(BigDecimal.class, BIG_DECIMAL);
+        codecs.put(BigInteger.class, BIG_INTEGER);
+        codecs.put(Number.class, NUMBER);
+    }
+
+    /**
+     * 读取一个值 json中的null直接返回null
+     * */
+    public static Object read(JsonCodec<Object> codec, JsonReader reader) throws IOException {
+        if(reader.peek() == JsonReader.NULL){
+            reader.nextNull();
+            return null;
+        }
+        return codec.read(reader);
+    }
+
+    /**
+     * 输出一个值 null输出为json的null
+     * */
+    public static void write(JsonCodec<Object> codec, JsonWriter writer, Object value) throws IOException {
+        if(value == null){
+            writer.nullValue();
+            return;
+        }
+        codec.write(writer, value);
+    }
+
+    /**
+     * 按声明类型查找codec 不存在时创建
+     * 普通对象先放入缓存再解析字段 字段类型引用自身时直接使用缓存中的codec
+     * */
+    @SuppressWarnings("unchecked")
+    public JsonCodec<Object> forType(Type type){
+        JsonCodec<?> codec = codecs.get(type);
+        if(codec == null){
+            codec = createCodec(type);
+            JsonCodec<?> exists = codecs.putIfAbsent(type, codec);
+            if(exists != null){
+                codec = exists;
+            }else if(codec instanceof BeanCodec){
+                ((BeanCodec) codec).properties();
+            }
+        }
+        return (JsonCodec<Object>) codec;
+    }
+
+    private JsonCodec<?> createCodec(Type type){
+        if(type instanceof Class){
+            return createCodec((Class<?>) type);
+        }
+        if(type instanceof ParameterizedType){
+            Class<?> raw = (Class<?>) ((ParameterizedType) type).getRawType();
+            Type[] arguments = ((ParameterizedType) type).getActualTypeArguments();
+            if(Collection.class.isAssignableFrom(raw)){
+                return new CollectionCodec(raw, forType(arguments[0]));
+            }
+            if(Map.class.isAssignableFrom(raw)){
+                return new MapCodec(raw, keyConverter(arguments[0]), forType(arguments[1]));
+            }
+            if(raw == Iterator.class){
+                return new IteratorCodec(forType(arguments[0]));
+            }
+            return forType(raw);
+        }
+        if(type instanceof GenericArrayType){
+            Type componentType = ((GenericArrayType) type).getGenericComponentType();
+            return new ArrayCodec(rawType(componentType), forType(componentType));
+        }
+        if(type instanceof WildcardType){
+            return forType(((WildcardType) type).getUpperBounds()[0]);
+        }
+        if(type instanceof TypeVariable){
+            return forType(((TypeVariable<?>) type).getBounds()[0]);
+        }
+        throw new IllegalStateException("unsupported json type " + type);
+    }
+
+    private JsonCodec<?> createCodec(Class<?> type){
+        if(type.isEnum()){
+            return new EnumCodec(type);
+        }
+        if(type.isArray()){
+            return new ArrayCodec(type.getComponentType(), forType(type.getComponentType()));
+        }
+        if(Collection.class.isAssignableFrom(type)){
+            return new CollectionCodec(type, dynamic);
+        }
+        if(Map.class.isAssignableFrom(type)){
+            return new MapCodec(type, null, dynamic);
+        }
+        if(type == Iterator.class){
+            return new IteratorCodec(dynamic);
+        }
+        if(type.isInterface() || Modifier.isAbstract(type.getModifiers())){
+            return new RuntimeCodec(type);
+        }
+        if(type.getName().startsWith("java.") || type.getName().startsWith("javax.")){
+            return new ConvertingCodec(type);
+        }
+        return new BeanCodec(type);
+    }
+
+    /**
+     * Map的key 字符串以外的类型通过ConversionService转换
+     * */
+    @SuppressWarnings("unchecked")
+    private Converter<Object> keyConverter(Type keyType){
+        Class<?> type = rawType(keyType);
+        if(type == String.class || type == Object.class){
+            return null;
+        }
+        return (Converter<Object>) conversionService.getConverter(type);
+    }
+
+    private static Class<?> rawType(Type type){
+        if(type instanceof Class){
+            return (Class<?>) type;
+        }
+        if(type instanceof ParameterizedType){
+            return (Class<?>) ((ParameterizedType) type).getRawType();
+        }
+        if(type instanceof GenericArrayType){
+            return Array.newInstance(rawType(((GenericArrayType) type).getGenericComponentType()), 0).getClass();
+        }
+        return Object.class;
+    }
+
+    /**
+     * 无参构造器 不存在时为null
+     * */
+    private static MethodHandle constructor(Class<?> type){
+        try{
+            Constructor<?> constructor = type.getDeclaredConstructor();
+            constructor.setAccessible(true);
+            return MethodHandles.lookup().unreflectConstructor(constructor).asType(CONSTRUCTOR_TYPE);
+        }catch (Exception e){
+            return null;
+        }
+    }
+
+    private static Object newInstance(MethodHandle constructor, Class<?> type){
+        if(constructor == null){
+            throw new IllegalStateException("no default constructor on " + type.getName());
+        }
+        try{
+            return (Object) constructor.invokeExact();
+        }catch (Throwable e){
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static IOException rethrow(Throwable e){
+        if(e instanceof IOException){
+            return (IOException) e;
+        }
+        if(e instanceof RuntimeException){
+            throw (RuntimeException) e;
+        }
+        if(e instanceof Error){
+            throw (Error) e;
+        }
+        throw new IllegalStateException(e);
+    }
+
+    /**
+     * 枚举按名称读写
+     * */
+    private static class EnumCodec implements JsonCodec<Object> {
+
+        private final Class<?> type;
+        private final Map<String, Object> constants = new HashMap<String, Object>();
+
+        private EnumCodec(Class<?> type){
+            this.type = type;
+            for (Object constant : type.getEnumConstants()) {
+                constants.put(((Enum<?>) constant).name(), constant);
+            }
+        }
+
+        public Object read(JsonReader reader) throws IOException {
+            String name = reader.nextString();
+            Object constant = constants.get(name);
+            if(constant == null){
+                throw new PQLBusinessException("unknown " + type.getSimpleName() + " " + name);
+            }
+            return constant;
+        }
+
+        public void write(JsonWriter writer, Object value) throws IOException {
+            writer.value(((Enum<?>) value).name());
+        }
+    }
+
+    /**
+     * 数组 包括基本类型数组
+     * */
+    private static class ArrayCodec implements JsonCodec<Object> {
+
+        private final Class<?> componentType;
+        private final JsonCodec<Object> componentCodec;
+
+        private ArrayCodec(Class<?> componentType, JsonCodec<Object> componentCodec){
+            this.componentType = componentType;
+            this.componentCodec = componentCodec;
+        }
+
+        public Object read(JsonReader reader) throws IOException {
+            List<Object> values = new ArrayList<Object>();
+            reader.beginArray();
+            while (reader.hasNext()){
+                values.add(JsonCodecs.read(componentCodec, reader));
+            }
+            reader.endArray();
+            Object array = Array.newInstance(componentType, values.size());
+            for (int i = 0; i < values.size(); i++) {
+                Object value = values.get(i);
+                if(value != null || !componentType.isPrimitive()){
+                    Array.set(array, i, value);
+                }
+            }
+            return array;
+        }
+
+        public void write(JsonWriter writer, Object value) throws IOException {
+            writer.beginArray();
+            int length = Array.getLength(value);
+            for (int i = 0; i < length; i++) {
+                JsonCodecs.write(componentCodec, writer, Array.get(value, i));
+            }
+            writer.endArray();
+        }
+    }
+
+    /**
+     * 集合 接口类型读取为ArrayList LinkedHashSet TreeSet LinkedList
+     * */
+    private static class CollectionCodec implements JsonCodec<Object> {
+
+        private final Class<?> type;
+        private final MethodHandle constructor;
+        private final JsonCodec<Object> elementCodec;
+
+        private CollectionCodec(Class<?> type, JsonCodec<Object> elementCodec){
+            this.type = type;
+            this.constructor = type.isInterface() || Modifier.isAbstract(type.getModifiers()) ? null : constructor(type);
+            this.elementCodec = elementCodec;
+        }
+
+        @SuppressWarnings("unchecked")
+        public Object read(JsonReader reader) throws IOException {
+            Collection<Object> collection = newCollection();
+            reader.beginArray();
+            while (reader.hasNext()){
+                collection.add(JsonCodecs.read(elementCodec, reader));
+            }
+            reader.endArray();
+            return collection;
+        }
+
+        @SuppressWarnings("unchecked")
+        private Collection<Object> newCollection(){
+            if(constructor != null){
+                return (Collection<Object>) newInstance(constructor, type);
+            }
+            if(SortedSet.class.isAssignableFrom(type)){
+                return new TreeSet<Object>();
+            }
+            if(Set.class.isAssignableFrom(type)){
+                return new LinkedHashSet<Object>();
+            }
+            if(Queue.class.isAssignableFrom(type)){
+                return new LinkedList<Object>();
+            }
+            return new ArrayList<Object>();
+        }
+
+        public void write(JsonWriter writer, Object value) throws IOException {
+            writer.beginArray();
+            if(value instanceof RandomAccess && value instanceof List){
+                List<?> list = (List<?>) value;
+                for (int i = 0; i < list.size(); i++) {
+                    JsonCodecs.write(elementCodec, writer, list.get(i));
+                }
+            }else{
+                for (Object element : (Collection<?>) value) {
+                    JsonCodecs.write(elementCodec, writer, element);
+                }
+            }
+            writer.endArray();
+        }
+    }
+
+    /**
+     * 只用于输出 边遍历边写出 不需要先把结果收集到集合中
+     * */
+    private static class IteratorCodec implements JsonCodec<Object> {
+
+        private final JsonCodec<Object> elementCodec;
+
+        private IteratorCodec(JsonCodec<Object> elementCodec){
+            this.elementCodec = elementCodec;
+        }
+
+        public Object read(JsonReader reader) {
+            throw new IllegalStateException("can not read json into an Iterator");
+        }
+
+        public void write(JsonWriter writer, Object value) throws IOException {
+            Iterator<?> iterator = (Iterator<?>) value;
+            writer.beginArray();
+            while (iterator.hasNext()){
+                JsonCodecs.write(elementCodec, writer, iterator.next());
+            }
+            writer.endArray();
+        }
+    }
+
+    /**
+     * Map 接口类型读取为LinkedHashMap或TreeMap 输出时key转为字符串
+     * */
+    private static class MapCodec implements JsonCodec<Object> {
+
+        private final Class<?> type;
+        private final MethodHandle constructor;
+        private final Converter<Object> keyConverter;
+        private final JsonCodec<Object> valueCodec;
+
+        private MapCodec(Class<?> type, Converter<Object> keyConverter, JsonCodec<Object> valueCodec){
+            this.type = type;
+            this.constructor = type.isInterface() || Modifier.isAbstract(type.getModifiers()) ? null : constructor(type);
+            this.keyConverter = keyConverter;
+            this.valueCodec = valueCodec;
+        }
+
+        @SuppressWarnings("unchecked")
+        public Object read(JsonReader reader) throws IOException {
+            Map<Object, Object> map;
+            if(constructor != null){
+                map = (Map<Object, Object>) newInstance(constructor, type);
+            }else if(SortedMap.class.isAssignableFrom(type)){
+                map = new TreeMap<Object, Object>();
+            }else{
+                map = new LinkedHashMap<Object, Object>();
+            }
+            reader.beginObject();
+            while (reader.hasNext()){
+                String name = reader.nextName();
+                Object key = name;
+                if(keyConverter != null){
+                    try{
+                        key = keyConverter.convert(name);
+                    }catch (Exception e){
+                        throw new PQLBusinessException("malformed key " + name);
+                    }
+                }
+                map.put(key, JsonCodecs.read(valueCodec, reader));
+            }
+            reader.endObject();
+            return map;
+        }
+
+        public void write(JsonWriter writer, Object value) throws IOException {
+            writer.beginObject();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                writer.name(String.valueOf(entry.getKey()));
+                JsonCodecs.write(valueCodec, writer, entry.getValue());
+            }
+            writer.endObject();
+        }
+    }
+
+    /**
+     * 接口或抽象类 只能按实际类型输出
+     * */
+    private class RuntimeCodec implements JsonCodec<Object> {
+
+        private final Class<?> type;
+
+        private RuntimeCodec(Class<?> type){
+            this.type = type;
+        }
+
+        public Object read(JsonReader reader) {
+            throw new IllegalStateException("can not read json into abstract type " + type.getName());
+        }
+
+        public void write(JsonWriter writer, Object value) throws IOException {
+            forType(value.getClass()).write(writer, value);
+        }
+    }
+
+    /**
+     * 日期等java自带类型 按字符串读写
+     * */
+    private class ConvertingCodec implements JsonCodec<Object> {
+
+        private final Class<?> type;
+        private final Converter<?> converter;
+
+        private ConvertingCodec(Class<?> type){
+            this.type = type;
+            Converter<?> found = null;
+            try{
+                found = conversionService.getConverter(type);
+            }catch (RuntimeException e){
+                // 只用于输出时不需要转换器
+            }
+            this.converter = found;
+        }
+
+        public Object read(JsonReader reader) throws IOException {
+            if(converter == null){
+                throw new IllegalStateException("no converter for " + type.getName());
+            }
+            String value = reader.nextString();
+            try{
+                return converter.convert(value);
+            }catch (Exception e){
+                throw new PQLBusinessException("malformed " + type.getSimpleName() + " " + value);
+            }
+        }
+
+        public void write(JsonWriter writer, Object value) throws IOException {
+            writer.value(value.toString());
+        }
+    }
+
+    /**
+     * 普通对象 按非静态非transient字段读写 父类字段在前
+     * 字段的读写转换为MethodHandle 未知字段跳过 final字段只输出
+     * */
+    private class BeanCodec implements JsonCodec<Object> {
+
+        private final Class<?> type;
+        private final MethodHandle constructor;
+        private volatile Property[] properties;
+        private Map<String, Property> names;
+
+        private BeanCodec(Class<?> type){
+            this.type = type;
+            this.constructor = constructor(type);
+        }
+
+        /**
+         * 第一次使用时解析字段 正常情况下在启动时已经完成
+         * */
+        private Property[] properties(){
+            Property[] resolved = properties;
+            if(resolved == null){
+                synchronized (this){
+                    resolved = properties;
+                    if(resolved == null){
+                        resolved = resolve();
+                    }
+                }
+            }
+            return resolved;
+        }
+
+        private Property[] resolve(){
+            List<Class<?>> hierarchy = new ArrayList<Class<?>>();
+            for (Class<?> clazz = type; clazz != null && clazz != Object.class; clazz = clazz.getSuperclass()) {
+                hierarchy.add(clazz);
+            }
+            Collections.reverse(hierarchy);
+            List<Property> list = new ArrayList<Property>();
+            Map<String, Property> byName = new HashMap<String, Property>();
+            for (Class<?> clazz : hierarchy) {
+                for (Field field : clazz.getDeclaredFields()) {
+                    int modifiers = field.getModifiers();
+                    if(Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers) || field.isSynthetic()){
+                        continue;
+                    }
+                    Property property = new Property(field, forType(field.getGenericType()));
+                    list.add(property);
+                    byName.put(property.name, property);
+                }
+            }
+            Property[] resolved = list.toArray(new Property[0]);
+            names = byName;
+            properties = resolved;
+            return resolved;
+        }
+
+        public Object read(JsonReader reader) throws IOException {
+            Object bean = newInstance(constructor, type);
+            properties();
+            reader.beginObject();
+            while (reader.hasNext()){
+                Property property = names.get(reader.nextName());
+                if(property == null || property.setter == null){
+                    reader.skipValue();
+                    continue;
+                }
+                Object value = JsonCodecs.read(property.codec, reader);
+                if(value == null && property.primitive){
+                    continue;
+                }
+                try{
+                    property.setter.invokeExact(bean, value);
+                }catch (Throwable e){
+                    throw rethrow(e);
+                }
+            }
+            reader.endObject();
+            return bean;
+        }
+
+        public void write(JsonWriter writer, Object value) throws IOException {
+            Property[] resolved = properties();
+            writer.beginObject();
+            for (Property property : resolved) {
+                Object fieldValue;
+                try{
+                    fieldValue = (Object) property.getter.invokeExact(value);
+                }catch (Throwable e){
+                    throw rethrow(e);
+                }
+                writer.name(property.name);
+                JsonCodecs.write(property.codec, writer, fieldValue);
+            }
+            writer.endObject();
+        }
+    }
+
+    private static class Property {
+
+        private final String name;
+        private final boolean primitive;
+        private final JsonCodec<Object> codec;
+        private final MethodHandle getter;
+        private final MethodHandle setter;
+
+        private Property(Field field, JsonCodec<Object> codec){
+            this.name = field.getName();
+            this.primitive = field.getType().isPrimitive();
+            this.codec = codec;
+            field.setAccessible(true);
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            try{
+                this.getter = lookup.unreflectGetter(field).asType(GETTER_TYPE);
+                this.setter = Modifier.isFinal(field.getModifiers()) ? null
+                        : lookup.unreflectSetter(field).asType(SETTER_TYPE);
+            }catch (IllegalAccessException e){
+                throw new IllegalStateException("can not access field " + field, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,578 @@
+package com.pql.mvcframework.v3.json;
+
+import com.pql.mvcframework.exception.PQLBusinessException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 流式读取json 按UTF-8解码
+ * 只持有一个固定大小的字节缓冲 边读边解析 内存占用与请求体大小无关
+ * 格式错误时抛出400的业务异常
+ * */
+public final class JsonReader {
+
+    public static final int BEGIN_OBJECT = 1;
+    public static final int END_OBJECT = 2;
+    public static final int BEGIN_ARRAY = 3;
+    public static final int END_ARRAY = 4;
+    public static final int NAME = 5;
+    public static final int STRING = 6;
+    public static final int NUMBER = 7;
+    public static final int TRUE = 8;
+    public static final int FALSE = 9;
+    public static final int NULL = 10;
+    public static final int END_DOCUMENT = 11;
+
+    private static final int NONE = 0;
+
+    /**
+     * 每一层的状态
+     * */
+    private static final byte EMPTY_DOCUMENT = 0;
+    private static final byte NONEMPTY_DOCUMENT = 1;
+    private static final byte EMPTY_ARRAY = 2;
+    private static final byte NONEMPTY_ARRAY = 3;
+    private static final byte EMPTY_OBJECT = 4;
+    private static final byte DANGLING_NAME = 5;
+    private static final byte NONEMPTY_OBJECT = 6;
+
+    /**
+     * 嵌套层数上限 避免恶意请求让解析栈溢出
+     * */
+    private static final int MAX_DEPTH = 512;
+
+    private final InputStream in;
+    private final byte[] buffer;
+    private int pos;
+    private int limit;
+
+    /**
+     * 当前缓冲之前已经读过的字节数 用于报告出错位置
+     * */
+    private long consumed;
+
+    private byte[] stack = new byte[32];
+    private int depth = 1;
+    private int peeked = NONE;
+
+    /**
+     * 转义 多字节字符 数字的拼接缓冲 按需创建
+     * */
+    private StringBuilder chars;
+
+    public JsonReader(InputStream in, byte[] buffer){
+        this.in = in;
+        this.buffer = buffer;
+        stack[0] = EMPTY_DOCUMENT;
+    }
+
+    /**
+     * 下一个记号的类型
+     * */
+    public int peek() throws IOException {
+        if(peeked == NONE){
+            peeked = doPeek();
+        }
+        return peeked;
+    }
+
+    public void beginObject() throws IOException {
+        expect(BEGIN_OBJECT);
+        push(EMPTY_OBJECT);
+    }
+
+    public void endObject() throws IOException {
+        expect(END_OBJECT);
+        depth--;
+    }
+
+    public void beginArray() throws IOException {
+        expect(BEGIN_ARRAY);
+        push(EMPTY_ARRAY);
+    }
+
+    public void endArray() throws IOException {
+        expect(END_ARRAY);
+        depth--;
+    }
+
+    /**
+     * 当前对象或数组中是否还有元素
+     * */
+    public boolean hasNext() throws IOException {
+        int p = peek();
+        return p != END_OBJECT && p != END_ARRAY && p != END_DOCUMENT;
+    }
+
+    public String nextName() throws IOException {
+        expect(NAME);
+        return readString();
+    }
+
+    /**
+     * 字符串 数字按原文返回
+     * */
+    public String nextString() throws IOException {
+        int p = peek();
+        if(p == STRING){
+            peeked = NONE;
+            return readString();
+        }
+        if(p == NUMBER){
+            peeked = NONE;
+            return readNumber().toString();
+        }
+        throw syntaxError("expected a string");
+    }
+
+    public boolean nextBoolean() throws IOException {
+        int p = peek();
+        if(p == TRUE || p == FALSE){
+            peeked = NONE;
+            return p == TRUE;
+        }
+        if(p == STRING){
+            peeked = NONE;
+            return Boolean.parseBoolean(readString());
+        }
+        throw syntaxError("expected a boolean");
+    }
+
+    public void nextNull() throws IOException {
+        expect(NULL);
+    }
+
+    /**
+     * 整数 不产生中间字符串 带小数或超出long范围时报错
+     * */
+    public long nextLong() throws IOException {
+        int p = peek();
+        CharSequence text;
+        if(p == NUMBER){
+            peeked = NONE;
+            text = readNumber();
+        }else if(p == STRING){
+            peeked = NONE;
+            text = readString();
+        }else{
+            throw syntaxError("expected a number");
+        }
+        return parseLong(text);
+    }
+
+    public int nextInt() throws IOException {
+        long value = nextLong();
+        if(value < Integer.MIN_VALUE || value > Integer.MAX_VALUE){
+            throw syntaxError("number out of range " + value);
+        }
+        return (int) value;
+    }
+
+    public double nextDouble() throws IOException {
+        String text = nextString();
+        try{
+            return Double.parseDouble(text);
+        }catch (NumberFormatException e){
+            throw syntaxError("malformed number " + text);
+        }
+    }
+
+    /**
+     * 不知道目标类型时读取数字 整数为Long 其他为Double
+     * */
+    public Number nextNumber() throws IOException {
+        expect(NUMBER);
+        CharSequence text = readNumber();
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if(c == '.' || c == 'e' || c == 'E'){
+                return Double.valueOf(text.toString());
+            }
+        }
+        if(text.length() < 19){
+            return parseLong(text);
+        }
+        return Double.valueOf(text.toString());
+    }
+
+    /**
+     * 跳过下一个值 包括其中嵌套的对象和数组
+     * */
+    public void skipValue() throws IOException {
+        int count = 0;
+        do {
+            int p = peek();
+            switch (p){
+                case BEGIN_OBJECT:
+                    beginObject();
+                    count++;
+                    break;
+                case BEGIN_ARRAY:
+                    beginArray();
+                    count++;
+                    break;
+                case END_OBJECT:
+                    endObject();
+                    count--;
+                    break;
+                case END_ARRAY:
+                    endArray();
+                    count--;
+                    break;
+                case NAME:
+                    nextName();
+                    break;
+                case STRING:
+                    peeked = NONE;
+                    skipString();
+                    break;
+                case NUMBER:
+                    peeked = NONE;
+                    readNumber();
+                    break;
+                case END_DOCUMENT:
+                    throw syntaxError("unexpected end of input");
+                default:
+                    peeked = NONE;
+            }
+        }while (count > 0);
+    }
+
+    /**
+     * 确认根值之后只有空白
+     * */
+    public void endDocument() throws IOException {
+        expect(END_DOCUMENT);
+    }
+
+    private void expect(int token) throws IOException {
+        if(peek() != token){
+            throw syntaxError("unexpected token");
+        }
+        peeked = NONE;
+    }
+
+    private void push(byte state){
+        if(depth == stack.length){
+            if(depth == MAX_DEPTH){
+                throw syntaxError("nesting too deep");
+            }
+            byte[] grown = new byte[depth * 2];
+            System.arraycopy(stack, 0, grown, 0, depth);
+            stack = grown;
+        }
+        stack[depth++] = state;
+    }
+
+    private int doPeek() throws IOException {
+        byte state = stack[depth - 1];
+        if(state == EMPTY_ARRAY){
+            stack[depth - 1] = NONEMPTY_ARRAY;
+            if(nextNonWhitespace() == ']'){
+                return END_ARRAY;
+            }
+            pos--;
+        }else if(state == NONEMPTY_ARRAY){
+            int c = nextNonWhitespace();
+            if(c == ']'){
+                return END_ARRAY;
+            }
+            if(c != ','){
+                throw syntaxError("expected , or ]");
+            }
+        }else if(state == EMPTY_OBJECT || state == NONEMPTY_OBJECT){
+            stack[depth - 1] = DANGLING_NAME;
+            int c = nextNonWhitespace();
+            if(c == '}'){
+                return END_OBJECT;
+            }
+            if(state == NONEMPTY_OBJECT){
+                if(c != ','){
+                    throw syntaxError("expected , or }");
+                }
+                c = nextNonWhitespace();
+            }
+            if(c != '"'){
+                throw syntaxError("expected a name");
+            }
+            return NAME;
+        }else if(state == DANGLING_NAME){
+            stack[depth - 1] = NONEMPTY_OBJECT;
+            if(nextNonWhitespace() != ':'){
+                throw syntaxError("expected :");
+            }
+        }else if(state == EMPTY_DOCUMENT){
+            stack[depth - 1] = NONEMPTY_DOCUMENT;
+        }else{
+            if(!skipWhitespace()){
+                return END_DOCUMENT;
+            }
+            throw syntaxError("unexpected content after the root value");
+        }
+
+        int c = nextNonWhitespace();
+        switch (c){
+            case '{':
+                return BEGIN_OBJECT;
+            case '[':
+                return BEGIN_ARRAY;
+            case '"':
+                return STRING;
+            case 't':
+                expectLiteral("rue");
+                return TRUE;
+            case 'f':
+                expectLiteral("alse");
+                return FALSE;
+            case 'n':
+                expectLiteral("ull");
+                return NULL;
+            default:
+                if(c == '-' || (c >= '0' && c <= '9')){
+                    pos--;
+                    return NUMBER;
+                }
+                throw syntaxError("unexpected character " + (char) c);
+        }
+    }
+
+    private void expectLiteral(String rest) throws IOException {
+        for (int i = 0; i < rest.length(); i++) {
+            if(nextByte() != rest.charAt(i)){
+                throw syntaxError("malformed literal");
+            }
+        }
+    }
+
+    /**
+     * 读取字符串 开头的引号已经读过
+     * 缓冲内没有转义和非ASCII字符时直接创建 否则逐字节解码
+     * */
+    private String readString() throws IOException {
+        int start = pos;
+        while (pos < limit){
+            byte b = buffer[pos];
+            if(b == '"'){
+                String value = new String(buffer, start, pos - start, StandardCharsets.ISO_8859_1);
+                pos++;
+                return value;
+            }
+            if(b == '\\' || b < 0x20){
+                break;
+            }
+            pos++;
+        }
+        StringBuilder sb = chars();
+        for (int i = start; i < pos; i++) {
+            sb.append((char) buffer[i]);
+        }
+        while (true){
+            int b = nextByte();
+            if(b == '"'){
+                return sb.toString();
+            }
+            if(b == '\\'){
+                readEscape(sb);
+            }else if(b >= 0x80){
+                readMultiByte(b, sb);
+            }else if(b < 0x20){
+                throw syntaxError("unescaped control character");
+            }else{
+                sb.append((char) b);
+            }
+        }
+    }
+
+    /**
+     * 跳过字符串 和读取时一样校验转义和控制字符
+     * */
+    private void skipString() throws IOException {
+        while (true){
+            int b = nextByte();
+            if(b == '"'){
+                return;
+            }
+            if(b == '\\'){
+                readEscape(chars());
+            }else if(b < 0x20){
+                throw syntaxError("unescaped control character");
+            }
+        }
+    }
+
+    private void readEscape(StringBuilder sb) throws IOException {
+        int c = nextByte();
+        switch (c){
+            case '"':
+            case '\\':
+            case '/':
+                sb.append((char) c);
+                break;
+            case 'b':
+                sb.append('\b');
+                break;
+            case 'f':
+                sb.append('\f');
+                break;
+            case 'n':
+                sb.append('\n');
+                break;
+            case 'r':
+                sb.append('\r');
+                break;
+            case 't':
+                sb.append('\t');
+                break;
+            case 'u':
+                int value = 0;
+                for (int i = 0; i < 4; i++) {
+                    int digit = Character.digit(nextByte(), 16);
+                    if(digit < 0){
+                        throw syntaxError("malformed unicode escape");
+                    }
+                    value = (value << 4) | digit;
+                }
+                sb.append((char) value);
+                break;
+            default:
+                throw syntaxError("malformed escape \\" + (char) c);
+        }
+    }
+
+    /**
+     * UTF-8多字节字符 非法序列替换为U+FFFD
+     * */
+    private void readMultiByte(int lead, StringBuilder sb) throws IOException {
+        int count;
+        int codePoint;
+        if((lead & 0xE0) == 0xC0){
+            count = 1;
+            codePoint = lead & 0x1F;
+        }else if((lead & 0xF0) == 0xE0){
+            count = 2;
+            codePoint = lead & 0x0F;
+        }else if((lead & 0xF8) == 0xF0){
+            count = 3;
+            codePoint = lead & 0x07;
+        }else{
+            sb.append('\uFFFD');
+            return;
+        }
+        for (int i = 0; i < count; i++) {
+            int b = nextByte();
+            if((b & 0xC0) != 0x80){
+                sb.append('\uFFFD');
+                pos--;
+                return;
+            }
+            codePoint = (codePoint << 6) | (b & 0x3F);
+        }
+        if(Character.isValidCodePoint(codePoint)){
+            sb.appendCodePoint(codePoint);
+        }else{
+            sb.append('\uFFFD');
+        }
+    }
+
+    /**
+     * 读取数字的原文 复用拼接缓冲
+     * */
+    private StringBuilder readNumber() throws IOException {
+        StringBuilder sb = chars();
+        while (pos < limit || fill()){
+            byte b = buffer[pos];
+            if((b >= '0' && b <= '9') || b == '-' || b == '+' || b == '.' || b == 'e' || b == 'E'){
+                sb.append((char) b);
+                pos++;
+            }else{
+                break;
+            }
+        }
+        return sb;
+    }
+
+    private long parseLong(CharSequence text){
+        int length = text.length();
+        boolean negative = length > 0 && text.charAt(0) == '-';
+        int i = negative ? 1 : 0;
+        if(i == length || length - i > 19){
+            throw syntaxError("malformed integer " + text);
+        }
+        long value = 0;
+        for (; i < length; i++) {
+            char c = text.charAt(i);
+            if(c < '0' || c > '9'){
+                throw syntaxError("malformed integer " + text);
+            }
+            // 按负数累加 可以表示Long.MIN_VALUE
+            long next = value * 10 - (c - '0');
+            if(next > value){
+                throw syntaxError("number out of range " + text);
+            }
+            value = next;
+        }
+        if(!negative){
+            if(value == Long.MIN_VALUE){
+                throw syntaxError("number out of range " + text);
+            }
+            return -value;
+        }
+        return value;
+    }
+
+    private StringBuilder chars(){
+        if(chars == null){
+            chars = new StringBuilder(64);
+        }else{
+            chars.setLength(0);
+        }
+        return chars;
+    }
+
+    /**
+     * 跳过空白 返回是否还有内容
+     * */
+    private boolean skipWhitespace() throws IOException {
+        while (pos < limit || fill()){
+            byte b = buffer[pos];
+            if(b == ' ' || b == '\n' || b == '\r' || b == '\t'){
+                pos++;
+            }else{
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int nextNonWhitespace() throws IOException {
+        if(!skipWhitespace()){
+            throw syntaxError("unexpected end of input");
+        }
+        return buffer[pos++] & 0xFF;
+    }
+
+    private int nextByte() throws IOException {
+        if(pos == limit && !fill()){
+            throw syntaxError("unexpected end of input");
+        }
+        return buffer[pos++] & 0xFF;
+    }
+
+    private boolean fill() throws IOException {
+        consumed += limit;
+        pos = 0;
+        limit = 0;
+        int n = in.read(buffer, 0, buffer.length);
+        if(n <= 0){
+            return false;
+        }
+        limit = n;
+        return true;
+    }
+
+    private PQLBusinessException syntaxError(String message){
+        return new PQLBusinessException("malformed json at " + (consumed + pos) + ": " + message);
+    }
+}
@@ -0,0 +1,343 @@
+package com.pql.mvcframework.v3.json;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+
+/**
+ * 流式输出json 按UTF-8编码
+ * 先写入固定大小的字节缓冲 写满后才输出到流
+ * 全部内容都在缓冲内时 调用方可以设置Content-Length后再输出
+ * */
+public final class JsonWriter {
+
+    private static final byte[] HEX = "0123456789abcdef".getBytes();
+    private static final byte[] NULL = "null".getBytes();
+    private static final byte[] TRUE = "true".getBytes();
+    private static final byte[] FALSE = "false".getBytes();
+
+    /**
+     * 每一层的状态 与JsonReader相同
+     * */
+    private static final byte EMPTY_DOCUMENT = 0;
+    private static final byte NONEMPTY_DOCUMENT = 1;
+    private static final byte EMPTY_ARRAY = 2;
+    private static final byte NONEMPTY_ARRAY = 3;
+    private static final byte EMPTY_OBJECT = 4;
+    private static final byte DANGLING_NAME = 5;
+    private static final byte NONEMPTY_OBJECT = 6;
+
+    private static final int MAX_DEPTH = 512;
+
+    private final OutputStream out;
+    private final byte[] buffer;
+    private int count;
+    private boolean flushed;
+
+    private byte[] stack = new byte[32];
+    private int depth = 1;
+
+    public JsonWriter(OutputStream out, byte[] buffer){
+        this.out = out;
+        this.buffer = buffer;
+        stack[0] = EMPTY_DOCUMENT;
+    }
+
+    public JsonWriter beginObject() throws IOException {
+        beforeValue();
+        push(EMPTY_OBJECT);
+        writeByte('{');
+        return this;
+    }
+
+    public JsonWriter endObject() throws IOException {
+        byte state = stack[depth - 1];
+        if(state != EMPTY_OBJECT && state != NONEMPTY_OBJECT){
+            throw new IllegalStateException("not in an object");
+        }
+        depth--;
+        writeByte('}');
+        return this;
+    }
+
+    public JsonWriter beginArray() throws IOException {
+        beforeValue();
+        push(EMPTY_ARRAY);
+        writeByte('[');
+        return this;
+    }
+
+    public JsonWriter endArray() throws IOException {
+        byte state = stack[depth - 1];
+        if(state != EMPTY_ARRAY && state != NONEMPTY_ARRAY){
+            throw new IllegalStateException("not in an array");
+        }
+        depth--;
+        writeByte(']');
+        return this;
+    }
+
+    public JsonWriter name(String name) throws IOException {
+        byte state = stack[depth - 1];
+        if(state == NONEMPTY_OBJECT){
+            writeByte(',');
+        }else if(state != EMPTY_OBJECT){
+            throw new IllegalStateException("not in an object");
+        }
+        stack[depth - 1] = DANGLING_NAME;
+        writeString(name);
+        writeByte(':');
+        return this;
+    }
+
+    public JsonWriter value(String value) throws IOException {
+        if(value == null){
+            return nullValue();
+        }
+        beforeValue();
+        writeString(value);
+        return this;
+    }
+
+    public JsonWriter value(long value) throws IOException {
+        beforeValue();
+        writeLong(value);
+        return this;
+    }
+
+    /**
+     * NaN和无穷大在json中没有表示 输出null
+     * */
+    public JsonWriter value(double value) throws IOException {
+        if(Double.isNaN(value) || Double.isInfinite(value)){
+            return nullValue();
+        }
+        beforeValue();
+        if(value == (long) value && Math.abs(value) < 1e15){
+            writeLong((long) value);
+        }else{
+            writeAscii(Double.toString(value));
+        }
+        return this;
+    }
+
+    public JsonWriter value(BigDecimal value) throws IOException {
+        if(value == null){
+            return nullValue();
+        }
+        beforeValue();
+        writeAscii(value.toString());
+        return this;
+    }
+
+    /**
+     * 原样输出数字文本 如BigInteger
+     * */
+    public JsonWriter numberValue(String value) throws IOException {
+        beforeValue();
+        writeAscii(value);
+        return this;
+    }
+
+    /**
+     * 原样输出已经编码好的json 调用方保证内容合法
+     * */
+    public JsonWriter jsonValue(byte[] json, int off, int len) throws IOException {
+        beforeValue();
+        if(buffer.length - count < len){
+            flush();
+            if(buffer.length < len){
+                out.write(json, off, len);
+                flushed = true;
+                return this;
+            }
+        }
+        System.arraycopy(json, off, buffer, count, len);
+        count += len;
+        return this;
+    }
+
+    public JsonWriter value(boolean value) throws IOException {
+        beforeValue();
+        writeBytes(value ? TRUE : FALSE);
+        return this;
+    }
+
+    public JsonWriter nullValue() throws IOException {
+        beforeValue();
+        writeBytes(NULL);
+        return this;
+    }
+
+    /**
+     * 是否已经有内容输出到流
+     * */
+    public boolean isFlushed(){
+        return flushed;
+    }
+
+    /**
+     * 缓冲中尚未输出的字节数
+     * */
+    public int buffered(){
+        return count;
+    }
+
+    /**
+     * 输出缓冲中的内容 不关闭流
+     * */
+    public void flush() throws IOException {
+        if(count > 0){
+            out.write(buffer, 0, count);
+            count = 0;
+            flushed = true;
+        }
+    }
+
+    private void beforeValue() throws IOException {
+        byte state = stack[depth - 1];
+        switch (state){
+            case EMPTY_DOCUMENT:
+                stack[depth - 1] = NONEMPTY_DOCUMENT;
+                break;
+            case EMPTY_ARRAY:
+                stack[depth - 1] = NONEMPTY_ARRAY;
+                break;
+            case NONEMPTY_ARRAY:
+                writeByte(',');
+                break;
+            case DANGLING_NAME:
+                stack[depth - 1] = NONEMPTY_OBJECT;
+                break;
+            case NONEMPTY_DOCUMENT:
+                throw new IllegalStateException("json must have only one root value");
+            default:
+                throw new IllegalStateException("expected a name");
+        }
+    }
+
+    private void push(byte state){
+        if(depth == stack.length){
+            if(depth == MAX_DEPTH){
+                throw new IllegalStateException("nesting too deep");
+            }
+            byte[] grown = new byte[depth * 2];
+            System.arraycopy(stack, 0, grown, 0, depth);
+            stack = grown;
+        }
+        stack[depth++] = state;
+    }
+
+    /**
+     * 转义并按UTF-8编码 每个字符最多占6个字节
+     * */
+    private void writeString(String value) throws IOException {
+        writeByte('"');
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            if(buffer.length - count < 6){
+                flush();
+            }
+            char c = value.charAt(i);
+            if(c < 0x80){
+                if(c >= 0x20 && c != '"' && c != '\\'){
+                    buffer[count++] = (byte) c;
+                    continue;
+                }
+                buffer[count++] = '\\';
+                switch (c){
+                    case '"':
+                    case '\\':
+                        buffer[count++] = (byte) c;
+                        break;
+                    case '\n':
+                        buffer[count++] = 'n';
+                        break;
+                    case '\r':
+                        buffer[count++] = 'r';
+                        break;
+                    case '\t':
+                        buffer[count++] = 't';
+                        break;
+                    case '\b':
+                        buffer[count++] = 'b';
+                        break;
+                    case '\f':
+                        buffer[count++] = 'f';
+                        break;
+                    default:
+                        buffer[count++] = 'u';
+                        buffer[count++] = '0';
+                        buffer[count++] = '0';
+                        buffer[count++] = HEX[c >> 4];
+                        buffer[count++] = HEX[c & 0xF];
+                }
+            }else if(c < 0x800){
+                buffer[count++] = (byte) (0xC0 | (c >> 6));
+                buffer[count++] = (byte) (0x80 | (c & 0x3F));
+            }else if(Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))){
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                buffer[count++] = (byte) (0xF0 | (codePoint >> 18));
+                buffer[count++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                buffer[count++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                buffer[count++] = (byte) (0x80 | (codePoint & 0x3F));
+            }else if(Character.isSurrogate(c)){
+                // 不成对的代理字符
+                buffer[count++] = '?';
+            }else{
+                buffer[count++] = (byte) (0xE0 | (c >> 12));
+                buffer[count++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                buffer[count++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        writeByte('"');
+    }
+
+    /**
+     * 直接写出十进制数字 不创建字符串
+     * */
+    private void writeLong(long value) throws IOException {
+        if(value == Long.MIN_VALUE){
+            writeAscii("-9223372036854775808");
+            return;
+        }
+        if(buffer.length - count < 20){
+            flush();
+        }
+        if(value < 0){
+            buffer[count++] = '-';
+            value = -value;
+        }
+        int digits = 1;
+        for (long v = value; v >= 10; v /= 10) {
+            digits++;
+        }
+        int end = count + digits;
+        for (int i = end - 1; i >= count; i--) {
+            buffer[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        count = end;
+    }
+
+    private void writeAscii(String value) throws IOException {
+        for (int i = 0; i < value.length(); i++) {
+            writeByte(value.charAt(i));
+        }
+    }
+
+    private void writeBytes(byte[] bytes) throws IOException {
+        if(buffer.length - count < bytes.length){
+            flush();
+        }
+        System.arraycopy(bytes, 0, buffer, count, bytes.length);
+        count += bytes.length;
+    }
+
+    private void writeByte(int b) throws IOException {
+        if(count == buffer.length){
+            flush();
+        }
+        buffer[count++] = (byte) b;
+    }
+}
@@ -0,0 +1,151 @@
+package com.pql.mvcframework.v3.limit;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 并发数限制 用原子计数记录进行中的请求 不加锁
+ * 自适应时按耗时调整上限 加性增乘性减
+ * 耗时不超过最小耗时的tolerance倍时 每完成limit个请求上限加1 超过时认为已经排队 上限乘以0.9
+ * 最小耗时每隔一定样本数重新测量 下游整体变慢后上限可以恢复
+ * */
+public final class ConcurrencyLimiter {
+
+    private static final double DECREASE_RATIO = 0.9;
+
+    /**
+     * 每隔多少个样本重新测量最小耗时
+     * */
+    private static final long PROBE_SAMPLES = 1000;
+
+    private final boolean adaptive;
+    private final int minLimit;
+    private final int maxLimit;
+    private final double tolerance;
+
+    private final AtomicInteger limit;
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    /**
+     * 上次放大之后耗时正常的请求数
+     * */
+    private final AtomicInteger successes = new AtomicInteger();
+    private final AtomicLong minLatency = new AtomicLong(Long.MAX_VALUE);
+    private final AtomicLong samples = new AtomicLong();
+    private final AtomicLong lastDecrease = new AtomicLong(System.nanoTime());
+
+    private final LongAdder acquired = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    public ConcurrencyLimiter(int limit, boolean adaptive, int minLimit, int maxLimit, double tolerance){
+        if(limit <= 0){
+            throw new IllegalArgumentException("limit must be positive: " + limit);
+        }
+        this.adaptive = adaptive;
+        this.minLimit = Math.max(1, minLimit);
+        this.maxLimit = Math.max(this.minLimit, maxLimit);
+        this.tolerance = Math.max(1.0, tolerance);
+        this.limit = new AtomicInteger(adaptive ? Math.min(this.maxLimit, Math.max(this.minLimit, limit)) : limit);
+    }
+
+    /**
+     * 占用一个并发 已达上限时返回false
+     * */
+    public boolean tryAcquire(){
+        while (true){
+            int current = inFlight.get();
+            if(current >= limit.get()){
+                rejected.increment();
+                return false;
+            }
+            if(inFlight.compareAndSet(current, current + 1)){
+                acquired.increment();
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 释放并发 latencyNanos为占用的时长 自适应时用于调整上限
+     * */
+    public void release(long latencyNanos){
+        int current = inFlight.getAndDecrement();
+        if(adaptive){
+            adjust(latencyNanos, current);
+        }
+    }
+
+    private void adjust(long latency, int inFlightBefore){
+        long min = minLatency(latency);
+        int current = limit.get();
+        if(latency > min * tolerance){
+            // 同一次排队会让多个请求变慢 一个耗时周期内只缩小一次
+            long now = System.nanoTime();
+            long last = lastDecrease.get();
+            if(now - last >= latency && lastDecrease.compareAndSet(last, now)){
+                limit.compareAndSet(current, Math.max(minLimit, (int) (current * DECREASE_RATIO)));
+                successes.set(0);
+            }
+            return;
+        }
+        // 并发没有用到一半时 放大没有意义
+        if(inFlightBefore * 2 < current){
+            return;
+        }
+        if(successes.incrementAndGet() >= current){
+            successes.set(0);
+            limit.compareAndSet(current, Math.min(maxLimit, current + 1));
+        }
+    }
+
+    private long minLatency(long latency){
+        if(samples.incrementAndGet() % PROBE_SAMPLES == 0){
+            minLatency.set(latency);
+            return latency;
+        }
+        while (true){
+            long min = minLatency.get();
+            if(latency >= min){
+                return min;
+            }
+            if(minLatency.compareAndSet(min, latency)){
+                return latency;
+            }
+        }
+    }
+
+    public boolean isAdaptive(){
+        return adaptive;
+    }
+
+    public int getLimit(){
+        return limit.get();
+    }
+
+    public int getInFlight(){
+        return inFlight.get();
+    }
+
+    /**
+     * 观测到的最小耗时 纳秒 还没有样本时为0
+     * */
+    public long getMinLatency(){
+        long min = minLatency.get();
+        return min == Long.MAX_VALUE ? 0 : min;
+    }
+
+    public long getAcquiredCount(){
+        return acquired.sum();
+    }
+
+    public long getRejectedCount(){
+        return rejected.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "limit=" + getLimit() + ", inFlight=" + getInFlight() + ", adaptive=" + adaptive
+                + ", acquired=" + getAcquiredCount() + ", rejected=" + getRejectedCount();
+    }
+}
@@ -0,0 +1,89 @@
+package com.pql.mvcframework.v3.limit;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 令牌桶限流 用一个原子变量记录令牌桶的状态 不加锁
+ * 记录桶重新装满的时刻 每取一个令牌后移一个间隔 领先当前时间超过突发容量时拒绝
+ * */
+public final class RateLimiter {
+
+    private final double permitsPerSecond;
+    private final int burst;
+    private final long intervalNanos;
+    private final long burstNanos;
+
+    /**
+     * 桶重新装满的时刻 不晚于当前时间说明桶是满的
+     * */
+    private final AtomicLong fullAt;
+
+    private final LongAdder acquired = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    public RateLimiter(double permitsPerSecond, int burst){
+        if(!(permitsPerSecond > 0)){
+            throw new IllegalArgumentException("permitsPerSecond must be positive: " + permitsPerSecond);
+        }
+        this.permitsPerSecond = permitsPerSecond;
+        this.burst = burst > 0 ? burst : (int) Math.max(1, Math.ceil(permitsPerSecond));
+        this.intervalNanos = Math.max(1, (long) (1000000000L / permitsPerSecond));
+        this.burstNanos = intervalNanos * this.burst;
+        this.fullAt = new AtomicLong(System.nanoTime());
+    }
+
+    /**
+     * 取一个令牌 成功返回0 失败返回还需要等待的纳秒数
+     * */
+    public long tryAcquire(){
+        long now = System.nanoTime();
+        while (true){
+            long current = fullAt.get();
+            // 桶满时从当前时间开始计算 多余的令牌不累积
+            long next = Math.max(current, now) + intervalNanos;
+            long ahead = next - now;
+            if(ahead > burstNanos){
+                rejected.increment();
+                return ahead - burstNanos;
+            }
+            if(fullAt.compareAndSet(current, next)){
+                acquired.increment();
+                return 0;
+            }
+        }
+    }
+
+    public double getPermitsPerSecond(){
+        return permitsPerSecond;
+    }
+
+    public int getBurst(){
+        return burst;
+    }
+
+    /**
+     * 当前可用的令牌数 近似值
+     * */
+    public int getAvailable(){
+        long ahead = fullAt.get() - System.nanoTime();
+        if(ahead <= 0){
+            return burst;
+        }
+        return (int) Math.max(0, (burstNanos - ahead) / intervalNanos);
+    }
+
+    public long getAcquiredCount(){
+        return acquired.sum();
+    }
+
+    public long getRejectedCount(){
+        return rejected.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "permitsPerSecond=" + permitsPerSecond + ", burst=" + burst + ", available=" + getAvailable()
+                + ", acquired=" + getAcquiredCount() + ", rejected=" + getRejectedCount();
+    }
+}
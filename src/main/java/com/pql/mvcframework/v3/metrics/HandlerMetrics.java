@@ -0,0 +1,99 @@
+package com.pql.mvcframework.v3.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 单个handler的统计 请求数 错误数 并发数 耗时分布以及各阶段耗时
+ * 全部使用原子计数 记录时不加锁
+ * 计数覆盖每个请求 耗时只记录抽样的请求 减少读取时钟的次数
+ * */
+public class HandlerMetrics {
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    /**
+     * 抽样请求的各阶段累计耗时 纳秒
+     * */
+    private final LongAdder phaseSamples = new LongAdder();
+    private final LongAdder routingNanos = new LongAdder();
+    private final LongAdder bindingNanos = new LongAdder();
+    private final LongAdder invocationNanos = new LongAdder();
+    private final LongAdder writingNanos = new LongAdder();
+
+    /**
+     * 路由完成 请求开始计数
+     * */
+    public void begin(){
+        requests.increment();
+    }
+
+    /**
+     * 请求结束
+     * */
+    public void end(boolean error){
+        completed.increment();
+        if(error){
+            errors.increment();
+        }
+    }
+
+    /**
+     * 抽样请求的总耗时
+     * */
+    public void recordLatency(long nanos){
+        latency.record(nanos);
+    }
+
+    /**
+     * 抽样且成功的请求的各阶段耗时
+     * */
+    public void recordPhases(long routing, long binding, long invocation, long writing){
+        phaseSamples.increment();
+        routingNanos.add(routing);
+        bindingNanos.add(binding);
+        invocationNanos.add(invocation);
+        writingNanos.add(writing);
+    }
+
+    public long getRequests(){
+        return requests.sum();
+    }
+
+    public long getErrors(){
+        return errors.sum();
+    }
+
+    /**
+     * 已开始未结束的请求数 并发读取时是近似值
+     * */
+    public long getInFlight(){
+        return Math.max(0, requests.sum() - completed.sum());
+    }
+
+    public LatencyHistogram getLatency(){
+        return latency;
+    }
+
+    public long getPhaseSamples(){
+        return phaseSamples.sum();
+    }
+
+    public long getRoutingNanos(){
+        return routingNanos.sum();
+    }
+
+    public long getBindingNanos(){
+        return bindingNanos.sum();
+    }
+
+    public long getInvocationNanos(){
+        return invocationNanos.sum();
+    }
+
+    public long getWritingNanos(){
+        return writingNanos.sum();
+    }
+}
@@ -0,0 +1,12 @@
+package com.pql.mvcframework.v3.result;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * handler返回值的输出方式 启动时按方法返回类型确定
+ * */
+public interface ReturnValueHandler {
+
+    void handle(Object value, HttpServletRequest request, HttpServletResponse response) throws Exception;
+}
@@ -0,0 +1,355 @@
+package com.pql.mvcframework.v3.result;
+
+import com.pql.mvcframework.annotation.PQLResponseBody;
+import com.pql.mvcframework.v3.async.AsyncExecutors;
+import com.pql.mvcframework.v3.json.JsonBuffers;
+import com.pql.mvcframework.v3.json.JsonCodec;
+import com.pql.mvcframework.v3.json.JsonCodecs;
+import com.pql.mvcframework.v3.json.JsonWriter;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * 按返回类型选择输出方式
+ * byte[] ByteBuffer 直接写outputStream 文件优先走容器的sendfile 字符串用线程内复用的encoder编码
+ * 标注了@PQLResponseBody时按json输出
+ * 拦截器或handler已经调用过getWriter时 字符串和json改用writer输出
+ * */
+public final class ReturnValueHandlers {
+
+    /**
+     * tomcat的sendfile支持 由容器直接把文件写入socket
+     * */
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * 每个线程复用一个encoder和输出缓冲
+     * */
+    private static final ThreadLocal<EncoderCache> ENCODERS = new ThreadLocal<EncoderCache>() {
+        @Override
+        protected EncoderCache initialValue() {
+            return new EncoderCache();
+        }
+    };
+
+    /**
+     * 虚拟线程用完即弃 从共享的小池中借用 池为空时新建 池满时丢弃
+     * */
+    private static final BlockingQueue<EncoderCache> SHARED_ENCODERS = new ArrayBlockingQueue<EncoderCache>(
+            Math.max(16, Runtime.getRuntime().availableProcessors() * 4));
+
+    private static final ReturnValueHandler VOID = new ReturnValueHandler() {
+        public void handle(Object value, HttpServletRequest request, HttpServletResponse response) {
+        }
+    };
+
+    private static final ReturnValueHandler BYTES = new ReturnValueHandler() {
+        public void handle(Object value, HttpServletRequest request, HttpServletResponse response) throws IOException {
+            if(value == null){
+                return;
+            }
+            byte[] bytes = (byte[]) value;
+            response.setContentLength(bytes.length);
+            response.getOutputStream().write(bytes);
+        }
+    };
+
+    private static final ReturnValueHandler BYTE_BUFFER = new ReturnValueHandler() {
+        public void handle(Object value, HttpServletRequest request, HttpServletResponse response) throws IOException {
+            if(value == null){
+                return;
+            }
+            ByteBuffer buffer = (ByteBuffer) value;
+            response.setContentLength(buffer.remaining());
+            OutputStream os = response.getOutputStream();
+            if(buffer.hasArray()){
+                os.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+                buffer.position(buffer.limit());
+                return;
+            }
+            WritableByteChannel channel = Channels.newChannel(os);
+            while (buffer.hasRemaining()){
+                channel.write(buffer);
+            }
+        }
+    };
+
+    private static final ReturnValueHandler FILE = new ReturnValueHandler() {
+        public void handle(Object value, HttpServletRequest request, HttpServletResponse response) throws IOException {
+            if(value == null){
+                return;
+            }
+            writeFile(((File) value).toPath(), request, response);
+        }
+    };
+
+    private static final ReturnValueHandler PATH = new ReturnValueHandler() {
+        public void handle(Object value, HttpServletRequest request, HttpServletResponse response) throws IOException {
+            if(value == null){
+                return;
+            }
+            writeFile((Path) value, request, response);
+        }
+    };
+
+    private static final ReturnValueHandler CHARS = new ReturnValueHandler() {
+        public void handle(Object value, HttpServletRequest request, HttpServletResponse response) throws IOException {
+            if(value == null){
+                return;
+            }
+            writeChars(value instanceof CharSequence ? (CharSequence) value : value.toString(), response);
+        }
+    };
+
+    /**
+     * 声明类型无法确定输出方式时 按实际类型选择
+     * */
+    private static final ReturnValueHandler RUNTIME = new ReturnValueHandler() {
+        public void handle(Object value, HttpServletRequest request, HttpServletResponse response) throws Exception {
+            if(value == null){
+                return;
+            }
+            forType(value.getClass()).handle(value, request, response);
+        }
+    };
+
+    private ReturnValueHandlers(){
+    }
+
+    /**
+     * 按方法返回类型选择 CompletionStage取泛型参数的类型
+     * */
+    public static ReturnValueHandler forMethod(Method method, JsonCodecs jsonCodecs){
+        Class<?> returnType = method.getReturnType();
+        if(method.isAnnotationPresent(PQLResponseBody.class)
+                || method.getDeclaringClass().isAnnotationPresent(PQLResponseBody.class)){
+            if(returnType == void.class){
+                return VOID;
+            }
+            Type genericType = method.getGenericReturnType();
+            if(CompletionStage.class.isAssignableFrom(returnType)){
+                genericType = genericType instanceof ParameterizedType
+                        ? ((ParameterizedType) genericType).getActualTypeArguments()[0] : Object.class;
+            }
+            return json(jsonCodecs.forType(genericType));
+        }
+        if(CompletionStage.class.isAssignableFrom(returnType)){
+            Type genericType = method.getGenericReturnType();
+            if(genericType instanceof ParameterizedType){
+                Type[] arguments = ((ParameterizedType) genericType).getActualTypeArguments();
+                if(arguments.length == 1 && arguments[0] instanceof Class){
+                    return forType((Class<?>) arguments[0]);
+                }
+            }
+            return RUNTIME;
+        }
+        return forType(returnType);
+    }
+
+    public static ReturnValueHandler forType(Class<?> type){
+        if(type == void.class || type == Void.class){
+            return VOID;
+        }
+        if(type == byte[].class){
+            return BYTES;
+        }
+        if(ByteBuffer.class.isAssignableFrom(type)){
+            return BYTE_BUFFER;
+        }
+        if(File.class.isAssignableFrom(type)){
+            return FILE;
+        }
+        if(Path.class.isAssignableFrom(type)){
+            return PATH;
+        }
+        if(CharSequence.class.isAssignableFrom(type)){
+            return CHARS;
+        }
+        // Object或接口类型 运行时才能知道实际类型
+        if(type == Object.class || type.isInterface() || CompletionStage.class.isAssignableFrom(type)){
+            return RUNTIME;
+        }
+        return CHARS;
+    }
+
+    /**
+     * 按json输出 内容不超过缓冲时设置Content-Length 否则边写边输出
+     * */
+    private static ReturnValueHandler json(final JsonCodec<Object> codec){
+        return new ReturnValueHandler() {
+            public void handle(Object value, HttpServletRequest request, HttpServletResponse response) throws Exception {
+                if(response.getContentType() == null){
+                    response.setContentType("application/json;charset=UTF-8");
+                }
+                OutputStream os = outputStream(response);
+                byte[] buffer = JsonBuffers.acquire();
+                try{
+                    if(os == null){
+                        // writer已被使用 先序列化到内存再按字符写出
+                        ByteArrayOutputStream out = new ByteArrayOutputStream(BUFFER_SIZE);
+                        JsonWriter writer = new JsonWriter(out, buffer);
+                        JsonCodecs.write(codec, writer, value);
+                        writer.flush();
+                        response.getWriter().write(new String(out.toByteArray(), StandardCharsets.UTF_8));
+                        return;
+                    }
+                    JsonWriter writer = new JsonWriter(os, buffer);
+                    JsonCodecs.write(codec, writer, value);
+                    if(!writer.isFlushed()){
+                        response.setContentLength(writer.buffered());
+                    }
+                    writer.flush();
+                }finally {
+                    JsonBuffers.release(buffer);
+                }
+            }
+        };
+    }
+
+    /**
+     * 容器支持sendfile时交给容器 否则用FileChannel.transferTo写出
+     * */
+    private static void writeFile(Path path, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try{
+            long size = channel.size();
+            if(response.getContentType() == null){
+                response.setContentType("application/octet-stream");
+            }
+            response.setContentLengthLong(size);
+            if(Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))){
+                request.setAttribute(SENDFILE_FILENAME, path.toAbsolutePath().toString());
+                request.setAttribute(SENDFILE_START, 0L);
+                request.setAttribute(SENDFILE_END, size);
+                return;
+            }
+            WritableByteChannel target = Channels.newChannel(response.getOutputStream());
+            long position = 0;
+            while (position < size){
+                position += channel.transferTo(position, size - position, target);
+            }
+        }finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * 取outputStream 已经调用过getWriter时容器会抛出IllegalStateException 返回null由调用方改用writer
+     * */
+    private static OutputStream outputStream(HttpServletResponse response) throws IOException {
+        try{
+            return response.getOutputStream();
+        }catch (IllegalStateException e){
+            return null;
+        }
+    }
+
+    /**
+     * 按response的编码输出字符串
+     * 能一次编码进缓冲时设置Content-Length 否则分块写出
+     * */
+    private static void writeChars(CharSequence chars, HttpServletResponse response) throws IOException {
+        OutputStream os = outputStream(response);
+        if(os == null){
+            response.getWriter().append(chars);
+            return;
+        }
+        boolean virtual = AsyncExecutors.isVirtualThread();
+        EncoderCache cache = virtual ? SHARED_ENCODERS.poll() : ENCODERS.get();
+        if(cache == null){
+            cache = new EncoderCache();
+        }
+        try{
+            encode(chars, cache, os, response);
+        }finally {
+            if(virtual){
+                SHARED_ENCODERS.offer(cache);
+            }
+        }
+    }
+
+    private static void encode(CharSequence chars, EncoderCache cache, OutputStream os, HttpServletResponse response) throws IOException {
+        CharsetEncoder encoder = cache.encoder(response.getCharacterEncoding());
+        ByteBuffer out = cache.buffer;
+        out.clear();
+        CharBuffer in = CharBuffer.wrap(chars);
+        boolean flushed = false;
+
+        CoderResult result;
+        do {
+            result = encoder.encode(in, out, true);
+            if(result.isOverflow()){
+                drain(out, os);
+                flushed = true;
+            }
+        }while (result.isOverflow());
+        do {
+            result = encoder.flush(out);
+            if(result.isOverflow()){
+                drain(out, os);
+                flushed = true;
+            }
+        }while (result.isOverflow());
+
+        if(!flushed){
+            response.setContentLength(out.position());
+        }
+        drain(out, os);
+    }
+
+    private static void drain(ByteBuffer out, OutputStream os) throws IOException {
+        os.write(out.array(), 0, out.position());
+        out.clear();
+    }
+
+    /**
+     * 复用的encoder和输出缓冲 编码变化时重新创建encoder
+     * */
+    private static class EncoderCache {
+
+        private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        private String charsetName;
+        private CharsetEncoder encoder;
+
+        private CharsetEncoder encoder(String name){
+            if(name == null){
+                name = "ISO-8859-1";
+            }
+            if(!name.equals(charsetName)){
+                encoder = Charset.forName(name).newEncoder()
+                        .onMalformedInput(CodingErrorAction.REPLACE)
+                        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+                charsetName = name;
+            }
+            return encoder.reset();
+        }
+    }
+}
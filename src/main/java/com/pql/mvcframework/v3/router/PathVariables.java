@@ -0,0 +1,31 @@
+package com.pql.mvcframework.v3.router;
+
+import com.pql.mvcframework.v3.bind.QueryParameters;
+
+/**
+ * 一次请求中模板变量的值
+ * 只记录在路径中的位置 解析参数时才截取字符串 含%时按UTF-8解码
+ * */
+public final class PathVariables {
+
+    /**
+     * 存放在request attribute中的名称
+     * */
+    public static final String ATTRIBUTE = PathVariables.class.getName();
+
+    private final String path;
+    private final int[] offsets;
+
+    public PathVariables(String path, int[] offsets){
+        this.path = path;
+        this.offsets = offsets;
+    }
+
+    /**
+     * 按变量在url中的顺序取值
+     * */
+    public String get(int index){
+        // 路径中的+不是空格
+        return QueryParameters.decode(path, offsets[index * 2], offsets[index * 2 + 1], false);
+    }
+}
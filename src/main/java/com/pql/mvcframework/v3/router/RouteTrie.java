@@ -0,0 +1,358 @@
+package com.pql.mvcframework.v3.router;
+
+import com.pql.mvcframework.util.FrozenMap;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * 按路径段组织的路由树
+ * 静态段走HashMap精确查找 只有带正则的部分才在对应节点上兜底匹配
+ * 查找耗时只和路径长度相关 与路由数量无关
+ * 整段为{name}的模板段按下标截取 {name:regex}只对该段做正则校验
+ * 匹配优先级 静态段 > 带约束的模板段 > 模板段 > 正则
+ * 注册完成后调用freeze 各节点的子节点和正则转为只读的FrozenMap和数组 之后只能查找
+ * */
+public class RouteTrie<T> {
+
+    /**
+     * 正则元字符 出现在某一段中就认为从该段开始是正则
+     * */
+    private static final String REGEX_CHARS = "\\.[]{}()*+?^$|";
+
+    private final Node<T> root = new Node<T>();
+
+    /**
+     * 注册过的全部路由值
+     * */
+    private final List<T> values = new ArrayList<T>();
+
+    /**
+     * 单条路由中模板变量的最大个数 决定查找时截取位置数组的长度
+     * */
+    private int maxVariables;
+
+    private boolean frozen;
+
+    /**
+     * 注册路由 url需要是已经规范化的形式 如 /demo/query
+     * */
+    public void add(String url, T value){
+        if(frozen){
+            throw new IllegalStateException("the routes are frozen");
+        }
+        Node<T> node = root;
+        int variables = 0;
+        int pos = 0;
+        int length = url.length();
+        while (pos < length){
+            // 跳过分隔符
+            int start = pos;
+            while (start < length && url.charAt(start) == '/'){
+                start++;
+            }
+            if(start == length){
+                break;
+            }
+            int end = url.indexOf('/', start);
+            if(end < 0){
+                end = length;
+            }
+            String segment = url.substring(start, end);
+            if(isVariable(segment)){
+                node = node.variableChild(variableRegex(segment));
+                variables++;
+                pos = end;
+                continue;
+            }
+            if(isRegex(segment)){
+                // 剩余部分整体作为正则 挂在当前节点上兜底
+                // 正则之前的模板变量同样需要记录位置
+                node.addRegex(Pattern.compile(url.substring(pos)), value, url);
+                values.add(value);
+                maxVariables = Math.max(maxVariables, variables);
+                return;
+            }
+            Node<T> child = node.children.get(segment);
+            if(child == null){
+                child = new Node<T>();
+                node.children.put(segment, child);
+            }
+            node = child;
+            pos = end;
+        }
+        if(node.value != null){
+            throw new IllegalStateException("the url " + url + " is exists!!");
+        }
+        node.value = value;
+        values.add(value);
+        maxVariables = Math.max(maxVariables, variables);
+    }
+
+    /**
+     * 结束注册 返回自身 之后由volatile字段或final字段发布
+     * */
+    public RouteTrie<T> freeze(){
+        if(!frozen){
+            root.freeze();
+            frozen = true;
+        }
+        return this;
+    }
+
+    /**
+     * 通过规范化后的请求路径查找
+     * */
+    public T lookup(String path){
+        return lookup(path, null);
+    }
+
+    /**
+     * 查找并记录模板变量的位置 第i个变量为path的[offsets[2i], offsets[2i+1])
+     * offsets长度至少为getMaxVariables() * 2
+     * */
+    public T lookup(String path, int[] offsets){
+        if(!frozen){
+            throw new IllegalStateException("the routes are not frozen");
+        }
+        return lookup(root, path, 0, offsets, 0);
+    }
+
+    public int size(){
+        return values.size();
+    }
+
+    public int getMaxVariables(){
+        return maxVariables;
+    }
+
+    public List<T> values(){
+        return Collections.unmodifiableList(values);
+    }
+
+    private T lookup(Node<T> node, String path, int pos, int[] offsets, int variable){
+        int length = path.length();
+        // 根路径 / 直接对应根节点
+        if(pos == length || length == 1){
+            if(node.value != null){
+                return node.value;
+            }
+        }else if(!node.staticChildren.isEmpty() || node.hasVariables()){
+            int start = pos + 1;
+            int end = path.indexOf('/', start);
+            if(end < 0){
+                end = length;
+            }
+            // 优先精确匹配下一个静态段 直接按区间查找 不截取字符串
+            if(!node.staticChildren.isEmpty()){
+                Node<T> child = node.staticChildren.get(path, start, end);
+                if(child != null){
+                    T value = lookup(child, path, end, offsets, variable);
+                    if(value != null){
+                        return value;
+                    }
+                }
+            }
+            // 模板段不匹配空段
+            if(end > start && node.hasVariables()){
+                Pattern[] constraints = node.constraintArray;
+                for (int i = 0; i < constraints.length; i++) {
+                    if(constraints[i].matcher(path).region(start, end).matches()){
+                        T value = lookupVariable(node.constrainedChildArray[i], path, start, end, offsets, variable);
+                        if(value != null){
+                            return value;
+                        }
+                    }
+                }
+                if(node.variableChild != null){
+                    T value = lookupVariable(node.variableChild, path, start, end, offsets, variable);
+                    if(value != null){
+                        return value;
+                    }
+                }
+            }
+        }
+        // 静态段匹配不上 再尝试当前节点上的正则
+        Pattern[] patterns = node.patternArray;
+        for (int i = 0; i < patterns.length; i++) {
+            if(patterns[i].matcher(path).region(pos, length).matches()){
+                return node.regexValueArray[i];
+            }
+        }
+        return null;
+    }
+
+    private T lookupVariable(Node<T> child, String path, int start, int end, int[] offsets, int variable){
+        if(offsets != null){
+            offsets[variable * 2] = start;
+            offsets[variable * 2 + 1] = end;
+        }
+        return lookup(child, path, end, offsets, variable + 1);
+    }
+
+    /**
+     * 按顺序取出url中的模板变量名
+     * */
+    public static List<String> variableNames(String url){
+        List<String> names = new ArrayList<String>();
+        for (String segment : url.split("/")) {
+            if(isVariable(segment)){
+                int colon = segment.indexOf(':');
+                names.add(segment.substring(1, colon < 0 ? segment.length() - 1 : colon));
+            }else if(isRegex(segment)){
+                break;
+            }
+        }
+        return names;
+    }
+
+    /**
+     * 规范化请求路径 去掉contextPath并合并重复的/
+     * 大多数请求不需要处理 直接返回原字符串
+     * */
+    public static String normalize(String requestURI, String contextPath){
+        int offset = 0;
+        if(contextPath != null && !contextPath.isEmpty() && requestURI.startsWith(contextPath)){
+            offset = contextPath.length();
+        }
+        int length = requestURI.length();
+        boolean clean = true;
+        for (int i = offset + 1; i < length; i++) {
+            if(requestURI.charAt(i) == '/' && requestURI.charAt(i - 1) == '/'){
+                clean = false;
+                break;
+            }
+        }
+        if(clean){
+            if(offset == length){
+                return "/";
+            }
+            return offset == 0 ? requestURI : requestURI.substring(offset);
+        }
+        StringBuilder sb = new StringBuilder(length - offset);
+        for (int i = offset; i < length; i++) {
+            char c = requestURI.charAt(i);
+            if(c == '/' && sb.length() > 0 && sb.charAt(sb.length() - 1) == '/'){
+                continue;
+            }
+            sb.append(c);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 整段为{name}或{name:regex} name只能包含字母数字和下划线
+     * */
+    private static boolean isVariable(String segment){
+        int length = segment.length();
+        if(length < 3 || segment.charAt(0) != '{' || segment.charAt(length - 1) != '}'){
+            return false;
+        }
+        int colon = segment.indexOf(':');
+        int nameEnd = colon < 0 ? length - 1 : colon;
+        if(nameEnd == 1){
+            return false;
+        }
+        for (int i = 1; i < nameEnd; i++) {
+            if(!Character.isLetterOrDigit(segment.charAt(i)) && segment.charAt(i) != '_'){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 模板段的约束正则 没有约束时为null
+     * */
+    private static String variableRegex(String segment){
+        int colon = segment.indexOf(':');
+        return colon < 0 ? null : segment.substring(colon + 1, segment.length() - 1);
+    }
+
+    private static boolean isRegex(String segment){
+        for (int i = 0; i < segment.length(); i++) {
+            if(REGEX_CHARS.indexOf(segment.charAt(i)) >= 0){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 树节点
+     * 注册时使用HashMap和List freeze后查找只使用平铺的只读结构
+     * */
+    private static class Node<T>{
+
+        private final Map<String, Node<T>> children = new HashMap<String, Node<T>>();
+        private final List<Pattern> patterns = new ArrayList<Pattern>();
+        private final List<T> regexValues = new ArrayList<T>();
+        private final List<Pattern> constraints = new ArrayList<Pattern>();
+        private final List<Node<T>> constrainedChildren = new ArrayList<Node<T>>();
+        private Node<T> variableChild;
+        private T value;
+
+        private FrozenMap<Node<T>> staticChildren;
+        private Pattern[] patternArray;
+        private T[] regexValueArray;
+        private Pattern[] constraintArray;
+        private Node<T>[] constrainedChildArray;
+
+        private boolean hasVariables(){
+            return variableChild != null || constrainedChildArray.length > 0;
+        }
+
+        @SuppressWarnings("unchecked")
+        private void freeze(){
+            staticChildren = FrozenMap.copyOf(children);
+            patternArray = patterns.toArray(new Pattern[0]);
+            regexValueArray = (T[]) regexValues.toArray();
+            constraintArray = constraints.toArray(new Pattern[0]);
+            constrainedChildArray = constrainedChildren.toArray(new Node[0]);
+            for (Node<T> child : children.values()) {
+                child.freeze();
+            }
+            for (Node<T> child : constrainedChildren) {
+                child.freeze();
+            }
+            if(variableChild != null){
+                variableChild.freeze();
+            }
+        }
+
+        /**
+         * 变量名不影响匹配 约束相同的模板段共用一个子节点
+         * */
+        private Node<T> variableChild(String regex){
+            if(regex == null){
+                if(variableChild == null){
+                    variableChild = new Node<T>();
+                }
+                return variableChild;
+            }
+            for (int i = 0; i < constraints.size(); i++) {
+                if(constraints.get(i).pattern().equals(regex)){
+                    return constrainedChildren.get(i);
+                }
+            }
+            Node<T> child = new Node<T>();
+            constraints.add(Pattern.compile(regex));
+            constrainedChildren.add(child);
+            return child;
+        }
+
+        private void addRegex(Pattern pattern, T value, String url){
+            for (Pattern exists : patterns) {
+                if(exists.pattern().equals(pattern.pattern())){
+                    throw new IllegalStateException("the url " + url + " is exists!!");
+                }
+            }
+            patterns.add(pattern);
+            regexValues.add(value);
+        }
+    }
+}
@@ -0,0 +1,479 @@
+package com.pql.mvcframework.v3.server;
+
+import com.pql.mvcframework.v3.bind.QueryParameters;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.DispatcherType;
+import javax.servlet.ReadListener;
+import javax.servlet.RequestDispatcher;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+import javax.servlet.ServletInputStream;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
+import javax.servlet.http.HttpUpgradeHandler;
+import javax.servlet.http.Part;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.security.Principal;
+import java.text.SimpleDateFormat;
+import java.util.*;
+
+/**
+ * 内嵌服务器解析出的一个请求 只实现分发流程用到的部分
+ * 请求体已经完整读入内存 参数在第一次访问时解析 不支持session 异步和multipart
+ * 异步handler在当前的工作线程中等待结果
+ * */
+public class EmbeddedHttpRequest implements HttpServletRequest {
+
+    private static final String FORM_CONTENT_TYPE = "application/x-www-form-urlencoded";
+
+    private final String method;
+    private final String requestURI;
+    private final String queryString;
+    private final String protocol;
+    private final String[] headerNames;
+    private final String[] headerValues;
+    private final int headerCount;
+    private final byte[] body;
+    private final InetSocketAddress remoteAddress;
+    private final InetSocketAddress localAddress;
+
+    private final Map<String, Object> attributes = new HashMap<String, Object>();
+    private Map<String, String[]> parameters;
+    private String characterEncoding;
+    private ServletInputStream inputStream;
+    private BufferedReader reader;
+
+    public EmbeddedHttpRequest(String method, String requestURI, String queryString, String protocol,
+                               String[] headerNames, String[] headerValues, int headerCount, byte[] body,
+                               InetSocketAddress remoteAddress, InetSocketAddress localAddress){
+        this.method = method;
+        this.requestURI = requestURI;
+        this.queryString = queryString;
+        this.protocol = protocol;
+        this.headerNames = headerNames;
+        this.headerValues = headerValues;
+        this.headerCount = headerCount;
+        this.body = body;
+        this.remoteAddress = remoteAddress;
+        this.localAddress = localAddress;
+    }
+
+    public String getHeader(String name) {
+        for (int i = 0; i < headerCount; i++) {
+            if(headerNames[i].equalsIgnoreCase(name)){
+                return headerValues[i];
+            }
+        }
+        return null;
+    }
+
+    public Enumeration<String> getHeaders(String name) {
+        List<String> values = new ArrayList<String>(1);
+        for (int i = 0; i < headerCount; i++) {
+            if(headerNames[i].equalsIgnoreCase(name)){
+                values.add(headerValues[i]);
+            }
+        }
+        return Collections.enumeration(values);
+    }
+
+    public Enumeration<String> getHeaderNames() {
+        Set<String> names = new LinkedHashSet<String>();
+        for (int i = 0; i < headerCount; i++) {
+            names.add(headerNames[i]);
+        }
+        return Collections.enumeration(names);
+    }
+
+    public long getDateHeader(String name) {
+        String value = getHeader(name);
+        if(value == null){
+            return -1;
+        }
+        SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+        try{
+            return format.parse(value).getTime();
+        }catch (java.text.ParseException e){
+            throw new IllegalArgumentException("the header " + name + " is not a date: " + value);
+        }
+    }
+
+    public int getIntHeader(String name) {
+        String value = getHeader(name);
+        return value == null ? -1 : Integer.parseInt(value.trim());
+    }
+
+    public Cookie[] getCookies() {
+        List<Cookie> cookies = new ArrayList<Cookie>();
+        for (int i = 0; i < headerCount; i++) {
+            if(!"Cookie".equalsIgnoreCase(headerNames[i])){
+                continue;
+            }
+            for (String pair : headerValues[i].split(";")) {
+                int eq = pair.indexOf('=');
+                String name = (eq < 0 ? pair : pair.substring(0, eq)).trim();
+                if(!name.isEmpty()){
+                    cookies.add(new Cookie(name, eq < 0 ? "" : pair.substring(eq + 1).trim()));
+                }
+            }
+        }
+        return cookies.isEmpty() ? null : cookies.toArray(new Cookie[0]);
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public String getRequestURI() {
+        return requestURI;
+    }
+
+    public StringBuffer getRequestURL() {
+        StringBuffer url = new StringBuffer();
+        url.append(getScheme()).append("://").append(getServerName()).append(':').append(getServerPort()).append(requestURI);
+        return url;
+    }
+
+    public String getQueryString() {
+        return queryString;
+    }
+
+    public String getProtocol() {
+        return protocol;
+    }
+
+    public String getScheme() {
+        return "http";
+    }
+
+    /**
+     * 映射为/* 整个路径都是pathInfo
+     * */
+    public String getContextPath() {
+        return "";
+    }
+
+    public String getServletPath() {
+        return "";
+    }
+
+    public String getPathInfo() {
+        return QueryParameters.decode(requestURI, 0, requestURI.length(), false);
+    }
+
+    public String getPathTranslated() {
+        return null;
+    }
+
+    public String getParameter(String name) {
+        String[] values = getParameterMap().get(name);
+        return values == null ? null : values[0];
+    }
+
+    public String[] getParameterValues(String name) {
+        return getParameterMap().get(name);
+    }
+
+    public Enumeration<String> getParameterNames() {
+        return Collections.enumeration(getParameterMap().keySet());
+    }
+
+    /**
+     * 查询字符串和表单请求体中的参数 按出现顺序
+     * */
+    public Map<String, String[]> getParameterMap() {
+        if(parameters == null){
+            Map<String, List<String>> values = new LinkedHashMap<String, List<String>>();
+            if(queryString != null){
+                QueryParameters.parseAll(queryString, values);
+            }
+            String contentType = getContentType();
+            if(body.length > 0 && contentType != null && contentType.regionMatches(true, 0, FORM_CONTENT_TYPE, 0, FORM_CONTENT_TYPE.length())){
+                try{
+                    QueryParameters.parseAll(new String(body, "ISO-8859-1"), values);
+                }catch (UnsupportedEncodingException e){
+                    throw new IllegalStateException(e);
+                }
+            }
+            Map<String, String[]> result = new LinkedHashMap<String, String[]>();
+            for (Map.Entry<String, List<String>> entry : values.entrySet()) {
+                result.put(entry.getKey(), entry.getValue().toArray(new String[0]));
+            }
+            parameters = Collections.unmodifiableMap(result);
+        }
+        return parameters;
+    }
+
+    public ServletInputStream getInputStream() {
+        if(reader != null){
+            throw new IllegalStateException("getReader() has already been called");
+        }
+        if(inputStream == null){
+            inputStream = new ServletInputStream() {
+                private int position;
+
+                public boolean isFinished() {
+                    return position >= body.length;
+                }
+
+                public boolean isReady() {
+                    return true;
+                }
+
+                public void setReadListener(ReadListener readListener) {
+                    throw new IllegalStateException("non-blocking read is not supported");
+                }
+
+                public int read() {
+                    return position < body.length ? body[position++] & 0xff : -1;
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) {
+                    if(position >= body.length){
+                        return -1;
+                    }
+                    int n = Math.min(len, body.length - position);
+                    System.arraycopy(body, position, b, off, n);
+                    position += n;
+                    return n;
+                }
+
+                @Override
+                public int available() {
+                    return body.length - position;
+                }
+            };
+        }
+        return inputStream;
+    }
+
+    public BufferedReader getReader() throws IOException {
+        if(reader == null){
+            if(inputStream != null){
+                throw new IllegalStateException("getInputStream() has already been called");
+            }
+            String encoding = getCharacterEncoding();
+            reader = new BufferedReader(new InputStreamReader(getInputStream(), encoding == null ? "ISO-8859-1" : encoding));
+            inputStream = null;
+        }
+        return reader;
+    }
+
+    public String getCharacterEncoding() {
+        if(characterEncoding == null){
+            String contentType = getContentType();
+            int index = contentType == null ? -1 : contentType.toLowerCase(Locale.ENGLISH).indexOf("charset=");
+            if(index >= 0){
+                characterEncoding = contentType.substring(index + 8).trim().replace("\"", "");
+            }
+        }
+        return characterEncoding;
+    }
+
+    public void setCharacterEncoding(String env) {
+        this.characterEncoding = env;
+    }
+
+    public int getContentLength() {
+        return body.length;
+    }
+
+    public long getContentLengthLong() {
+        return body.length;
+    }
+
+    public String getContentType() {
+        return getHeader("Content-Type");
+    }
+
+    public Object getAttribute(String name) {
+        return attributes.get(name);
+    }
+
+    public Enumeration<String> getAttributeNames() {
+        return Collections.enumeration(attributes.keySet());
+    }
+
+    public void setAttribute(String name, Object o) {
+        if(o == null){
+            attributes.remove(name);
+        }else{
+            attributes.put(name, o);
+        }
+    }
+
+    public void removeAttribute(String name) {
+        attributes.remove(name);
+    }
+
+    public String getServerName() {
+        String host = getHeader("Host");
+        if(host == null || host.isEmpty()){
+            return localAddress.getHostString();
+        }
+        int colon = host.startsWith("[") ? host.indexOf(':', host.indexOf(']')) : host.indexOf(':');
+        return colon < 0 ? host : host.substring(0, colon);
+    }
+
+    public int getServerPort() {
+        return localAddress.getPort();
+    }
+
+    public String getRemoteAddr() {
+        return remoteAddress.getAddress().getHostAddress();
+    }
+
+    public String getRemoteHost() {
+        return remoteAddress.getHostString();
+    }
+
+    public int getRemotePort() {
+        return remoteAddress.getPort();
+    }
+
+    public String getLocalName() {
+        return localAddress.getHostString();
+    }
+
+    public String getLocalAddr() {
+        return localAddress.getAddress().getHostAddress();
+    }
+
+    public int getLocalPort() {
+        return localAddress.getPort();
+    }
+
+    public Locale getLocale() {
+        return Locale.getDefault();
+    }
+
+    public Enumeration<Locale> getLocales() {
+        return Collections.enumeration(Collections.singletonList(Locale.getDefault()));
+    }
+
+    public boolean isSecure() {
+        return false;
+    }
+
+    public DispatcherType getDispatcherType() {
+        return DispatcherType.REQUEST;
+    }
+
+    public ServletContext getServletContext() {
+        return null;
+    }
+
+    public RequestDispatcher getRequestDispatcher(String path) {
+        return null;
+    }
+
+    @SuppressWarnings("deprecation")
+    public String getRealPath(String path) {
+        return null;
+    }
+
+    public boolean isAsyncSupported() {
+        return false;
+    }
+
+    public boolean isAsyncStarted() {
+        return false;
+    }
+
+    public AsyncContext startAsync() {
+        throw new IllegalStateException("async is not supported");
+    }
+
+    public AsyncContext startAsync(ServletRequest servletRequest, ServletResponse servletResponse) {
+        throw new IllegalStateException("async is not supported");
+    }
+
+    public AsyncContext getAsyncContext() {
+        throw new IllegalStateException("async is not supported");
+    }
+
+    public HttpSession getSession(boolean create) {
+        if(create){
+            throw new UnsupportedOperationException("session is not supported");
+        }
+        return null;
+    }
+
+    public HttpSession getSession() {
+        return getSession(true);
+    }
+
+    public String changeSessionId() {
+        throw new IllegalStateException("session is not supported");
+    }
+
+    public String getRequestedSessionId() {
+        return null;
+    }
+
+    public boolean isRequestedSessionIdValid() {
+        return false;
+    }
+
+    public boolean isRequestedSessionIdFromCookie() {
+        return false;
+    }
+
+    public boolean isRequestedSessionIdFromURL() {
+        return false;
+    }
+
+    @SuppressWarnings("deprecation")
+    public boolean isRequestedSessionIdFromUrl() {
+        return false;
+    }
+
+    public String getAuthType() {
+        return null;
+    }
+
+    public String getRemoteUser() {
+        return null;
+    }
+
+    public boolean isUserInRole(String role) {
+        return false;
+    }
+
+    public Principal getUserPrincipal() {
+        return null;
+    }
+
+    public boolean authenticate(HttpServletResponse response) {
+        return false;
+    }
+
+    public void login(String username, String password) throws ServletException {
+        throw new ServletException("login is not supported");
+    }
+
+    public void logout() {
+    }
+
+    public Collection<Part> getParts() throws ServletException {
+        throw new ServletException("multipart is not supported");
+    }
+
+    public Part getPart(String name) throws ServletException {
+        throw new ServletException("multipart is not supported");
+    }
+
+    public <T extends HttpUpgradeHandler> T upgrade(Class<T> handlerClass) throws ServletException {
+        throw new ServletException("upgrade is not supported");
+    }
+}
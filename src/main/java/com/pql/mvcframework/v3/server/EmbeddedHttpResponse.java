@@ -0,0 +1,439 @@
+package com.pql.mvcframework.v3.server;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.*;
+
+/**
+ * 内嵌服务器的响应 handler的输出先写入内存 结束后按实际长度加上Content-Length一次写出
+ * 不分块输出 flushBuffer只标记为已提交
+ * 批量接口中每个子请求也使用它接收输出
+ * */
+public class EmbeddedHttpResponse implements HttpServletResponse {
+
+    private final Body body = new Body();
+    private final ServletOutputStream outputStream = new ServletOutputStream() {
+        public boolean isReady() {
+            return true;
+        }
+
+        public void setWriteListener(WriteListener writeListener) {
+            throw new IllegalStateException("non-blocking write is not supported");
+        }
+
+        public void write(int b) {
+            body.write(b);
+        }
+
+        public void write(byte[] b, int off, int len) {
+            body.write(b, off, len);
+        }
+    };
+    private PrintWriter writer;
+
+    /**
+     * key为小写的头名称 保留第一次设置时的写法
+     * */
+    private final Map<String, Header> headers = new LinkedHashMap<String, Header>();
+    private int status = SC_OK;
+    private String contentType;
+    private String characterEncoding;
+    private long contentLength = -1;
+    private Locale locale = Locale.getDefault();
+    private boolean committed;
+
+    public void addCookie(Cookie cookie) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(cookie.getName()).append('=').append(cookie.getValue() == null ? "" : cookie.getValue());
+        if(cookie.getPath() != null){
+            sb.append("; Path=").append(cookie.getPath());
+        }
+        if(cookie.getDomain() != null){
+            sb.append("; Domain=").append(cookie.getDomain());
+        }
+        if(cookie.getMaxAge() >= 0){
+            sb.append("; Max-Age=").append(cookie.getMaxAge());
+        }
+        if(cookie.getSecure()){
+            sb.append("; Secure");
+        }
+        if(cookie.isHttpOnly()){
+            sb.append("; HttpOnly");
+        }
+        addHeader("Set-Cookie", sb.toString());
+    }
+
+    public boolean containsHeader(String name) {
+        return headers.containsKey(name.toLowerCase(Locale.ENGLISH));
+    }
+
+    public String encodeURL(String url) {
+        return url;
+    }
+
+    public String encodeRedirectURL(String url) {
+        return url;
+    }
+
+    @SuppressWarnings("deprecation")
+    public String encodeUrl(String url) {
+        return url;
+    }
+
+    @SuppressWarnings("deprecation")
+    public String encodeRedirectUrl(String url) {
+        return url;
+    }
+
+    public void sendError(int sc, String msg) throws IOException {
+        if(committed){
+            throw new IllegalStateException("the response is committed");
+        }
+        resetBuffer();
+        status = sc;
+        if(msg != null){
+            setContentType("text/plain;charset=UTF-8");
+            body.write(msg.getBytes(StandardCharsets.UTF_8));
+        }
+        committed = true;
+    }
+
+    public void sendError(int sc) throws IOException {
+        sendError(sc, null);
+    }
+
+    public void sendRedirect(String location) {
+        if(committed){
+            throw new IllegalStateException("the response is committed");
+        }
+        resetBuffer();
+        status = SC_FOUND;
+        setHeader("Location", location);
+        committed = true;
+    }
+
+    public void setDateHeader(String name, long date) {
+        setHeader(name, formatDate(date));
+    }
+
+    public void addDateHeader(String name, long date) {
+        addHeader(name, formatDate(date));
+    }
+
+    private static String formatDate(long date){
+        SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("GMT"));
+        return format.format(new Date(date));
+    }
+
+    public void setHeader(String name, String value) {
+        String key = name.toLowerCase(Locale.ENGLISH);
+        if(special(key, value)){
+            return;
+        }
+        if(value == null){
+            headers.remove(key);
+            return;
+        }
+        Header header = new Header(name);
+        header.values.add(value);
+        headers.put(key, header);
+    }
+
+    public void addHeader(String name, String value) {
+        String key = name.toLowerCase(Locale.ENGLISH);
+        if(value == null || special(key, value)){
+            return;
+        }
+        Header header = headers.get(key);
+        if(header == null){
+            header = new Header(name);
+            headers.put(key, header);
+        }
+        header.values.add(value);
+    }
+
+    /**
+     * Content-Type和Content-Length单独保存
+     * */
+    private boolean special(String key, String value){
+        if("content-type".equals(key)){
+            setContentType(value);
+            return true;
+        }
+        if("content-length".equals(key)){
+            setContentLengthLong(value == null ? -1 : Long.parseLong(value.trim()));
+            return true;
+        }
+        return false;
+    }
+
+    public void setIntHeader(String name, int value) {
+        setHeader(name, String.valueOf(value));
+    }
+
+    public void addIntHeader(String name, int value) {
+        addHeader(name, String.valueOf(value));
+    }
+
+    public void setStatus(int sc) {
+        this.status = sc;
+    }
+
+    @SuppressWarnings("deprecation")
+    public void setStatus(int sc, String sm) {
+        this.status = sc;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public String getHeader(String name) {
+        String key = name.toLowerCase(Locale.ENGLISH);
+        if("content-type".equals(key)){
+            return getContentType();
+        }
+        Header header = headers.get(key);
+        return header == null ? null : header.values.get(0);
+    }
+
+    public Collection<String> getHeaders(String name) {
+        Header header = headers.get(name.toLowerCase(Locale.ENGLISH));
+        return header == null ? Collections.<String>emptyList() : new ArrayList<String>(header.values);
+    }
+
+    public Collection<String> getHeaderNames() {
+        List<String> names = new ArrayList<String>(headers.size());
+        for (Header header : headers.values()) {
+            names.add(header.name);
+        }
+        return names;
+    }
+
+    public String getCharacterEncoding() {
+        return characterEncoding == null ? "ISO-8859-1" : characterEncoding;
+    }
+
+    /**
+     * 设置过编码且Content-Type中没有charset时补上
+     * */
+    public String getContentType() {
+        if(contentType == null || characterEncoding == null || contentType.toLowerCase(Locale.ENGLISH).contains("charset=")){
+            return contentType;
+        }
+        return contentType + ";charset=" + characterEncoding;
+    }
+
+    public ServletOutputStream getOutputStream() {
+        return outputStream;
+    }
+
+    public PrintWriter getWriter() {
+        if(writer == null){
+            writer = new PrintWriter(new BodyWriter(body, Charset.forName(getCharacterEncoding())));
+        }
+        return writer;
+    }
+
+    public void setCharacterEncoding(String charset) {
+        if(writer == null && !committed){
+            this.characterEncoding = charset;
+        }
+    }
+
+    /**
+     * 实际写出的长度按输出计算 声明的长度只用于HEAD请求
+     * */
+    public void setContentLength(int len) {
+        this.contentLength = len;
+    }
+
+    public void setContentLengthLong(long len) {
+        this.contentLength = len;
+    }
+
+    public void setContentType(String type) {
+        if(committed){
+            return;
+        }
+        this.contentType = type;
+        int index = type == null ? -1 : type.toLowerCase(Locale.ENGLISH).indexOf("charset=");
+        if(index >= 0 && writer == null){
+            this.characterEncoding = type.substring(index + 8).trim().replace("\"", "");
+        }
+    }
+
+    public void setBufferSize(int size) {
+        if(body.size() > 0 || committed){
+            throw new IllegalStateException("the content has been written");
+        }
+    }
+
+    public int getBufferSize() {
+        return Integer.MAX_VALUE;
+    }
+
+    public void flushBuffer() {
+        if(writer != null){
+            writer.flush();
+        }
+        committed = true;
+    }
+
+    public void resetBuffer() {
+        if(committed){
+            throw new IllegalStateException("the response is committed");
+        }
+        if(writer != null){
+            writer.flush();
+        }
+        body.reset();
+    }
+
+    public boolean isCommitted() {
+        return committed;
+    }
+
+    public void reset() {
+        resetBuffer();
+        headers.clear();
+        status = SC_OK;
+        contentType = null;
+        characterEncoding = null;
+        contentLength = -1;
+        writer = null;
+    }
+
+    public void setLocale(Locale loc) {
+        this.locale = loc;
+    }
+
+    public Locale getLocale() {
+        return locale;
+    }
+
+    /**
+     * 已经写入的响应体
+     * */
+    public byte[] getContent(){
+        if(writer != null){
+            writer.flush();
+        }
+        return body.toByteArray();
+    }
+
+    /**
+     * 生成状态行 头和响应体 输出不再修改
+     * keepAlive为false时告诉客户端关闭连接 http/1.0保持连接时需要显式声明
+     * HEAD请求只写头 长度取handler声明的长度
+     * */
+    ByteBuffer[] toBuffers(boolean keepAlive, boolean http10, boolean head){
+        if(writer != null){
+            writer.flush();
+        }
+        committed = true;
+        boolean noBody = head || status == SC_NO_CONTENT || status == SC_NOT_MODIFIED || status < 200;
+        StringBuilder sb = new StringBuilder(128 + headers.size() * 32);
+        sb.append(http10 ? "HTTP/1.0 " : "HTTP/1.1 ").append(status).append(' ').append(HttpStatus.reason(status)).append("\r\n");
+        String type = getContentType();
+        if(type != null){
+            sb.append("Content-Type: ").append(type).append("\r\n");
+        }
+        for (Header header : headers.values()) {
+            // 连接由服务器管理
+            if("connection".equalsIgnoreCase(header.name) || "transfer-encoding".equalsIgnoreCase(header.name)){
+                continue;
+            }
+            for (String value : header.values) {
+                sb.append(header.name).append(": ").append(value).append("\r\n");
+            }
+        }
+        if(status != SC_NO_CONTENT && status != SC_NOT_MODIFIED && status >= 200){
+            long length = head && contentLength >= 0 ? contentLength : head ? 0 : body.size();
+            sb.append("Content-Length: ").append(length).append("\r\n");
+        }
+        if(!headers.containsKey("date")){
+            sb.append("Date: ").append(HttpStatus.currentDate()).append("\r\n");
+        }
+        if(!keepAlive){
+            sb.append("Connection: close\r\n");
+        }else if(http10){
+            sb.append("Connection: keep-alive\r\n");
+        }
+        sb.append("\r\n");
+        ByteBuffer headBuffer = ByteBuffer.wrap(sb.toString().getBytes(StandardCharsets.ISO_8859_1));
+        if(noBody || body.size() == 0){
+            return new ByteBuffer[]{headBuffer};
+        }
+        return new ByteBuffer[]{headBuffer, body.toByteBuffer()};
+    }
+
+    private static class Header {
+
+        private final String name;
+        private final List<String> values = new ArrayList<String>(1);
+
+        private Header(String name){
+            this.name = name;
+        }
+    }
+
+    /**
+     * 直接编码写入响应体 OutputStreamWriter每个响应都会分配8KB的编码缓冲
+     * 每次write单独编码 代理对需要在同一次write中写出
+     * */
+    private static class BodyWriter extends Writer {
+
+        private final Body body;
+        private final Charset charset;
+
+        private BodyWriter(Body body, Charset charset){
+            this.body = body;
+            this.charset = charset;
+        }
+
+        public void write(char[] cbuf, int off, int len) {
+            body.write(new String(cbuf, off, len).getBytes(charset));
+        }
+
+        public void write(String str, int off, int len) {
+            String text = off == 0 && len == str.length() ? str : str.substring(off, off + len);
+            body.write(text.getBytes(charset));
+        }
+
+        public void flush() {
+        }
+
+        public void close() {
+        }
+    }
+
+    /**
+     * 可以直接包装内部数组的输出缓冲 写出时不复制
+     * */
+    private static class Body extends ByteArrayOutputStream {
+
+        private Body(){
+            super(1024);
+        }
+
+        public void write(byte[] b) {
+            write(b, 0, b.length);
+        }
+
+        private ByteBuffer toByteBuffer(){
+            return ByteBuffer.wrap(buf, 0, count);
+        }
+    }
+}
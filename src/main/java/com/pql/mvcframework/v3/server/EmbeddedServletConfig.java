@@ -0,0 +1,39 @@
+package com.pql.mvcframework.v3.server;
+
+import javax.servlet.ServletConfig;
+import javax.servlet.ServletContext;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 内嵌启动时的servlet配置 相当于web.xml中的init-param
+ * 没有servlet容器 不提供ServletContext
+ * */
+public class EmbeddedServletConfig implements ServletConfig {
+
+    private final String servletName;
+    private final Map<String, String> initParameters;
+
+    public EmbeddedServletConfig(String servletName, Map<String, String> initParameters){
+        this.servletName = servletName;
+        this.initParameters = new LinkedHashMap<String, String>(initParameters);
+    }
+
+    public String getServletName() {
+        return servletName;
+    }
+
+    public ServletContext getServletContext() {
+        return null;
+    }
+
+    public String getInitParameter(String name) {
+        return initParameters.get(name);
+    }
+
+    public Enumeration<String> getInitParameterNames() {
+        return Collections.enumeration(initParameters.keySet());
+    }
+}
@@ -0,0 +1,380 @@
+package com.pql.mvcframework.v3.server;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * 一个客户端连接 只在selector线程上访问
+ * 同一时间只处理一个请求 处理期间不再读 响应写完后再从缓冲中解析下一个请求
+ * 流水线发来的多个请求因此按顺序响应
+ * */
+class HttpConnection {
+
+    private static final byte[] CONTINUE = "HTTP/1.1 100 Continue\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1);
+    private static final byte[] NO_BODY = new byte[0];
+
+    private final PQLHttpServer server;
+    private final SocketChannel channel;
+    private final SelectionKey key;
+    private final InetSocketAddress remoteAddress;
+    private final InetSocketAddress localAddress;
+
+    /**
+     * 读缓冲 [start, end)为还没处理的数据
+     * */
+    private byte[] buffer;
+    private int start;
+    private int end;
+
+    /**
+     * 头已经解析完 还在等请求体
+     * */
+    private PendingRequest pending;
+
+    private boolean busy;
+    private ByteBuffer[] output;
+    private boolean closeAfterWrite;
+    private boolean closed;
+    private long lastActive;
+
+    HttpConnection(PQLHttpServer server, SocketChannel channel, SelectionKey key) throws IOException {
+        this.server = server;
+        this.channel = channel;
+        this.key = key;
+        this.remoteAddress = (InetSocketAddress) channel.getRemoteAddress();
+        this.localAddress = (InetSocketAddress) channel.getLocalAddress();
+        this.buffer = new byte[4096];
+        this.lastActive = System.currentTimeMillis();
+    }
+
+    void onReadable(){
+        try{
+            if(!ensureCapacity()){
+                return;
+            }
+            int n = channel.read(ByteBuffer.wrap(buffer, end, buffer.length - end));
+            if(n < 0){
+                close();
+                return;
+            }
+            end += n;
+            lastActive = System.currentTimeMillis();
+            process();
+        }catch (IOException e){
+            close();
+        }
+    }
+
+    void onWritable(){
+        try{
+            write();
+        }catch (IOException e){
+            close();
+        }
+    }
+
+    /**
+     * 工作线程处理完成后 在selector线程上写出响应
+     * */
+    void onComplete(ByteBuffer[] response, boolean keepAlive){
+        if(closed){
+            return;
+        }
+        busy = false;
+        send(response, !keepAlive);
+    }
+
+    /**
+     * 读之前腾出空间 数据从头开始存放 放不下时扩容
+     * 头超过上限时返回431
+     * */
+    private boolean ensureCapacity(){
+        if(end < buffer.length){
+            return true;
+        }
+        if(start > 0){
+            System.arraycopy(buffer, start, buffer, 0, end - start);
+            end -= start;
+            start = 0;
+            return true;
+        }
+        int required = pending != null ? pending.bodyOffset + pending.contentLength : buffer.length * 2;
+        if(pending == null && buffer.length >= server.getMaxHeaderSize()){
+            sendError(431);
+            return false;
+        }
+        buffer = Arrays.copyOf(buffer, Math.max(required, buffer.length * 2));
+        return true;
+    }
+
+    /**
+     * 尽可能解析出一个完整的请求交给工作线程 数据不够时继续读
+     * */
+    private void process(){
+        if(busy || output != null || closed){
+            return;
+        }
+        if(pending == null){
+            int headerEnd = indexOfHeaderEnd();
+            if(headerEnd < 0){
+                if(end - start >= server.getMaxHeaderSize()){
+                    sendError(431);
+                }else {
+                    interest(SelectionKey.OP_READ);
+                }
+                return;
+            }
+            pending = parseHead(headerEnd);
+            if(pending == null){
+                return;
+            }
+            if(pending.expectContinue && end - start < pending.bodyOffset + pending.contentLength){
+                if(!writeContinue()){
+                    return;
+                }
+            }
+        }
+        int available = end - start - pending.bodyOffset;
+        if(available < pending.contentLength){
+            interest(SelectionKey.OP_READ);
+            return;
+        }
+        PendingRequest head = pending;
+        pending = null;
+        byte[] body = NO_BODY;
+        if(head.contentLength > 0){
+            body = Arrays.copyOfRange(buffer, start + head.bodyOffset, start + head.bodyOffset + head.contentLength);
+        }
+        start += head.bodyOffset + head.contentLength;
+        if(start == end){
+            start = 0;
+            end = 0;
+            // 大请求体扩容过的缓冲不再保留
+            if(buffer.length > server.getMaxHeaderSize()){
+                buffer = new byte[4096];
+            }
+        }
+        EmbeddedHttpRequest request = new EmbeddedHttpRequest(head.method, head.requestURI, head.queryString, head.protocol,
+                head.headerNames, head.headerValues, head.headerCount, body, remoteAddress, localAddress);
+        busy = true;
+        interest(0);
+        if(!server.dispatch(this, request, head.keepAlive, head.http10, "HEAD".equals(head.method))){
+            busy = false;
+            sendError(503);
+        }
+    }
+
+    private int indexOfHeaderEnd(){
+        for (int i = start; i + 3 < end; i++) {
+            if(buffer[i] == '\r' && buffer[i + 1] == '\n' && buffer[i + 2] == '\r' && buffer[i + 3] == '\n'){
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 解析请求行和头 格式错误时直接返回错误并关闭连接 返回null
+     * */
+    private PendingRequest parseHead(int headerEnd){
+        String head = new String(buffer, start, headerEnd - start, StandardCharsets.ISO_8859_1);
+        int lineEnd = head.indexOf("\r\n");
+        String line = lineEnd < 0 ? head : head.substring(0, lineEnd);
+        int first = line.indexOf(' ');
+        int second = line.lastIndexOf(' ');
+        if(first <= 0 || second <= first){
+            sendError(400);
+            return null;
+        }
+        PendingRequest request = new PendingRequest();
+        request.method = line.substring(0, first);
+        request.protocol = line.substring(second + 1);
+        if("HTTP/1.0".equals(request.protocol)){
+            request.http10 = true;
+        }else if(!"HTTP/1.1".equals(request.protocol)){
+            sendError(505);
+            return null;
+        }
+        String target = line.substring(first + 1, second);
+        if(target.startsWith("http://") || target.startsWith("https://")){
+            int slash = target.indexOf('/', target.indexOf("//") + 2);
+            target = slash < 0 ? "/" : target.substring(slash);
+        }
+        int query = target.indexOf('?');
+        request.requestURI = query < 0 ? target : target.substring(0, query);
+        request.queryString = query < 0 ? null : target.substring(query + 1);
+
+        String[] names = new String[16];
+        String[] values = new String[16];
+        int count = 0;
+        String connection = null;
+        int position = lineEnd < 0 ? head.length() : lineEnd + 2;
+        while (position < head.length()){
+            int next = head.indexOf("\r\n", position);
+            if(next < 0){
+                next = head.length();
+            }
+            int colon = head.indexOf(':', position);
+            if(colon <= position || colon > next){
+                sendError(400);
+                return null;
+            }
+            if(count == names.length){
+                names = Arrays.copyOf(names, count * 2);
+                values = Arrays.copyOf(values, count * 2);
+            }
+            String name = head.substring(position, colon).trim();
+            String value = head.substring(colon + 1, next).trim();
+            names[count] = name;
+            values[count] = value;
+            count++;
+            if("Content-Length".equalsIgnoreCase(name)){
+                try{
+                    request.contentLength = Integer.parseInt(value);
+                }catch (NumberFormatException e){
+                    sendError(400);
+                    return null;
+                }
+                if(request.contentLength < 0){
+                    sendError(400);
+                    return null;
+                }
+            }else if("Transfer-Encoding".equalsIgnoreCase(name)){
+                // 分块的请求体不支持 无法确定请求的边界 只能关闭连接
+                sendError(501);
+                return null;
+            }else if("Connection".equalsIgnoreCase(name)){
+                connection = value.toLowerCase(Locale.ENGLISH);
+            }else if("Expect".equalsIgnoreCase(name)){
+                request.expectContinue = "100-continue".equalsIgnoreCase(value) && !request.http10;
+            }
+            position = next + 2;
+        }
+        if(request.contentLength > server.getMaxBodySize()){
+            sendError(413);
+            return null;
+        }
+        if(request.http10){
+            request.keepAlive = connection != null && connection.contains("keep-alive");
+        }else {
+            request.keepAlive = connection == null || !connection.contains("close");
+        }
+        request.headerNames = names;
+        request.headerValues = values;
+        request.headerCount = count;
+        request.bodyOffset = headerEnd + 4 - start;
+        return request;
+    }
+
+    /**
+     * 100 Continue很短 直接写出 写不完时放弃这个连接
+     * */
+    private boolean writeContinue(){
+        try{
+            ByteBuffer continueBuffer = ByteBuffer.wrap(CONTINUE);
+            channel.write(continueBuffer);
+            if(continueBuffer.hasRemaining()){
+                close();
+                return false;
+            }
+            return true;
+        }catch (IOException e){
+            close();
+            return false;
+        }
+    }
+
+    /**
+     * 解析阶段的错误 不经过servlet 写完后关闭连接
+     * */
+    private void sendError(int status){
+        String text = "HTTP/1.1 " + status + " " + HttpStatus.reason(status)
+                + "\r\nContent-Length: 0\r\nConnection: close\r\n\r\n";
+        pending = null;
+        send(new ByteBuffer[]{ByteBuffer.wrap(text.getBytes(StandardCharsets.ISO_8859_1))}, true);
+    }
+
+    private void send(ByteBuffer[] response, boolean close){
+        output = response;
+        closeAfterWrite = close;
+        try{
+            write();
+        }catch (IOException e){
+            close();
+        }
+    }
+
+    /**
+     * 聚集写出 写不完时等待可写 写完后关闭或继续处理缓冲中的下一个请求
+     * */
+    private void write() throws IOException {
+        if(output == null || closed){
+            return;
+        }
+        ByteBuffer last = output[output.length - 1];
+        while (last.hasRemaining()){
+            if(channel.write(output) == 0){
+                interest(SelectionKey.OP_WRITE);
+                return;
+            }
+        }
+        output = null;
+        lastActive = System.currentTimeMillis();
+        if(closeAfterWrite){
+            close();
+            return;
+        }
+        process();
+    }
+
+    private void interest(int ops){
+        if(key.isValid() && key.interestOps() != ops){
+            key.interestOps(ops);
+        }
+    }
+
+    /**
+     * 空闲超时 处理中的请求不算空闲
+     * */
+    boolean isIdle(long now, long timeout){
+        return !busy && output == null && now - lastActive > timeout;
+    }
+
+    void close(){
+        if(closed){
+            return;
+        }
+        closed = true;
+        key.cancel();
+        try{
+            channel.close();
+        }catch (IOException e){
+            // 关闭失败不影响其它连接
+        }
+    }
+
+    /**
+     * 解析出的请求头 请求体还没有收完时保留
+     * */
+    private static class PendingRequest {
+
+        private String method;
+        private String requestURI;
+        private String queryString;
+        private String protocol;
+        private boolean http10;
+        private boolean keepAlive;
+        private boolean expectContinue;
+        private String[] headerNames;
+        private String[] headerValues;
+        private int headerCount;
+        private int contentLength;
+        private int bodyOffset;
+    }
+}
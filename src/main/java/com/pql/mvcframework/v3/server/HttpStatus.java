@@ -0,0 +1,84 @@
+package com.pql.mvcframework.v3.server;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 状态码对应的原因短语和Date头 Date头按秒缓存 同一秒内的响应共用一个字符串
+ * */
+final class HttpStatus {
+
+    private static final Map<Integer, String> REASONS = new HashMap<Integer, String>();
+
+    static {
+        REASONS.put(100, "Continue");
+        REASONS.put(200, "OK");
+        REASONS.put(201, "Created");
+        REASONS.put(202, "Accepted");
+        REASONS.put(204, "No Content");
+        REASONS.put(206, "Partial Content");
+        REASONS.put(301, "Moved Permanently");
+        REASONS.put(302, "Found");
+        REASONS.put(303, "See Other");
+        REASONS.put(304, "Not Modified");
+        REASONS.put(307, "Temporary Redirect");
+        REASONS.put(308, "Permanent Redirect");
+        REASONS.put(400, "Bad Request");
+        REASONS.put(401, "Unauthorized");
+        REASONS.put(403, "Forbidden");
+        REASONS.put(404, "Not Found");
+        REASONS.put(405, "Method Not Allowed");
+        REASONS.put(406, "Not Acceptable");
+        REASONS.put(408, "Request Timeout");
+        REASONS.put(409, "Conflict");
+        REASONS.put(411, "Length Required");
+        REASONS.put(412, "Precondition Failed");
+        REASONS.put(413, "Payload Too Large");
+        REASONS.put(414, "URI Too Long");
+        REASONS.put(415, "Unsupported Media Type");
+        REASONS.put(429, "Too Many Requests");
+        REASONS.put(431, "Request Header Fields Too Large");
+        REASONS.put(500, "Internal Server Error");
+        REASONS.put(501, "Not Implemented");
+        REASONS.put(502, "Bad Gateway");
+        REASONS.put(503, "Service Unavailable");
+        REASONS.put(504, "Gateway Timeout");
+        REASONS.put(505, "HTTP Version Not Supported");
+    }
+
+    private static volatile CachedDate cachedDate = new CachedDate(0, null);
+
+    private HttpStatus(){
+    }
+
+    static String reason(int status){
+        String reason = REASONS.get(status);
+        return reason == null ? "Unknown" : reason;
+    }
+
+    static String currentDate(){
+        long second = System.currentTimeMillis() / 1000;
+        CachedDate date = cachedDate;
+        if(date.second != second){
+            date = new CachedDate(second, DateTimeFormatter.RFC_1123_DATE_TIME.format(
+                    ZonedDateTime.ofInstant(Instant.ofEpochSecond(second), ZoneOffset.UTC)));
+            cachedDate = date;
+        }
+        return date.text;
+    }
+
+    private static final class CachedDate {
+
+        private final long second;
+        private final String text;
+
+        private CachedDate(long second, String text){
+            this.second = second;
+            this.text = text;
+        }
+    }
+}
@@ -0,0 +1,290 @@
+package com.pql.mvcframework.v3.server;
+
+import com.pql.mvcframework.exception.ErrorResponses;
+import com.pql.mvcframework.v3.async.AsyncExecutors;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * 不依赖servlet容器的http/1.1服务器 直接把请求交给DispatcherServlet处理
+ * 一个selector线程负责接收连接和读写 请求解析完后交给工作线程执行servlet
+ * 工作线程处理完成后把响应放入队列并唤醒selector 所有的通道操作都在selector线程上
+ * 支持keep-alive和流水线 同一个连接上的请求按顺序处理
+ * */
+public class PQLHttpServer {
+
+    private final HttpServlet servlet;
+    private final InetSocketAddress address;
+    private final ExecutorService executor;
+    private final Queue<Completion> completions = new ConcurrentLinkedQueue<Completion>();
+
+    private int maxHeaderSize = 16 * 1024;
+    private int maxBodySize = 8 * 1024 * 1024;
+    private long idleTimeout = 30000;
+
+    private Selector selector;
+    private ServerSocketChannel serverChannel;
+    private Thread selectorThread;
+    private volatile boolean running;
+
+    /**
+     * @param servlet 已经初始化好的servlet
+     * @param executor 执行servlet的线程池 由调用方负责关闭
+     * */
+    public PQLHttpServer(HttpServlet servlet, InetSocketAddress address, ExecutorService executor){
+        this.servlet = servlet;
+        this.address = address;
+        this.executor = executor;
+    }
+
+    /**
+     * 绑定端口并启动selector线程 返回实际监听的端口 端口为0时由系统分配
+     * */
+    public synchronized int start() throws IOException {
+        if(running){
+            throw new IllegalStateException("the server is running!!");
+        }
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+        serverChannel.bind(address, 1024);
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        running = true;
+        selectorThread = new Thread(new Runnable() {
+            public void run() {
+                loop();
+            }
+        }, "pql-http-selector");
+        selectorThread.start();
+        return serverChannel.socket().getLocalPort();
+    }
+
+    /**
+     * 停止接收请求 关闭全部连接 不关闭工作线程池
+     * */
+    public synchronized void stop(){
+        if(!running){
+            return;
+        }
+        running = false;
+        selector.wakeup();
+        try{
+            selectorThread.join(5000);
+        }catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void loop(){
+        long lastSweep = System.currentTimeMillis();
+        try{
+            while (running){
+                selector.select(1000);
+                Completion completion;
+                while ((completion = completions.poll()) != null){
+                    completion.connection.onComplete(completion.response, completion.keepAlive);
+                }
+                Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+                while (iterator.hasNext()){
+                    SelectionKey key = iterator.next();
+                    iterator.remove();
+                    if(!key.isValid()){
+                        continue;
+                    }
+                    if(key.isAcceptable()){
+                        accept();
+                        continue;
+                    }
+                    HttpConnection connection = (HttpConnection) key.attachment();
+                    if(key.isWritable()){
+                        connection.onWritable();
+                    }
+                    if(key.isValid() && key.isReadable()){
+                        connection.onReadable();
+                    }
+                }
+                long now = System.currentTimeMillis();
+                if(now - lastSweep >= 1000){
+                    lastSweep = now;
+                    closeIdle(now);
+                }
+            }
+        }catch (IOException e){
+            System.out.println("the http selector is stopped: " + e);
+        }finally {
+            closeAll();
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel;
+        while ((channel = serverChannel.accept()) != null){
+            try{
+                channel.configureBlocking(false);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+                key.attach(new HttpConnection(this, channel, key));
+            }catch (IOException e){
+                channel.close();
+            }
+        }
+    }
+
+    /**
+     * 关闭空闲超时的连接 正在处理请求的连接不关闭
+     * */
+    private void closeIdle(long now){
+        for (SelectionKey key : selector.keys()) {
+            Object attachment = key.attachment();
+            if(attachment instanceof HttpConnection && ((HttpConnection) attachment).isIdle(now, idleTimeout)){
+                ((HttpConnection) attachment).close();
+            }
+        }
+    }
+
+    private void closeAll(){
+        for (SelectionKey key : selector.keys()) {
+            Object attachment = key.attachment();
+            if(attachment instanceof HttpConnection){
+                ((HttpConnection) attachment).close();
+            }
+        }
+        try{
+            serverChannel.close();
+            selector.close();
+        }catch (IOException e){
+            System.out.println("close the http server failed: " + e);
+        }
+    }
+
+    /**
+     * 在工作线程上执行servlet 线程池拒绝时返回false
+     * */
+    boolean dispatch(final HttpConnection connection, final EmbeddedHttpRequest request,
+                     final boolean keepAlive, final boolean http10, final boolean head){
+        try{
+            executor.execute(new Runnable() {
+                public void run() {
+                    EmbeddedHttpResponse response = new EmbeddedHttpResponse();
+                    boolean alive = keepAlive;
+                    try{
+                        servlet.service(request, response);
+                    }catch (Throwable e){
+                        ErrorResponses.log(e);
+                        if(!response.isCommitted()){
+                            response.reset();
+                            response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+                        }else {
+                            // 已经提交的响应可能不完整 写出后关闭连接
+                            alive = false;
+                        }
+                    }
+                    ByteBuffer[] buffers;
+                    try{
+                        buffers = response.toBuffers(alive, http10, head);
+                    }catch (RuntimeException e){
+                        // 头无法写出时连接必须收到一个响应 否则一直处于处理中
+                        ErrorResponses.log(e);
+                        alive = false;
+                        EmbeddedHttpResponse error = new EmbeddedHttpResponse();
+                        error.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+                        buffers = error.toBuffers(false, http10, head);
+                    }
+                    completions.offer(new Completion(connection, buffers, alive));
+                    selector.wakeup();
+                }
+            });
+            return true;
+        }catch (RejectedExecutionException e){
+            return false;
+        }
+    }
+
+    public int getMaxHeaderSize() {
+        return maxHeaderSize;
+    }
+
+    /**
+     * 请求行和请求头的最大字节数 超过时返回431
+     * */
+    public void setMaxHeaderSize(int maxHeaderSize) {
+        this.maxHeaderSize = maxHeaderSize;
+    }
+
+    public int getMaxBodySize() {
+        return maxBodySize;
+    }
+
+    /**
+     * 请求体的最大字节数 超过时返回413
+     * */
+    public void setMaxBodySize(int maxBodySize) {
+        this.maxBodySize = maxBodySize;
+    }
+
+    public long getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    /**
+     * keep-alive连接空闲多少毫秒后关闭
+     * */
+    public void setIdleTimeout(long idleTimeout) {
+        this.idleTimeout = idleTimeout;
+    }
+
+    private static final class Completion {
+
+        private final HttpConnection connection;
+        private final ByteBuffer[] response;
+        private final boolean keepAlive;
+
+        private Completion(HttpConnection connection, ByteBuffer[] response, boolean keepAlive){
+            this.connection = connection;
+            this.response = response;
+            this.keepAlive = keepAlive;
+        }
+    }
+
+    /**
+     * 独立启动 参数依次为 端口 配置文件 servlet类名 工作线程数
+     * 默认 8080 application.yml v3的PQLDispatcherServlet 0 线程数为0时使用虚拟线程 低版本jdk使用cpu核数两倍的线程池
+     * */
+    public static void main(String[] args) throws Exception {
+        long begin = System.currentTimeMillis();
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 8080;
+        String config = args.length > 1 ? args[1] : "application.yml";
+        String servletClass = args.length > 2 ? args[2] : "com.pql.mvcframework.v3.servlet.PQLDispatcherServlet";
+        int threads = args.length > 3 ? Integer.parseInt(args[3]) : 0;
+
+        final HttpServlet servlet = (HttpServlet) Class.forName(servletClass).newInstance();
+        servlet.init(new EmbeddedServletConfig("pqlmvc", Collections.singletonMap("contextConfigLocation", config)));
+        final ExecutorService executor = AsyncExecutors.create(threads);
+        final PQLHttpServer server = new PQLHttpServer(servlet, new InetSocketAddress(port), executor);
+        int bound = server.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+            public void run() {
+                server.stop();
+                executor.shutdown();
+                servlet.destroy();
+            }
+        }, "pql-http-shutdown"));
+        System.out.println("PQL http server started on port " + bound + " in " + (System.currentTimeMillis() - begin) + "ms");
+    }
+}
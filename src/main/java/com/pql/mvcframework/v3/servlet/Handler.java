@@ -0,0 +1,125 @@
+package com.pql.mvcframework.v3.servlet;
+
+import com.pql.mvcframework.annotation.PQLAsync;
+import com.pql.mvcframework.annotation.PQLCacheable;
+import com.pql.mvcframework.annotation.PQLCoalesce;
+import com.pql.mvcframework.annotation.PQLConcurrencyLimit;
+import com.pql.mvcframework.annotation.PQLNoCompression;
+import com.pql.mvcframework.annotation.PQLRateLimit;
+import com.pql.mvcframework.v3.bind.ArgumentResolver;
+import com.pql.mvcframework.v3.bind.ArgumentResolvers;
+import com.pql.mvcframework.v3.cache.RequestCoalescer;
+import com.pql.mvcframework.v3.cache.ResponseCache;
+import com.pql.mvcframework.v3.convert.ConversionService;
+import com.pql.mvcframework.v3.exception.ExceptionHandlerRegistry;
+import com.pql.mvcframework.v3.interceptor.PQLHandlerInterceptor;
+import com.pql.mvcframework.v3.invoke.HandlerInvoker;
+import com.pql.mvcframework.v3.invoke.HandlerInvokers;
+import com.pql.mvcframework.v3.json.JsonCodecs;
+import com.pql.mvcframework.v3.limit.ConcurrencyLimiter;
+import com.pql.mvcframework.v3.limit.RateLimiter;
+import com.pql.mvcframework.v3.metrics.HandlerMetrics;
+import com.pql.mvcframework.v3.result.ReturnValueHandler;
+import com.pql.mvcframework.v3.result.ReturnValueHandlers;
+import com.pql.mvcframework.v3.router.RouteTrie;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * handler
+ * 记录controller中RequestMapping和method的关系
+ * */
+class Handler {
+
+    protected final Object controller;  // bean实例
+    protected final Method method;      // 方法实例
+    protected final String url;         // 映射url
+    protected final HandlerInvoker invoker;       // 方法调用器
+    protected final ReturnValueHandler returnValueHandler;   // 返回值输出方式
+    protected final boolean asyncExecute;         // 是否在异步线程池中执行
+    protected final boolean async;                // 是否需要开启异步上下文
+    protected final ResponseCache responseCache;  // 响应缓存 未开启时为null
+    protected final int[] cacheKeyIndexes;        // 参与缓存key和合并key的形参下标
+    protected final RequestCoalescer coalescer;   // 调用合并 未开启时为null
+    protected final HandlerMetrics metrics = new HandlerMetrics();  // 请求统计
+    protected final ExceptionHandlerRegistry exceptionHandlers;     // 异常处理方法
+    protected final int pathVariableCount;        // url模板变量个数
+    protected final PQLHandlerInterceptor[] interceptors;           // 启动时匹配好的拦截器 不修改
+    protected final RateLimiter rateLimiter;      // 限流 未开启时为null
+    protected final ConcurrencyLimiter concurrencyLimiter;          // 并发限制 未开启时为null
+    protected final boolean compress;             // 是否允许压缩响应
+    private final ArgumentResolver[] resolvers;   // 按形参顺序的解析器
+
+    /**
+     * 构造handler基本参数 形参解析器 调用器 返回值处理在此时一次性生成
+     * */
+    protected Handler(String url, Object controller, Method method, ConversionService conversionService,
+                      JsonCodecs jsonCodecs, ExceptionHandlerRegistry exceptionHandlers,
+                      PQLHandlerInterceptor[] interceptors){
+        this.url = url;
+        this.controller = controller;
+        this.method = method;
+        this.invoker = HandlerInvokers.create(controller, method);
+        List<String> pathVariableNames = RouteTrie.variableNames(url);
+        this.pathVariableCount = pathVariableNames.size();
+        this.resolvers = ArgumentResolvers.forMethod(method, conversionService, pathVariableNames, jsonCodecs);
+        this.returnValueHandler = ReturnValueHandlers.forMethod(method, jsonCodecs);
+        this.exceptionHandlers = exceptionHandlers;
+        this.interceptors = interceptors;
+
+        // 限流和并发限制
+        PQLRateLimit rateLimit = method.getAnnotation(PQLRateLimit.class);
+        this.rateLimiter = rateLimit == null ? null : new RateLimiter(rateLimit.permitsPerSecond(), rateLimit.burst());
+        PQLConcurrencyLimit concurrencyLimit = method.getAnnotation(PQLConcurrencyLimit.class);
+        this.concurrencyLimiter = concurrencyLimit == null ? null : new ConcurrencyLimiter(concurrencyLimit.value(),
+                concurrencyLimit.adaptive(), concurrencyLimit.minLimit(), concurrencyLimit.maxLimit(), concurrencyLimit.tolerance());
+        this.compress = !method.isAnnotationPresent(PQLNoCompression.class)
+                && !method.getDeclaringClass().isAnnotationPresent(PQLNoCompression.class);
+        this.asyncExecute = method.isAnnotationPresent(PQLAsync.class);
+        this.async = asyncExecute || CompletionStage.class.isAssignableFrom(method.getReturnType());
+
+        // 响应缓存 request response不参与key 请求体无法作为key
+        boolean requestBody = false;
+        for (ArgumentResolver resolver : resolvers) {
+            requestBody |= ArgumentResolvers.isRequestBody(resolver);
+        }
+        PQLCacheable cacheable = method.getAnnotation(PQLCacheable.class);
+        if(cacheable != null && async){
+            System.out.println("@PQLCacheable is ignored on async handler: " + method);
+        }
+        if(cacheable != null && requestBody){
+            System.out.println("@PQLCacheable is ignored on handler with request body: " + method);
+        }
+        this.responseCache = cacheable == null || async || requestBody ? null
+                : new ResponseCache(cacheable.ttl(), cacheable.maxEntries());
+        PQLCoalesce coalesce = method.getAnnotation(PQLCoalesce.class);
+        if(coalesce != null && requestBody){
+            System.out.println("@PQLCoalesce is ignored on handler with request body: " + method);
+        }
+        this.coalescer = coalesce == null || requestBody ? null : new RequestCoalescer(coalesce.timeout());
+        int count = 0;
+        int[] indexes = new int[resolvers.length];
+        for (int i = 0; i < resolvers.length; i++) {
+            if(!ArgumentResolvers.isServletArgument(resolvers[i])){
+                indexes[count++] = i;
+            }
+        }
+        this.cacheKeyIndexes = Arrays.copyOf(indexes, count);
+    }
+
+    /**
+     * 按下标依次解析出实际参数
+     * */
+    protected Object[] resolveArguments(HttpServletRequest request, HttpServletResponse response) throws Exception {
+        Object[] parameterValues = new Object[resolvers.length];
+        for (int i = 0; i < resolvers.length; i++) {
+            parameterValues[i] = resolvers[i].resolve(request, response);
+        }
+        return parameterValues;
+    }
+}
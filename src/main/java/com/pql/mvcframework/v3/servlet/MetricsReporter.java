@@ -0,0 +1,169 @@
+package com.pql.mvcframework.v3.servlet;
+
+import com.pql.mvcframework.v3.cache.RequestCoalescer;
+import com.pql.mvcframework.v3.cache.ResponseCache;
+import com.pql.mvcframework.v3.compress.ResponseCompression;
+import com.pql.mvcframework.v3.limit.ConcurrencyLimiter;
+import com.pql.mvcframework.v3.limit.RateLimiter;
+import com.pql.mvcframework.v3.metrics.HandlerMetrics;
+import com.pql.mvcframework.v3.metrics.LatencyHistogram;
+
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * 把各handler的统计输出为文本或json 耗时单位为微秒
+ * 耗时分布和阶段耗时只包含抽样的请求 关闭压缩时compression为null
+ * */
+class MetricsReporter {
+
+    private MetricsReporter(){
+    }
+
+    static String toText(List<Handler> handlers, long unmatched, ResponseCompression compression){
+        StringBuilder sb = new StringBuilder(256 + handlers.size() * 256);
+        sb.append("# pql handler metrics, latency in microseconds\n");
+        sb.append("unmatched requests=").append(unmatched).append('\n');
+        if(compression != null){
+            sb.append("compression{").append(compression).append("}\n");
+        }
+        for (Handler handler : handlers) {
+            HandlerMetrics metrics = handler.metrics;
+            LatencyHistogram latency = metrics.getLatency();
+            long samples = metrics.getPhaseSamples();
+            sb.append(handler.url)
+                    .append(" requests=").append(metrics.getRequests())
+                    .append(" errors=").append(metrics.getErrors())
+                    .append(" inFlight=").append(metrics.getInFlight())
+                    .append(" latency{samples=").append(latency.getCount())
+                    .append(",mean=").append(micros(latency.getMean()))
+                    .append(",p50=").append(micros(latency.getPercentile(50)))
+                    .append(",p90=").append(micros(latency.getPercentile(90)))
+                    .append(",p99=").append(micros(latency.getPercentile(99)))
+                    .append(",max=").append(micros(latency.getMax()))
+                    .append("} phase{samples=").append(samples)
+                    .append(",routing=").append(mean(metrics.getRoutingNanos(), samples))
+                    .append(",binding=").append(mean(metrics.getBindingNanos(), samples))
+                    .append(",invocation=").append(mean(metrics.getInvocationNanos(), samples))
+                    .append(",writing=").append(mean(metrics.getWritingNanos(), samples))
+                    .append('}');
+            ResponseCache cache = handler.responseCache;
+            if(cache != null){
+                sb.append(" cache{").append(cache).append('}');
+            }
+            if(handler.rateLimiter != null){
+                sb.append(" rateLimit{").append(handler.rateLimiter).append('}');
+            }
+            if(handler.concurrencyLimiter != null){
+                sb.append(" concurrencyLimit{").append(handler.concurrencyLimiter).append('}');
+            }
+            if(handler.coalescer != null){
+                sb.append(" coalesce{").append(handler.coalescer).append('}');
+            }
+            sb.append('\n');
+        }
+        return sb.toString();
+    }
+
+    static String toJson(List<Handler> handlers, long unmatched, ResponseCompression compression){
+        StringBuilder sb = new StringBuilder(256 + handlers.size() * 384);
+        sb.append("{\"unmatched\":").append(unmatched);
+        if(compression != null){
+            sb.append(",\"compression\":{\"level\":").append(compression.getLevel())
+                    .append(",\"minSize\":").append(compression.getMinSize())
+                    .append(",\"compressed\":").append(compression.getCompressed())
+                    .append(",\"skipped\":").append(compression.getSkipped())
+                    .append(",\"bytesIn\":").append(compression.getBytesIn())
+                    .append(",\"bytesOut\":").append(compression.getBytesOut())
+                    .append(",\"deflaters\":").append(compression.getDeflaterCount())
+                    .append('}');
+        }
+        sb.append(",\"handlers\":[");
+        for (int i = 0; i < handlers.size(); i++) {
+            Handler handler = handlers.get(i);
+            HandlerMetrics metrics = handler.metrics;
+            LatencyHistogram latency = metrics.getLatency();
+            long samples = metrics.getPhaseSamples();
+            if(i > 0){
+                sb.append(',');
+            }
+            sb.append("{\"route\":");
+            appendString(sb, handler.url);
+            sb.append(",\"requests\":").append(metrics.getRequests())
+                    .append(",\"errors\":").append(metrics.getErrors())
+                    .append(",\"inFlight\":").append(metrics.getInFlight())
+                    .append(",\"latency\":{\"samples\":").append(latency.getCount())
+                    .append(",\"mean\":").append(micros(latency.getMean()))
+                    .append(",\"p50\":").append(micros(latency.getPercentile(50)))
+                    .append(",\"p90\":").append(micros(latency.getPercentile(90)))
+                    .append(",\"p99\":").append(micros(latency.getPercentile(99)))
+                    .append(",\"max\":").append(micros(latency.getMax()))
+                    .append("},\"phase\":{\"samples\":").append(samples)
+                    .append(",\"routing\":").append(mean(metrics.getRoutingNanos(), samples))
+                    .append(",\"binding\":").append(mean(metrics.getBindingNanos(), samples))
+                    .append(",\"invocation\":").append(mean(metrics.getInvocationNanos(), samples))
+                    .append(",\"writing\":").append(mean(metrics.getWritingNanos(), samples))
+                    .append('}');
+            ResponseCache cache = handler.responseCache;
+            if(cache != null){
+                sb.append(",\"cache\":{\"size\":").append(cache.size())
+                        .append(",\"maxEntries\":").append(cache.getMaxEntries())
+                        .append(",\"hits\":").append(cache.getHitCount())
+                        .append(",\"misses\":").append(cache.getMissCount())
+                        .append(",\"evictions\":").append(cache.getEvictionCount())
+                        .append(",\"expirations\":").append(cache.getExpirationCount())
+                        .append('}');
+            }
+            RateLimiter rateLimiter = handler.rateLimiter;
+            if(rateLimiter != null){
+                sb.append(",\"rateLimit\":{\"permitsPerSecond\":").append(rateLimiter.getPermitsPerSecond())
+                        .append(",\"burst\":").append(rateLimiter.getBurst())
+                        .append(",\"available\":").append(rateLimiter.getAvailable())
+                        .append(",\"acquired\":").append(rateLimiter.getAcquiredCount())
+                        .append(",\"rejected\":").append(rateLimiter.getRejectedCount())
+                        .append('}');
+            }
+            ConcurrencyLimiter concurrencyLimiter = handler.concurrencyLimiter;
+            if(concurrencyLimiter != null){
+                sb.append(",\"concurrencyLimit\":{\"limit\":").append(concurrencyLimiter.getLimit())
+                        .append(",\"inFlight\":").append(concurrencyLimiter.getInFlight())
+                        .append(",\"adaptive\":").append(concurrencyLimiter.isAdaptive())
+                        .append(",\"minLatency\":").append(micros(concurrencyLimiter.getMinLatency()))
+                        .append(",\"acquired\":").append(concurrencyLimiter.getAcquiredCount())
+                        .append(",\"rejected\":").append(concurrencyLimiter.getRejectedCount())
+                        .append('}');
+            }
+            RequestCoalescer coalescer = handler.coalescer;
+            if(coalescer != null){
+                sb.append(",\"coalesce\":{\"inFlight\":").append(coalescer.getInFlight())
+                        .append(",\"calls\":").append(coalescer.getCallCount())
+                        .append(",\"shared\":").append(coalescer.getSharedCount())
+                        .append(",\"timeouts\":").append(coalescer.getTimeoutCount())
+                        .append('}');
+            }
+            sb.append('}');
+        }
+        sb.append("]}");
+        return sb.toString();
+    }
+
+    private static String micros(double nanos){
+        return String.format(Locale.ROOT, "%.1f", nanos / 1000.0);
+    }
+
+    private static String mean(long totalNanos, long count){
+        return count == 0 ? "0.0" : micros((double) totalNanos / count);
+    }
+
+    private static void appendString(StringBuilder sb, String value){
+        sb.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if(c == '"' || c == '\\'){
+                sb.append('\\');
+            }
+            sb.append(c);
+        }
+        sb.append('"');
+    }
+}
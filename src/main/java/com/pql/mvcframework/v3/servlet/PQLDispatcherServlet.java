@@ -1,24 +1,59 @@
 package com.pql.mvcframework.v3.servlet;
 
 import com.pql.mvcframework.annotation.*;
+import com.pql.mvcframework.exception.ErrorResponses;
+import com.pql.mvcframework.exception.PQLBusinessException;
+import com.pql.mvcframework.v3.async.AsyncExecutors;
+import com.pql.mvcframework.v3.batch.BatchExecutor;
+import com.pql.mvcframework.v3.batch.BatchItem;
+import com.pql.mvcframework.v3.batch.BatchRequest;
+import com.pql.mvcframework.v3.cache.CachedResponse;
+import com.pql.mvcframework.v3.cache.CoalescedResponse;
+import com.pql.mvcframework.v3.cache.ContentCachingResponseWrapper;
+import com.pql.mvcframework.v3.cache.RequestCoalescer;
+import com.pql.mvcframework.v3.cache.ResponseCache;
+import com.pql.mvcframework.v3.compress.CompressingResponseWrapper;
+import com.pql.mvcframework.v3.compress.ResponseCompression;
+import com.pql.mvcframework.v3.context.BeanContainer;
+import com.pql.mvcframework.v3.context.BeanDefinition;
+import com.pql.mvcframework.v3.context.ClassPathScanner;
+import com.pql.mvcframework.v3.context.ComponentIndex;
+import com.pql.mvcframework.v3.context.ContainerSnapshot;
+import com.pql.mvcframework.v3.convert.ConversionService;
+import com.pql.mvcframework.v3.convert.ConverterConfigurer;
+import com.pql.mvcframework.v3.exception.ExceptionHandlerMethod;
+import com.pql.mvcframework.v3.exception.ExceptionHandlerRegistry;
+import com.pql.mvcframework.v3.interceptor.InterceptorConfigurer;
+import com.pql.mvcframework.v3.interceptor.InterceptorRegistry;
+import com.pql.mvcframework.v3.interceptor.PQLHandlerInterceptor;
+import com.pql.mvcframework.v3.json.JsonCodecs;
+import com.pql.mvcframework.v3.limit.ConcurrencyLimiter;
+import com.pql.mvcframework.v3.limit.RateLimiter;
+import com.pql.mvcframework.v3.metrics.HandlerMetrics;
+import com.pql.mvcframework.v3.router.PathVariables;
+import com.pql.mvcframework.v3.router.RouteTrie;
+import com.pql.mvcframework.v3.server.EmbeddedHttpResponse;
 
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
 import javax.servlet.ServletConfig;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.lang.annotation.Annotation;
-import java.lang.reflect.Field;
 import java.lang.reflect.Method;
-import java.net.URL;
 import java.util.*;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-
-import static jdk.nashorn.api.scripting.ScriptUtils.convert;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
 
 /**
  * 核心 DispatcherServlet
@@ -26,24 +61,77 @@ import static jdk.nashorn.api.scripting.ScriptUtils.convert;
 public class PQLDispatcherServlet extends HttpServlet {
 
     /**
-     * 传说中的ioc容器 简化程序 只用hashMap 关注设计思想和原理
+     * 当前版本的ioc容器 url和method的关系 扫描到的类名 发布后只读
+     * 请求开始时读取一次 刷新时整体替换 读取不加锁
      * */
-    private Map<String, Object> ioc = new HashMap<String, Object>();
+    private volatile RoutingSnapshot snapshot = RoutingSnapshot.EMPTY;
 
     /**
-     * 扫描到的bean类名集合
+     * application.xml的配置
      * */
-    private List<String> classNames = new ArrayList<String>();
+    private Properties contextConfig = new Properties();
 
     /**
-     * application.xml的配置
+     * 请求参数的类型转换
      * */
-    private Properties contextConfig = new Properties();
+    private ConversionService conversionService = new ConversionService();
+
+    /**
+     * 请求体和返回值的json读写方式 按类型缓存
+     * */
+    private JsonCodecs jsonCodecs = new JsonCodecs(conversionService);
+
+    /**
+     * 执行@PQLAsync方法的线程池 没有异步handler时不创建
+     * */
+    private ExecutorService asyncExecutor;
+
+    /**
+     * 异步请求超时时间 毫秒
+     * */
+    private long asyncTimeout;
+
+    /**
+     * 统计接口路径 为null时关闭
+     * */
+    private String metricsPath;
+    private String metricsJsonPath;
+
+    /**
+     * 路由刷新接口路径 只接受POST 默认关闭
+     * */
+    private String refreshPath;
+
+    /**
+     * 批量接口路径和执行器 关闭时为null
+     * */
+    private String batchPath;
+    private BatchExecutor batch;
+
+    /**
+     * 平均每多少个请求记录一次耗时 为1时记录全部请求
+     * */
+    private int metricsSampleRate = 1;
 
     /**
-     * url和method的关系
+     * 没有匹配到handler的请求数
      * */
-    private List<Handler> handlerMapping = new ArrayList<Handler>();
+    private final LongAdder unmatched = new LongAdder();
+
+    /**
+     * 全局advice中的异常处理方法 controller中的异常处理方法优先
+     * */
+    private ExceptionHandlerRegistry exceptionHandlers = new ExceptionHandlerRegistry(null, jsonCodecs);
+
+    /**
+     * 注册的拦截器 只在创建handler时按url匹配
+     * */
+    private InterceptorRegistry interceptors = new InterceptorRegistry();
+
+    /**
+     * 响应压缩 关闭时为null
+     * */
+    private ResponseCompression compression;
 
     @Override
     protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
@@ -52,118 +140,673 @@ public class PQLDispatcherServlet extends HttpServlet {
 
     @Override
     protected void doPost(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+        // 本次请求始终使用同一个版本的路由和容器
+        dispatch(this.snapshot, req, resp);
+    }
+
+    /**
+     * 按指定版本的路由和容器处理一个请求 批量接口的子请求与所在的批量请求使用同一个版本
+     * */
+    private void dispatch(RoutingSnapshot snapshot, HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        BeanContainer ioc = snapshot.ioc;
+        // 存在request作用域的bean时 为本次请求开启作用域
+        boolean requestScope = ioc.hasRequestScope();
+        if(requestScope){
+            ioc.beginRequest();
+        }
         try{
             // 调用
-            doDispatch(req, resp);
+            doDispatch(snapshot, req, resp);
         }catch (Exception e){
-            // 报错返回 500
-            e.printStackTrace();
-            resp.getWriter().write("500 Exception " + Arrays.toString(e.getStackTrace()));
+            processException(null, req, resp, e);
+        }finally {
+            if(requestScope){
+                ioc.endRequest();
+            }
+        }
+    }
+
+    /**
+     * 异常处理
+     * 按异常类型查找controller或全局advice中的@PQLExceptionHandler方法 没有时按默认方式输出
+     * */
+    private void processException(Handler handler, HttpServletRequest request, HttpServletResponse response, Throwable e) throws IOException {
+        e = ErrorResponses.unwrap(e);
+        ExceptionHandlerRegistry registry = handler != null ? handler.exceptionHandlers : exceptionHandlers;
+        ExceptionHandlerMethod method = registry.resolve(e.getClass());
+        if(method != null && !response.isCommitted()){
+            // 丢弃handler已经写入缓冲的部分输出
+            response.resetBuffer();
+            try{
+                method.handle(e, request, response);
+                return;
+            }catch (Exception ex){
+                // 异常处理方法本身出错 按默认方式输出原异常
+                ErrorResponses.log(ex);
+            }
         }
+        ErrorResponses.write(response, e);
     }
 
     /**
      * post实际调用  通过url寻找映射
+     * 每个请求都计数 抽样的请求再分别记录路由 参数绑定 调用 输出的耗时
+     * 异步handler由AsyncDispatch结束统计
+     * 拦截器在参数绑定之前执行 preHandle返回false时直接结束
+     * 限流和并发限制在拦截器之前 拒绝的请求不计入请求数 由限流器自己计数
+     * 开启压缩时handler的输出写入压缩包装 请求结束时写出结尾
      * */
-    private void doDispatch(HttpServletRequest request, HttpServletResponse response) throws Exception{
+    private void doDispatch(RoutingSnapshot snapshot, HttpServletRequest request, HttpServletResponse response) throws Exception{
+        boolean sampled = sample();
+        long start = sampled ? System.nanoTime() : 0;
+        String requestURL = RouteTrie.normalize(request.getRequestURI(), request.getContextPath());
 
-        Handler handler = this.getHandler(request);
+        // 内置的统计接口
+        if(metricsPath != null && doDispatchMetrics(requestURL, response)){
+            return;
+        }
+        if(requestURL.equals(refreshPath)){
+            doDispatchRefresh(request, response);
+            return;
+        }
+        if(requestURL.equals(batchPath)){
+            doDispatchBatch(snapshot, request, response);
+            return;
+        }
+
+        // 有模板变量的路由时 查找过程中顺带记录变量位置
+        RouteTrie<Handler> handlerMapping = snapshot.handlerMapping;
+        int maxVariables = handlerMapping.getMaxVariables();
+        int[] offsets = maxVariables == 0 ? null : new int[maxVariables * 2];
+        Handler handler = this.getHandler(handlerMapping, requestURL, offsets);
         if(handler == null) {
             // 如果url不存在在映射中  说明404
+            unmatched.increment();
             response.getWriter().write("404 not Found!");
             return;
 
         }
+        if(handler.pathVariableCount > 0){
+            request.setAttribute(PathVariables.ATTRIBUTE, new PathVariables(requestURL, offsets));
+        }
 
-        // 获取方法的形参列表
-        Class<?>[] parameterTypes = handler.method.getParameterTypes();
-        // 实际存放的参数value列表
-        Object[] parameterValues = new Object[parameterTypes.length];
-        // 获取请求的参数列表
-        Map<String, String[]> parameterMap = request.getParameterMap();
+        // 超出限制时直接拒绝 不绑定参数
+        RateLimiter rateLimiter = handler.rateLimiter;
+        if(rateLimiter != null){
+            long waitNanos = rateLimiter.tryAcquire();
+            if(waitNanos > 0){
+                reject(response, 429, "429 Too Many Requests!", waitNanos);
+                return;
+            }
+        }
+        ConcurrencyLimiter concurrencyLimiter = handler.concurrencyLimiter;
+        long acquired = 0;
+        if(concurrencyLimiter != null){
+            if(!concurrencyLimiter.tryAcquire()){
+                reject(response, HttpServletResponse.SC_SERVICE_UNAVAILABLE, "503 Service Unavailable!", 0);
+                return;
+            }
+            // 只有自适应时才需要耗时
+            acquired = concurrencyLimiter.isAdaptive() ? System.nanoTime() : 0;
+        }
 
-        // 遍历方法形参
-        for (Map.Entry<String, String[]> param : parameterMap.entrySet()) {
-            String value = Arrays.toString(param.getValue())
-                    .replaceAll("\\[|\\]", "")
-                    .replaceAll("\\s", ",");
-            if(!handler.paramIndexMapping.containsKey(param.getKey())){
-                continue;
+        // 客户端接受压缩时包装response 拦截器 handler和异常处理都写入包装
+        if(compression != null && handler.compress){
+            response = compression.wrap(request, response);
+        }
+
+        HandlerMetrics metrics = handler.metrics;
+        metrics.begin();
+        long routed = sampled ? System.nanoTime() : 0;
+        boolean async = false;
+        boolean error = true;
+        PQLHandlerInterceptor[] interceptors = handler.interceptors;
+        int applied = 0;
+        Exception failure = null;
+        try{
+            // 拦截器数组在启动时已经按url匹配好 拦截时不绑定也不调用
+            for (; applied < interceptors.length; applied++) {
+                if(!interceptors[applied].preHandle(request, response, handler.method)){
+                    error = false;
+                    return;
+                }
+            }
+
+            // 形参解析器在启动时已经生成 这里只需按下标取值
+            Object[] parameterValues = handler.resolveArguments(request, response);
+            long bound = sampled ? System.nanoTime() : 0;
+
+            // 异步handler 释放容器线程 结果返回后再输出
+            if(handler.async && request.isAsyncSupported()){
+                AsyncContext asyncContext = response instanceof CompressingResponseWrapper
+                        ? request.startAsync(request, response) : request.startAsync();
+                RequestCoalescer.Flight flight = handler.coalescer == null ? null
+                        : handler.coalescer.join(ResponseCache.key(parameterValues, handler.cacheKeyIndexes));
+                AsyncDispatch dispatch = new AsyncDispatch(handler, asyncContext, acquired, flight);
+                if(sampled){
+                    dispatch.sample(start, routed, bound);
+                }
+                async = true;
+                if(flight != null && !flight.isLeader()){
+                    // 等待相同调用的输出 等待时间由异步超时控制
+                    dispatch.share(flight.getResult());
+                }else{
+                    doDispatchAsync(snapshot.ioc, dispatch, parameterValues);
+                }
+                return;
+            }
+
+            // 开启了响应缓存或调用合并 调用和输出合并计入调用阶段
+            if(handler.responseCache != null || handler.coalescer != null){
+                if(handler.responseCache != null){
+                    doDispatchCached(handler, parameterValues, request, response);
+                }else{
+                    ResponseCache.Key key = ResponseCache.key(parameterValues, handler.cacheKeyIndexes);
+                    doDispatchCoalesced(handler, key, parameterValues, request, response).writeTo(response);
+                }
+                if(sampled){
+                    metrics.recordPhases(routed - start, bound - routed, System.nanoTime() - bound, 0);
+                }
+                error = false;
+                return;
+            }
+
+            Object invoke = await(handler.invoker.invoke(parameterValues));
+            postHandle(handler, request, response, invoke);
+            long invoked = sampled ? System.nanoTime() : 0;
+
+            // 按启动时确定的返回值处理方式输出
+            handler.returnValueHandler.handle(invoke, request, response);
+            if(sampled){
+                metrics.recordPhases(routed - start, bound - routed, invoked - bound, System.nanoTime() - invoked);
+            }
+            error = false;
+        }catch (Exception e){
+            failure = e;
+            processException(handler, request, response, e);
+        }finally {
+            if(!async){
+                finishCompression(response);
+                if(concurrencyLimiter != null){
+                    concurrencyLimiter.release(concurrencyLimiter.isAdaptive() ? System.nanoTime() - acquired : 0);
+                }
+                afterCompletion(handler, applied, request, response, failure);
+                metrics.end(error);
+                if(sampled){
+                    metrics.recordLatency(System.nanoTime() - start);
+                }
             }
-            Integer index = handler.paramIndexMapping.get(param.getKey());
-            parameterValues[index] = convert(parameterTypes[index], value);
         }
-        if(handler.paramIndexMapping.containsKey(HttpServletRequest.class.getName())){
-            Integer index = handler.paramIndexMapping.get(HttpServletRequest.class.getName());
-            parameterValues[index] = request;
+    }
+
+    /**
+     * 写出压缩流的结尾并归还Deflater 客户端断开时只记录
+     * */
+    private static void finishCompression(HttpServletResponse response){
+        if(response instanceof CompressingResponseWrapper){
+            try{
+                ((CompressingResponseWrapper) response).finish();
+            }catch (IOException e){
+                ErrorResponses.log(e);
+            }
         }
+    }
 
-        //
-        if(handler.paramIndexMapping.containsKey(HttpServletResponse.class.getName())){
-            Integer index = handler.paramIndexMapping.get(HttpServletResponse.class.getName());
-            parameterValues[index] = response;
+    /**
+     * 容器不支持异步时 只能在当前线程等待CompletionStage的结果
+     * */
+    private static Object await(Object invoke) throws Exception {
+        if(!(invoke instanceof CompletionStage)){
+            return invoke;
+        }
+        try{
+            return ((CompletionStage<?>) invoke).toCompletableFuture().get();
+        }catch (ExecutionException e){
+            throw unwrap(e);
         }
+    }
 
-        Object invoke = handler.method.invoke(handler.controller, parameterValues);
-        if(invoke == null || invoke instanceof Void){
-            return;
+    /**
+     * 限流拒绝 waitNanos大于0时告诉客户端多少秒后重试
+     * */
+    private static void reject(HttpServletResponse response, int status, String body, long waitNanos) throws IOException {
+        response.setStatus(status);
+        if(waitNanos > 0){
+            response.setHeader("Retry-After", String.valueOf((waitNanos + 999999999L) / 1000000000L));
         }
-        response.getWriter().write(invoke.toString());
+        response.setContentType("text/plain;charset=UTF-8");
+        response.getWriter().write(body);
     }
 
     /**
-     * 通过请求获取handler
+     * handler调用后 按逆序执行postHandle
      * */
-    private Handler getHandler(HttpServletRequest request) throws Exception {
-        if(handlerMapping.isEmpty()){
-            return null;
+    private static void postHandle(Handler handler, HttpServletRequest request, HttpServletResponse response,
+                                   Object result) throws Exception {
+        PQLHandlerInterceptor[] interceptors = handler.interceptors;
+        for (int i = interceptors.length - 1; i >= 0; i--) {
+            interceptors[i].postHandle(request, response, handler.method, result);
         }
-        String requestURL = request.getRequestURI();
-        String contextPath = request.getContextPath();
-        requestURL = requestURL.replace(contextPath, "").replaceAll("/+", "/");
-        for (Handler handler : handlerMapping) {
+    }
+
+    /**
+     * 对preHandle通过的前applied个拦截器按逆序执行afterCompletion 单个拦截器出错不影响其余的
+     * */
+    private static void afterCompletion(Handler handler, int applied, HttpServletRequest request,
+                                        HttpServletResponse response, Exception failure){
+        PQLHandlerInterceptor[] interceptors = handler.interceptors;
+        for (int i = applied - 1; i >= 0; i--) {
             try{
-                Matcher matcher = handler.pattern.matcher(requestURL);
-                if(!matcher.matches()){
-                    continue;
-                }
-                return handler;
+                interceptors[i].afterCompletion(request, response, handler.method, failure);
             }catch (Exception e){
-                throw e;
+                ErrorResponses.log(e);
+            }
+        }
+    }
+
+    /**
+     * 本次请求是否记录耗时 线程内随机数 不产生竞争
+     * */
+    private boolean sample(){
+        return metricsSampleRate <= 1 || ThreadLocalRandom.current().nextInt(metricsSampleRate) == 0;
+    }
+
+    /**
+     * 统计接口 metricsPath输出文本 metricsPath.json输出json
+     * */
+    private boolean doDispatchMetrics(String requestURL, HttpServletResponse response) throws IOException {
+        boolean json;
+        if(requestURL.equals(metricsPath)){
+            json = false;
+        }else if(requestURL.equals(metricsJsonPath)){
+            json = true;
+        }else{
+            return false;
+        }
+        List<Handler> handlers = snapshot.handlerMapping.values();
+        long unmatchedCount = unmatched.sum();
+        response.setCharacterEncoding("UTF-8");
+        response.setHeader("Cache-Control", "no-cache");
+        if(json){
+            response.setContentType("application/json;charset=UTF-8");
+            response.getWriter().write(MetricsReporter.toJson(handlers, unmatchedCount, compression));
+        }else{
+            response.setContentType("text/plain;charset=UTF-8");
+            response.getWriter().write(MetricsReporter.toText(handlers, unmatchedCount, compression));
+        }
+        return true;
+    }
+
+    /**
+     * 路由刷新接口 只接受POST 刷新失败时返回500 当前版本不变
+     * */
+    private void doDispatchRefresh(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        response.setCharacterEncoding("UTF-8");
+        response.setContentType("text/plain;charset=UTF-8");
+        if(!"POST".equals(request.getMethod())){
+            response.setStatus(HttpServletResponse.SC_METHOD_NOT_ALLOWED);
+            response.setHeader("Allow", "POST");
+            return;
+        }
+        try{
+            response.getWriter().write(refreshHandlerMapping());
+        }catch (Exception e){
+            // 异常只记录日志 响应中不包含异常信息
+            ErrorResponses.log(e);
+            response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+            response.getWriter().write("refresh failed");
+        }
+    }
+
+    /**
+     * 批量接口 只接受POST 请求体为子请求的json数组 子请求不能再是批量请求
+     * 每一项按普通请求分发 在批量线程池中并行执行 合并的输出按压缩配置压缩
+     * */
+    private void doDispatchBatch(final RoutingSnapshot snapshot, HttpServletRequest request, HttpServletResponse response) throws Exception {
+        if(!"POST".equals(request.getMethod())){
+            response.setStatus(HttpServletResponse.SC_METHOD_NOT_ALLOWED);
+            response.setHeader("Allow", "POST");
+            return;
+        }
+        if(request instanceof BatchRequest){
+            throw new PQLBusinessException("the batch request can not be nested");
+        }
+        List<BatchItem> items = batch.read(request);
+        final BeanContainer ioc = snapshot.ioc;
+        EmbeddedHttpResponse[] results = batch.execute(items, request, new BatchExecutor.Dispatcher() {
+            public void dispatch(HttpServletRequest itemRequest, HttpServletResponse itemResponse) throws Exception {
+                // 线程池拒绝时子请求在当前线程执行 结束后恢复批量请求自己的request作用域
+                Object[] requestScope = ioc.hasRequestScope() ? ioc.currentRequest() : null;
+                try{
+                    PQLDispatcherServlet.this.dispatch(snapshot, itemRequest, itemResponse);
+                }finally {
+                    if(requestScope != null){
+                        ioc.attachRequest(requestScope);
+                    }
+                }
+            }
+        });
+        if(compression != null){
+            response = compression.wrap(request, response);
+        }
+        try{
+            batch.write(results, response);
+        }finally {
+            finishCompression(response);
+        }
+    }
+
+    /**
+     * 先查缓存 命中时不调用controller
+     * 未命中时把输出写入内存 状态码为200才放入缓存
+     * */
+    private void doDispatchCached(Handler handler, Object[] parameterValues,
+                                  HttpServletRequest request, HttpServletResponse response) throws Exception {
+        ResponseCache.Key key = ResponseCache.key(parameterValues, handler.cacheKeyIndexes);
+        CachedResponse cached = handler.responseCache.get(key);
+        if(cached == null){
+            // 同时开启了调用合并时 相同的未命中请求只调用一次
+            CoalescedResponse output = handler.coalescer != null
+                    ? doDispatchCoalesced(handler, key, parameterValues, request, response)
+                    : capture(handler, parameterValues, request, response);
+            if(output.getStatus() != HttpServletResponse.SC_OK){
+                if(!response.isCommitted()){
+                    output.writeTo(response);
+                }
+                return;
+            }
+            cached = new CachedResponse(output.getBody(), output.getContentType());
+            handler.responseCache.put(key, cached);
+        }
+
+        response.setHeader("ETag", cached.getEtag());
+        if(cached.matches(request.getHeader("If-None-Match"))){
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+        if(response.getContentType() == null && cached.getContentType() != null){
+            response.setContentType(cached.getContentType());
+        }
+        response.setContentLength(cached.getBody().length);
+        response.getOutputStream().write(cached.getBody());
+    }
+
+    /**
+     * 合并相同的并发调用 负责调用的请求把输出写入内存后共享给等待的请求
+     * 调用失败时等待的请求各自按同一个异常处理
+     * */
+    private static CoalescedResponse doDispatchCoalesced(Handler handler, ResponseCache.Key key, Object[] parameterValues,
+                                                         HttpServletRequest request, HttpServletResponse response) throws Exception {
+        RequestCoalescer coalescer = handler.coalescer;
+        RequestCoalescer.Flight flight = coalescer.join(key);
+        if(!flight.isLeader()){
+            return coalescer.await(flight);
+        }
+        try{
+            CoalescedResponse output = capture(handler, parameterValues, request, response);
+            coalescer.complete(flight, output);
+            return output;
+        }catch (Throwable e){
+            coalescer.fail(flight, e);
+            throw e;
+        }
+    }
+
+    /**
+     * 调用并把输出写入内存 形参中的response替换为包装后的
+     * */
+    private static CoalescedResponse capture(Handler handler, Object[] parameterValues,
+                                             HttpServletRequest request, HttpServletResponse response) throws Exception {
+        ContentCachingResponseWrapper wrapper = new ContentCachingResponseWrapper(response);
+        for (int i = 0; i < parameterValues.length; i++) {
+            if(parameterValues[i] == response){
+                parameterValues[i] = wrapper;
+            }
+        }
+        Object invoke = await(handler.invoker.invoke(parameterValues));
+        postHandle(handler, request, wrapper, invoke);
+        handler.returnValueHandler.handle(invoke, request, wrapper);
+        return new CoalescedResponse(wrapper.getStatus(), response.getContentType(), wrapper.getContentAsByteArray());
+    }
+
+    /**
+     * 各handler响应缓存的命中情况 key为url
+     * */
+    public Map<String, ResponseCache> getResponseCaches(){
+        Map<String, ResponseCache> caches = new LinkedHashMap<String, ResponseCache>();
+        for (Handler handler : snapshot.handlerMapping.values()) {
+            if(handler.responseCache != null){
+                caches.put(handler.url, handler.responseCache);
             }
         }
-        return null;
+        return caches;
+    }
+
+    /**
+     * 各handler的统计 key为url
+     * */
+    public Map<String, HandlerMetrics> getHandlerMetrics(){
+        Map<String, HandlerMetrics> metrics = new LinkedHashMap<String, HandlerMetrics>();
+        for (Handler handler : snapshot.handlerMapping.values()) {
+            metrics.put(handler.url, handler.metrics);
+        }
+        return metrics;
     }
 
     /**
-     * http基于字符串协议 所以url传过来的参数都是string类型
-     * 只需要把string转换为对应类型
+     * 开启异步上下文
+     * @PQLAsync方法提交到线程池执行 返回CompletionStage的方法在结果完成时输出
      * */
-    private Object convert(Class<?> type, String value){
-        if(Integer.class == type){
-            return Integer.valueOf(value);
+    private void doDispatchAsync(final BeanContainer ioc, final AsyncDispatch dispatch, final Object[] parameterValues){
+        if(!dispatch.handler.asyncExecute){
+            dispatch.invoke(parameterValues);
+            return;
+        }
+        // 线程池中继续使用本次请求的request作用域
+        final Object[] requestScope = ioc.hasRequestScope() ? ioc.currentRequest() : null;
+        try{
+            asyncExecutor.execute(new Runnable() {
+                public void run() {
+                    if(requestScope == null){
+                        dispatch.invoke(parameterValues);
+                        return;
+                    }
+                    ioc.attachRequest(requestScope);
+                    try{
+                        dispatch.invoke(parameterValues);
+                    }finally {
+                        ioc.endRequest();
+                    }
+                }
+            });
+        }catch (RuntimeException e){
+            // 线程池已关闭或拒绝
+            dispatch.fail(e);
         }
-        return value;
+    }
+
+    private static Exception unwrap(Throwable e){
+        while ((e instanceof CompletionException || e instanceof ExecutionException) && e.getCause() != null){
+            e = e.getCause();
+        }
+        return e instanceof Exception ? (Exception) e : new ExecutionException(e);
+    }
+
+    /**
+     * 通过请求获取handler
+     * */
+    private Handler getHandler(RouteTrie<Handler> handlerMapping, String requestURL, int[] offsets) {
+        if(handlerMapping.size() == 0){
+            return null;
+        }
+        return handlerMapping.lookup(requestURL, offsets);
     }
 
     @Override
     public void init(ServletConfig config) throws ServletException {
+        long start = System.nanoTime();
         // 1. 加载配置文件
         doLoadConfig(config.getInitParameter("contextConfigLocation"));
 
         // 2. 扫描bean
-        doScanner(contextConfig.getProperty("scanPackage"));
+        Set<String> classNames = doScanner(contextConfig.getProperty("scanPackage"));
 
-        // 3. 初始化bean 并加入到ioc
-        doInstance();
+        // 3. 注册bean 按依赖关系创建并注入 启动快照有效时直接按快照注册 按快照注册失败时换新容器完整扫描
+        ContainerSnapshot startup = loadStartupSnapshot(classNames);
+        BeanContainer ioc = null;
+        if(startup != null){
+            try{
+                ioc = new BeanContainer();
+                startup.registerTo(ioc, this.getClass().getClassLoader());
+                ioc.refresh();
+            }catch (Exception e){
+                System.out.println("startup snapshot registration failed, fallback to scan: " + e);
+                ioc = null;
+                startup = null;
+            }
+        }
+        if(ioc == null){
+            ioc = new BeanContainer();
+            try{
+                doInstance(ioc, classNames);
+            }catch (Exception e){
+                throw new ServletException("create beans failed", e);
+            }
+        }
 
-        // 4. 依赖注入
-        doAutoWired();
+        // 4. 初始化handlerMapping 转换器 拦截器 全局异常处理只在启动时注册
+        initConfigurers(ioc);
+        RouteTrie<Handler> handlerMapping = null;
+        if(startup != null){
+            try{
+                handlerMapping = initHandlerMapping(ioc, startup.getRoutes());
+            }catch (Exception e){
+                System.out.println("startup snapshot routes are stale, fallback to scan: " + e);
+            }
+        }
+        if(handlerMapping == null){
+            handlerMapping = initHandlerMapping(ioc, Collections.<String, Handler>emptyMap());
+        }
+        snapshot = new RoutingSnapshot(1, ioc, handlerMapping, classNames);
+
+        // 5. 存在异步handler时初始化线程池
+        initAsyncExecutor(handlerMapping);
+
+        // 6. 请求统计 路由刷新和批量接口
+        initMetrics();
+        initRefreshPath();
+        initBatch();
+
+        // 7. 响应压缩
+        initCompression();
+
+        System.out.println("pql spring framework is init in " + (System.nanoTime() - start) / 1000000 + "ms, "
+                + (startup != null ? "from startup snapshot" : "by scanning"));
+    }
+
+    /**
+     * 读取构建期生成的启动快照 startupSnapshot配置快照位置 不配置或配置为none时关闭
+     * 实测没有比完整扫描更快 默认不读取
+     * 不存在 损坏或已过期时返回null 由调用方完整扫描
+     * */
+    private ContainerSnapshot loadStartupSnapshot(Set<String> classNames){
+        String location = contextConfig.getProperty("startupSnapshot", "").trim();
+        if(location.isEmpty() || "none".equals(location)){
+            return null;
+        }
+        ClassLoader classLoader = this.getClass().getClassLoader();
+        try{
+            ContainerSnapshot startup = ContainerSnapshot.load(classLoader, location);
+            if(startup == null){
+                return null;
+            }
+            String stale = startup.validate(classLoader, contextConfig.getProperty("scanPackage"), classNames);
+            if(stale != null){
+                System.out.println("startup snapshot is stale, fallback to scan: " + stale);
+                return null;
+            }
+            return startup;
+        }catch (IOException e){
+            System.out.println("startup snapshot is unreadable, fallback to scan: " + e);
+            return null;
+        }
+    }
+
+    /**
+     * 构建期生成启动快照 只注册bean定义和查找路由 不创建任何bean
+     * */
+    ContainerSnapshot captureStartupSnapshot(String contextConfigLocation) throws Exception {
+        doLoadConfig(contextConfigLocation);
+        String scanPackage = contextConfig.getProperty("scanPackage");
+        Set<String> classNames = doScanner(scanPackage);
+        BeanContainer ioc = new BeanContainer();
+        doRegister(ioc, classNames);
+        List<ContainerSnapshot.Route> routes = new ArrayList<ContainerSnapshot.Route>();
+        for (BeanDefinition definition : ioc.getDefinitions()) {
+            if(!definition.getBeanClass().isAnnotationPresent(PQLController.class)){
+                continue;
+            }
+            for (Map.Entry<String, Method> route : findRoutes(definition.getBeanClass()).entrySet()) {
+                routes.add(new ContainerSnapshot.Route(route.getKey(), definition.getName(), route.getValue()));
+            }
+        }
+        return ContainerSnapshot.capture(this.getClass().getClassLoader(), scanPackage, classNames, ioc, routes);
+    }
 
-        // 5. 初始化handlerMapping
-        initHandlerMapping();
+    /**
+     * 增量刷新路由 重新扫描scanPackage
+     * 新增的类注册到由当前容器derive出的新容器 已删除的类连同它们的handler一起移除 其余bean和handler原样沿用
+     * 新版本完整构建后才替换当前版本 构建失败时保留当前版本 进行中的请求继续使用旧版本
+     * 转换器 拦截器和全局异常处理只在启动时注册 新增的不会生效
+     * */
+    public synchronized String refreshHandlerMapping() throws Exception {
+        long start = System.nanoTime();
+        RoutingSnapshot current = snapshot;
+        Set<String> classNames = doScanner(contextConfig.getProperty("scanPackage"));
+        Set<String> removed = new HashSet<String>(current.classNames);
+        removed.removeAll(classNames);
+        Set<String> added = new LinkedHashSet<String>(classNames);
+        added.removeAll(current.classNames);
 
-        System.out.println("pql spring framework is init");
+        // 当前容器启动失败或为空时整体重建
+        BeanContainer ioc;
+        if(current.ioc.isEmpty()){
+            ioc = new BeanContainer();
+            doInstance(ioc, classNames);
+        }else{
+            ioc = current.ioc.derive(removed);
+            doInstance(ioc, added);
+        }
+        for (String beanName : ioc.getBeanNames()) {
+            Class<?> clazz = ioc.getType(beanName);
+            if(added.contains(clazz.getName()) && (ConverterConfigurer.class.isAssignableFrom(clazz)
+                    || InterceptorConfigurer.class.isAssignableFrom(clazz) || clazz.isAnnotationPresent(PQLControllerAdvice.class))){
+                System.out.println("the " + beanName + " is ignored until restart!!");
+            }
+        }
+
+        Map<String, Handler> previous = current.handlersByUrl();
+        RouteTrie<Handler> handlerMapping = initHandlerMapping(ioc, previous);
+        initAsyncExecutor(handlerMapping);
+        checkReservedPaths(handlerMapping);
+        RoutingSnapshot next = new RoutingSnapshot(current.version + 1, ioc, handlerMapping, classNames);
+        snapshot = next;
+
+        int addedCount = 0;
+        int replacedCount = 0;
+        for (Handler handler : handlerMapping.values()) {
+            Handler old = previous.remove(handler.url);
+            if(old == null){
+                addedCount++;
+            }else if(old != handler){
+                replacedCount++;
+            }
+        }
+        String result = "routes v" + next.version + ": " + addedCount + " added, " + previous.size() + " removed, "
+                + replacedCount + " replaced, " + handlerMapping.size() + " total in "
+                + (System.nanoTime() - start) / 1000000 + "ms";
+        System.out.println(result);
+        return result;
     }
 
     /**
@@ -188,140 +831,288 @@ public class PQLDispatcherServlet extends HttpServlet {
 
     /**
      * 扫描bean
+     * 优先读取编译期生成的索引 没有索引时再扫描classpath
      */
-    private void doScanner(String packageName){
-
-        // 获得包地址
-        URL url = this.getClass().getClassLoader().getResource("/" + packageName.replaceAll("\\.", "/"));
-        File classDir = new File(url.getFile());
-
-        // 扫描class
-        for (File file : classDir.listFiles()) {
-            if(file.isDirectory()){
-                doScanner(packageName + "." + file.getName());
-            }else{
-                if(!file.getName().endsWith(".class")){
-                    continue;
-                }
-                String clazzName = (packageName + "." + file.getName().replace(".class", ""));
-                classNames.add(clazzName);
+    private Set<String> doScanner(String packageName){
+        Set<String> classNames = new LinkedHashSet<String>();
+        ClassLoader classLoader = this.getClass().getClassLoader();
+        try{
+            // 索引中没有该包的类 可能是未经过注解处理器编译 同样退回扫描
+            List<String> indexed = ComponentIndex.load(classLoader, packageName);
+            if(indexed != null && !indexed.isEmpty()){
+                classNames.addAll(indexed);
+                return classNames;
             }
+            classNames.addAll(ClassPathScanner.scan(classLoader, packageName));
+        }catch (IOException e){
+            e.printStackTrace();
         }
+        return classNames;
     }
 
     /**
      * 容器式注册单例工厂
+     * 先注册全部bean定义 再由容器统一创建和注入
      */
-    private void doInstance(){
-        // 初始化 为di做准备
-        if(classNames.isEmpty()){
-            return;
-        }
+    private void doInstance(BeanContainer ioc, Collection<String> classNames) throws Exception {
+        // 初始化 为di做准备 增量刷新时没有新增的类同样需要refresh 发布移除后的容器
+        doRegister(ioc, classNames);
 
-        try{
-            for (String className : classNames) {
-                Class<?> clazz = Class.forName(className);
-
-                // 初始化有注解的bean
-                if(clazz.isAnnotationPresent(PQLController.class)){
-                    Object instance = clazz.newInstance();
-                    // spring 默认bean名称首字母小写
-                    String beanName = toLowerFirstCase(clazz.getSimpleName());
-                    ioc.put(beanName, instance);
-                }else if(clazz.isAnnotationPresent(PQLService.class)){
-                    // 自定义的beanName
-                    PQLService service = clazz.getAnnotation(PQLService.class);
-                    String beanName = service.value();
-                    // 默认bean名称首字母小写
-                    if("".equals(beanName.trim())){
-                        beanName = toLowerFirstCase(clazz.getSimpleName());
-                    }
-                    Object instance = clazz.newInstance();
-                    ioc.put(beanName, instance);
-
-                    // 接口默认bean
-                    for (Class<?> i :clazz.getInterfaces()){
-                        if(ioc.containsKey(i.getName())){
-                            // 存在实现同一个接口的多个未自定义名称bean 抛出异常
-                            throw new Exception("the " + i.getName() + "is exists!!");
-                        }
-                        ioc.put(i.getName(), instance);
-                    }
-                }
-            }
-        }catch (Exception e){
-            e.printStackTrace();
-        }
+        // 创建非延迟的bean 并完成依赖注入
+        ioc.refresh();
     }
 
     /**
-     * 自动进行依赖注入
+     * 按注解注册bean定义
      * */
-    private void doAutoWired(){
-        if(ioc.isEmpty()){
-            return;
-        }
+    private void doRegister(BeanContainer ioc, Collection<String> classNames) throws Exception {
+        ClassLoader classLoader = this.getClass().getClassLoader();
+        for (String className : classNames) {
+            // 只加载不初始化 非bean的类不触发静态初始化
+            Class<?> clazz = Class.forName(className, false, classLoader);
 
-        for (Map.Entry<String, Object> entry : ioc.entrySet()) {
-            Field[] fields = entry.getValue().getClass().getDeclaredFields();
-            for (Field field : fields) {
-                // 排除没有注解的字段
-                if(!field.isAnnotationPresent(PQLAutowired.class)){
-                    continue;
-                }
-                PQLAutowired autowired = field.getAnnotation(PQLAutowired.class);
-                String beanName = autowired.value().trim();
-                if("".equals(beanName)){
-                    // 没有指定beanName 使用字段类名注入
-                    beanName = field.getType().getName();
+            // 注册有注解的bean
+            if(clazz.isAnnotationPresent(PQLController.class) || clazz.isAnnotationPresent(PQLControllerAdvice.class)){
+                // spring 默认bean名称首字母小写
+                ioc.register(toLowerFirstCase(clazz.getSimpleName()), clazz);
+            }else if(clazz.isAnnotationPresent(PQLService.class)){
+                // 自定义的beanName
+                PQLService service = clazz.getAnnotation(PQLService.class);
+                String beanName = service.value();
+                // 默认bean名称首字母小写
+                if("".equals(beanName.trim())){
+                    beanName = toLowerFirstCase(clazz.getSimpleName());
                 }
-                field.setAccessible(true);
-                try{
-                    field.set(entry.getValue(), ioc.get(beanName));
-                } catch (IllegalAccessException e) {
-                    e.printStackTrace();
+                ioc.register(beanName, clazz);
+
+                // 接口默认bean 存在实现同一个接口的多个bean时抛出异常
+                for (Class<?> i :clazz.getInterfaces()){
+                    ioc.registerAlias(i.getName(), beanName);
                 }
             }
         }
     }
 
     /**
-     * 初始化url和method的一对一关系
+     * 注册自定义转换器 拦截器和全局异常处理 handler创建时会查找并缓存 按类型判断 不提前创建延迟bean
      * */
-    private void initHandlerMapping(){
-        if(ioc.isEmpty()){
-            return;
+    private void initConfigurers(BeanContainer ioc){
+        for (String beanName : ioc.getBeanNames()) {
+            Class<?> clazz = ioc.getType(beanName);
+            if(ConverterConfigurer.class.isAssignableFrom(clazz)){
+                ((ConverterConfigurer) ioc.getBean(beanName)).addConverters(conversionService);
+            }
+            if(InterceptorConfigurer.class.isAssignableFrom(clazz)){
+                ((InterceptorConfigurer) ioc.getBean(beanName)).addInterceptors(interceptors);
+            }
+            if(clazz.isAnnotationPresent(PQLControllerAdvice.class)){
+                exceptionHandlers.register(ioc.getBean(beanName));
+            }
         }
+    }
 
-        for (Map.Entry<String, Object> entry : ioc.entrySet()) {
-            Class<?> clazz = entry.getValue().getClass();
+    /**
+     * 初始化url和method的一对一关系
+     * previous中同一url 同一controller实例和方法的handler直接沿用 保留统计和响应缓存
+     * */
+    private RouteTrie<Handler> initHandlerMapping(BeanContainer ioc, Map<String, Handler> previous){
+        RouteTrie<Handler> handlerMapping = new RouteTrie<Handler>();
+        for (String beanName : ioc.getBeanNames()) {
+            Class<?> clazz = ioc.getType(beanName);
 
             // 排除非controller的bean
             if(!clazz.isAnnotationPresent(PQLController.class)){
                 continue;
             }
+            Object controller = ioc.getBean(beanName);
+            ExceptionHandlerRegistry controllerExceptionHandlers = exceptionHandlersFor(controller);
 
-            // 保存类url
-            String baseUrl = "";
-            if(clazz.isAnnotationPresent(PQLRequestMapping.class)){
-                PQLRequestMapping requestMapping = clazz.getAnnotation(PQLRequestMapping.class);
-                baseUrl = requestMapping.value();
-            }
-
-            // 默认获取所有public类型的方法
-            for (Method method : clazz.getMethods()) {
-                if(!method.isAnnotationPresent(PQLRequestMapping.class)){
+            for (Map.Entry<String, Method> route : findRoutes(clazz).entrySet()) {
+                String url = route.getKey();
+                Method method = route.getValue();
+                Handler old = previous.get(url);
+                if(old != null && old.controller == controller && old.method.equals(method)){
+                    handlerMapping.add(url, old);
                     continue;
                 }
-
-                PQLRequestMapping requestMapping = method.getAnnotation(PQLRequestMapping.class);
-                String url = ("/" + baseUrl + "/" + requestMapping.value()).replaceAll("/+", "/");
-                // 增加正则解析
-                Pattern pattern = Pattern.compile(url);
-                handlerMapping.add(new Handler(pattern, entry.getValue(), method));
+                // 静态段直接入树 正则部分挂在对应节点上兜底
+                handlerMapping.add(url, new Handler(url, controller, method, conversionService, jsonCodecs,
+                        controllerExceptionHandlers, interceptors.forUrl(url)));
                 System.out.println("Mapped: " + url + "," + method);
             }
         }
+        return handlerMapping.freeze();
+    }
+
+    /**
+     * 按启动快照中的路由初始化 直接按名称取方法 不遍历controller的方法
+     * */
+    private RouteTrie<Handler> initHandlerMapping(BeanContainer ioc, List<ContainerSnapshot.Route> routes) throws Exception {
+        RouteTrie<Handler> handlerMapping = new RouteTrie<Handler>();
+        Map<String, ExceptionHandlerRegistry> controllerExceptionHandlers = new HashMap<String, ExceptionHandlerRegistry>();
+        for (ContainerSnapshot.Route route : routes) {
+            Object controller = ioc.getBean(route.getBeanName());
+            if(controller == null){
+                throw new IllegalStateException("no bean named " + route.getBeanName());
+            }
+            ExceptionHandlerRegistry registry = controllerExceptionHandlers.get(route.getBeanName());
+            if(registry == null){
+                registry = exceptionHandlersFor(controller);
+                controllerExceptionHandlers.put(route.getBeanName(), registry);
+            }
+            Method method = route.resolve(ioc.getType(route.getBeanName()));
+            handlerMapping.add(route.getUrl(), new Handler(route.getUrl(), controller, method, conversionService, jsonCodecs,
+                    registry, interceptors.forUrl(route.getUrl())));
+            System.out.println("Mapped: " + route.getUrl() + "," + method);
+        }
+        return handlerMapping.freeze();
+    }
+
+    /**
+     * controller自己的异常处理方法 没有时直接使用全局的
+     * */
+    private ExceptionHandlerRegistry exceptionHandlersFor(Object controller){
+        ExceptionHandlerRegistry controllerExceptionHandlers = new ExceptionHandlerRegistry(exceptionHandlers, jsonCodecs);
+        controllerExceptionHandlers.register(controller);
+        return controllerExceptionHandlers.isEmpty() ? exceptionHandlers : controllerExceptionHandlers;
+    }
+
+    /**
+     * controller中带@PQLRequestMapping的public方法 url拼接类上的路径
+     * */
+    private static Map<String, Method> findRoutes(Class<?> clazz){
+        // 保存类url
+        String baseUrl = "";
+        if(clazz.isAnnotationPresent(PQLRequestMapping.class)){
+            PQLRequestMapping requestMapping = clazz.getAnnotation(PQLRequestMapping.class);
+            baseUrl = requestMapping.value();
+        }
+
+        // 默认获取所有public类型的方法
+        Map<String, Method> routes = new LinkedHashMap<String, Method>();
+        for (Method method : clazz.getMethods()) {
+            if(!method.isAnnotationPresent(PQLRequestMapping.class)){
+                continue;
+            }
+            PQLRequestMapping requestMapping = method.getAnnotation(PQLRequestMapping.class);
+            String url = ("/" + baseUrl + "/" + requestMapping.value()).replaceAll("/+", "/");
+            if(routes.put(url, method) != null){
+                throw new IllegalStateException("the url " + url + " is exists!!");
+            }
+        }
+        return routes;
+    }
+
+    /**
+     * 初始化异步线程池
+     * asyncThreads不配置时 运行时支持虚拟线程则使用虚拟线程 刷新后出现异步handler时再创建
+     * */
+    private void initAsyncExecutor(RouteTrie<Handler> handlerMapping){
+        if(asyncExecutor != null){
+            return;
+        }
+        asyncTimeout = Long.parseLong(contextConfig.getProperty("asyncTimeout", "30000").trim());
+        boolean asyncExecute = false;
+        for (Handler handler : handlerMapping.values()) {
+            asyncExecute |= handler.asyncExecute;
+        }
+        if(!asyncExecute){
+            return;
+        }
+        int threads = Integer.parseInt(contextConfig.getProperty("asyncThreads", "0").trim());
+        asyncExecutor = AsyncExecutors.create(threads);
+    }
+
+    /**
+     * 统计接口路径 metricsPath不配置时关闭 输出全部路由和内部状态 没有鉴权 需要显式开启
+     * 不开启时同样记录统计
+     * */
+    private void initMetrics(){
+        metricsSampleRate = Integer.parseInt(contextConfig.getProperty("metricsSampleRate", "16").trim());
+        String path = contextConfig.getProperty("metricsPath", "").trim();
+        if(path.isEmpty()){
+            return;
+        }
+        metricsPath = ("/" + path).replaceAll("/+", "/");
+        metricsJsonPath = metricsPath + ".json";
+        checkReservedPaths(snapshot.handlerMapping);
+        System.out.println("Metrics: " + metricsPath + "," + metricsJsonPath + ", sample rate 1/" + metricsSampleRate);
+    }
+
+    /**
+     * 路由刷新接口路径 routesRefreshPath不配置时关闭
+     * */
+    private void initRefreshPath(){
+        String path = contextConfig.getProperty("routesRefreshPath", "").trim();
+        if(path.isEmpty()){
+            return;
+        }
+        refreshPath = ("/" + path).replaceAll("/+", "/");
+        checkReservedPaths(snapshot.handlerMapping);
+        System.out.println("Routes refresh: POST " + refreshPath);
+    }
+
+    /**
+     * 批量接口路径 batchPath不配置时关闭 一个请求可以展开为多个handler调用 需要显式开启
+     * batchMaxItems一批最多的项数 batchConcurrency同一批同时执行的项数 batchTimeout默认与asyncTimeout相同
+     * batchThreads执行子请求的线程数 不配置时支持虚拟线程则使用虚拟线程
+     * */
+    private void initBatch(){
+        String path = contextConfig.getProperty("batchPath", "").trim();
+        if(path.isEmpty()){
+            return;
+        }
+        batchPath = ("/" + path).replaceAll("/+", "/");
+        int maxItems = Integer.parseInt(contextConfig.getProperty("batchMaxItems", "50").trim());
+        int concurrency = Integer.parseInt(contextConfig.getProperty("batchConcurrency", "8").trim());
+        long timeout = Long.parseLong(contextConfig.getProperty("batchTimeout", String.valueOf(asyncTimeout)).trim());
+        int threads = Integer.parseInt(contextConfig.getProperty("batchThreads", "0").trim());
+        batch = new BatchExecutor(AsyncExecutors.create(threads), maxItems, concurrency, timeout);
+        checkReservedPaths(snapshot.handlerMapping);
+        System.out.println("Batch: POST " + batchPath + ", max items " + maxItems + ", concurrency " + concurrency);
+    }
+
+    /**
+     * 响应压缩 默认关闭 compression配置为true时开启
+     * compressionLevel 1-9 compressionMinSize小于该字节数不压缩 compressionExcludedTypes逗号分隔的不压缩类型
+     * */
+    private void initCompression(){
+        if(!Boolean.parseBoolean(contextConfig.getProperty("compression", "false").trim())){
+            return;
+        }
+        int level = Integer.parseInt(contextConfig.getProperty("compressionLevel", "1").trim());
+        int minSize = Integer.parseInt(contextConfig.getProperty("compressionMinSize", "1024").trim());
+        String excludedTypes = contextConfig.getProperty("compressionExcludedTypes", "");
+        compression = new ResponseCompression(level, minSize, Arrays.asList(excludedTypes.split(",")));
+        System.out.println("Compression: gzip,deflate level " + level + ", min size " + minSize);
+    }
+
+    /**
+     * 内置接口优先于handler 同名的handler无法访问
+     * */
+    private void checkReservedPaths(RouteTrie<Handler> handlerMapping){
+        if(metricsPath != null && (handlerMapping.lookup(metricsPath) != null || handlerMapping.lookup(metricsJsonPath) != null)){
+            System.out.println("the url " + metricsPath + " is reserved for metrics!!");
+        }
+        if(refreshPath != null && handlerMapping.lookup(refreshPath) != null){
+            System.out.println("the url " + refreshPath + " is reserved for routes refresh!!");
+        }
+        if(batchPath != null && handlerMapping.lookup(batchPath) != null){
+            System.out.println("the url " + batchPath + " is reserved for batch!!");
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if(asyncExecutor != null){
+            asyncExecutor.shutdown();
+        }
+        if(compression != null){
+            compression.close();
+        }
+        if(batch != null){
+            batch.close();
+        }
     }
 
     /**
@@ -334,51 +1125,219 @@ public class PQLDispatcherServlet extends HttpServlet {
     }
 
     /**
-     * 内部类 handler
-     * 记录controller中RequestMapping和method的关系
+     * 一次异步请求
+     * 超时和结果返回可能同时发生 只允许完成一次 由完成的一方结束统计
+     * 开启调用合并时 负责调用的请求把输出写入内存后共享 等待的请求不调用handler
      * */
-    private class Handler{
+    private class AsyncDispatch implements AsyncListener {
+
+        private final Handler handler;
+        private final AsyncContext asyncContext;
+        private final AtomicBoolean completed = new AtomicBoolean();
+        private boolean sampled;
+        private long start;
+        private long routed;
+        private long bound;
+
+        /**
+         * 占用并发的时刻 自适应并发限制用
+         * */
+        private final long acquired;
+
+        /**
+         * 加入的合并调用 未开启时为null
+         * */
+        private final RequestCoalescer.Flight flight;
+
+        /**
+         * 负责合并调用时 handler的输出先写入内存
+         * */
+        private ContentCachingResponseWrapper capture;
+
+        private AsyncDispatch(Handler handler, AsyncContext asyncContext, long acquired, RequestCoalescer.Flight flight){
+            this.handler = handler;
+            this.asyncContext = asyncContext;
+            this.acquired = acquired;
+            this.flight = flight;
+            asyncContext.setTimeout(asyncTimeout);
+            asyncContext.addListener(this);
+        }
 
-        protected Object controller;  // bean实例
-        protected Method method;      // 方法实例
-        protected Pattern pattern;    // 正则
-        protected Map<String, Integer> paramIndexMapping;   // 参数顺序
+        /**
+         * 抽样时记录开始 路由和绑定完成的时间 在startAsync的线程上设置 之后才会提交执行
+         * */
+        private void sample(long start, long routed, long bound){
+            this.sampled = true;
+            this.start = start;
+            this.routed = routed;
+            this.bound = bound;
+        }
 
         /**
-         * 构造handler基本参数
+         * 调用handler 返回CompletionStage时等结果完成再输出
          * */
-        protected Handler(Pattern pattern, Object controller, Method method){
-            this.pattern = pattern;
-            this.controller = controller;
-            this.method = method;
-            paramIndexMapping = new HashMap<String, Integer>();
+        private void invoke(Object[] parameterValues){
+            if(flight != null){
+                HttpServletResponse response = (HttpServletResponse) asyncContext.getResponse();
+                capture = new ContentCachingResponseWrapper(response);
+                for (int i = 0; i < parameterValues.length; i++) {
+                    if(parameterValues[i] == response){
+                        parameterValues[i] = capture;
+                    }
+                }
+            }
+            Object invoke;
+            try{
+                invoke = handler.invoker.invoke(parameterValues);
+            }catch (Exception e){
+                fail(e);
+                return;
+            }
+            if(!(invoke instanceof CompletionStage)){
+                complete(invoke);
+                return;
+            }
+            ((CompletionStage<?>) invoke).whenComplete(new BiConsumer<Object, Throwable>() {
+                public void accept(Object result, Throwable throwable) {
+                    if(throwable != null){
+                        fail(unwrap(throwable));
+                    }else{
+                        complete(result);
+                    }
+                }
+            });
+        }
+
+        private void complete(Object result){
+            if(!completed.compareAndSet(false, true)){
+                return;
+            }
+            long invoked = sampled ? System.nanoTime() : 0;
+            Exception failure = null;
+            HttpServletRequest request = (HttpServletRequest) asyncContext.getRequest();
+            HttpServletResponse response = (HttpServletResponse) asyncContext.getResponse();
+            try{
+                if(capture == null){
+                    postHandle(handler, request, response, result);
+                    handler.returnValueHandler.handle(result, request, response);
+                }else{
+                    postHandle(handler, request, capture, result);
+                    handler.returnValueHandler.handle(result, request, capture);
+                    CoalescedResponse output = new CoalescedResponse(capture.getStatus(), response.getContentType(),
+                            capture.getContentAsByteArray());
+                    handler.coalescer.complete(flight, output);
+                    output.writeTo(response);
+                }
+                if(sampled){
+                    // 调用阶段包含排队和等待结果的时间
+                    handler.metrics.recordPhases(routed - start, bound - routed, invoked - bound, System.nanoTime() - invoked);
+                }
+            }catch (Exception e){
+                failure = e;
+                ErrorResponses.log(e);
+            }finally {
+                finish(failure != null, failure);
+            }
         }
 
         /**
-         * 提取方法中加了注解的参数
+         * 等待负责调用的请求的输出
          * */
-        private void putParamIndexMapping(Method method){
-            // 获取方法所形的注解 二维数组
-            Annotation[][] parameterAnnotations = method.getParameterAnnotations();
-            for (int i = 0; i < parameterAnnotations.length; i++) {
-                for (Annotation annotation : parameterAnnotations[i]) {
-                    if(annotation instanceof PQLRequestParam){
-                        String paramName = ((PQLRequestParam) annotation).value();
-                        if(!"".equals(paramName.trim())){
-                            paramIndexMapping.put(paramName, i);
-                        }
+        private void share(CompletionStage<CoalescedResponse> result){
+            result.whenComplete(new BiConsumer<CoalescedResponse, Throwable>() {
+                public void accept(CoalescedResponse output, Throwable throwable) {
+                    if(throwable != null){
+                        fail(unwrap(throwable));
+                    }else{
+                        completeShared(output);
                     }
                 }
+            });
+        }
+
+        private void completeShared(CoalescedResponse output){
+            if(!completed.compareAndSet(false, true)){
+                return;
+            }
+            Exception failure = null;
+            try{
+                output.writeTo((HttpServletResponse) asyncContext.getResponse());
+            }catch (Exception e){
+                failure = e;
+                ErrorResponses.log(e);
+            }finally {
+                finish(failure != null, failure);
+            }
+        }
+
+        private void fail(Exception e){
+            if(!completed.compareAndSet(false, true)){
+                return;
+            }
+            if(flight != null && flight.isLeader()){
+                handler.coalescer.fail(flight, e);
+            }
+            try{
+                processException(handler, (HttpServletRequest) asyncContext.getRequest(),
+                        (HttpServletResponse) asyncContext.getResponse(), e);
+            }catch (Exception ex){
+                ErrorResponses.log(ex);
+            }finally {
+                finish(true, e);
             }
-            // 提取方法中的request和response参数
-            Class<?>[] parameterTypes = method.getParameterTypes();
-            for (int i = 0; i < parameterTypes.length; i++) {
-                Class<?> parameterType = parameterTypes[i];
-                if(parameterType == HttpServletRequest.class
-                || parameterType == HttpServletResponse.class){
-                    paramIndexMapping.put(parameterType.getName(), i);
+        }
+
+        /**
+         * 在complete之前执行拦截器的afterCompletion 之后request和response可能被容器回收
+         * 进入异步时全部拦截器的preHandle都已通过
+         * */
+        private void finish(boolean error, Exception failure){
+            finishCompression((HttpServletResponse) asyncContext.getResponse());
+            afterCompletion(handler, handler.interceptors.length, (HttpServletRequest) asyncContext.getRequest(),
+                    (HttpServletResponse) asyncContext.getResponse(), failure);
+            asyncContext.complete();
+            end(error);
+        }
+
+        private void end(boolean error){
+            // 负责调用的请求超时或出错时 等待的请求不再等待 已经完成时不影响
+            if(flight != null && flight.isLeader()){
+                handler.coalescer.fail(flight, new PQLBusinessException(503, "coalesced call did not complete"));
+            }
+            ConcurrencyLimiter limiter = handler.concurrencyLimiter;
+            if(limiter != null){
+                limiter.release(limiter.isAdaptive() ? System.nanoTime() - acquired : 0);
+            }
+            handler.metrics.end(error);
+            if(sampled){
+                handler.metrics.recordLatency(System.nanoTime() - start);
+            }
+        }
+
+        public void onTimeout(AsyncEvent event) {
+            if(!completed.compareAndSet(false, true)){
+                return;
+            }
+            ((HttpServletResponse) asyncContext.getResponse()).setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            finish(true, null);
+        }
+
+        public void onComplete(AsyncEvent event) {
+        }
+
+        public void onError(AsyncEvent event) {
+            if(completed.compareAndSet(false, true)){
+                if(asyncContext.getResponse() instanceof CompressingResponseWrapper){
+                    ((CompressingResponseWrapper) asyncContext.getResponse()).abort();
                 }
+                Throwable throwable = event.getThrowable();
+                afterCompletion(handler, handler.interceptors.length, (HttpServletRequest) asyncContext.getRequest(),
+                        (HttpServletResponse) asyncContext.getResponse(), throwable == null ? null : unwrap(throwable));
+                end(true);
             }
         }
+
+        public void onStartAsync(AsyncEvent event) {
+        }
     }
 }
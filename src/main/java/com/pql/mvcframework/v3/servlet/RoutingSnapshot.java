@@ -0,0 +1,42 @@
+package com.pql.mvcframework.v3.servlet;
+
+import com.pql.mvcframework.v3.context.BeanContainer;
+import com.pql.mvcframework.v3.router.RouteTrie;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 一个版本的路由 bean容器 路由树和扫描到的类 发布后不再修改
+ * 请求开始时读取一次 刷新时整体替换 进行中的请求继续使用旧版本
+ * */
+final class RoutingSnapshot {
+
+    static final RoutingSnapshot EMPTY = new RoutingSnapshot(0, new BeanContainer(),
+            new RouteTrie<Handler>().freeze(), Collections.<String>emptySet());
+
+    final long version;
+    final BeanContainer ioc;
+    final RouteTrie<Handler> handlerMapping;
+    final Set<String> classNames;
+
+    RoutingSnapshot(long version, BeanContainer ioc, RouteTrie<Handler> handlerMapping, Set<String> classNames){
+        this.version = version;
+        this.ioc = ioc;
+        this.handlerMapping = handlerMapping;
+        this.classNames = Collections.unmodifiableSet(classNames);
+    }
+
+    /**
+     * url和handler 刷新时按url比较新旧版本
+     * */
+    Map<String, Handler> handlersByUrl(){
+        Map<String, Handler> handlers = new HashMap<String, Handler>();
+        for (Handler handler : handlerMapping.values()) {
+            handlers.put(handler.url, handler);
+        }
+        return handlers;
+    }
+}
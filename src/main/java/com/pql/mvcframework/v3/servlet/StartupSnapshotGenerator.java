@@ -0,0 +1,27 @@
+package com.pql.mvcframework.v3.servlet;
+
+import com.pql.mvcframework.v3.context.ContainerSnapshot;
+
+import java.io.File;
+
+/**
+ * 构建期生成启动快照 由maven在process-classes阶段调用
+ * 参数: 配置文件 输出目录 [快照位置]
+ * 配置文件和被扫描的类需要在classpath上
+ * */
+public class StartupSnapshotGenerator {
+
+    public static void main(String[] args) throws Exception {
+        if(args.length < 2){
+            System.out.println("usage: StartupSnapshotGenerator <contextConfigLocation> <outputDirectory> [location]");
+            System.exit(1);
+        }
+        String location = args.length > 2 ? args[2] : ContainerSnapshot.LOCATION;
+        long start = System.nanoTime();
+        ContainerSnapshot snapshot = new PQLDispatcherServlet().captureStartupSnapshot(args[0]);
+        File file = snapshot.write(new File(args[1]), location);
+        System.out.println("pql startup snapshot: " + snapshot.getClassNames().size() + " classes, "
+                + snapshot.getBeanCount() + " beans, " + snapshot.getRoutes().size() + " routes -> " + file
+                + " in " + (System.nanoTime() - start) / 1000000 + "ms");
+    }
+}
@@ -0,0 +1,121 @@
+package com.pql.mvcframework.v3.json;
+
+import com.pql.mvcframework.exception.PQLBusinessException;
+import com.pql.mvcframework.v3.convert.ConversionService;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class JsonCodecsTest {
+
+    private final JsonCodecs codecs = new JsonCodecs(new ConversionService());
+
+    @Test
+    public void roundTripsBeans() throws IOException {
+        Item item = new Item();
+        item.name = "名字 \"quoted\"\n";
+        item.count = 3;
+        item.tags = new ArrayList<String>(Arrays.asList("a", "é", null));
+        item.scores = new LinkedHashMap<String, Integer>();
+        item.scores.put("x", 1);
+        item.child = new Item();
+        item.child.name = "child";
+
+        String json = write(Item.class, item);
+        Item read = (Item) read(Item.class, json);
+        assertEquals(item.name, read.name);
+        assertEquals(3, read.count);
+        assertEquals(item.tags, read.tags);
+        assertEquals(item.scores, read.scores);
+        assertEquals("child", read.child.name);
+        assertNull(read.child.child);
+    }
+
+    @Test
+    public void skipsUnknownProperties() throws IOException {
+        Item read = (Item) read(Item.class, "{\"unknown\":{\"deep\":[1,{\"a\":\"\\u00e9\"}]},\"name\":\"n\"}");
+        assertEquals("n", read.name);
+    }
+
+    @Test
+    public void readsDynamicValues() throws IOException {
+        Object read = read(Object.class, "{\"a\":[1,2.5,\"s\",true,null],\"b\":{}}");
+        Map<String, Object> expected = new LinkedHashMap<String, Object>();
+        expected.put("a", Arrays.<Object>asList(1L, 2.5, "s", true, null));
+        expected.put("b", new LinkedHashMap<String, Object>());
+        assertEquals(expected, read);
+    }
+
+    @Test
+    public void rejectsTruncatedBeans() throws IOException {
+        String[] inputs = {"{\"name\":\"n\"", "{\"name\":", "{\"tags\":[\"a\"", "{\"child\":{\"count\":1}"};
+        for (String input : inputs) {
+            try{
+                read(Item.class, input);
+                fail("expected a syntax error for " + input);
+            }catch (PQLBusinessException e){
+                assertEquals(400, e.getStatus());
+            }
+        }
+    }
+
+    @Test
+    public void rejectsDeepDynamicValues() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 600; i++) {
+            sb.append("{\"a\":");
+        }
+        try{
+            read(Object.class, sb.toString());
+            fail("expected nesting too deep");
+        }catch (PQLBusinessException e){
+            assertEquals(400, e.getStatus());
+        }
+    }
+
+    @Test
+    public void rejectsWrongTypes() throws IOException {
+        try{
+            read(Item.class, "{\"count\":\"abc\"}");
+            fail("expected a syntax error");
+        }catch (PQLBusinessException e){
+            assertEquals(400, e.getStatus());
+        }
+    }
+
+    private Object read(Type type, String json) throws IOException {
+        JsonReader reader = new JsonReader(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)), new byte[16]);
+        Object value = JsonCodecs.read(codecs.forType(type), reader);
+        reader.endDocument();
+        return value;
+    }
+
+    private String write(Type type, Object value) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        JsonWriter writer = new JsonWriter(out, new byte[16]);
+        JsonCodecs.write(codecs.forType(type), writer, value);
+        writer.flush();
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    public static class Item {
+        public String name;
+        public int count;
+        public List<String> tags;
+        public Map<String, Integer> scores;
+        public Item child;
+    }
+}
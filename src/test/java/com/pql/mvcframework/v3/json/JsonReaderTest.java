@@ -0,0 +1,173 @@
+package com.pql.mvcframework.v3.json;
+
+import com.pql.mvcframework.exception.PQLBusinessException;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class JsonReaderTest {
+
+    @Test
+    public void readsEscapes() throws IOException {
+        JsonReader reader = reader("\"q\\\" b\\\\ s\\/ \\b\\f\\n\\r\\t \\u00e9 \\ud83d\\ude00\"");
+        assertEquals("q\" b\\ s/ \b\f\n\r\t \u00e9 \ud83d\ude00", reader.nextString());
+        reader.endDocument();
+    }
+
+    @Test
+    public void readsNonAsciiAcrossBufferBoundaries() throws IOException {
+        String value = "中文 caf\u00e9 \ud83d\ude00 end";
+        // 每次只读一个字节 缓冲4字节 多字节字符一定跨越fill
+        JsonReader reader = new JsonReader(new TrickleInputStream(("[\"" + value + "\",{\"键\":\"值\"}]").getBytes(StandardCharsets.UTF_8)), new byte[4]);
+        reader.beginArray();
+        assertEquals(value, reader.nextString());
+        reader.beginObject();
+        assertEquals("键", reader.nextName());
+        assertEquals("值", reader.nextString());
+        reader.endObject();
+        reader.endArray();
+        reader.endDocument();
+    }
+
+    @Test
+    public void readsNumbersAndLiterals() throws IOException {
+        JsonReader reader = reader(" [ -12 , 3.5e2 , 9223372036854775807 , true , false , null ] ");
+        reader.beginArray();
+        assertEquals(-12, reader.nextInt());
+        assertEquals(350.0, reader.nextDouble(), 0);
+        assertEquals(Long.MAX_VALUE, reader.nextLong());
+        assertTrue(reader.nextBoolean());
+        assertFalse(reader.nextBoolean());
+        reader.nextNull();
+        assertFalse(reader.hasNext());
+        reader.endArray();
+        reader.endDocument();
+    }
+
+    @Test
+    public void acceptsNestingBelowTheLimit() throws IOException {
+        JsonReader reader = reader(nested(500));
+        for (int i = 0; i < 500; i++) {
+            reader.beginArray();
+        }
+        for (int i = 0; i < 500; i++) {
+            reader.endArray();
+        }
+        reader.endDocument();
+    }
+
+    @Test
+    public void rejectsNestingTooDeep() throws IOException {
+        JsonReader reader = reader(nested(600));
+        try{
+            for (int i = 0; i < 600; i++) {
+                reader.beginArray();
+            }
+            fail("expected nesting too deep");
+        }catch (PQLBusinessException e){
+            assertEquals(400, e.getStatus());
+            assertTrue(e.getMessage(), e.getMessage().contains("nesting too deep"));
+        }
+    }
+
+    @Test
+    public void skipValueRejectsNestingTooDeep() throws IOException {
+        try{
+            reader(nested(600)).skipValue();
+            fail("expected nesting too deep");
+        }catch (PQLBusinessException e){
+            assertTrue(e.getMessage(), e.getMessage().contains("nesting too deep"));
+        }
+    }
+
+    @Test
+    public void rejectsTruncatedInput() throws IOException {
+        String[] inputs = {"", "{\"a\":1", "{\"a\"", "[1,", "\"abc", "\"\\u00", "\"\\", "tru", "\"\u00e9"};
+        for (String input : inputs) {
+            try{
+                reader(input).skipValue();
+                fail("expected a syntax error for " + input);
+            }catch (PQLBusinessException e){
+                assertEquals(400, e.getStatus());
+            }
+        }
+    }
+
+    @Test
+    public void rejectsTruncatedMultiByteCharacter() throws IOException {
+        byte[] utf8 = "\"\u4e2d".getBytes(StandardCharsets.UTF_8);
+        byte[] truncated = new byte[utf8.length - 1];
+        System.arraycopy(utf8, 0, truncated, 0, truncated.length);
+        try{
+            new JsonReader(new ByteArrayInputStream(truncated), new byte[16]).nextString();
+            fail("expected a syntax error");
+        }catch (PQLBusinessException e){
+            assertEquals(400, e.getStatus());
+        }
+    }
+
+    @Test
+    public void rejectsMalformedInput() throws IOException {
+        String[] inputs = {"\"a\nb\"", "\"\\x\"", "\"\\u12g4\"", "{1:2}", "[1 2]", "{\"a\" 1}", "nul", "1 2"};
+        for (String input : inputs) {
+            try{
+                JsonReader reader = reader(input);
+                reader.skipValue();
+                reader.endDocument();
+                fail("expected a syntax error for " + input);
+            }catch (PQLBusinessException e){
+                assertTrue(e.getMessage(), e.getMessage().startsWith("malformed json at "));
+            }
+        }
+    }
+
+    private static JsonReader reader(String json){
+        return new JsonReader(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)), new byte[16]);
+    }
+
+    private static String nested(int depth){
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < depth; i++) {
+            sb.append('[');
+        }
+        for (int i = 0; i < depth; i++) {
+            sb.append(']');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 每次最多返回一个字节 模拟分段到达的请求体
+     * */
+    static class TrickleInputStream extends InputStream {
+
+        private final byte[] data;
+        private int pos;
+
+        TrickleInputStream(byte[] data){
+            this.data = data;
+        }
+
+        @Override
+        public int read() {
+            return pos < data.length ? data[pos++] & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if(pos == data.length){
+                return -1;
+            }
+            b[off] = data[pos++];
+            return 1;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.pql.mvcframework.v3.json;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class JsonWriterTest {
+
+    @Test
+    public void escapesControlCharactersAndQuotes() throws IOException {
+        assertEquals("\"q\\\" b\\\\ \\b\\f\\n\\r\\t \\u0000\\u001f /\"", write("q\" b\\ \b\f\n\r\t \u0000\u001f /"));
+    }
+
+    @Test
+    public void encodesNonAsciiAsUtf8() throws IOException {
+        String value = "中文 café 😀";
+        assertEquals("\"" + value + "\"", write(value));
+    }
+
+    @Test
+    public void replacesUnpairedSurrogates() throws IOException {
+        assertEquals("\"a?b?\"", write("a\ud83db\ude00"));
+    }
+
+    @Test
+    public void flushesLongStringsThroughASmallBuffer() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            sb.append("é\"\n中");
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        JsonWriter writer = new JsonWriter(out, new byte[16]);
+        writer.value(sb.toString());
+        writer.flush();
+        JsonReader reader = new JsonReader(new ByteArrayInputStream(out.toByteArray()), new byte[16]);
+        assertEquals(sb.toString(), reader.nextString());
+    }
+
+    @Test
+    public void writesNestedStructures() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        JsonWriter writer = new JsonWriter(out, new byte[64]);
+        writer.beginObject()
+                .name("a").beginArray().value(1).value(-2.5).value(true).nullValue().endArray()
+                .name("b").beginObject().endObject()
+                .endObject();
+        writer.flush();
+        assertEquals("{\"a\":[1,-2.5,true,null],\"b\":{}}", new String(out.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void rejectsNestingTooDeep() throws IOException {
+        JsonWriter writer = new JsonWriter(new ByteArrayOutputStream(), new byte[64]);
+        try{
+            for (int i = 0; i < 600; i++) {
+                writer.beginArray();
+            }
+            fail("expected nesting too deep");
+        }catch (IllegalStateException e){
+            assertEquals("nesting too deep", e.getMessage());
+        }
+    }
+
+    @Test
+    public void rejectsMisplacedValues() throws IOException {
+        JsonWriter writer = new JsonWriter(new ByteArrayOutputStream(), new byte[64]);
+        writer.beginObject();
+        try{
+            writer.value(1);
+            fail("expected a name");
+        }catch (IllegalStateException e){
+            assertTrue(e.getMessage(), e.getMessage().contains("expected a name"));
+        }
+        writer = new JsonWriter(new ByteArrayOutputStream(), new byte[64]);
+        writer.value(1);
+        try{
+            writer.value(2);
+            fail("expected only one root value");
+        }catch (IllegalStateException e){
+            assertTrue(e.getMessage(), e.getMessage().contains("only one root value"));
+        }
+    }
+
+    private static String write(String value) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        JsonWriter writer = new JsonWriter(out, new byte[16]);
+        writer.value(value);
+        writer.flush();
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,236 @@
+package com.pql.mvcframework.v3.server;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 通过本机连接测试请求的解析 每个用例分段发送 覆盖HttpConnection.process和parseHead
+ * */
+public class HttpConnectionTest {
+
+    private ExecutorService workers;
+    private PQLHttpServer server;
+    private Socket socket;
+    private OutputStream out;
+    private InputStream in;
+
+    @Before
+    public void setUp() throws IOException {
+        workers = Executors.newFixedThreadPool(2);
+        server = new PQLHttpServer(new EchoServlet(), new InetSocketAddress("127.0.0.1", 0), workers);
+        server.setMaxHeaderSize(1024);
+        server.setMaxBodySize(64);
+        int port = server.start();
+        socket = new Socket("127.0.0.1", port);
+        socket.setSoTimeout(5000);
+        socket.setTcpNoDelay(true);
+        out = socket.getOutputStream();
+        in = socket.getInputStream();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        socket.close();
+        server.stop();
+        workers.shutdownNow();
+    }
+
+    @Test
+    public void handlesPipelinedRequestsSplitAcrossReads() throws Exception {
+        send("GET /a?x=1 HTTP/1.1\r\nHost: t\r\n\r\nPOST /b HTTP/1.1\r\nHost: t\r\nContent-Length: 5\r\n\r\nhe");
+        send("llo");
+        send("GET /c HTTP/1.1\r\nHo");
+        send("st: t\r\n\r\n");
+        assertResponse(200, "GET /a?x=1 ", readResponse());
+        assertResponse(200, "POST /b hello", readResponse());
+        assertResponse(200, "GET /c ", readResponse());
+    }
+
+    @Test
+    public void handlesARequestSentOneByteAtATime() throws Exception {
+        byte[] request = "PUT /one HTTP/1.1\r\nHost: t\r\nContent-Length: 3\r\n\r\nabc".getBytes(StandardCharsets.ISO_8859_1);
+        for (byte b : request) {
+            out.write(b);
+            out.flush();
+        }
+        assertResponse(200, "PUT /one abc", readResponse());
+    }
+
+    @Test
+    public void keepsPipelinedResponsesInOrder() throws Exception {
+        StringBuilder requests = new StringBuilder();
+        for (int i = 0; i < 20; i++) {
+            requests.append("GET /p").append(i).append(" HTTP/1.1\r\nHost: t\r\n\r\n");
+        }
+        send(requests.toString());
+        for (int i = 0; i < 20; i++) {
+            assertResponse(200, "GET /p" + i + " ", readResponse());
+        }
+    }
+
+    @Test
+    public void rejectsOversizedHeaders() throws Exception {
+        StringBuilder request = new StringBuilder("GET / HTTP/1.1\r\nHost: t\r\nX-Large: ");
+        for (int i = 0; i < 2000; i++) {
+            request.append('a');
+        }
+        send(request.toString());
+        assertResponse(431, "", readResponse());
+        assertClosed();
+    }
+
+    @Test
+    public void rejectsOversizedBodies() throws Exception {
+        send("POST /big HTTP/1.1\r\nHost: t\r\nContent-Length: 65\r\n\r\n");
+        assertResponse(413, "", readResponse());
+        assertClosed();
+    }
+
+    @Test
+    public void acceptsBodiesUpToTheLimit() throws Exception {
+        StringBuilder body = new StringBuilder();
+        for (int i = 0; i < 64; i++) {
+            body.append('b');
+        }
+        send("POST /max HTTP/1.1\r\nHost: t\r\nContent-Length: 64\r\n\r\n" + body);
+        assertResponse(200, "POST /max " + body, readResponse());
+    }
+
+    @Test
+    public void rejectsUnsupportedVersions() throws Exception {
+        send("GET / HTTP/2.0\r\nHost: t\r\n\r\n");
+        assertResponse(505, "", readResponse());
+        assertClosed();
+    }
+
+    @Test
+    public void rejectsMalformedRequestLines() throws Exception {
+        send("GARBAGE\r\nHost: t\r\n\r\n");
+        assertResponse(400, "", readResponse());
+        assertClosed();
+    }
+
+    @Test
+    public void sendsContinueBeforeReadingTheBody() throws Exception {
+        send("POST /upload HTTP/1.1\r\nHost: t\r\nExpect: 100-continue\r\nContent-Length: 4\r\n\r\n");
+        assertEquals("HTTP/1.1 100 Continue", readLine());
+        assertEquals("", readLine());
+        send("data");
+        assertResponse(200, "POST /upload data", readResponse());
+    }
+
+    @Test
+    public void skipsContinueWhenTheBodyIsAlreadyHere() throws Exception {
+        send("POST /upload HTTP/1.1\r\nHost: t\r\nExpect: 100-continue\r\nContent-Length: 4\r\n\r\ndata");
+        assertResponse(200, "POST /upload data", readResponse());
+    }
+
+    @Test
+    public void closesHttp10ConnectionsByDefault() throws Exception {
+        send("GET /old HTTP/1.0\r\n\r\n");
+        assertResponse(200, "GET /old ", readResponse());
+        assertClosed();
+    }
+
+    private void send(String data) throws Exception {
+        out.write(data.getBytes(StandardCharsets.ISO_8859_1));
+        out.flush();
+        // 让服务端分多次读到
+        Thread.sleep(20);
+    }
+
+    private void assertResponse(int status, String body, Response response){
+        assertEquals(status, response.status);
+        assertEquals(body, response.body);
+    }
+
+    private void assertClosed() throws IOException {
+        assertEquals(-1, in.read());
+    }
+
+    private Response readResponse() throws IOException {
+        String statusLine = readLine();
+        assertTrue(statusLine, statusLine.startsWith("HTTP/1.1 ") || statusLine.startsWith("HTTP/1.0 "));
+        Response response = new Response();
+        response.status = Integer.parseInt(statusLine.substring(9, 12));
+        int contentLength = -1;
+        String line;
+        while (!(line = readLine()).isEmpty()){
+            int colon = line.indexOf(':');
+            if("content-length".equals(line.substring(0, colon).trim().toLowerCase(Locale.ENGLISH))){
+                contentLength = Integer.parseInt(line.substring(colon + 1).trim());
+            }
+        }
+        assertTrue("missing Content-Length", contentLength >= 0);
+        byte[] body = new byte[contentLength];
+        int read = 0;
+        while (read < contentLength){
+            int n = in.read(body, read, contentLength - read);
+            if(n < 0){
+                throw new IOException("unexpected end of response");
+            }
+            read += n;
+        }
+        response.body = new String(body, StandardCharsets.UTF_8);
+        return response;
+    }
+
+    private String readLine() throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) != '\n'){
+            if(b < 0){
+                throw new IOException("unexpected end of response");
+            }
+            if(b != '\r'){
+                line.write(b);
+            }
+        }
+        return new String(line.toByteArray(), StandardCharsets.ISO_8859_1);
+    }
+
+    private static class Response {
+        private int status;
+        private String body;
+    }
+
+    /**
+     * 返回方法 路径 查询参数和请求体
+     * */
+    private static class EchoServlet extends HttpServlet {
+
+        @Override
+        protected void service(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            InputStream is = req.getInputStream();
+            byte[] buffer = new byte[256];
+            int n;
+            while ((n = is.read(buffer)) > 0){
+                body.write(buffer, 0, n);
+            }
+            String text = req.getMethod() + " " + req.getRequestURI()
+                    + (req.getQueryString() == null ? "" : "?" + req.getQueryString()) + " "
+                    + new String(body.toByteArray(), StandardCharsets.UTF_8);
+            resp.setContentType("text/plain");
+            resp.getOutputStream().write(text.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+}